@@ -12,6 +12,7 @@ package com.mirth.connect.connectors.file;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.SwingWorker;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 
 import com.mirth.connect.client.core.ClientException;
@@ -42,6 +43,7 @@ public class FileReader extends ConnectorSettingsPanel {
         fileAge.setDocument(new MirthFieldConstraints(0, false, false, true));
         fileSizeMinimumField.setDocument(new MirthFieldConstraints(0, false, false, true));
         fileSizeMaximumField.setDocument(new MirthFieldConstraints(0, false, false, true));
+        processingThreadsField.setDocument(new MirthFieldConstraints(0, false, false, true));
         // ast:encoding activation
         parent.setupCharsetEncodingForConnector(charsetEncodingCombobox);
     }
@@ -109,6 +111,8 @@ public class FileReader extends ConnectorSettingsPanel {
         properties.setRegex(filenameFilterRegexCheckBox.isSelected());
         properties.setProcessBatch(processBatchFilesYes.isSelected());
         properties.setBinary(fileTypeBinary.isSelected());
+        properties.setProcessingThreads(processingThreadsField.getText());
+        properties.setIncrementalScan(incrementalScanYesRadio.isSelected());
 
         logger.debug("getProperties: properties=" + properties);
 
@@ -293,6 +297,14 @@ public class FileReader extends ConnectorSettingsPanel {
             processBatchFilesNo.setSelected(true);
             processBatchFilesNoActionPerformed(null);
         }
+
+        processingThreadsField.setText(props.getProcessingThreads());
+
+        if (props.isIncrementalScan()) {
+            incrementalScanYesRadio.setSelected(true);
+        } else {
+            incrementalScanNoRadio.setSelected(true);
+        }
     }
 
     @Override
@@ -365,6 +377,13 @@ public class FileReader extends ConnectorSettingsPanel {
             }
         }
 
+        if (NumberUtils.toInt(props.getProcessingThreads()) <= 0) {
+            valid = false;
+            if (highlight) {
+                processingThreadsField.setBackground(UIConstants.INVALID_COLOR);
+            }
+        }
+
         return valid;
     }
 
@@ -380,6 +399,7 @@ public class FileReader extends ConnectorSettingsPanel {
         usernameField.setBackground(null);
         passwordField.setBackground(null);
         timeoutField.setBackground(null);
+        processingThreadsField.setBackground(null);
     }
 
     /**
@@ -400,6 +420,7 @@ public class FileReader extends ConnectorSettingsPanel {
         buttonGroup9 = new javax.swing.ButtonGroup();
         ignoreDotFilesButtonGroup = new javax.swing.ButtonGroup();
         directoryRecursionButtonGroup = new javax.swing.ButtonGroup();
+        incrementalScanButtonGroup = new javax.swing.ButtonGroup();
         schemeLabel = new javax.swing.JLabel();
         schemeComboBox = new com.mirth.connect.client.ui.components.MirthComboBox();
         directoryLabel = new javax.swing.JLabel();
@@ -472,6 +493,11 @@ public class FileReader extends ConnectorSettingsPanel {
         fileSizeDashLabel = new javax.swing.JLabel();
         fileSizeMaximumField = new com.mirth.connect.client.ui.components.MirthTextField();
         ignoreFileSizeMaximumCheckBox = new com.mirth.connect.client.ui.components.MirthCheckBox();
+        processingThreadsLabel = new javax.swing.JLabel();
+        processingThreadsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        incrementalScanLabel = new javax.swing.JLabel();
+        incrementalScanYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        incrementalScanNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
 
         setBackground(new java.awt.Color(255, 255, 255));
         setBorder(javax.swing.BorderFactory.createEmptyBorder(1, 1, 1, 1));
@@ -825,6 +851,27 @@ public class FileReader extends ConnectorSettingsPanel {
             }
         });
 
+        processingThreadsLabel.setText("Processing Threads:");
+
+        processingThreadsField.setToolTipText("<html>The number of files to process at the same time.<br/>Files are still started in the Sort Files By order, but with more than one thread they may finish out of order.</html>");
+
+        incrementalScanLabel.setText("Incremental Scan:");
+
+        incrementalScanYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        incrementalScanYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        incrementalScanButtonGroup.add(incrementalScanYesRadio);
+        incrementalScanYesRadio.setText("Yes");
+        incrementalScanYesRadio.setToolTipText("<html>Select Yes to skip files that were already read and left in place until their size or last modified time changes.<br/>Local directories are also watched for changes instead of being listed on every poll.</html>");
+        incrementalScanYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        incrementalScanNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        incrementalScanNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        incrementalScanButtonGroup.add(incrementalScanNoRadio);
+        incrementalScanNoRadio.setSelected(true);
+        incrementalScanNoRadio.setText("No");
+        incrementalScanNoRadio.setToolTipText("<html>Select No to list and check every file on every poll.</html>");
+        incrementalScanNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -858,7 +905,9 @@ public class FileReader extends ConnectorSettingsPanel {
                     .addComponent(sortFilesByLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(fileTypeLabel, javax.swing.GroupLayout.Alignment.TRAILING)
                     .addComponent(encodingLabel, javax.swing.GroupLayout.Alignment.TRAILING)
-                    .addComponent(processBatchFilesLabel, javax.swing.GroupLayout.Alignment.TRAILING))
+                    .addComponent(processBatchFilesLabel, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(processingThreadsLabel, javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(incrementalScanLabel, javax.swing.GroupLayout.Alignment.TRAILING))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
@@ -936,7 +985,12 @@ public class FileReader extends ConnectorSettingsPanel {
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(processBatchFilesYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(processBatchFilesNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                        .addComponent(processBatchFilesNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(processingThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(incrementalScanYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(incrementalScanNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
                 .addContainerGap(62, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
@@ -1068,6 +1122,15 @@ public class FileReader extends ConnectorSettingsPanel {
                     .addComponent(processBatchFilesLabel)
                     .addComponent(processBatchFilesYes, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(processBatchFilesNo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(processingThreadsLabel)
+                    .addComponent(processingThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(incrementalScanLabel)
+                    .addComponent(incrementalScanYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(incrementalScanNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap(20, Short.MAX_VALUE))
         );
     }// </editor-fold>//GEN-END:initComponents
@@ -1378,6 +1441,10 @@ public class FileReader extends ConnectorSettingsPanel {
     private com.mirth.connect.client.ui.components.MirthRadioButton ignoreDotFilesNoRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton ignoreDotFilesYesRadio;
     private com.mirth.connect.client.ui.components.MirthCheckBox ignoreFileSizeMaximumCheckBox;
+    private javax.swing.ButtonGroup incrementalScanButtonGroup;
+    private javax.swing.JLabel incrementalScanLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton incrementalScanNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton incrementalScanYesRadio;
     private javax.swing.JScrollPane jScrollPane1;
     private com.mirth.connect.client.ui.components.MirthVariableList mirthVariableList1;
     private com.mirth.connect.client.ui.components.MirthTextField moveToDirectoryField;
@@ -1395,6 +1462,8 @@ public class FileReader extends ConnectorSettingsPanel {
     private javax.swing.JLabel processBatchFilesLabel;
     private com.mirth.connect.client.ui.components.MirthRadioButton processBatchFilesNo;
     private com.mirth.connect.client.ui.components.MirthRadioButton processBatchFilesYes;
+    private com.mirth.connect.client.ui.components.MirthTextField processingThreadsField;
+    private javax.swing.JLabel processingThreadsLabel;
     private com.mirth.connect.client.ui.components.MirthComboBox schemeComboBox;
     private javax.swing.JLabel schemeLabel;
     private javax.swing.JLabel secureModeLabel;
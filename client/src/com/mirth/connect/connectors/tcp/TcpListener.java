@@ -89,6 +89,7 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         properties.setReceiveTimeout(receiveTimeoutField.getText());
         properties.setBufferSize(bufferSizeField.getText());
         properties.setMaxConnections(maxConnectionsField.getText());
+        properties.setMultiplexConnections(multiplexConnectionsYesRadio.isSelected());
         properties.setKeepConnectionOpen(keepConnectionOpenYesRadio.isSelected());
         properties.setProcessBatch(processBatchYesRadio.isSelected());
         properties.setCharsetEncoding(parent.getSelectedEncodingForConnector(charsetEncodingCombobox));
@@ -148,6 +149,12 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         bufferSizeField.setText(props.getBufferSize());
         maxConnectionsField.setText(props.getMaxConnections());
 
+        if (props.isMultiplexConnections()) {
+            multiplexConnectionsYesRadio.setSelected(true);
+        } else {
+            multiplexConnectionsNoRadio.setSelected(true);
+        }
+
         if (props.isKeepConnectionOpen()) {
             keepConnectionOpenYesRadio.setSelected(true);
         } else {
@@ -307,6 +314,7 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         respondOnNewConnectionButtonGroup = new javax.swing.ButtonGroup();
         modeButtonGroup = new javax.swing.ButtonGroup();
         processBatchButtonGroup = new javax.swing.ButtonGroup();
+        multiplexConnectionsButtonGroup = new javax.swing.ButtonGroup();
         overrideLocalBindingButtonGroup = new javax.swing.ButtonGroup();
         jLabel3 = new javax.swing.JLabel();
         jLabel4 = new javax.swing.JLabel();
@@ -335,6 +343,9 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         reconnectIntervalField = new com.mirth.connect.client.ui.components.MirthTextField();
         maxConnectionsLabel = new javax.swing.JLabel();
         maxConnectionsField = new com.mirth.connect.client.ui.components.MirthTextField();
+        multiplexConnectionsLabel = new javax.swing.JLabel();
+        multiplexConnectionsYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
+        multiplexConnectionsNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         processBatchLabel = new javax.swing.JLabel();
         processBatchYesRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
         processBatchNoRadio = new com.mirth.connect.client.ui.components.MirthRadioButton();
@@ -491,6 +502,23 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
 
         maxConnectionsField.setToolTipText("<html>The maximum number of client connections to accept.<br/>After this number has been reached, subsequent socket requests will result in a rejection.</html>");
 
+        multiplexConnectionsLabel.setText("Multiplex Connections:");
+
+        multiplexConnectionsYesRadio.setBackground(new java.awt.Color(255, 255, 255));
+        multiplexConnectionsYesRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        multiplexConnectionsButtonGroup.add(multiplexConnectionsYesRadio);
+        multiplexConnectionsYesRadio.setText("Yes");
+        multiplexConnectionsYesRadio.setToolTipText("<html>Select Yes to keep idle client connections on a single selector thread instead of a dedicated thread per connection.<br/>Max Connections then limits the number of worker threads reading from connections that have data available,<br/>so many mostly idle connections can be kept open at once. Only applies in Server mode.</html>");
+        multiplexConnectionsYesRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        multiplexConnectionsNoRadio.setBackground(new java.awt.Color(255, 255, 255));
+        multiplexConnectionsNoRadio.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        multiplexConnectionsButtonGroup.add(multiplexConnectionsNoRadio);
+        multiplexConnectionsNoRadio.setSelected(true);
+        multiplexConnectionsNoRadio.setText("No");
+        multiplexConnectionsNoRadio.setToolTipText("<html>Select Yes to keep idle client connections on a single selector thread instead of a dedicated thread per connection.<br/>Max Connections then limits the number of worker threads reading from connections that have data available,<br/>so many mostly idle connections can be kept open at once. Only applies in Server mode.</html>");
+        multiplexConnectionsNoRadio.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
         processBatchLabel.setText("Process Batch:");
 
         processBatchYesRadio.setBackground(new java.awt.Color(255, 255, 255));
@@ -572,6 +600,7 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
                     .addComponent(overrideLocalBindingLabel)
                     .addComponent(reconnectIntervalLabel)
                     .addComponent(maxConnectionsLabel)
+                    .addComponent(multiplexConnectionsLabel)
                     .addComponent(jLabel3)
                     .addComponent(jLabel4)
                     .addComponent(keepConnectionOpenLabel)
@@ -602,6 +631,10 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
                                 .addComponent(overrideLocalBindingNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                             .addComponent(reconnectIntervalField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(maxConnectionsField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addGroup(layout.createSequentialGroup()
+                                .addComponent(multiplexConnectionsYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                .addComponent(multiplexConnectionsNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                             .addComponent(receiveTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addComponent(bufferSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                             .addGroup(layout.createSequentialGroup()
@@ -666,6 +699,11 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
                     .addComponent(maxConnectionsLabel)
                     .addComponent(maxConnectionsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(multiplexConnectionsLabel)
+                    .addComponent(multiplexConnectionsYesRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(multiplexConnectionsNoRadio, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel3)
                     .addComponent(receiveTimeoutField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
@@ -738,6 +776,9 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         reconnectIntervalField.setEnabled(true);
         maxConnectionsLabel.setEnabled(false);
         maxConnectionsField.setEnabled(false);
+        multiplexConnectionsLabel.setEnabled(false);
+        multiplexConnectionsYesRadio.setEnabled(false);
+        multiplexConnectionsNoRadio.setEnabled(false);
     }//GEN-LAST:event_modeClientRadioActionPerformed
 
     private void processBatchNoRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_processBatchNoRadioActionPerformed
@@ -755,6 +796,9 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
         reconnectIntervalField.setEnabled(false);
         maxConnectionsLabel.setEnabled(true);
         maxConnectionsField.setEnabled(true);
+        multiplexConnectionsLabel.setEnabled(true);
+        multiplexConnectionsYesRadio.setEnabled(true);
+        multiplexConnectionsNoRadio.setEnabled(true);
     }//GEN-LAST:event_modeServerRadioActionPerformed
 
     private void transmissionModeComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_transmissionModeComboBoxActionPerformed
@@ -831,6 +875,10 @@ public class TcpListener extends ConnectorSettingsPanel implements ActionListene
     private com.mirth.connect.client.ui.components.MirthRadioButton keepConnectionOpenYesRadio;
     private com.mirth.connect.client.ui.components.MirthTextField maxConnectionsField;
     private javax.swing.JLabel maxConnectionsLabel;
+    private javax.swing.ButtonGroup multiplexConnectionsButtonGroup;
+    private javax.swing.JLabel multiplexConnectionsLabel;
+    private com.mirth.connect.client.ui.components.MirthRadioButton multiplexConnectionsNoRadio;
+    private com.mirth.connect.client.ui.components.MirthRadioButton multiplexConnectionsYesRadio;
     private javax.swing.ButtonGroup modeButtonGroup;
     private com.mirth.connect.client.ui.components.MirthRadioButton modeClientRadio;
     private com.mirth.connect.client.ui.components.MirthRadioButton modeServerRadio;
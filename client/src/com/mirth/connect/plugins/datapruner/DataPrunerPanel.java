@@ -48,6 +48,9 @@ public class DataPrunerPanel extends AbstractSettingsPanel {
     private Frame parent;
     private int startIndex;
     private int stopIndex;
+    // Settings that have no controls on this panel, kept so that saving doesn't reset them
+    private String pruningThreads;
+    private String pruningBlockDelay;
 
     public DataPrunerPanel(String tabName, SettingsPanelPlugin plugin) {
         super(tabName);
@@ -312,6 +315,9 @@ public class DataPrunerPanel extends AbstractSettingsPanel {
         
         pruneEventAgeTextField.setText(properties.getProperty("maxEventAge"));
 
+        pruningThreads = properties.getProperty("pruningThreads");
+        pruningBlockDelay = properties.getProperty("pruningBlockDelay");
+
         repaint();
         updateStatus();
     }
@@ -348,6 +354,14 @@ public class DataPrunerPanel extends AbstractSettingsPanel {
 //        properties.put("includeAttachments", Boolean.toString(archiverPanel.isIncludeAttachments()));
         properties.setProperty("archiverOptions", serializer.serialize(archiverPanel.getMessageWriterOptions()));
 
+        if (pruningThreads != null) {
+            properties.setProperty("pruningThreads", pruningThreads);
+        }
+
+        if (pruningBlockDelay != null) {
+            properties.setProperty("pruningBlockDelay", pruningBlockDelay);
+        }
+
         return properties;
     }
     
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.io.File;
+import java.util.Properties;
+
+import com.mirth.connect.donkey.model.event.Event;
+import com.mirth.connect.donkey.server.Donkey;
+import com.mirth.connect.donkey.server.DonkeyConfiguration;
+import com.mirth.connect.donkey.server.StartException;
+import com.mirth.connect.donkey.server.event.EventDispatcher;
+
+public class BenchmarkUtils {
+    public final static String SERVER_ID = "benchmarkserver";
+
+    /**
+     * Starts the engine against an in-memory embedded Derby database, so the JDBC benchmarks
+     * don't depend on an external database server.
+     */
+    public static void startEngine() throws StartException {
+        Properties databaseProperties = new Properties();
+        databaseProperties.setProperty("database", "derby");
+        databaseProperties.setProperty("database.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        databaseProperties.setProperty("database.url", "jdbc:derby:memory:donkeybenchmark;create=true");
+        databaseProperties.setProperty("database.username", "");
+        databaseProperties.setProperty("database.password", "");
+        databaseProperties.setProperty("database.max-connections", "20");
+
+        Donkey.getInstance().startEngine(new DonkeyConfiguration(new File(".").getAbsolutePath(), databaseProperties, null, new EventDispatcher() {
+            @Override
+            public void dispatchEvent(Event event) {}
+        }, SERVER_ID));
+    }
+
+    public static void stopEngine() {
+        Donkey.getInstance().stopEngine();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mirth.connect.donkey.model.message.RawMessage;
+import com.mirth.connect.donkey.server.Donkey;
+import com.mirth.connect.donkey.server.channel.DispatchResult;
+import com.mirth.connect.donkey.server.data.buffered.BufferedDaoFactory;
+import com.mirth.connect.donkey.server.data.passthru.DelayedStatisticsUpdater;
+import com.mirth.connect.donkey.server.data.passthru.PassthruDaoFactory;
+import com.mirth.connect.donkey.test.util.TestChannel;
+import com.mirth.connect.donkey.test.util.TestSourceConnector;
+import com.mirth.connect.donkey.test.util.TestUtils;
+import com.mirth.connect.donkey.test.util.TestUtils.MessageStorageMode;
+
+/**
+ * Measures end-to-end dispatch of a raw message through a channel, from the source connector
+ * until every destination has finished. The "passthru" DAO stores nothing, so it isolates the
+ * engine itself, while "jdbc" stores everything in an embedded Derby database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class ChannelBenchmark {
+    private final static String CHANNEL_ID = "channelbenchmark";
+
+    @Param({ "passthru", "jdbc" })
+    public String daoFactory;
+
+    @Param({ "1", "4" })
+    public int destinations;
+
+    private TestChannel channel;
+    private TestSourceConnector sourceConnector;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkUtils.startEngine();
+
+        channel = TestUtils.createDefaultChannel(CHANNEL_ID, BenchmarkUtils.SERVER_ID, true, 1, destinations);
+
+        if (daoFactory.equals("passthru")) {
+            channel.setStorageSettings(TestUtils.getStorageSettings(MessageStorageMode.DISABLED));
+            channel.setDaoFactory(new PassthruDaoFactory(new DelayedStatisticsUpdater(Donkey.getInstance().getDaoFactory())));
+        } else {
+            channel.setStorageSettings(TestUtils.getStorageSettings(MessageStorageMode.DEVELOPMENT));
+            channel.setDaoFactory(new BufferedDaoFactory(Donkey.getInstance().getDaoFactory()));
+        }
+
+        sourceConnector = (TestSourceConnector) channel.getSourceConnector();
+
+        channel.deploy();
+        channel.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        channel.stop();
+        channel.undeploy();
+        BenchmarkUtils.stopEngine();
+    }
+
+    @Benchmark
+    public DispatchResult dispatchRawMessage() throws Exception {
+        DispatchResult dispatchResult = null;
+
+        try {
+            dispatchResult = sourceConnector.dispatchRawMessage(new RawMessage(TestUtils.TEST_HL7_MESSAGE));
+        } finally {
+            sourceConnector.finishDispatch(dispatchResult);
+        }
+
+        return dispatchResult;
+    }
+}
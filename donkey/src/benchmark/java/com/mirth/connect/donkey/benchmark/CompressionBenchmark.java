@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mirth.connect.donkey.test.util.TestUtils;
+import com.mirth.connect.donkey.util.CompressionUtil;
+
+/**
+ * Measures the CPU cost of compressing message content before it is stored and decompressing it
+ * when it is read. Compare against the time saved writing the smaller content to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({ "2048", "65536", "2097152" })
+    public int contentLength;
+
+    private String content;
+    private String compressedContent;
+
+    @Setup
+    public void setup() {
+        content = createContent(contentLength);
+        compressedContent = CompressionUtil.compress(content);
+    }
+
+    @Benchmark
+    public String compress() {
+        return CompressionUtil.compress(content);
+    }
+
+    @Benchmark
+    public String decompress() {
+        return CompressionUtil.decompress(compressedContent);
+    }
+
+    /**
+     * Builds HL7 content of the given length by repeating the test message with a different
+     * control ID and observation value each time, so it is not unrealistically compressible.
+     */
+    static String createContent(int length) {
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder(length + TestUtils.TEST_HL7_MESSAGE.length());
+
+        while (builder.length() < length) {
+            builder.append(TestUtils.TEST_HL7_MESSAGE.replace("HMCDOOGAL-0088", "CTRL-" + random.nextInt(1000000)).replace("|5.3|", "|" + random.nextInt(100) / 10.0 + "|"));
+        }
+
+        builder.setLength(length);
+        return builder.toString();
+    }
+}
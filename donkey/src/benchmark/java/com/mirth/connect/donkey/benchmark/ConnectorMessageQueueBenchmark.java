@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mirth.connect.donkey.model.message.ConnectorMessage;
+import com.mirth.connect.donkey.model.message.Status;
+import com.mirth.connect.donkey.server.queue.ConnectorMessageQueue;
+import com.mirth.connect.donkey.server.queue.ConnectorMessageQueueDataSource;
+
+/**
+ * Measures the destination queue's add/acquire/release cycle. The queue is backed by an in-memory
+ * data source, so the results reflect the queue itself rather than the database. Run with JMH's
+ * -t option to measure contention between multiple queue threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConnectorMessageQueueBenchmark {
+    private final static String CHANNEL_ID = "queuebenchmark";
+
+    @Param({ "1000" })
+    public int bufferCapacity;
+
+    private MemoryDataSource dataSource;
+    private ConnectorMessageQueue queue;
+    private AtomicLong nextMessageId = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        dataSource = new MemoryDataSource();
+        queue = new ConnectorMessageQueue();
+        queue.setBufferCapacity(bufferCapacity);
+        queue.setDataSource(dataSource);
+        queue.updateSize();
+    }
+
+    @Benchmark
+    public ConnectorMessage addAcquireRelease() {
+        ConnectorMessage connectorMessage = new ConnectorMessage();
+        connectorMessage.setChannelId(CHANNEL_ID);
+        connectorMessage.setMessageId(nextMessageId.incrementAndGet());
+        connectorMessage.setMetaDataId(1);
+        connectorMessage.setStatus(Status.QUEUED);
+
+        // The message is always stored before it's added to the queue
+        dataSource.messages.put(connectorMessage.getMessageId(), connectorMessage);
+        queue.add(connectorMessage);
+
+        ConnectorMessage acquired = queue.acquire();
+
+        if (acquired != null) {
+            // Sending the message removes it from the queue in the database before it's released
+            dataSource.messages.remove(acquired.getMessageId());
+            queue.release(acquired, true);
+        }
+
+        return acquired;
+    }
+
+    private static class MemoryDataSource extends ConnectorMessageQueueDataSource {
+        private ConcurrentNavigableMap<Long, ConnectorMessage> messages = new ConcurrentSkipListMap<Long, ConnectorMessage>();
+
+        public MemoryDataSource() {
+            super(CHANNEL_ID, BenchmarkUtils.SERVER_ID, 1, Status.QUEUED, false, null);
+        }
+
+        @Override
+        public int getSize() {
+            return messages.size();
+        }
+
+        @Override
+        public Map<Long, ConnectorMessage> getItems(int offset, int limit) {
+            return copy(messages, limit);
+        }
+
+        @Override
+        public Map<Long, ConnectorMessage> getItemsAfter(long messageId, int limit) {
+            return copy(messages.tailMap(messageId, false), limit);
+        }
+
+        private Map<Long, ConnectorMessage> copy(Map<Long, ConnectorMessage> source, int limit) {
+            Map<Long, ConnectorMessage> items = new LinkedHashMap<Long, ConnectorMessage>();
+
+            for (ConnectorMessage connectorMessage : source.values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+
+                items.put(connectorMessage.getMessageId(), connectorMessage);
+            }
+
+            return items;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mirth.connect.donkey.model.message.Status;
+import com.mirth.connect.donkey.server.channel.Statistics;
+
+/**
+ * Measures the statistics updates made for every message, both the per-status updates made while
+ * a message is processed and the merge of a message's statistics into the channel's totals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+    private final static String CHANNEL_ID = "statisticsbenchmark";
+    private final static int DESTINATIONS = 4;
+
+    private Statistics totalStats;
+    private Statistics messageStats;
+
+    @Setup
+    public void setup() {
+        totalStats = new Statistics(false);
+        messageStats = new Statistics(false);
+
+        messageStats.update(CHANNEL_ID, 0, Status.RECEIVED, null);
+
+        for (int metaDataId = 1; metaDataId <= DESTINATIONS; metaDataId++) {
+            messageStats.update(CHANNEL_ID, metaDataId, Status.RECEIVED, null);
+            messageStats.update(CHANNEL_ID, metaDataId, Status.SENT, Status.RECEIVED);
+        }
+    }
+
+    @Benchmark
+    public Statistics updateStatus() {
+        totalStats.update(CHANNEL_ID, 1, Status.SENT, Status.QUEUED);
+        return totalStats;
+    }
+
+    @Benchmark
+    public Statistics updateStatistics() {
+        totalStats.update(messageStats);
+        return totalStats;
+    }
+}
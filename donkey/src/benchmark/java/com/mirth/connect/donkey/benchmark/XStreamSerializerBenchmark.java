@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mirth.connect.donkey.util.xstream.XStreamSerializer;
+
+/**
+ * Measures serialization of the message maps (source, channel, connector and response maps) the
+ * way the DAO stores them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class XStreamSerializerBenchmark {
+
+    @Param({ "10", "100" })
+    public int mapSize;
+
+    private XStreamSerializer serializer;
+    private Map<String, Object> map;
+    private String serializedMap;
+
+    @Setup
+    public void setup() {
+        serializer = new XStreamSerializer();
+        map = new HashMap<String, Object>();
+
+        for (int i = 0; i < mapSize; i++) {
+            switch (i % 4) {
+                case 0:
+                    map.put("string" + i, "value " + i);
+                    break;
+
+                case 1:
+                    map.put("integer" + i, i);
+                    break;
+
+                case 2:
+                    map.put("boolean" + i, i % 3 == 0);
+                    break;
+
+                default:
+                    List<String> list = new ArrayList<String>();
+                    list.add("first " + i);
+                    list.add("second " + i);
+                    map.put("list" + i, list);
+                    break;
+            }
+        }
+
+        serializedMap = serializer.serialize(map);
+    }
+
+    @Benchmark
+    public String serializeMap() {
+        return serializer.serialize(map);
+    }
+
+    @Benchmark
+    public Map<?, ?> deserializeMap() {
+        return serializer.deserialize(serializedMap, Map.class);
+    }
+}
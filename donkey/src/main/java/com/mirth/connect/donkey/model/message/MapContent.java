@@ -9,13 +9,19 @@
 
 package com.mirth.connect.donkey.model.message;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.mirth.connect.donkey.util.CopyOnWriteMap;
+
 public class MapContent {
     private Object content = new HashMap<String, Object>();
     private boolean encrypted = false;
     private transient boolean persisted = false;
+    private transient byte[] persistedDigest;
 
     public MapContent() {
 
@@ -39,6 +45,23 @@ public class MapContent {
         this.content = map;
     }
 
+    /**
+     * Returns a copy of the map that only duplicates its entries once either the copy or this map is
+     * modified. Returns null if the content is not a map.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> copyMap() {
+        if (content instanceof CopyOnWriteMap) {
+            return ((CopyOnWriteMap<String, Object>) content).copy();
+        } else if (content instanceof Map) {
+            CopyOnWriteMap<String, Object> map = new CopyOnWriteMap<String, Object>((Map<String, Object>) content);
+            content = map;
+            return map.copy();
+        }
+
+        return null;
+    }
+
     public Object getContent() {
         return content;
     }
@@ -62,4 +85,21 @@ public class MapContent {
     public void setPersisted(boolean persisted) {
         this.persisted = persisted;
     }
+
+    /**
+     * Returns true if the given serialized content differs from what was last written to or read
+     * from the database. Content that has not been recorded with {@link #setPersistedContent} is
+     * always considered changed.
+     */
+    public boolean isChanged(String serializedContent) {
+        return persistedDigest == null || serializedContent == null || !Arrays.equals(persistedDigest, DigestUtils.md5(serializedContent));
+    }
+
+    /**
+     * Records the serialized content that is currently stored in the database, or null if nothing
+     * is stored.
+     */
+    public void setPersistedContent(String serializedContent) {
+        persistedDigest = serializedContent == null ? null : DigestUtils.md5(serializedContent);
+    }
 }
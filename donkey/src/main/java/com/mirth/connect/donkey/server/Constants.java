@@ -48,6 +48,17 @@ public class Constants {
      */
     public static final int DEFAULT_QUEUE_BUFFER_SIZE = 1000;
 
+    /**
+     * The number of message IDs to reserve from the database at once for each channel. Blocks are
+     * opt-in, because the unused IDs of a block are skipped when the channel is undeployed.
+     */
+    public static final int DEFAULT_MESSAGE_ID_BLOCK_SIZE = 1;
+
+    /**
+     * Interval in milliseconds between writing channel statistics to the database
+     */
+    public static final int DEFAULT_STATISTICS_FLUSH_INTERVAL = 1000;
+
     /**
      * The charset to use when converting attachment Strings to byte arrays for storage in the
      * database and reattaching them.
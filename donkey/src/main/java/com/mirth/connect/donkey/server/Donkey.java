@@ -28,6 +28,7 @@ import com.mirth.connect.donkey.server.channel.DestinationChain;
 import com.mirth.connect.donkey.server.channel.DestinationConnector;
 import com.mirth.connect.donkey.server.controllers.ChannelController;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+import com.mirth.connect.donkey.server.data.StatisticsFlusher;
 import com.mirth.connect.donkey.server.data.jdbc.DBCPConnectionPool;
 import com.mirth.connect.donkey.server.data.jdbc.JdbcDao;
 import com.mirth.connect.donkey.server.data.jdbc.JdbcDaoFactory;
@@ -57,6 +58,7 @@ public class Donkey {
     private Map<String, Channel> deployedChannels = new ConcurrentHashMap<String, Channel>();
     private DonkeyConfiguration donkeyConfiguration;
     private DonkeyDaoFactory daoFactory;
+    private StatisticsFlusher statisticsFlusher;
     private Serializer serializer = new XStreamSerializer();
     private Encryptor encryptor;
     private EventDispatcher eventDispatcher;
@@ -75,6 +77,10 @@ public class Donkey {
 
         eventDispatcher = donkeyConfiguration.getEventDispatcher();
 
+        if (statisticsFlusher != null) {
+            statisticsFlusher.start();
+        }
+
         running = true;
     }
 
@@ -105,6 +111,8 @@ public class Donkey {
         jdbcDaoFactory.setStatsServerId(donkeyConfiguration.getServerId());
         jdbcDaoFactory.setConnectionPool(new DBCPConnectionPool(url, username, password, maxConnections));
         jdbcDaoFactory.setSerializer(serializer);
+        jdbcDaoFactory.setPartitionSize(donkeyConfiguration.getPartitionSize());
+        jdbcDaoFactory.setBinaryMaps(donkeyConfiguration.isBinaryMaps());
 
         XmlQuerySource xmlQuerySource = new XmlQuerySource();
 
@@ -117,6 +125,14 @@ public class Donkey {
 
         jdbcDaoFactory.setQuerySource(xmlQuerySource);
 
+        if (donkeyConfiguration.getStatisticsFlushInterval() > 0) {
+            statisticsFlusher = new StatisticsFlusher(jdbcDaoFactory, donkeyConfiguration.getStatisticsFlushInterval());
+        } else {
+            statisticsFlusher = null;
+        }
+
+        jdbcDaoFactory.setStatisticsFlusher(statisticsFlusher);
+
         JdbcDao dao = jdbcDaoFactory.getDao();
 
         try {
@@ -138,7 +154,25 @@ public class Donkey {
         this.daoFactory = daoFactory;
     }
 
+    /**
+     * Returns the flusher that writes channel statistics to the database in the background, or
+     * null if statistics are written as part of each message transaction.
+     */
+    public StatisticsFlusher getStatisticsFlusher() {
+        return statisticsFlusher;
+    }
+
     public void stopEngine() {
+        if (statisticsFlusher != null) {
+            try {
+                statisticsFlusher.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Failed to write channel statistics while stopping the engine.", e);
+            }
+        }
+
         running = false;
     }
 
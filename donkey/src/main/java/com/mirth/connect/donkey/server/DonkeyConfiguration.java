@@ -19,6 +19,9 @@ public class DonkeyConfiguration {
     private Encryptor encryptor;
     private EventDispatcher eventDispatcher;
     private String serverId;
+    private int statisticsFlushInterval;
+    private long partitionSize;
+    private boolean binaryMaps;
 
     public DonkeyConfiguration(String appData, Properties databaseProperties, Encryptor encryptor, EventDispatcher eventDispatcher, String serverId) {
         this.appData = appData;
@@ -67,4 +70,40 @@ public class DonkeyConfiguration {
     public void setServerId(String serverId) {
         this.serverId = serverId;
     }
+
+    public int getStatisticsFlushInterval() {
+        return statisticsFlushInterval;
+    }
+
+    /**
+     * The interval in milliseconds between writing statistics to the database. If 0, statistics
+     * are written as part of each message transaction.
+     */
+    public void setStatisticsFlushInterval(int statisticsFlushInterval) {
+        this.statisticsFlushInterval = statisticsFlushInterval;
+    }
+
+    public long getPartitionSize() {
+        return partitionSize;
+    }
+
+    /**
+     * The number of message IDs in each partition of the message tables of new channels. If 0,
+     * message tables are not partitioned. Only supported on PostgreSQL and SQL Server.
+     */
+    public void setPartitionSize(long partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    public boolean isBinaryMaps() {
+        return binaryMaps;
+    }
+
+    /**
+     * If true, connector, channel and response maps are stored in a compact binary format instead
+     * of XML. Map content stored this way can't be matched by content searches.
+     */
+    public void setBinaryMaps(boolean binaryMaps) {
+        this.binaryMaps = binaryMaps;
+    }
 }
@@ -28,7 +28,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -63,6 +62,7 @@ import com.mirth.connect.donkey.server.Startable;
 import com.mirth.connect.donkey.server.StopException;
 import com.mirth.connect.donkey.server.Stoppable;
 import com.mirth.connect.donkey.server.UndeployException;
+import com.mirth.connect.donkey.server.channel.components.Partitioner;
 import com.mirth.connect.donkey.server.channel.components.PostProcessor;
 import com.mirth.connect.donkey.server.channel.components.PreProcessor;
 import com.mirth.connect.donkey.server.controllers.ChannelController;
@@ -102,6 +102,11 @@ public class Channel implements Startable, Stoppable, Runnable {
     private FilterTransformerExecutor sourceFilterTransformerExecutor;
     private PreProcessor preProcessor;
     private PostProcessor postProcessor;
+    private Partitioner partitioner;
+    private int processingThreads = 1;
+    private int messageIdBlockSize = 1;
+    private boolean recoverConcurrently = false;
+    private volatile MessageIdAllocator messageIdAllocator;
     private List<DestinationChain> destinationChains = new ArrayList<DestinationChain>();
     private ResponseSelector responseSelector;
 
@@ -109,14 +114,17 @@ public class Channel implements Startable, Stoppable, Runnable {
     private ExecutorService controlExecutor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
     // A cached thread pool executor that executes recovery tasks and destination chain tasks
     private ExecutorService channelExecutor;
-    private Thread queueThread;
+    private volatile Thread queueThread;
+    private Future<?> recoveryTask;
     private Set<Thread> dispatchThreads = new HashSet<Thread>();
     private boolean shuttingDown = false;
     private Set<Future<?>> controlTasks = new LinkedHashSet<Future<?>>();
     private Set<Thread> haltThreads = new LinkedHashSet<Thread>();
 
     private boolean stopSourceQueue = false;
-    private Semaphore processLock;
+    private PartitionedProcessLock processLock;
+    // The processing lane that the current thread is working on behalf of
+    private ThreadLocal<Integer> currentProcessLane = new ThreadLocal<Integer>();
     private ChannelLock lock = ChannelLock.UNLOCKED;
 
     private MessageController messageController = MessageController.getInstance();
@@ -279,6 +287,63 @@ public class Channel implements Startable, Stoppable, Runnable {
         this.postProcessor = postProcessor;
     }
 
+    public Partitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public void setPartitioner(Partitioner partitioner) {
+        this.partitioner = partitioner;
+    }
+
+    public int getProcessingThreads() {
+        return processingThreads;
+    }
+
+    /**
+     * Set the number of lanes that source messages may be processed on concurrently. Messages are
+     * assigned to a lane by the key returned from the partitioner, so ordering is still preserved
+     * between messages with the same key. A value of 1 processes every message serially.
+     */
+    public void setProcessingThreads(int processingThreads) {
+        this.processingThreads = Math.max(processingThreads, 1);
+    }
+
+    public int getMessageIdBlockSize() {
+        return messageIdBlockSize;
+    }
+
+    /**
+     * Set the number of message IDs to reserve from the database at once. A value of 1 retrieves a
+     * new ID from the database for every message.
+     */
+    public void setMessageIdBlockSize(int messageIdBlockSize) {
+        this.messageIdBlockSize = Math.max(messageIdBlockSize, 1);
+    }
+
+    public boolean isRecoverConcurrently() {
+        return recoverConcurrently;
+    }
+
+    /**
+     * Set whether startup recovery runs in the background while the source connector accepts new
+     * messages. This shortens the time to start a channel with a large recovery backlog, but
+     * recovered messages may then be delivered after messages received since the start. Recovery
+     * only covers the messages received before the start, and the source queue is not processed
+     * until recovery finishes.
+     */
+    public void setRecoverConcurrently(boolean recoverConcurrently) {
+        this.recoverConcurrently = recoverConcurrently;
+    }
+
+    /**
+     * Returns the processing lane that the current thread is working on behalf of, or 0 if the
+     * thread is not processing a dispatched message.
+     */
+    public int getCurrentProcessLane() {
+        Integer lane = currentProcessLane.get();
+        return lane == null ? 0 : lane;
+    }
+
     public void addDestinationChain(DestinationChain chain) {
         destinationChains.add(chain);
         chain.setChainId(destinationChains.size());
@@ -701,6 +766,8 @@ public class Channel implements Startable, Stoppable, Runnable {
     }
 
     private void stop(List<Integer> metaDataIds) throws StopException, InterruptedException {
+        waitForRecovery();
+
         stopSourceQueue = true;
         Throwable firstCause = null;
 
@@ -772,6 +839,7 @@ public class Channel implements Startable, Stoppable, Runnable {
         stopSourceQueue = true;
 
         channelExecutor.shutdownNow();
+        recoveryTask = null;
 
         if (queueThread != null) {
             queueThread.interrupt();
@@ -914,6 +982,7 @@ public class Channel implements Startable, Stoppable, Runnable {
 
         Thread currentThread = Thread.currentThread();
         boolean lockAcquired = false;
+        int processLane = 0;
         Long persistedMessageId = null;
 
         try {
@@ -933,8 +1002,10 @@ public class Channel implements Startable, Stoppable, Runnable {
             DispatchResult dispatchResult = null;
 
             try {
-                obtainProcessLock();
+                processLane = getProcessLane(rawMessage);
+                obtainProcessLock(processLane);
                 lockAcquired = true;
+                currentProcessLane.set(processLane);
 
                 /*
                  * TRANSACTION: Create Raw Message
@@ -962,11 +1033,15 @@ public class Channel implements Startable, Stoppable, Runnable {
                     }
                 } else {
                     // Block other threads from adding to the source queue until both the current commit and queue addition finishes
-                    synchronized (sourceQueue) {
+                    sourceQueue.lock();
+
+                    try {
                         dao.commit(storageSettings.isRawDurable());
                         persistedMessageId = sourceMessage.getMessageId();
                         dao.close();
                         queue(sourceMessage);
+                    } finally {
+                        sourceQueue.unlock();
                     }
 
                     markDeletedQueuedMessages(rawMessage, persistedMessageId);
@@ -982,10 +1057,12 @@ public class Channel implements Startable, Stoppable, Runnable {
                 if (lockAcquired && (!sourceConnector.isRespondAfterProcessing() || persistedMessageId == null || Thread.currentThread().isInterrupted())) {
                     // Release the process lock if an exception was thrown before a message was persisted
                     // or if the thread was interrupted because no additional processing will be done.
-                    releaseProcessLock();
+                    releaseProcessLock(processLane);
                     lockAcquired = false;
                 }
 
+                currentProcessLane.remove();
+
                 if (dao != null && !dao.isClosed()) {
                     dao.close();
                 }
@@ -993,6 +1070,7 @@ public class Channel implements Startable, Stoppable, Runnable {
                 // Create the DispatchResult at the very end because lockAcquired might have changed
                 if (persistedMessageId != null) {
                     dispatchResult = new DispatchResult(persistedMessageId, processedMessage, response, sourceConnector.isRespondAfterProcessing(), removeContent, removeAttachments, lockAcquired);
+                    dispatchResult.setProcessLane(processLane);
                 }
             }
 
@@ -1026,7 +1104,9 @@ public class Channel implements Startable, Stoppable, Runnable {
                 throw channelException;
             }
 
-            return new DispatchResult(persistedMessageId, null, null, false, false, false, lockAcquired, channelException);
+            DispatchResult dispatchResult = new DispatchResult(persistedMessageId, null, null, false, false, false, lockAcquired, channelException);
+            dispatchResult.setProcessLane(processLane);
+            return dispatchResult;
         } finally {
             synchronized (dispatchThreads) {
                 dispatchThreads.remove(currentThread);
@@ -1085,7 +1165,7 @@ public class Channel implements Startable, Stoppable, Runnable {
             dao.resetMessage(channelId, messageId);
             receivedDate = Calendar.getInstance();
         } else {
-            messageId = dao.getNextMessageId(channelId);
+            messageId = getNextMessageId(dao);
             receivedDate = Calendar.getInstance();
 
             Message message = new Message();
@@ -1114,27 +1194,30 @@ public class Channel implements Startable, Stoppable, Runnable {
             ThreadUtils.checkInterruptedStatus();
 
             try {
-                if (rawMessage.isBinary()) {
-                    attachmentHandler.initialize(rawMessage.getRawBytes(), this);
-                } else {
-                    attachmentHandler.initialize(rawMessage.getRawData(), this);
-                }
+                // The attachment handler keeps state for the current message, so it can't be shared across processing lanes
+                synchronized (attachmentHandler) {
+                    if (rawMessage.isBinary()) {
+                        attachmentHandler.initialize(rawMessage.getRawBytes(), this);
+                    } else {
+                        attachmentHandler.initialize(rawMessage.getRawData(), this);
+                    }
 
-                // Free up the memory of the raw message since it is no longer being used
-                rawMessage.clearMessage();
+                    // Free up the memory of the raw message since it is no longer being used
+                    rawMessage.clearMessage();
 
-                Attachment attachment;
-                while ((attachment = attachmentHandler.nextAttachment()) != null) {
-                    ThreadUtils.checkInterruptedStatus();
+                    Attachment attachment;
+                    while ((attachment = attachmentHandler.nextAttachment()) != null) {
+                        ThreadUtils.checkInterruptedStatus();
 
-                    if (storageSettings.isStoreAttachments()) {
-                        dao.insertMessageAttachment(channelId, messageId, attachment);
+                        if (storageSettings.isStoreAttachments()) {
+                            dao.insertMessageAttachment(channelId, messageId, attachment);
+                        }
                     }
-                }
 
-                String replacedMessage = attachmentHandler.shutdown();
+                    String replacedMessage = attachmentHandler.shutdown();
 
-                sourceMessage.getRaw().setContent(replacedMessage);
+                    sourceMessage.getRaw().setContent(replacedMessage);
+                }
             } catch (AttachmentException e) {
                 eventDispatcher.dispatchEvent(new ErrorEvent(channelId, null, ErrorEventType.ATTACHMENT_HANDLER, null, null, "Error processing attachments for channel " + channelId + ".", e));
                 logger.error("Error processing attachments for channel " + channelId + ".", e);
@@ -1145,9 +1228,9 @@ public class Channel implements Startable, Stoppable, Runnable {
                 ThreadUtils.checkInterruptedStatus();
 
                 try {
-                    byte[] rawBytes = Base64Util.encodeBase64(rawMessage.getRawBytes());
+                    String rawContent = Base64Util.encodeBase64String(rawMessage.getRawBytes());
                     rawMessage.clearMessage();
-                    sourceMessage.getRaw().setContent(org.apache.commons.codec.binary.StringUtils.newStringUsAscii(rawBytes));
+                    sourceMessage.getRaw().setContent(rawContent);
                 } catch (IOException e) {
                     logger.error("Error processing binary data for channel " + channelId + ".", e);
                     throw new ChannelException(false, e);
@@ -1176,12 +1259,41 @@ public class Channel implements Startable, Stoppable, Runnable {
         return sourceMessage;
     }
 
+    /**
+     * Determine which processing lane a raw message should be processed on. If the partitioner
+     * fails, the message falls back to the first lane so that it is still processed.
+     */
+    private int getProcessLane(RawMessage rawMessage) throws InterruptedException {
+        if (partitioner == null || processLock.getLaneCount() == 1) {
+            return 0;
+        }
+
+        try {
+            return processLock.getLane(partitioner.getPartitionKey(rawMessage));
+        } catch (DonkeyException e) {
+            logger.warn("Error getting the partition key for a message in channel " + name + " (" + channelId + "), processing it on the first lane.", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Obtain every processing lane, blocking until all messages currently being processed have
+     * finished.
+     */
     public void obtainProcessLock() throws InterruptedException {
-        processLock.acquire();
+        processLock.acquireAll();
     }
 
     public void releaseProcessLock() {
-        processLock.release();
+        processLock.releaseAll();
+    }
+
+    public void obtainProcessLock(int lane) throws InterruptedException {
+        processLock.acquire(lane);
+    }
+
+    public void releaseProcessLock(int lane) {
+        processLock.release(lane);
     }
 
     /**
@@ -1339,6 +1451,7 @@ public class Channel implements Startable, Stoppable, Runnable {
 
             // create a message for each destination chain
             Map<Integer, ConnectorMessage> destinationMessages = new HashMap<Integer, ConnectorMessage>();
+            Map<DestinationChain, List<Integer>> chainEnabledMetaDataIds = new HashMap<DestinationChain, List<Integer>>();
             MessageContent sourceEncoded = sourceMessage.getEncoded();
 
             // get the list of destination meta data ids to send to
@@ -1351,22 +1464,29 @@ public class Channel implements Startable, Stoppable, Runnable {
             }
 
             for (DestinationChain chain : destinationChains) {
+                /*
+                 * The enabled metadata ids are kept per message rather than on the chain itself,
+                 * because messages on different processing lanes may be going through the same
+                 * chain at the same time.
+                 */
+                List<Integer> enabledMetaDataIds = chain.getMetaDataIds();
+
                 // The order of the enabledMetaDataId list needs to be based on the chain order.
                 // We do not use ListUtils here because there is no official guarantee of order.
                 if (metaDataIds != null) {
-                    List<Integer> enabledMetaDataIds = new ArrayList<Integer>();
+                    enabledMetaDataIds = new ArrayList<Integer>();
                     for (Integer id : chain.getMetaDataIds()) {
                         if (metaDataIds.contains(id)) {
                             enabledMetaDataIds.add(id);
                         }
                     }
-                    chain.setEnabledMetaDataIds(enabledMetaDataIds);
                 }
 
                 // if any destinations in this chain are enabled, create messages for them
-                if (!chain.getEnabledMetaDataIds().isEmpty()) {
+                if (!enabledMetaDataIds.isEmpty()) {
                     ThreadUtils.checkInterruptedStatus();
-                    Integer metaDataId = chain.getEnabledMetaDataIds().get(0);
+                    Integer metaDataId = enabledMetaDataIds.get(0);
+                    chainEnabledMetaDataIds.put(chain, enabledMetaDataIds);
 
                     DestinationConnector destinationConnector = chain.getDestinationConnectors().get(metaDataId);
 
@@ -1381,8 +1501,8 @@ public class Channel implements Startable, Stoppable, Runnable {
 
                     // We don't create a new map here because the source map is read-only and thus won't ever be changed
                     message.setSourceMap(sourceMessage.getSourceMap());
-                    message.setChannelMap(new HashMap<String, Object>(sourceMessage.getChannelMap()));
-                    message.setResponseMap(new HashMap<String, Object>(sourceMessage.getResponseMap()));
+                    message.setChannelMap(sourceMessage.getChannelMapContent().copyMap());
+                    message.setResponseMap(sourceMessage.getResponseMapContent().copyMap());
                     message.setRaw(raw);
 
                     // store the new message, but we don't need to store the content because we will reference the source's encoded content
@@ -1400,11 +1520,12 @@ public class Channel implements Startable, Stoppable, Runnable {
              * Construct a list of only the enabled destination chains. This is done because we
              * don't know beforehand which destination chain will be the "last" one.
              */
-            List<DestinationChain> enabledChains = new ArrayList<DestinationChain>();
+            List<DestinationChainTask> enabledChains = new ArrayList<DestinationChainTask>();
             for (DestinationChain chain : destinationChains) {
-                if (!chain.getEnabledMetaDataIds().isEmpty()) {
-                    chain.setMessage(destinationMessages.get(chain.getEnabledMetaDataIds().get(0)));
-                    enabledChains.add(chain);
+                List<Integer> enabledMetaDataIds = chainEnabledMetaDataIds.get(chain);
+
+                if (enabledMetaDataIds != null) {
+                    enabledChains.add(new DestinationChainTask(chain, destinationMessages.get(enabledMetaDataIds.get(0)), enabledMetaDataIds, getCurrentProcessLane()));
                 }
             }
 
@@ -1446,14 +1567,6 @@ public class Channel implements Startable, Stoppable, Runnable {
                 }
             }
 
-            // re-enable all destination connectors in each chain
-            if (metaDataIds != null) {
-                for (DestinationChain chain : destinationChains) {
-                    chain.getEnabledMetaDataIds().clear();
-                    chain.getEnabledMetaDataIds().addAll(chain.getMetaDataIds());
-                }
-            }
-
             finishMessage(finalMessage, markAsProcessed);
             return finalMessage;
         } finally {
@@ -1507,7 +1620,67 @@ public class Channel implements Startable, Stoppable, Runnable {
      * Process all unfinished messages found in storage
      */
     protected void processUnfinishedMessages() throws Exception {
-        channelExecutor.submit(new RecoveryTask(this)).get();
+        processUnfinishedMessages(getMaxMessageId());
+    }
+
+    /**
+     * Process the unfinished messages found in storage with IDs up to maxMessageId
+     */
+    protected void processUnfinishedMessages(long maxMessageId) throws Exception {
+        Future<Void> future = channelExecutor.submit(new RecoveryTask(this, maxMessageId));
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    private long getMaxMessageId() {
+        DonkeyDao dao = daoFactory.getDao();
+
+        try {
+            return dao.getMaxMessageId(channelId);
+        } finally {
+            dao.close();
+        }
+    }
+
+    private void recoverUnfinishedMessages(long maxMessageId) {
+        try {
+            processUnfinishedMessages(maxMessageId);
+        } catch (InterruptedException e) {
+            logger.error("Startup recovery interrupted for channel " + name + "(" + channelId + ")", e);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Throwable cause;
+            if (e instanceof ExecutionException) {
+                cause = e.getCause();
+            } else {
+                cause = e;
+            }
+
+            logger.error("Startup recovery failed for channel " + name + "(" + channelId + "): " + cause.getMessage(), cause);
+        }
+    }
+
+    /*
+     * Wait for a background recovery task to finish, so that a stop recovers the same messages that
+     * a blocking start would have. Halting the channel is what cancels recovery early.
+     */
+    private void waitForRecovery() throws InterruptedException {
+        if (recoveryTask != null) {
+            try {
+                recoveryTask.get();
+            } catch (ExecutionException e) {
+                // Failures are already logged by the task itself
+            } catch (CancellationException e) {
+                // The task was cancelled by a halt
+            }
+
+            recoveryTask = null;
+        }
     }
 
     @Override
@@ -1522,10 +1695,28 @@ public class Channel implements Startable, Stoppable, Runnable {
     }
 
     public void processSourceQueue(int timeout) throws InterruptedException {
+        processSourceQueue(timeout, Long.MAX_VALUE);
+    }
+
+    /**
+     * Process messages from the source queue until it is empty or a message after maxMessageId is
+     * reached. The queue is in message ID order, so the messages left after that one are all newer.
+     */
+    public void processSourceQueue(int timeout, long maxMessageId) throws InterruptedException {
         ThreadUtils.checkInterruptedStatus();
         ConnectorMessage sourceMessage = sourceQueue.poll(timeout, TimeUnit.MILLISECONDS);
 
         while (sourceMessage != null && !stopSourceQueue) {
+            if (sourceMessage.getMessageId() > maxMessageId) {
+                /*
+                 * This is only reached by recovery when the source queue is disabled, in which case
+                 * the message is still being processed by the thread that received it. The queue
+                 * is invalidated so its size is read from the database again.
+                 */
+                sourceQueue.invalidate(false, false);
+                break;
+            }
+
             try {
                 process(sourceMessage, true);
             } catch (RuntimeException e) {
@@ -1620,6 +1811,17 @@ public class Channel implements Startable, Stoppable, Runnable {
         }
     }
 
+    private long getNextMessageId(DonkeyDao dao) {
+        MessageIdAllocator allocator = messageIdAllocator;
+
+        // The allocator is created when the channel is deployed
+        if (allocator == null) {
+            return dao.getNextMessageId(channelId);
+        }
+
+        return allocator.getNextMessageId(dao);
+    }
+
     public void importMessage(Message message, DonkeyDao dao) throws DonkeyException {
         if (message.getImportId() == null) {
             message.setImportId(message.getMessageId());
@@ -1629,7 +1831,7 @@ public class Channel implements Startable, Stoppable, Runnable {
             message.setImportChannelId(message.getChannelId());
         }
 
-        long messageId = dao.getNextMessageId(channelId);
+        long messageId = getNextMessageId(dao);
         message.setMessageId(messageId);
         message.setChannelId(channelId);
         message.setServerId(serverId);
@@ -1703,6 +1905,40 @@ public class Channel implements Startable, Stoppable, Runnable {
         }
     }
 
+    /**
+     * Runs a message through a destination chain on behalf of a processing lane.
+     */
+    private class DestinationChainTask implements Callable<List<ConnectorMessage>> {
+
+        private DestinationChain chain;
+        private ConnectorMessage message;
+        private List<Integer> enabledMetaDataIds;
+        private int processLane;
+
+        public DestinationChainTask(DestinationChain chain, ConnectorMessage message, List<Integer> enabledMetaDataIds, int processLane) {
+            this.chain = chain;
+            this.message = message;
+            this.enabledMetaDataIds = enabledMetaDataIds;
+            this.processLane = processLane;
+        }
+
+        @Override
+        public List<ConnectorMessage> call() throws InterruptedException {
+            Integer previousLane = currentProcessLane.get();
+            currentProcessLane.set(processLane);
+
+            try {
+                return chain.call(message, enabledMetaDataIds);
+            } finally {
+                if (previousLane == null) {
+                    currentProcessLane.remove();
+                } else {
+                    currentProcessLane.set(previousLane);
+                }
+            }
+        }
+    }
+
     private class DeployTask implements Callable<Void> {
 
         @Override
@@ -1741,6 +1977,8 @@ public class Channel implements Startable, Stoppable, Runnable {
                     responseSelector = new ResponseSelector(sourceConnector.getInboundDataType());
                 }
 
+                messageIdAllocator = new MessageIdAllocator(channelId, messageIdBlockSize, daoFactory);
+
                 // set the source queue data source
                 sourceQueue.setDataSource(new ConnectorMessageQueueDataSource(channelId, serverId, 0, Status.RECEIVED, false, daoFactory));
 
@@ -1855,6 +2093,9 @@ public class Channel implements Startable, Stoppable, Runnable {
                 }
             }
 
+            // Any message IDs left in the current block are skipped
+            messageIdAllocator = null;
+
             if (firstCause != null) {
                 throw new UndeployException("Failed to undeploy channel " + name + " (" + channelId + "): One or more connectors failed to undeploy.", firstCause);
             }
@@ -1863,6 +2104,14 @@ public class Channel implements Startable, Stoppable, Runnable {
         }
     }
 
+    // start up the worker thread that will process queued messages
+    private void startQueueThread() {
+        if (!sourceConnector.isRespondAfterProcessing()) {
+            queueThread = new Thread(Channel.this);
+            queueThread.start();
+        }
+    }
+
     private class StartTask implements Callable<Void> {
 
         private Set<Integer> connectorsToStart;
@@ -1882,7 +2131,7 @@ public class Channel implements Startable, Stoppable, Runnable {
                      * We can't guarantee the state of the semaphore when the channel was stopped /
                      * halted, so we just create a new one instead.
                      */
-                    processLock = new Semaphore(1, true);
+                    processLock = new PartitionedProcessLock(processingThreads);
                     dispatchThreads.clear();
                     shuttingDown = false;
                     stopSourceQueue = false;
@@ -1913,27 +2162,33 @@ public class Channel implements Startable, Stoppable, Runnable {
                         }
 
                         ThreadUtils.checkInterruptedStatus();
-                        try {
-                            processUnfinishedMessages();
-                        } catch (InterruptedException e) {
-                            logger.error("Startup recovery interrupted for channel " + name + "(" + channelId + ")", e);
-                            Thread.currentThread().interrupt();
-                        } catch (Exception e) {
-                            Throwable cause;
-                            if (e instanceof ExecutionException) {
-                                cause = e.getCause();
-                            } else {
-                                cause = e;
-                            }
-
-                            logger.error("Startup recovery failed for channel " + name + "(" + channelId + "): " + cause.getMessage(), cause);
-                        }
+                        /*
+                         * Messages received once the source connector starts get higher IDs than
+                         * this, so recovery running alongside the source won't process them too.
+                         */
+                        final long recoveryMaxMessageId = getMaxMessageId();
+                        queueThread = null;
+
+                        if (recoverConcurrently) {
+                            recoveryTask = channelExecutor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    recoverUnfinishedMessages(recoveryMaxMessageId);
+
+                                    /*
+                                     * The queue thread would otherwise process queued messages
+                                     * that recovery is also looking at.
+                                     */
+                                    if (!Thread.currentThread().isInterrupted() && !stopSourceQueue) {
+                                        startQueueThread();
+                                    }
+                                }
+                            });
+                        } else {
+                            recoverUnfinishedMessages(recoveryMaxMessageId);
 
-                        ThreadUtils.checkInterruptedStatus();
-                        // start up the worker thread that will process queued messages
-                        if (!sourceConnector.isRespondAfterProcessing()) {
-                            queueThread = new Thread(Channel.this);
-                            queueThread.start();
+                            ThreadUtils.checkInterruptedStatus();
+                            startQueueThread();
                         }
 
                         if (connectorsToStart == null || connectorsToStart.contains(0)) {
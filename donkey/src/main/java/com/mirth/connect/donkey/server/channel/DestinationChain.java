@@ -33,6 +33,7 @@ import com.mirth.connect.donkey.server.Donkey;
 import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
 import com.mirth.connect.donkey.server.event.ErrorEvent;
+import com.mirth.connect.donkey.server.queue.ConnectorMessageQueue;
 import com.mirth.connect.donkey.util.ThreadUtils;
 
 public class DestinationChain implements Callable<List<ConnectorMessage>> {
@@ -130,8 +131,16 @@ public class DestinationChain implements Callable<List<ConnectorMessage>> {
 
     @Override
     public List<ConnectorMessage> call() throws InterruptedException {
+        return call(message, enabledMetaDataIds);
+    }
+
+    /**
+     * Process a message through the chain, starting at the destination the message belongs to and
+     * continuing through the given enabled destinations. Since no state is kept on the chain
+     * itself, multiple messages may be processed through the same chain concurrently.
+     */
+    public List<ConnectorMessage> call(ConnectorMessage message, List<Integer> enabledMetaDataIds) throws InterruptedException {
         List<ConnectorMessage> messages = new ArrayList<ConnectorMessage>();
-        ConnectorMessage message = this.message;
         int startMetaDataId = enabledMetaDataIds.indexOf(message.getMetaDataId());
         boolean stopChain = false;
 
@@ -274,8 +283,8 @@ public class DestinationChain implements Callable<List<ConnectorMessage>> {
 
                     // We don't create a new map here because the source map is read-only and thus won't ever be changed
                     nextMessage.setSourceMap(message.getSourceMap());
-                    nextMessage.setChannelMap(new HashMap<String, Object>(message.getChannelMap()));
-                    nextMessage.setResponseMap(new HashMap<String, Object>(message.getResponseMap()));
+                    nextMessage.setChannelMap(message.getChannelMapContent().copyMap());
+                    nextMessage.setResponseMap(message.getResponseMapContent().copyMap());
                     nextMessage.setRaw(new MessageContent(message.getChannelId(), message.getMessageId(), nextMetaDataId, ContentType.RAW, message.getRaw().getContent(), nextDestinationConnector.getInboundDataType().getType(), message.getRaw().isEncrypted()));
 
                     ThreadUtils.checkInterruptedStatus();
@@ -289,12 +298,17 @@ public class DestinationChain implements Callable<List<ConnectorMessage>> {
                 } else {
                     // Block other threads from reading from or modifying the destination queue until both the current commit and queue addition finishes
                     // Otherwise the same message could be sent multiple times.
-                    synchronized (destinationConnector.getQueue()) {
+                    ConnectorMessageQueue queue = destinationConnector.getQueue();
+                    queue.lock();
+
+                    try {
                         dao.commit(storageSettings.isDurable());
 
                         if (message.getStatus() == Status.QUEUED) {
-                            destinationConnector.getQueue().add(message);
+                            queue.add(message);
                         }
+                    } finally {
+                        queue.unlock();
                     }
                 }
 
@@ -77,12 +77,17 @@ public abstract class DestinationConnector extends Connector implements Runnable
     /**
      * Returns a unique id that the dispatcher can use for thread safety. If queuing is disabled or
      * if there is only 1 queue thread, returns -1. If there are multiple queue threads, returns the
-     * thread's id if the current thread is a queue thread, otherwise it returns -1.
+     * thread's id if the current thread is a queue thread. Otherwise it returns -1, or if the
+     * channel processes messages on multiple lanes, a separate negative id for each lane.
      */
     public long getDispatcherId() {
         long threadId = Thread.currentThread().getId();
         if (queueThreads.size() <= 1 || !queueThreads.containsKey(threadId)) {
-            threadId = -1L;
+            if (channel != null && !queueThreads.containsKey(threadId)) {
+                threadId = -1L - channel.getCurrentProcessLane();
+            } else {
+                threadId = -1L;
+            }
         }
 
         return threadId;
@@ -557,9 +562,13 @@ public abstract class DestinationConnector extends Connector implements Runnable
                              * to access it in case the message is still in the database.
                              */
                             canAcquire = true;
-                            synchronized (queue) {
+                            queue.lock();
+
+                            try {
                                 queue.release(connectorMessage, true);
                                 queue.invalidate(true, false);
+                            } finally {
+                                queue.unlock();
                             }
                         } else if (connectorMessage.getStatus() != Status.QUEUED) {
                             canAcquire = true;
@@ -21,6 +21,7 @@ public class DispatchResult {
     private boolean removeContent;
     private boolean removeAttachments;
     private boolean lockAcquired;
+    private int processLane;
     private Response selectedResponse;
     private ChannelException channelException;
     private Calendar responseDate;
@@ -69,6 +70,14 @@ public class DispatchResult {
         this.lockAcquired = lockAcquired;
     }
 
+    public int getProcessLane() {
+        return processLane;
+    }
+
+    protected void setProcessLane(int processLane) {
+        this.processLane = processLane;
+    }
+
     public Response getSelectedResponse() {
         return selectedResponse;
     }
@@ -23,6 +23,7 @@ public class FilterTransformerExecutor {
     private DataType inbound;
     private DataType outbound;
     private FilterTransformer filterTransformer;
+    private boolean serializationSkipped = false;
 
     public FilterTransformerExecutor(DataType inbound, DataType outbound) {
         this.inbound = inbound;
@@ -53,6 +54,18 @@ public class FilterTransformerExecutor {
         this.filterTransformer = filterTransformer;
     }
 
+    /**
+     * Returns true if the filter/transformer doesn't use the serialized message, in which case the
+     * message is neither serialized before nor re-encoded after the filter/transformer is executed.
+     */
+    public boolean isSerializationSkipped() {
+        return serializationSkipped;
+    }
+
+    public void setSerializationSkipped(boolean serializationSkipped) {
+        this.serializationSkipped = serializationSkipped;
+    }
+
     /**
      * Takes a ConnectorMessage and runs any filtering or transforming logic
      * against it. Sets the transformed content and encoded content on
@@ -78,7 +91,19 @@ public class FilterTransformerExecutor {
         // Populate the connector map with metadata as necessary
         inbound.getSerializer().populateMetaData(content, connectorMessage.getConnectorMap());
 
-        if (filterTransformer != null) {
+        if (filterTransformer != null && serializationSkipped) {
+            // Execute the filter/transformer only for the filter result and any side effects of the scripts
+            FilterTransformerResult result = filterTransformer.doFilterTransform(connectorMessage);
+
+            if (result.isFiltered()) {
+                connectorMessage.setStatus(Status.FILTERED);
+                return;
+            }
+
+            ThreadUtils.checkInterruptedStatus();
+
+            encodedContent = getEncodedContentWithoutSerializing(content);
+        } else if (filterTransformer != null) {
             // Pre-transformation setup
             switch (inbound.getSerializationType()) {
                 case RAW:
@@ -120,27 +145,31 @@ public class FilterTransformerExecutor {
                     break;
             }
         } else {
-            /*
-             * Since this condition can only occur if the inbound and outbound datatypes are the
-             * same, it is safe to pass the outbound serializer to the inbound serializer
-             * so that it can compare/use the properties from both. The purpose of this method is to
-             * allow the optimization of not serializing, but still modifying the message in certain
-             * circumstances.
-             * It should NOT be used anywhere other than transformers.
-             */
-            String transformedContent = inbound.getSerializer().transformWithoutSerializing(content, outbound.getSerializer());
-            // transformWithoutSerializing should return null if it has no effect.
-            if (transformedContent == null) {
-                encodedContent = content;
-            } else {
-                encodedContent = transformedContent;
-            }
+            encodedContent = getEncodedContentWithoutSerializing(content);
         }
 
         connectorMessage.setEncoded(new MessageContent(connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.ENCODED, encodedContent, outbound.getType(), false));
         connectorMessage.setStatus(Status.TRANSFORMED);
     }
 
+    private String getEncodedContentWithoutSerializing(String content) throws DonkeyException {
+        /*
+         * Since this condition can only occur if the inbound and outbound datatypes are the
+         * same, it is safe to pass the outbound serializer to the inbound serializer
+         * so that it can compare/use the properties from both. The purpose of this method is to
+         * allow the optimization of not serializing, but still modifying the message in certain
+         * circumstances.
+         * It should NOT be used anywhere other than transformers.
+         */
+        String transformedContent = inbound.getSerializer().transformWithoutSerializing(content, outbound.getSerializer());
+        // transformWithoutSerializing should return null if it has no effect.
+        if (transformedContent == null) {
+            return content;
+        } else {
+            return transformedContent;
+        }
+    }
+
     private void setTransformedContent(ConnectorMessage connectorMessage, String transformedContent, SerializationType serializationType) {
         if (connectorMessage.getTransformed() == null) {
             connectorMessage.setTransformed(new MessageContent(connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.TRANSFORMED, transformedContent, serializationType.toString(), false));
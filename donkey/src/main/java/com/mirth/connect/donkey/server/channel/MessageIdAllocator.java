@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.server.channel;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.log4j.Logger;
+
+import com.mirth.connect.donkey.server.data.DonkeyDao;
+import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+
+/**
+ * Hands out message IDs for a channel from blocks that are reserved from the message sequence
+ * ahead of time, so that a new message doesn't require a round-trip to the database for its ID.
+ * Each block is reserved and committed in its own transaction, so an ID is never handed out twice,
+ * even after a restart or when multiple servers share the same database. Any IDs left over in the
+ * current block when the channel is undeployed are skipped.
+ * 
+ * If the channel's message tables are partitioned, the allocator also adds the next partition in
+ * the background once IDs from the last partition start being handed out, so there is always a
+ * partition ready for the IDs that follow.
+ */
+public class MessageIdAllocator {
+    private String channelId;
+    private int blockSize;
+    private DonkeyDaoFactory daoFactory;
+    private Deque<Long> reservedIds = new ArrayDeque<Long>();
+    private long partitionCheckId = 0;
+    private boolean partitionCheckRunning = false;
+    private Logger logger = Logger.getLogger(getClass());
+
+    public MessageIdAllocator(String channelId, int blockSize, DonkeyDaoFactory daoFactory) {
+        this.channelId = channelId;
+        this.blockSize = blockSize;
+        this.daoFactory = daoFactory;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the next message ID for the channel. If blocks aren't being used, the ID is retrieved
+     * with the given DAO, the same way as before block allocation was introduced.
+     */
+    public synchronized long getNextMessageId(DonkeyDao dao) {
+        long messageId;
+
+        if (blockSize <= 1) {
+            messageId = dao.getNextMessageId(channelId);
+        } else {
+            if (reservedIds.isEmpty()) {
+                reserveBlock();
+            }
+
+            messageId = reservedIds.removeFirst();
+        }
+
+        if (messageId >= partitionCheckId && !partitionCheckRunning) {
+            startPartitionCheck(messageId);
+        }
+
+        return messageId;
+    }
+
+    /*
+     * Adding a partition needs an exclusive lock on the message tables, so it is done in a separate
+     * thread that doesn't hold on to the caller's transaction.
+     */
+    private void startPartitionCheck(final long messageId) {
+        partitionCheckRunning = true;
+
+        Thread thread = new Thread("Message Partition Thread on " + channelId) {
+            @Override
+            public void run() {
+                long nextCheckId = messageId;
+                DonkeyDao dao = null;
+
+                try {
+                    dao = daoFactory.getDao();
+                    nextCheckId = dao.addMessagePartitions(channelId, messageId);
+                    dao.commit();
+                } catch (Exception e) {
+                    logger.warn("Failed to add message partitions for channel " + channelId + ", retrying with the next message.", e);
+                } finally {
+                    if (dao != null) {
+                        dao.close();
+                    }
+
+                    synchronized (MessageIdAllocator.this) {
+                        partitionCheckId = nextCheckId;
+                        partitionCheckRunning = false;
+                    }
+                }
+            }
+        };
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void reserveBlock() {
+        DonkeyDao dao = daoFactory.getDao();
+
+        try {
+            reservedIds.addAll(dao.getNextMessageIds(channelId, blockSize));
+            dao.commit();
+        } finally {
+            dao.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.server.channel;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A set of fair, single-permit locks ("lanes") that serialize message processing in a channel.
+ * Messages are mapped onto a lane by their partition key, so messages that share a key are
+ * processed in the order they were received while messages on different lanes may be processed
+ * concurrently. With a single lane this behaves exactly like a single fair semaphore.
+ */
+public class PartitionedProcessLock {
+    private Semaphore[] lanes;
+
+    public PartitionedProcessLock(int laneCount) {
+        lanes = new Semaphore[Math.max(laneCount, 1)];
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Semaphore(1, true);
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the lane that messages with the given partition key are processed on.
+     */
+    public int getLane(Object partitionKey) {
+        if (partitionKey == null || lanes.length == 1) {
+            return 0;
+        }
+
+        // Spread the high bits so that keys with similar hash codes don't all land on the same lane
+        int hash = partitionKey.hashCode();
+        hash ^= (hash >>> 16);
+
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    public void acquire(int lane) throws InterruptedException {
+        lanes[lane].acquire();
+    }
+
+    public void release(int lane) {
+        lanes[lane].release();
+    }
+
+    /**
+     * Acquires every lane in order. If the thread is interrupted, any lanes that were already
+     * acquired are released before the exception is thrown.
+     */
+    public void acquireAll() throws InterruptedException {
+        int acquired = 0;
+
+        try {
+            for (; acquired < lanes.length; acquired++) {
+                lanes[acquired].acquire();
+            }
+        } catch (InterruptedException e) {
+            for (int i = 0; i < acquired; i++) {
+                lanes[i].release();
+            }
+
+            throw e;
+        }
+    }
+
+    public void releaseAll() {
+        for (Semaphore lane : lanes) {
+            lane.release();
+        }
+    }
+}
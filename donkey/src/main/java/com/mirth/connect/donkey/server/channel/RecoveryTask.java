@@ -12,6 +12,7 @@ package com.mirth.connect.donkey.server.channel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -28,155 +29,204 @@ import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.util.ThreadUtils;
 
 public class RecoveryTask implements Callable<Void> {
+    /*
+     * The number of messages read from the database at a time. This is also the largest IN list
+     * Oracle allows, which bounds the per-page connector lookup.
+     */
+    private static final int BATCH_SIZE = 1000;
+
     private Channel channel;
+    private long maxMessageId;
     private Logger logger = Logger.getLogger(getClass());
 
-    public RecoveryTask(Channel channel) {
+    /**
+     * Only messages with IDs up to maxMessageId are recovered. Messages after that were received
+     * once the source connector started, and are still being processed by the threads that
+     * received them.
+     */
+    public RecoveryTask(Channel channel, long maxMessageId) {
         this.channel = channel;
+        this.maxMessageId = maxMessageId;
     }
 
     @Override
     public Void call() throws Exception {
-        ThreadUtils.checkInterruptedStatus();
-        DonkeyDao dao = channel.getDaoFactory().getDao();
         StorageSettings storageSettings = channel.getStorageSettings();
 
-        try {
-            // step 1: recover messages for each destination (RECEIVED or PENDING on destination)
+        // step 1: recover messages for each destination (RECEIVED or PENDING on destination)
+        if (storageSettings.isMessageRecoveryEnabled()) {
             for (DestinationChain chain : channel.getDestinationChains()) {
-                List<Integer> chainMetaDataIds = chain.getMetaDataIds();
-
-                for (int i = 0; i < chainMetaDataIds.size(); i++) {
-                    Integer metaDataId = chainMetaDataIds.get(i);
-
-                    if (storageSettings.isMessageRecoveryEnabled()) {
-                        ThreadUtils.checkInterruptedStatus();
-                        // Get connector messages for this server id that need to be recovered.
-                        List<ConnectorMessage> recoveredConnectorMessages = dao.getUnfinishedConnectorMessages(channel.getChannelId(), channel.getServerId(), metaDataId, Status.RECEIVED);
-                        ThreadUtils.checkInterruptedStatus();
-                        recoveredConnectorMessages.addAll(dao.getUnfinishedConnectorMessages(channel.getChannelId(), channel.getServerId(), metaDataId, Status.PENDING));
-
-                        for (ConnectorMessage recoveredConnectorMessage : recoveredConnectorMessages) {
-                            long messageId = recoveredConnectorMessage.getMessageId();
-
-                            try {
-                                // Get existing connector messages for this message regardless of server id, because we don't want to process that connector again regardless.
-                                List<ConnectorMessage> existingConnectorMessages = dao.getConnectorMessages(channel.getChannelId(), messageId, new HashSet<Integer>(chainMetaDataIds), false);
-                                Set<Integer> existingMetaDataIds = new HashSet<Integer>();
-                                for (ConnectorMessage connectorMessage : existingConnectorMessages) {
-                                    existingMetaDataIds.add(connectorMessage.getMetaDataId());
-                                }
-
-                                // get the list of destination meta data ids to send to
-                                List<Integer> channelMapMetaDataIds = null;
-
-                                if (recoveredConnectorMessage.getChannelMap().containsKey(Constants.DESTINATION_META_DATA_IDS_KEY)) {
-                                    channelMapMetaDataIds = (List<Integer>) recoveredConnectorMessage.getChannelMap().get(Constants.DESTINATION_META_DATA_IDS_KEY);
-                                } else if (recoveredConnectorMessage.getSourceMap().containsKey(Constants.DESTINATION_META_DATA_IDS_KEY)) {
-                                    channelMapMetaDataIds = (List<Integer>) recoveredConnectorMessage.getSourceMap().get(Constants.DESTINATION_META_DATA_IDS_KEY);
-                                }
-
-                                List<Integer> enabledMetaDataIds = new ArrayList<Integer>();
-
-                                // The order of the enabledMetaDataId list needs to be based on the chain order.
-                                // We do not use ListUtils here because there is no official guarantee of order.
-                                for (Integer id : chainMetaDataIds) {
-                                    if (CollectionUtils.isEmpty(channelMapMetaDataIds) || channelMapMetaDataIds.contains(id)) {
-                                        // Don't add the ID to the enabled list if it already exists in the database
-                                        // This doesn't apply to the current metadata ID, which will always be there
-                                        if (!existingMetaDataIds.contains(id) || id == metaDataId) {
-                                            enabledMetaDataIds.add(id);
-                                        }
-                                    }
-                                }
-
-                                if (!enabledMetaDataIds.contains(metaDataId)) {
-                                    enabledMetaDataIds.add(metaDataId);
-                                }
-
-                                chain.setEnabledMetaDataIds(enabledMetaDataIds);
-                                chain.setMessage(recoveredConnectorMessage);
-                                chain.call();
-                            } catch (InterruptedException e) {
-                                throw e;
-                            } catch (Exception e) {
-                                logger.error("Channel " + channel.getName() + "(" + channel.getChannelId() + ") failed to recover message ID " + messageId + ", connector ID " + metaDataId + ": " + e.getMessage());
-                            }
-                        }
-                    }
+                for (Integer metaDataId : chain.getMetaDataIds()) {
+                    recoverConnectorMessages(chain, metaDataId);
                 }
             }
+        }
+
+        // step 2: recover any messages that are not marked as processed and all connector messages are either FILTERED, TRANSFORMED, SENT, QUEUED, or ERROR.
+        long minMessageId = 0;
+        List<Message> unfinishedMessages;
 
+        do {
             ThreadUtils.checkInterruptedStatus();
+            DonkeyDao dao = channel.getDaoFactory().getDao();
 
-            // step 2: recover any messages that are not marked as processed and all connector messages are either FILTERED, TRANSFORMED, SENT, QUEUED, or ERROR.
-            List<Message> unfinishedMessages = dao.getUnfinishedMessages(channel.getChannelId(), channel.getServerId());
-            dao.close();
+            try {
+                unfinishedMessages = dao.getUnfinishedMessages(channel.getChannelId(), channel.getServerId(), minMessageId, maxMessageId, BATCH_SIZE);
+            } finally {
+                dao.close();
+            }
 
             for (Message message : unfinishedMessages) {
-                try {
-                    ConnectorMessage sourceMessage = message.getConnectorMessages().get(0);
-                    boolean finished = true;
+                recoverMessage(message);
+                minMessageId = message.getMessageId() + 1;
+            }
+        } while (unfinishedMessages.size() == BATCH_SIZE);
 
-                    // merge responses from all of the destinations into the source connector's response map
-                    for (ConnectorMessage connectorMessage : message.getConnectorMessages().values()) {
-                        Status status = connectorMessage.getStatus();
+        // step 3: If source queuing is disabled, recover messages for each source (RECEIVED) and flush out the source queue.
+        if (channel.getSourceConnector().isRespondAfterProcessing() && storageSettings.isMessageRecoveryEnabled()) {
+            channel.processSourceQueue(0, maxMessageId);
+        }
 
-                        if (status == Status.RECEIVED || status == Status.PENDING) {
-                            finished = false;
-                            break;
-                        }
+        return null;
+    }
 
-                        if (connectorMessage.getMetaDataId() != 0) {
-                            sourceMessage.getResponseMap().putAll(connectorMessage.getResponseMap());
-                        }
-                    }
+    /*
+     * Pages through the RECEIVED and PENDING connector messages for a single destination in message
+     * ID order. Recovered messages leave the unfinished set, but the next page still starts after
+     * the last message seen so that messages that fail to recover are not read again.
+     */
+    private void recoverConnectorMessages(DestinationChain chain, int metaDataId) throws InterruptedException {
+        List<Integer> chainMetaDataIds = chain.getMetaDataIds();
+        long minMessageId = 0;
+        List<ConnectorMessage> recoveredConnectorMessages;
+
+        do {
+            ThreadUtils.checkInterruptedStatus();
+            DonkeyDao dao = channel.getDaoFactory().getDao();
+            Map<Long, Set<Integer>> existingMetaDataIdsByMessageId;
 
-                    if (finished) {
-                        ThreadUtils.checkInterruptedStatus();
-                        ResponseSelector responseSelector = channel.getResponseSelector();
-                        channel.finishMessage(message, !responseSelector.canRespond());
+            try {
+                // Get connector messages for this server id that need to be recovered.
+                recoveredConnectorMessages = dao.getUnfinishedConnectorMessages(channel.getChannelId(), channel.getServerId(), metaDataId, minMessageId, maxMessageId, BATCH_SIZE);
 
-                        if (responseSelector.canRespond()) {
-                            boolean removeContent = false;
-                            boolean removeAttachments = false;
-                            boolean messageCompleted = MessageController.getInstance().isMessageCompleted(message);
+                if (recoveredConnectorMessages.isEmpty()) {
+                    return;
+                }
 
-                            if (messageCompleted) {
-                                removeContent = (storageSettings.isRemoveContentOnCompletion());
-                                removeAttachments = (storageSettings.isRemoveAttachmentsOnCompletion());
-                            }
+                // Get existing connector messages for these messages regardless of server id, because we don't want to process that connector again regardless.
+                List<Long> messageIds = new ArrayList<Long>(recoveredConnectorMessages.size());
+                for (ConnectorMessage recoveredConnectorMessage : recoveredConnectorMessages) {
+                    messageIds.add(recoveredConnectorMessage.getMessageId());
+                }
+                existingMetaDataIdsByMessageId = dao.getConnectorMessageMetaDataIds(channel.getChannelId(), messageIds);
+            } finally {
+                dao.close();
+            }
 
-                            Response response = null;
+            for (ConnectorMessage recoveredConnectorMessage : recoveredConnectorMessages) {
+                long messageId = recoveredConnectorMessage.getMessageId();
+                minMessageId = messageId + 1;
 
-                            /*
-                             * only put a response in the dispatchResult if a response was not
-                             * already stored in the source message (which happens when the source
-                             * queue is enabled)
-                             */
-                            if (sourceMessage.getResponse() == null) {
-                                response = responseSelector.getResponse(sourceMessage, message);
-                            }
+                try {
+                    Set<Integer> existingMetaDataIds = new HashSet<Integer>();
+                    Set<Integer> messageMetaDataIds = existingMetaDataIdsByMessageId.get(messageId);
+                    if (messageMetaDataIds != null) {
+                        existingMetaDataIds.addAll(messageMetaDataIds);
+                    }
+                    existingMetaDataIds.retainAll(chainMetaDataIds);
+
+                    // get the list of destination meta data ids to send to
+                    List<Integer> channelMapMetaDataIds = null;
 
-                            DispatchResult dispatchResult = new DispatchResult(message.getMessageId(), message, response, true, removeContent, removeAttachments, false);
-                            channel.getSourceConnector().handleRecoveredResponse(dispatchResult);
+                    if (recoveredConnectorMessage.getChannelMap().containsKey(Constants.DESTINATION_META_DATA_IDS_KEY)) {
+                        channelMapMetaDataIds = (List<Integer>) recoveredConnectorMessage.getChannelMap().get(Constants.DESTINATION_META_DATA_IDS_KEY);
+                    } else if (recoveredConnectorMessage.getSourceMap().containsKey(Constants.DESTINATION_META_DATA_IDS_KEY)) {
+                        channelMapMetaDataIds = (List<Integer>) recoveredConnectorMessage.getSourceMap().get(Constants.DESTINATION_META_DATA_IDS_KEY);
+                    }
+
+                    List<Integer> enabledMetaDataIds = new ArrayList<Integer>();
+
+                    // The order of the enabledMetaDataId list needs to be based on the chain order.
+                    // We do not use ListUtils here because there is no official guarantee of order.
+                    for (Integer id : chainMetaDataIds) {
+                        if (CollectionUtils.isEmpty(channelMapMetaDataIds) || channelMapMetaDataIds.contains(id)) {
+                            // Don't add the ID to the enabled list if it already exists in the database
+                            // This doesn't apply to the current metadata ID, which will always be there
+                            if (!existingMetaDataIds.contains(id) || id == metaDataId) {
+                                enabledMetaDataIds.add(id);
+                            }
                         }
                     }
+
+                    if (!enabledMetaDataIds.contains(metaDataId)) {
+                        enabledMetaDataIds.add(metaDataId);
+                    }
+
+                    chain.call(recoveredConnectorMessage, enabledMetaDataIds);
+                } catch (InterruptedException e) {
+                    throw e;
                 } catch (Exception e) {
-                    logger.error("Channel " + channel.getName() + "(" + channel.getChannelId() + ") failed to recover message ID " + message.getMessageId() + ": " + e.getMessage());
+                    logger.error("Channel " + channel.getName() + "(" + channel.getChannelId() + ") failed to recover message ID " + messageId + ", connector ID " + metaDataId + ": " + e.getMessage());
                 }
             }
+        } while (recoveredConnectorMessages.size() == BATCH_SIZE);
+    }
+
+    private void recoverMessage(Message message) throws InterruptedException {
+        StorageSettings storageSettings = channel.getStorageSettings();
+
+        try {
+            ConnectorMessage sourceMessage = message.getConnectorMessages().get(0);
+            boolean finished = true;
+
+            // merge responses from all of the destinations into the source connector's response map
+            for (ConnectorMessage connectorMessage : message.getConnectorMessages().values()) {
+                Status status = connectorMessage.getStatus();
 
-            // step 3: If source queuing is disabled, recover messages for each source (RECEIVED) and flush out the source queue.
-            if (channel.getSourceConnector().isRespondAfterProcessing() && storageSettings.isMessageRecoveryEnabled()) {
-                channel.processSourceQueue(0);
+                if (status == Status.RECEIVED || status == Status.PENDING) {
+                    finished = false;
+                    break;
+                }
+
+                if (connectorMessage.getMetaDataId() != 0) {
+                    sourceMessage.getResponseMap().putAll(connectorMessage.getResponseMap());
+                }
             }
 
-            return null;
-        } finally {
-            if (!dao.isClosed()) {
-                dao.close();
+            if (finished) {
+                ThreadUtils.checkInterruptedStatus();
+                ResponseSelector responseSelector = channel.getResponseSelector();
+                channel.finishMessage(message, !responseSelector.canRespond());
+
+                if (responseSelector.canRespond()) {
+                    boolean removeContent = false;
+                    boolean removeAttachments = false;
+                    boolean messageCompleted = MessageController.getInstance().isMessageCompleted(message);
+
+                    if (messageCompleted) {
+                        removeContent = (storageSettings.isRemoveContentOnCompletion());
+                        removeAttachments = (storageSettings.isRemoveAttachmentsOnCompletion());
+                    }
+
+                    Response response = null;
+
+                    /*
+                     * only put a response in the dispatchResult if a response was not
+                     * already stored in the source message (which happens when the source
+                     * queue is enabled)
+                     */
+                    if (sourceMessage.getResponse() == null) {
+                        response = responseSelector.getResponse(sourceMessage, message);
+                    }
+
+                    DispatchResult dispatchResult = new DispatchResult(message.getMessageId(), message, response, true, removeContent, removeAttachments, false);
+                    channel.getSourceConnector().handleRecoveredResponse(dispatchResult);
+                }
             }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Channel " + channel.getName() + "(" + channel.getChannelId() + ") failed to recover message ID " + message.getMessageId() + ": " + e.getMessage());
         }
     }
 }
@@ -297,7 +297,7 @@ public abstract class SourceConnector extends Connector {
             }
         } finally {
             if (dispatchResult != null && dispatchResult.isLockAcquired()) {
-                channel.releaseProcessLock();
+                channel.releaseProcessLock(dispatchResult.getProcessLane());
                 dispatchResult.setLockAcquired(false);
             }
         }
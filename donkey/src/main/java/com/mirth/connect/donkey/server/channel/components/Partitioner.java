@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.server.channel.components;
+
+import com.mirth.connect.donkey.model.DonkeyException;
+import com.mirth.connect.donkey.model.message.RawMessage;
+
+public interface Partitioner {
+    /**
+     * Returns the key used to select the processing lane for a raw message. Messages with equal
+     * keys are always processed in the order they were received. A null key places the message on
+     * the first lane.
+     */
+    public Object getPartitionKey(RawMessage rawMessage) throws DonkeyException, InterruptedException;
+}
@@ -18,6 +18,7 @@ import com.mirth.connect.donkey.model.message.Status;
 import com.mirth.connect.donkey.server.Donkey;
 import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.data.DonkeyDao;
+import com.mirth.connect.donkey.server.data.StatisticsFlusher;
 
 public class ChannelController {
     private static ChannelController instance;
@@ -39,6 +40,8 @@ public class ChannelController {
     private ChannelController() {}
 
     public void removeChannel(String channelId) {
+        flushStatistics();
+
         DonkeyDao dao = donkey.getDaoFactory().getDao();
 
         try {
@@ -67,6 +70,18 @@ public class ChannelController {
     public Statistics getTotalStatistics() {
         return totalStats;
     }
+
+    /**
+     * Writes any statistics that are waiting to be flushed in the background, so that they aren't
+     * applied after the statistics have been reset.
+     */
+    public void flushStatistics() {
+        StatisticsFlusher statisticsFlusher = donkey.getStatisticsFlusher();
+
+        if (statisticsFlusher != null) {
+            statisticsFlusher.flush();
+        }
+    }
     
     /**
      * Reset the statistics for the given channels/connectors and statuses
@@ -75,6 +90,8 @@ public class ChannelController {
      * @param statuses A list of statuses
      */
     public void resetStatistics(Map<String, List<Integer>> channelConnectorMap, Set<Status> statuses) {
+        flushStatistics();
+
         DonkeyDao dao = donkey.getDaoFactory().getDao();
 
         try {
@@ -95,6 +112,8 @@ public class ChannelController {
     }
 
     public void resetAllStatistics() {
+        flushStatistics();
+
         DonkeyDao dao = donkey.getDaoFactory().getDao();
 
         try {
@@ -171,10 +190,26 @@ public class ChannelController {
         return ++nextChannelId;
     }
 
-    private long createChannel(String channelId) {
-        long localChannelId = getNextLocalChannelId();
+    /*
+     * Synchronized so that channels deployed at the same time can't be given the same local channel
+     * id, or create the same channel twice.
+     */
+    private synchronized long createChannel(String channelId) {
         DonkeyDao dao = donkey.getDaoFactory().getDao();
 
+        try {
+            Long existingLocalChannelId = dao.getLocalChannelIds().get(channelId);
+
+            if (existingLocalChannelId != null) {
+                return existingLocalChannelId;
+            }
+        } finally {
+            dao.close();
+        }
+
+        long localChannelId = getNextLocalChannelId();
+        dao = donkey.getDaoFactory().getDao();
+
         try {
             dao.createChannel(channelId, localChannelId);
             dao.commit();
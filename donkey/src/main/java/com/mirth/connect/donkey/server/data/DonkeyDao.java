@@ -9,6 +9,8 @@
 
 package com.mirth.connect.donkey.server.data;
 
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -92,8 +94,40 @@ public interface DonkeyDao {
 
     public long getNextMessageId(String channelId);
 
+    public List<Long> getNextMessageIds(String channelId, int count);
+
+    /**
+     * Makes sure there is at least one message partition after the one containing messageId, and
+     * returns the first message ID of the last partition. Returns Long.MAX_VALUE if the channel's
+     * message tables are not partitioned.
+     */
+    public long addMessagePartitions(String channelId, long messageId);
+
+    /**
+     * Returns the message partitions of the channel as a map of the first message ID of each
+     * partition to the first message ID after it, ordered by message ID.
+     */
+    public Map<Long, Long> getMessagePartitions(String channelId);
+
+    public void removeMessagePartition(String channelId, long partitionId);
+
+    public long getMessageCount(String channelId, long minMessageId, long maxMessageId);
+
+    /**
+     * Returns a message ID below which no message was received at or after the given date, based
+     * on when the channel's message partitions were created. Returns 0 if the channel's message
+     * tables are not partitioned.
+     */
+    public long getMinMessageIdSince(String channelId, Calendar date);
+
     public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, Status status);
 
+    /**
+     * Returns at most limit RECEIVED or PENDING connector messages, with their content, with message
+     * IDs from minMessageId to maxMessageId inclusive and ordered by message ID.
+     */
+    public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, long minMessageId, long maxMessageId, int limit);
+
     public List<ConnectorMessage> getConnectorMessages(String channelId, String serverId, int metaDataId, Status status, int offset, int limit, Long minMessageId, Long maxMessageId);
 
     public List<ConnectorMessage> getConnectorMessages(String channelId, long messageId, Set<Integer> metaDataIds, boolean includeContent);
@@ -106,6 +140,14 @@ public interface DonkeyDao {
 
     public List<Message> getUnfinishedMessages(String channelId, String serverId);
 
+    /**
+     * Returns at most limit unfinished messages, with all of their connector messages, with message
+     * IDs from minMessageId to maxMessageId inclusive and ordered by message ID.
+     */
+    public List<Message> getUnfinishedMessages(String channelId, String serverId, long minMessageId, long maxMessageId, int limit);
+
+    public Map<Long, Set<Integer>> getConnectorMessageMetaDataIds(String channelId, Collection<Long> messageIds);
+
     public List<MetaDataColumn> getMetaDataColumns(String channelId);
 
     public List<Attachment> getMessageAttachment(String channelId, long messageId);
@@ -120,6 +162,8 @@ public interface DonkeyDao {
 
     public void setDecryptData(boolean decryptData);
 
+    public void setCompressData(boolean compressData);
+
     public void commit();
 
     public void commit(boolean durable);
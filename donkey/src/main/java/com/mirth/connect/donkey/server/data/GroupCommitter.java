@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.server.data;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Coalesces the transactions of concurrent threads into a single shared transaction and commit.
+ * Each thread that commits through the group committer waits until the transaction containing its
+ * work has been committed, so durability guarantees are the same as committing individually.
+ *
+ * There is no dedicated commit thread. The first thread to arrive while no commit is in progress
+ * becomes the leader, optionally waits for more work to arrive, and then executes and commits
+ * everything that is pending. Work that arrives while the leader is committing is picked up by the
+ * next leader. If a shared transaction fails, each unit of work in it is retried in its own
+ * transaction, so that a failure only affects the thread that caused it. This relies on the DAO
+ * resetting any in-memory state it changed for content that was never committed, which JdbcDao
+ * does when it is rolled back or closed without a commit.
+ */
+public class GroupCommitter {
+
+    /**
+     * A unit of work that is executed against the shared DAO before it is committed.
+     */
+    public interface Work {
+        public void execute(DonkeyDao dao);
+    }
+
+    private DonkeyDaoFactory daoFactory;
+    private int maxBatchSize;
+    private int maxWaitMillis;
+    private LinkedList<Unit> pending = new LinkedList<Unit>();
+    private boolean committing = false;
+    private long commitCount = 0;
+    private long unitCount = 0;
+    private Logger logger = Logger.getLogger(getClass());
+
+    /**
+     * @param daoFactory
+     *            The factory used to get the DAO for each shared transaction.
+     * @param maxBatchSize
+     *            The maximum number of units of work to include in a single transaction.
+     * @param maxWaitMillis
+     *            The maximum amount of time a leader waits for more work before committing, or 0
+     *            to only include work that is already pending.
+     */
+    public GroupCommitter(DonkeyDaoFactory daoFactory, int maxBatchSize, int maxWaitMillis) {
+        this.daoFactory = daoFactory;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxWaitMillis = Math.max(maxWaitMillis, 0);
+    }
+
+    /**
+     * Executes the given work in a shared transaction, and returns once that transaction has been
+     * committed. Any exception thrown while executing or committing the work is rethrown here.
+     *
+     * @param durable
+     *            If false, the work may be committed asynchronously if no other work in the same
+     *            transaction needs a durable commit.
+     */
+    public void commit(Work work, boolean durable) {
+        Unit unit = new Unit(work, durable);
+        boolean leader = false;
+        boolean interrupted = false;
+
+        synchronized (this) {
+            pending.add(unit);
+            // Wake up a leader that may be waiting for more work
+            notifyAll();
+
+            while (!unit.done) {
+                if (!committing) {
+                    committing = true;
+                    leader = true;
+                    break;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The work can't be withdrawn once it's pending, so wait for it regardless
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (leader) {
+            try {
+                while (!unit.done) {
+                    executeBatch(takeBatch());
+                }
+            } finally {
+                synchronized (this) {
+                    committing = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (unit.error != null) {
+            if (unit.error instanceof RuntimeException) {
+                throw (RuntimeException) unit.error;
+            } else if (unit.error instanceof Error) {
+                throw (Error) unit.error;
+            }
+
+            throw new DonkeyDaoException(unit.error);
+        }
+    }
+
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    public synchronized long getUnitCount() {
+        return unitCount;
+    }
+
+    private synchronized List<Unit> takeBatch() {
+        if (maxWaitMillis > 0 && pending.size() < maxBatchSize) {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            long remaining = maxWaitMillis;
+
+            while (pending.size() < maxBatchSize && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+
+        List<Unit> batch = new ArrayList<Unit>(Math.min(pending.size(), maxBatchSize));
+
+        while (!pending.isEmpty() && batch.size() < maxBatchSize) {
+            batch.add(pending.removeFirst());
+        }
+
+        return batch;
+    }
+
+    private void executeBatch(List<Unit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Throwable error = execute(batch);
+
+        if (error != null && batch.size() > 1) {
+            logger.debug("Shared transaction failed, retrying " + batch.size() + " units of work individually.", error);
+
+            for (Unit unit : batch) {
+                List<Unit> single = new ArrayList<Unit>(1);
+                single.add(unit);
+                finish(single, execute(single));
+            }
+        } else {
+            finish(batch, error);
+        }
+    }
+
+    /*
+     * Executes and commits the given units in a single transaction, returning the error if one
+     * occurred. The transaction is rolled back when the DAO is closed without being committed.
+     */
+    private Throwable execute(List<Unit> batch) {
+        DonkeyDao dao = null;
+
+        try {
+            dao = daoFactory.getDao();
+            boolean durable = false;
+
+            for (Unit unit : batch) {
+                unit.work.execute(dao);
+                durable |= unit.durable;
+            }
+
+            dao.commit(durable);
+            return null;
+        } catch (Throwable t) {
+            return t;
+        } finally {
+            if (dao != null) {
+                try {
+                    dao.close();
+                } catch (Throwable t) {
+                    logger.error("Failed to close DAO after group commit.", t);
+                }
+            }
+        }
+    }
+
+    private synchronized void finish(List<Unit> batch, Throwable error) {
+        if (error == null) {
+            commitCount++;
+            unitCount += batch.size();
+        }
+
+        for (Unit unit : batch) {
+            unit.error = error;
+            unit.done = true;
+        }
+
+        notifyAll();
+    }
+
+    private static class Unit {
+        private Work work;
+        private boolean durable;
+        private boolean done;
+        private Throwable error;
+
+        public Unit(Work work, boolean durable) {
+            this.work = work;
+            this.durable = durable;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.server.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.log4j.Logger;
+
+import com.mirth.connect.donkey.model.message.Status;
+import com.mirth.connect.donkey.server.channel.Statistics;
+import com.mirth.connect.donkey.server.data.passthru.StatisticsUpdater;
+
+/**
+ * Accumulates statistics deltas in memory and writes them to the statistics tables on a fixed
+ * interval, so that message transactions don't have to update the statistics rows themselves.
+ * Each channel/connector has its own set of atomic counters, so threads updating different
+ * connectors never contend with each other, and no lock is taken when updating.
+ *
+ * Deltas are only handed to the flusher after the transaction they belong to has been committed.
+ * If the server stops unexpectedly, any deltas that haven't been flushed yet are lost.
+ */
+public class StatisticsFlusher implements StatisticsUpdater, Runnable {
+    private static final Status[] STATUSES = new Status[] { Status.RECEIVED, Status.FILTERED,
+            Status.SENT, Status.ERROR };
+
+    private DonkeyDaoFactory daoFactory;
+    private int intervalMillis;
+    private ConcurrentMap<CounterKey, AtomicLong[]> counters = new ConcurrentHashMap<CounterKey, AtomicLong[]>();
+    private ScheduledExecutorService executor;
+    private Logger logger = Logger.getLogger(getClass());
+
+    public StatisticsFlusher(DonkeyDaoFactory daoFactory, int intervalMillis) {
+        this.daoFactory = daoFactory;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public int getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Statistics Flusher Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            executor.scheduleWithFixedDelay(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background flush and writes any remaining deltas.
+     */
+    public void stop() throws InterruptedException {
+        ScheduledExecutorService executor;
+
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(intervalMillis + 30000, TimeUnit.MILLISECONDS);
+        }
+
+        flush();
+    }
+
+    /**
+     * Adds the given statistics to the pending deltas. This doesn't block, other than for the
+     * first update of a channel/connector that hasn't been seen before.
+     */
+    @Override
+    public void update(Statistics statistics) {
+        for (Entry<String, Map<Integer, Map<Status, Long>>> channelEntry : statistics.getStats().entrySet()) {
+            for (Entry<Integer, Map<Status, Long>> connectorEntry : channelEntry.getValue().entrySet()) {
+                AtomicLong[] connectorCounters = null;
+                Map<Status, Long> stats = connectorEntry.getValue();
+
+                for (int i = 0; i < STATUSES.length; i++) {
+                    Long diff = stats.get(STATUSES[i]);
+
+                    if (diff != null && diff != 0) {
+                        if (connectorCounters == null) {
+                            connectorCounters = getCounters(new CounterKey(channelEntry.getKey(), connectorEntry.getKey()));
+                        }
+
+                        connectorCounters[i].addAndGet(diff);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            logger.error("Failed to flush channel statistics.", t);
+        }
+    }
+
+    /**
+     * Writes all pending deltas to the database in a single transaction. If the write fails, the
+     * deltas are added back so they are included in the next flush.
+     */
+    public synchronized void flush() {
+        Statistics statistics = drain();
+
+        if (statistics.getStats().isEmpty()) {
+            return;
+        }
+
+        DonkeyDao dao = null;
+        boolean written = false;
+
+        try {
+            dao = daoFactory.getDao();
+
+            // Don't write statistics for channels that were removed since the deltas were recorded
+            Map<String, Long> localChannelIds = dao.getLocalChannelIds();
+            statistics.getStats().keySet().retainAll(localChannelIds.keySet());
+
+            dao.addChannelStatistics(statistics);
+            dao.commit();
+            written = true;
+        } finally {
+            if (dao != null) {
+                dao.close();
+            }
+
+            if (!written) {
+                update(statistics);
+            }
+        }
+    }
+
+    private AtomicLong[] getCounters(CounterKey key) {
+        AtomicLong[] connectorCounters = counters.get(key);
+
+        if (connectorCounters == null) {
+            connectorCounters = new AtomicLong[STATUSES.length];
+
+            for (int i = 0; i < connectorCounters.length; i++) {
+                connectorCounters[i] = new AtomicLong();
+            }
+
+            AtomicLong[] existingCounters = counters.putIfAbsent(key, connectorCounters);
+
+            if (existingCounters != null) {
+                connectorCounters = existingCounters;
+            }
+        }
+
+        return connectorCounters;
+    }
+
+    /*
+     * Takes the current value of every counter and resets it, returning the values in the format
+     * expected by the DAO. Counters are never removed, so a concurrent update is either included
+     * here or left in the counter for the next flush.
+     */
+    private Statistics drain() {
+        Statistics statistics = new Statistics(false);
+
+        for (Entry<CounterKey, AtomicLong[]> entry : counters.entrySet()) {
+            AtomicLong[] connectorCounters = entry.getValue();
+            Map<Status, Long> stats = null;
+
+            for (int i = 0; i < STATUSES.length; i++) {
+                long value = connectorCounters[i].getAndSet(0);
+
+                if (value != 0 && stats == null) {
+                    stats = new HashMap<Status, Long>();
+
+                    for (Status status : STATUSES) {
+                        stats.put(status, 0L);
+                    }
+                }
+
+                if (value != 0) {
+                    stats.put(STATUSES[i], value);
+                }
+            }
+
+            if (stats != null) {
+                statistics.getChannelStats(entry.getKey().channelId).put(entry.getKey().metaDataId, stats);
+            }
+        }
+
+        // The DAO expects a channel row for each channel, even if only connectors changed
+        for (Map<Integer, Map<Status, Long>> channelStats : statistics.getStats().values()) {
+            if (!channelStats.containsKey(null)) {
+                Map<Status, Long> stats = new HashMap<Status, Long>();
+
+                for (Status status : STATUSES) {
+                    stats.put(status, 0L);
+                }
+
+                channelStats.put(null, stats);
+            }
+        }
+
+        return statistics;
+    }
+
+    private static class CounterKey {
+        private String channelId;
+        private Integer metaDataId;
+
+        public CounterKey(String channelId, Integer metaDataId) {
+            this.channelId = channelId;
+            this.metaDataId = metaDataId;
+        }
+
+        @Override
+        public int hashCode() {
+            return channelId.hashCode() * 31 + ObjectUtils.hashCode(metaDataId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CounterKey)) {
+                return false;
+            }
+
+            CounterKey key = (CounterKey) obj;
+            return channelId.equals(key.channelId) && ObjectUtils.equals(metaDataId, key.metaDataId);
+        }
+    }
+}
@@ -9,6 +9,8 @@
 
 package com.mirth.connect.donkey.server.data.buffered;
 
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -26,17 +28,25 @@ import com.mirth.connect.donkey.model.message.attachment.Attachment;
 import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+import com.mirth.connect.donkey.server.data.GroupCommitter;
 
 public class BufferedDao implements DonkeyDao {
     private DonkeyDaoFactory daoFactory;
+    private GroupCommitter groupCommitter;
     private boolean encryptData;
     private boolean decryptData;
+    private boolean compressData;
     private Queue<DaoTask> tasks = new LinkedList<DaoTask>();
     private boolean closed = false;
     private Logger logger = Logger.getLogger(this.getClass());
 
     protected BufferedDao(DonkeyDaoFactory daoFactory, boolean encryptData, boolean decryptData) {
+        this(daoFactory, null, encryptData, decryptData);
+    }
+
+    protected BufferedDao(DonkeyDaoFactory daoFactory, GroupCommitter groupCommitter, boolean encryptData, boolean decryptData) {
         this.daoFactory = daoFactory;
+        this.groupCommitter = groupCommitter;
         this.encryptData = encryptData;
         this.decryptData = decryptData;
     }
@@ -51,6 +61,11 @@ public class BufferedDao implements DonkeyDao {
         this.decryptData = decryptData;
     }
 
+    @Override
+    public void setCompressData(boolean compressData) {
+        this.compressData = compressData;
+    }
+
     @Override
     public void commit() {
         commit(null);
@@ -71,7 +86,22 @@ public class BufferedDao implements DonkeyDao {
             return;
         }
 
-        executeTasks(durable);
+        if (groupCommitter != null) {
+            // Share a transaction with any other threads that are committing at the same time
+            groupCommitter.commit(new GroupCommitter.Work() {
+                @Override
+                public void execute(DonkeyDao dao) {
+                    dao.setEncryptData(encryptData);
+                    dao.setDecryptData(decryptData);
+                    dao.setCompressData(compressData);
+                    executeTasks(dao);
+                }
+            }, durable == null || durable);
+
+            tasks.clear();
+        } else {
+            executeTasks(durable);
+        }
     }
 
     private DonkeyDao getDelegateDao() {
@@ -79,6 +109,7 @@ public class BufferedDao implements DonkeyDao {
 
         dao.setEncryptData(encryptData);
         dao.setDecryptData(decryptData);
+        dao.setCompressData(compressData);
 
         return dao;
     }
@@ -87,45 +118,8 @@ public class BufferedDao implements DonkeyDao {
         DonkeyDao dao = getDelegateDao();
 
         try {
-            while (!tasks.isEmpty()) {
-                DaoTask task = tasks.poll();
-                Object[] p = task.getParameters();
-
-                // @formatter:off
-                switch (task.getTaskType()) {
-                    case INSERT_MESSAGE: dao.insertMessage((Message) p[0]); break;
-                    case INSERT_CONNECTOR_MESSAGE: dao.insertConnectorMessage((ConnectorMessage) p[0], (Boolean) p[1], (Boolean) p[2]); break;
-                    case INSERT_MESSAGE_CONTENT: dao.insertMessageContent((MessageContent) p[0]); break;
-                    case BATCH_INSERT_MESSAGE_CONTENT: dao.batchInsertMessageContent((MessageContent) p[0]); break;
-                    case EXECUTE_BATCH_INSERT_MESSAGE_CONTENT: dao.executeBatchInsertMessageContent((String) p[0]); break;
-                    case INSERT_MESSAGE_ATTACHMENT: dao.insertMessageAttachment((String) p[0], (Long) p[1], (Attachment) p[2]); break;
-                    case INSERT_META_DATA: dao.insertMetaData((ConnectorMessage) p[0], (List<MetaDataColumn>) p[1]); break;
-                    case STORE_META_DATA: dao.storeMetaData((ConnectorMessage) p[0], (List<MetaDataColumn>) p[1]); break;
-                    case STORE_MESSAGE_CONTENT: dao.storeMessageContent((MessageContent) p[0]); break;
-                    case STORE_CHANNEL_STATISTICS: dao.addChannelStatistics((Statistics) p[0]); break;
-                    case UPDATE_RESPONSE_ERROR: dao.updateSourceResponse((ConnectorMessage) p[0]); break;
-                    case UPDATE_STATUS: dao.updateStatus((ConnectorMessage) p[0], (Status) p[1]); break;
-                    case UPDATE_ERRORS: dao.updateErrors((ConnectorMessage) p[0]); break;
-                    case UPDATE_MAPS: dao.updateMaps((ConnectorMessage) p[0]); break;
-                    case UPDATE_SOURCE_MAP: dao.updateSourceMap((ConnectorMessage) p[0]); break;
-                    case UPDATE_RESPONSE_MAP: dao.updateResponseMap((ConnectorMessage) p[0]); break;
-                    case MARK_AS_PROCESSED: dao.markAsProcessed((String) p[0], (Long) p[1]); break;
-                    case RESET_MESSAGE: dao.resetMessage((String) p[0], (Long) p[1]); break;
-                    case DELETE_MESSAGE: dao.deleteMessage((String) p[0], (Long) p[1]); break;
-                    case DELETE_CONNECTOR_MESSAGES: dao.deleteConnectorMessages((String) p[0], (Long) p[1], (Set<Integer>) p[2]); break;
-                    case DELETE_MESSAGE_STATISTICS: dao.deleteMessageStatistics((String) p[0], (Long) p[1], (Set<Integer>) p[2]); break;
-                    case DELETE_ALL_MESSAGES: dao.deleteAllMessages((String) p[0]); break;
-                    case DELETE_MESSAGE_CONTENT: dao.deleteMessageContent((String) p[0], (Long) p[1]); break;
-                    case DELETE_MESSAGE_ATTACHMENTS: dao.deleteMessageAttachments((String) p[0], (Long) p[1]); break;
-                    case CREATE_CHANNEL: dao.createChannel((String) p[0], (Long) p[1]); break;
-                    case REMOVE_CHANNEL: dao.removeChannel((String) p[0]); break;
-                    case ADD_META_DATA_COLUMN: dao.addMetaDataColumn((String) p[0], (MetaDataColumn) p[1]); break;
-                    case REMOVE_META_DATA_COLUMN: dao.removeMetaDataColumn((String) p[0], (String) p[1]); break;
-                    case RESET_STATISTICS: dao.resetStatistics((String) p[0], (Integer) p[1], (Set<Status>) p[2]); break;
-                    case RESET_ALL_STATISTICS: dao.resetAllStatistics((String) p[0]); break;
-                }
-                // @formatter:on
-            }
+            executeTasks(dao);
+            tasks.clear();
 
             if (durable == null) {
                 dao.commit();
@@ -139,6 +133,51 @@ public class BufferedDao implements DonkeyDao {
         }
     }
 
+    /*
+     * Executes the buffered tasks without removing them, so that they can be executed again if
+     * the transaction they were executed in is rolled back.
+     */
+    private void executeTasks(DonkeyDao dao) {
+        for (DaoTask task : tasks) {
+            Object[] p = task.getParameters();
+
+            // @formatter:off
+            switch (task.getTaskType()) {
+                case INSERT_MESSAGE: dao.insertMessage((Message) p[0]); break;
+                case INSERT_CONNECTOR_MESSAGE: dao.insertConnectorMessage((ConnectorMessage) p[0], (Boolean) p[1], (Boolean) p[2]); break;
+                case INSERT_MESSAGE_CONTENT: dao.insertMessageContent((MessageContent) p[0]); break;
+                case BATCH_INSERT_MESSAGE_CONTENT: dao.batchInsertMessageContent((MessageContent) p[0]); break;
+                case EXECUTE_BATCH_INSERT_MESSAGE_CONTENT: dao.executeBatchInsertMessageContent((String) p[0]); break;
+                case INSERT_MESSAGE_ATTACHMENT: dao.insertMessageAttachment((String) p[0], (Long) p[1], (Attachment) p[2]); break;
+                case INSERT_META_DATA: dao.insertMetaData((ConnectorMessage) p[0], (List<MetaDataColumn>) p[1]); break;
+                case STORE_META_DATA: dao.storeMetaData((ConnectorMessage) p[0], (List<MetaDataColumn>) p[1]); break;
+                case STORE_MESSAGE_CONTENT: dao.storeMessageContent((MessageContent) p[0]); break;
+                case STORE_CHANNEL_STATISTICS: dao.addChannelStatistics((Statistics) p[0]); break;
+                case UPDATE_RESPONSE_ERROR: dao.updateSourceResponse((ConnectorMessage) p[0]); break;
+                case UPDATE_STATUS: dao.updateStatus((ConnectorMessage) p[0], (Status) p[1]); break;
+                case UPDATE_ERRORS: dao.updateErrors((ConnectorMessage) p[0]); break;
+                case UPDATE_MAPS: dao.updateMaps((ConnectorMessage) p[0]); break;
+                case UPDATE_SOURCE_MAP: dao.updateSourceMap((ConnectorMessage) p[0]); break;
+                case UPDATE_RESPONSE_MAP: dao.updateResponseMap((ConnectorMessage) p[0]); break;
+                case MARK_AS_PROCESSED: dao.markAsProcessed((String) p[0], (Long) p[1]); break;
+                case RESET_MESSAGE: dao.resetMessage((String) p[0], (Long) p[1]); break;
+                case DELETE_MESSAGE: dao.deleteMessage((String) p[0], (Long) p[1]); break;
+                case DELETE_CONNECTOR_MESSAGES: dao.deleteConnectorMessages((String) p[0], (Long) p[1], (Set<Integer>) p[2]); break;
+                case DELETE_MESSAGE_STATISTICS: dao.deleteMessageStatistics((String) p[0], (Long) p[1], (Set<Integer>) p[2]); break;
+                case DELETE_ALL_MESSAGES: dao.deleteAllMessages((String) p[0]); break;
+                case DELETE_MESSAGE_CONTENT: dao.deleteMessageContent((String) p[0], (Long) p[1]); break;
+                case DELETE_MESSAGE_ATTACHMENTS: dao.deleteMessageAttachments((String) p[0], (Long) p[1]); break;
+                case CREATE_CHANNEL: dao.createChannel((String) p[0], (Long) p[1]); break;
+                case REMOVE_CHANNEL: dao.removeChannel((String) p[0]); break;
+                case ADD_META_DATA_COLUMN: dao.addMetaDataColumn((String) p[0], (MetaDataColumn) p[1]); break;
+                case REMOVE_META_DATA_COLUMN: dao.removeMetaDataColumn((String) p[0], (String) p[1]); break;
+                case RESET_STATISTICS: dao.resetStatistics((String) p[0], (Integer) p[1], (Set<Status>) p[2]); break;
+                case RESET_ALL_STATISTICS: dao.resetAllStatistics((String) p[0]); break;
+            }
+            // @formatter:on
+        }
+    }
+
     @Override
     public void rollback() {
         tasks.clear();
@@ -360,6 +399,64 @@ public class BufferedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public long addMessagePartitions(String channelId, long messageId) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            long partitionId = dao.addMessagePartitions(channelId, messageId);
+            dao.commit();
+            return partitionId;
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getMessagePartitions(String channelId) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getMessagePartitions(channelId);
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public void removeMessagePartition(String channelId, long partitionId) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            dao.removeMessagePartition(channelId, partitionId);
+            dao.commit();
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public long getMessageCount(String channelId, long minMessageId, long maxMessageId) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getMessageCount(channelId, minMessageId, maxMessageId);
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public long getMinMessageIdSince(String channelId, Calendar date) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getMinMessageIdSince(channelId, date);
+        } finally {
+            dao.close();
+        }
+    }
+
     @Override
     public long getNextMessageId(String channelId) {
         DonkeyDao dao = getDelegateDao();
@@ -373,6 +470,19 @@ public class BufferedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<Long> getNextMessageIds(String channelId, int count) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            List<Long> ids = dao.getNextMessageIds(channelId, count);
+            dao.commit();
+            return ids;
+        } finally {
+            dao.close();
+        }
+    }
+
     @Override
     public List<Attachment> getMessageAttachment(String channelId, long messageId) {
         DonkeyDao dao = getDelegateDao();
@@ -471,6 +581,39 @@ public class BufferedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, long minMessageId, long maxMessageId, int limit) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getUnfinishedConnectorMessages(channelId, serverId, metaDataId, minMessageId, maxMessageId, limit);
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public List<Message> getUnfinishedMessages(String channelId, String serverId, long minMessageId, long maxMessageId, int limit) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getUnfinishedMessages(channelId, serverId, minMessageId, maxMessageId, limit);
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getConnectorMessageMetaDataIds(String channelId, Collection<Long> messageIds) {
+        DonkeyDao dao = getDelegateDao();
+
+        try {
+            return dao.getConnectorMessageMetaDataIds(channelId, messageIds);
+        } finally {
+            dao.close();
+        }
+    }
+
     @Override
     public List<MetaDataColumn> getMetaDataColumns(String channelId) {
         DonkeyDao dao = getDelegateDao();
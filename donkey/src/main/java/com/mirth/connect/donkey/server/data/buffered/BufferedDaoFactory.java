@@ -11,14 +11,27 @@ package com.mirth.connect.donkey.server.data.buffered;
 
 import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+import com.mirth.connect.donkey.server.data.GroupCommitter;
 
 public class BufferedDaoFactory implements DonkeyDaoFactory {
     private DonkeyDaoFactory delegateFactory;
+    private GroupCommitter groupCommitter;
     private boolean encryptData = false;
     private boolean decryptData = true;
+    private boolean compressData = false;
 
     public BufferedDaoFactory(DonkeyDaoFactory delegateFactory) {
+        this(delegateFactory, null);
+    }
+
+    /**
+     * @param groupCommitter
+     *            If not null, the buffered DAOs commit through the group committer, sharing their
+     *            transaction with any other DAOs that are committing at the same time.
+     */
+    public BufferedDaoFactory(DonkeyDaoFactory delegateFactory, GroupCommitter groupCommitter) {
         this.delegateFactory = delegateFactory;
+        this.groupCommitter = groupCommitter;
     }
 
     public DonkeyDaoFactory getDelegateFactory() {
@@ -29,6 +42,10 @@ public class BufferedDaoFactory implements DonkeyDaoFactory {
         this.delegateFactory = delegateFactory;
     }
 
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
     @Override
     public void setEncryptData(boolean encryptData) {
         this.encryptData = encryptData;
@@ -39,9 +56,15 @@ public class BufferedDaoFactory implements DonkeyDaoFactory {
         this.decryptData = decryptData;
     }
 
+    public void setCompressData(boolean compressData) {
+        this.compressData = compressData;
+    }
+
     @Override
     public DonkeyDao getDao() {
-        return new BufferedDao(delegateFactory, encryptData, decryptData);
+        BufferedDao dao = new BufferedDao(delegateFactory, groupCommitter, encryptData, decryptData);
+        dao.setCompressData(compressData);
+        return dao;
     }
 
 }
@@ -23,12 +23,15 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.dbutils.DbUtils;
@@ -51,6 +54,8 @@ import com.mirth.connect.donkey.server.channel.Channel;
 import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.server.data.DonkeyDaoException;
+import com.mirth.connect.donkey.server.data.StatisticsFlusher;
+import com.mirth.connect.donkey.util.CompressionUtil;
 import com.mirth.connect.donkey.util.MapUtil;
 import com.mirth.connect.donkey.util.Serializer;
 
@@ -62,14 +67,21 @@ public class JdbcDao implements DonkeyDao {
     private Serializer serializer;
     private boolean encryptData;
     private boolean decryptData;
+    private boolean compressData;
+    private long partitionSize;
+    private boolean binaryMaps;
     private Set<ContentType> alwaysDecrypt = new HashSet<ContentType>();
     private Encryptor encryptor;
     private Statistics currentStats;
     private Statistics totalStats;
     private Statistics transactionStats = new Statistics(false);
+    private StatisticsFlusher statisticsFlusher;
     private Map<String, Map<Integer, Set<Status>>> resetCurrentStats = new HashMap<String, Map<Integer, Set<Status>>>();
     private Map<String, Map<Integer, Set<Status>>> resetTotalStats = new HashMap<String, Map<Integer, Set<Status>>>();
     private List<String> removedChannelIds = new ArrayList<String>();
+    private List<ErrorContent> insertedErrorContent = new ArrayList<ErrorContent>();
+    private List<MapContent> insertedMapContent = new ArrayList<MapContent>();
+    private Map<MapContent, String> uncommittedMapContent = new IdentityHashMap<MapContent, String>();
     private String asyncCommitCommand;
     private Map<String, Long> localChannelIds;
     private String statsServerId;
@@ -106,6 +118,40 @@ public class JdbcDao implements DonkeyDao {
         this.decryptData = decryptData;
     }
 
+    @Override
+    public void setCompressData(boolean compressData) {
+        this.compressData = compressData;
+    }
+
+    public StatisticsFlusher getStatisticsFlusher() {
+        return statisticsFlusher;
+    }
+
+    /**
+     * If a statistics flusher is set, the statistics for each transaction are handed to it after
+     * the transaction is committed, instead of being written as part of the transaction.
+     */
+    public void setStatisticsFlusher(StatisticsFlusher statisticsFlusher) {
+        this.statisticsFlusher = statisticsFlusher;
+    }
+
+    public long getPartitionSize() {
+        return partitionSize;
+    }
+
+    /**
+     * If greater than zero and the database supports it, channels created with this DAO store
+     * their messages in tables that are range-partitioned by message ID, with the given number of
+     * message IDs in each partition.
+     */
+    public void setPartitionSize(long partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    public void setBinaryMaps(boolean binaryMaps) {
+        this.binaryMaps = binaryMaps;
+    }
+
     public char getQuoteChar() {
         return quoteChar;
     }
@@ -188,11 +234,11 @@ public class JdbcDao implements DonkeyDao {
 
             // Only encrypt if the content is not already encrypted
             if (encryptData && encryptor != null && !messageContent.isEncrypted()) {
-                content = encryptor.encrypt(messageContent.getContent());
+                content = encryptor.encrypt(compress(messageContent.getContent()));
                 encrypted = true;
             } else {
-                content = messageContent.getContent();
                 encrypted = messageContent.isEncrypted();
+                content = encrypted ? messageContent.getContent() : compress(messageContent.getContent());
             }
 
             PreparedStatement statement = prepareStatement("insertMessageContent", messageContent.getChannelId());
@@ -230,6 +276,11 @@ public class JdbcDao implements DonkeyDao {
 
     private void insertContent(String channelId, long messageId, int metaDataId, ContentType contentType, String content, String dataType, boolean encrypted) {
         try {
+            // Compress before encrypting, since encrypted content will not compress
+            if (!encrypted) {
+                content = compress(content);
+            }
+
             // Only encrypt if the content is not already encrypted
             if (encryptData && encryptor != null && !encrypted) {
                 content = encryptor.encrypt(content);
@@ -253,6 +304,11 @@ public class JdbcDao implements DonkeyDao {
 
     public void storeContent(String channelId, long messageId, int metaDataId, ContentType contentType, String content, String dataType, boolean encrypted) {
         try {
+            // Compress before encrypting, since encrypted content will not compress
+            if (!encrypted) {
+                content = compress(content);
+            }
+
             // Only encrypt if the content is not already encrypted
             if (encryptData && encryptor != null && !encrypted) {
                 content = encryptor.encrypt(content);
@@ -419,27 +475,25 @@ public class JdbcDao implements DonkeyDao {
                 statement.setBytes(6, attachment.getContent());
                 statement.executeUpdate();
             } else {
-                // Use an input stream on the attachment content to segment the data.
-                ByteArrayInputStream inputStream = new ByteArrayInputStream(attachment.getContent());
+                byte[] content = attachment.getContent();
                 // The order of the segment
                 int segmentIndex = 1;
+                int offset = 0;
 
                 // As long as there are bytes left
-                while (inputStream.available() > 0) {
+                while (offset < content.length) {
                     // Set the segment number
                     statement.setInt(4, segmentIndex++);
                     // Determine the segment size. If there are more bytes left than the chunk size, the size is the chunk size. Otherwise it is the number of remaining bytes
-                    int segmentSize = Math.min(chunkSize, inputStream.available());
-                    // Create a byte array to store the chunk
-                    byte[] segment = new byte[segmentSize];
-                    // Read the chunk from the input stream to the byte array
-                    inputStream.read(segment, 0, segmentSize);
+                    int segmentSize = Math.min(chunkSize, content.length - offset);
                     // Set the segment size
                     statement.setInt(5, segmentSize);
-                    // Set the byte data
-                    statement.setBytes(6, segment);
+                    // Stream the segment directly from the attachment content instead of copying it into a separate array
+                    statement.setBinaryStream(6, new ByteArrayInputStream(content, offset, segmentSize), segmentSize);
                     // Perform the insert
                     statement.executeUpdate();
+
+                    offset += segmentSize;
                 }
             }
 
@@ -599,7 +653,7 @@ public class JdbcDao implements DonkeyDao {
 
             if (storeMaps) {
                 updateSourceMap(connectorMessage);
-                updateMaps(connectorMessage);
+                updateMaps(connectorMessage, true);
             }
 
             updateErrors(connectorMessage);
@@ -764,6 +818,7 @@ public class JdbcDao implements DonkeyDao {
             } else {
                 insertContent(channelId, messageId, metaDataId, contentType, error, null, encrypted);
                 errorContent.setPersisted(true);
+                insertedErrorContent.add(errorContent);
             }
         } else if (persisted) {
             deleteMessageContentByMetaDataIdAndContentType(channelId, messageId, metaDataId, contentType);
@@ -790,15 +845,23 @@ public class JdbcDao implements DonkeyDao {
 
     @Override
     public void updateMaps(ConnectorMessage connectorMessage) {
+        updateMaps(connectorMessage, false);
+    }
+
+    /*
+     * When the connector message was just inserted, nothing is stored for its maps yet, so they're
+     * written even if the map content matches what was last stored for another connector message.
+     */
+    private void updateMaps(ConnectorMessage connectorMessage, boolean inserted) {
         logger.debug(connectorMessage.getChannelId() + "/" + connectorMessage.getMessageId() + "/" + connectorMessage.getMetaDataId() + ": updating maps");
 
         // We do not include the source map here because that should only be inserted once with the raw content, and after that it's read-only
-        updateMap(connectorMessage.getConnectorMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.CONNECTOR_MAP);
-        updateMap(connectorMessage.getChannelMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.CHANNEL_MAP);
-        updateMap(connectorMessage.getResponseMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.RESPONSE_MAP);
+        updateMap(connectorMessage.getConnectorMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.CONNECTOR_MAP, inserted);
+        updateMap(connectorMessage.getChannelMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.CHANNEL_MAP, inserted);
+        updateMap(connectorMessage.getResponseMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.RESPONSE_MAP, inserted);
     }
 
-    private void updateMap(MapContent mapContent, String channelId, long messageId, int metaDataId, ContentType contentType) {
+    private void updateMap(MapContent mapContent, String channelId, long messageId, int metaDataId, ContentType contentType, boolean inserted) {
         if (mapContent != null) {
             boolean encrypted = mapContent.isEncrypted();
             boolean persisted = mapContent.isPersisted();
@@ -809,30 +872,51 @@ public class JdbcDao implements DonkeyDao {
             } else {
                 Map<String, Object> map = mapContent.getMap();
                 if (MapUtils.isNotEmpty(map)) {
-                    content = MapUtil.serializeMap(serializer, map);
+                    content = binaryMaps ? MapUtil.serializeMapBinary(serializer, map) : MapUtil.serializeMap(serializer, map);
                 }
             }
 
             if (content != null) {
                 if (persisted) {
-                    storeContent(channelId, messageId, metaDataId, contentType, content, null, encrypted);
+                    // Maps are updated after every connector stage, but most stages leave them untouched
+                    if (encrypted || inserted || isMapChanged(mapContent, content)) {
+                        storeContent(channelId, messageId, metaDataId, contentType, content, null, encrypted);
+                    }
                 } else {
                     insertContent(channelId, messageId, metaDataId, contentType, content, null, encrypted);
                     mapContent.setPersisted(true);
+                    insertedMapContent.add(mapContent);
+                }
+
+                if (!encrypted) {
+                    uncommittedMapContent.put(mapContent, content);
                 }
             } else if (persisted) {
                 deleteMessageContentByMetaDataIdAndContentType(channelId, messageId, metaDataId, contentType);
+                uncommittedMapContent.put(mapContent, null);
             }
         }
     }
 
+    /*
+     * Content written earlier in the current transaction isn't recorded on the map content until
+     * the transaction commits, so it has to be compared separately.
+     */
+    private boolean isMapChanged(MapContent mapContent, String content) {
+        if (uncommittedMapContent.containsKey(mapContent)) {
+            return !StringUtils.equals(uncommittedMapContent.get(mapContent), content);
+        }
+
+        return mapContent.isChanged(content);
+    }
+
     @Override
     public void updateSourceMap(ConnectorMessage connectorMessage) {
         // Only insert the source map content for the source connector message
         if (connectorMessage.getMetaDataId() == 0) {
             logger.debug(connectorMessage.getChannelId() + "/" + connectorMessage.getMessageId() + "/" + connectorMessage.getMetaDataId() + ": updating source map");
 
-            updateMap(connectorMessage.getSourceMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.SOURCE_MAP);
+            updateMap(connectorMessage.getSourceMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.SOURCE_MAP, false);
         }
     }
 
@@ -840,7 +924,7 @@ public class JdbcDao implements DonkeyDao {
     public void updateResponseMap(ConnectorMessage connectorMessage) {
         logger.debug(connectorMessage.getChannelId() + "/" + connectorMessage.getMessageId() + "/" + connectorMessage.getMetaDataId() + ": updating response map");
 
-        updateMap(connectorMessage.getResponseMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.RESPONSE_MAP);
+        updateMap(connectorMessage.getResponseMapContent(), connectorMessage.getChannelId(), connectorMessage.getMessageId(), connectorMessage.getMetaDataId(), ContentType.RESPONSE_MAP, false);
     }
 
     @Override
@@ -909,6 +993,18 @@ public class JdbcDao implements DonkeyDao {
             prepareStatement("dropMessageMetadataTable", channelId).executeUpdate();
             prepareStatement("dropMessageSequence", channelId).executeUpdate();
             prepareStatement("dropMessageTable", channelId).executeUpdate();
+
+            long localChannelId = getLocalChannelId(channelId);
+
+            if (isPartitioned(localChannelId)) {
+                prepareStatement("dropMessagePartitionTable", channelId).executeUpdate();
+
+                if (querySource.queryExists("dropMessagePartitionScheme")) {
+                    prepareStatement("dropMessagePartitionScheme", channelId).executeUpdate();
+                    prepareStatement("dropMessagePartitionFunction", channelId).executeUpdate();
+                }
+            }
+
             prepareStatement("deleteChannel", channelId).executeUpdate();
 
             removedChannelIds.add(channelId);
@@ -1115,6 +1211,57 @@ public class JdbcDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<Long> getNextMessageIds(String channelId, int count) {
+        Statement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", getLocalChannelId(channelId));
+            values.put("blockSize", count);
+
+            List<Long> ids = new ArrayList<Long>(count);
+            statement = connection.createStatement();
+
+            if (querySource.queryExists("incrementMessageIdBlock")) {
+                /*
+                 * Increment the sequence table first so that the row stays locked until the block
+                 * is committed. The new value is one past the last ID in the reserved block.
+                 */
+                statement.executeUpdate(querySource.getQuery("incrementMessageIdBlock", values));
+                resultSet = statement.executeQuery(querySource.getQuery("getNextMessageId", values));
+                resultSet.next();
+                long nextId = resultSet.getLong(1);
+
+                for (long id = nextId - count; id < nextId; id++) {
+                    ids.add(id);
+                }
+            } else if (querySource.queryExists("getNextMessageIdBlock")) {
+                // Sequences may interleave values with other servers, so the IDs aren't necessarily contiguous
+                resultSet = statement.executeQuery(querySource.getQuery("getNextMessageIdBlock", values));
+
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            } else {
+                close(statement);
+                statement = null;
+
+                for (int i = 0; i < count; i++) {
+                    ids.add(getNextMessageId(channelId));
+                }
+            }
+
+            return ids;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
     @Override
     public List<Attachment> getMessageAttachment(String channelId, long messageId) {
         ResultSet resultSet = null;
@@ -1419,6 +1566,141 @@ public class JdbcDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, long minMessageId, long maxMessageId, int limit) {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", getLocalChannelId(channelId));
+
+            statement = connection.prepareStatement(querySource.getQuery("getUnfinishedConnectorMessagesFromMessageId", values));
+            statement.setMaxRows(limit);
+            statement.setInt(1, metaDataId);
+            statement.setString(2, serverId);
+            statement.setLong(3, minMessageId);
+            statement.setLong(4, maxMessageId);
+            resultSet = statement.executeQuery();
+
+            List<ConnectorMessage> connectorMessages = new ArrayList<ConnectorMessage>();
+
+            while (resultSet.next()) {
+                connectorMessages.add(getConnectorMessageFromResultSet(channelId, resultSet, false, false));
+            }
+
+            close(resultSet);
+            close(statement);
+
+            loadConnectorMessages(channelId, connectorMessages);
+
+            return connectorMessages;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
+    @Override
+    public List<Message> getUnfinishedMessages(String channelId, String serverId, long minMessageId, long maxMessageId, int limit) {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", getLocalChannelId(channelId));
+
+            statement = connection.prepareStatement(querySource.getQuery("getUnfinishedMessagesFromMessageId", values));
+            statement.setMaxRows(limit);
+            statement.setString(1, serverId);
+            statement.setLong(2, minMessageId);
+            statement.setLong(3, maxMessageId);
+            resultSet = statement.executeQuery();
+
+            Map<Long, Message> messageMap = new HashMap<Long, Message>();
+            List<Message> messageList = new ArrayList<Message>();
+
+            while (resultSet.next()) {
+                Message message = getMessageFromResultSet(channelId, resultSet);
+                messageMap.put(message.getMessageId(), message);
+                messageList.add(message);
+            }
+
+            close(resultSet);
+            close(statement);
+
+            if (messageList.isEmpty()) {
+                return messageList;
+            }
+
+            values.put("messageIds", StringUtils.join(messageMap.keySet(), ','));
+            statement = connection.prepareStatement(querySource.getQuery("getConnectorMessagesByMessageIds", values));
+            resultSet = statement.executeQuery();
+
+            List<ConnectorMessage> connectorMessages = new ArrayList<ConnectorMessage>();
+
+            while (resultSet.next()) {
+                ConnectorMessage connectorMessage = getConnectorMessageFromResultSet(channelId, resultSet, false, false);
+                messageMap.get(connectorMessage.getMessageId()).getConnectorMessages().put(connectorMessage.getMetaDataId(), connectorMessage);
+                connectorMessages.add(connectorMessage);
+            }
+
+            close(resultSet);
+            close(statement);
+
+            loadConnectorMessages(channelId, connectorMessages);
+
+            return messageList;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getConnectorMessageMetaDataIds(String channelId, Collection<Long> messageIds) {
+        Map<Long, Set<Integer>> metaDataIds = new HashMap<Long, Set<Integer>>();
+
+        if (messageIds.isEmpty()) {
+            return metaDataIds;
+        }
+
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", getLocalChannelId(channelId));
+            values.put("messageIds", StringUtils.join(messageIds, ','));
+
+            statement = connection.prepareStatement(querySource.getQuery("getConnectorMessageMetaDataIds", values));
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                long messageId = resultSet.getLong("message_id");
+                Set<Integer> messageMetaDataIds = metaDataIds.get(messageId);
+
+                if (messageMetaDataIds == null) {
+                    messageMetaDataIds = new HashSet<Integer>();
+                    metaDataIds.put(messageId, messageMetaDataIds);
+                }
+
+                messageMetaDataIds.add(resultSet.getInt("id"));
+            }
+
+            return metaDataIds;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
     @Override
     public int getConnectorMessageCount(String channelId, String serverId, int metaDataId, Status status) {
         ResultSet resultSet = null;
@@ -1497,6 +1779,18 @@ public class JdbcDao implements DonkeyDao {
             Map<String, Object> values = new HashMap<String, Object>();
             values.put("localChannelId", localChannelId);
 
+            boolean partitioned = partitionSize > 0 && querySource.queryExists("addMessagePartition");
+
+            if (partitioned) {
+                values.put("messageTablePartition", querySource.getQuery("messageTablePartition", values));
+                values.put("messageChildTablePartition", querySource.getQuery("messageChildTablePartition", values));
+                createTable("createMessagePartitionFunction", values);
+                createTable("createMessagePartitionScheme", values);
+            } else {
+                values.put("messageTablePartition", "");
+                values.put("messageChildTablePartition", "");
+            }
+
             createTable("createMessageTable", values);
             createTable("createConnectorMessageTable", values);
             createTable("createMessageContentTable", values);
@@ -1504,6 +1798,11 @@ public class JdbcDao implements DonkeyDao {
             createTable("createMessageAttachmentTable", values);
             createTable("createMessageStatisticsTable", values);
             createTable("createMessageSequence", values);
+
+            if (partitioned) {
+                createTable("createMessagePartitionTable", values);
+                addMessagePartitions(localChannelId, 0);
+            }
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
         } finally {
@@ -1540,6 +1839,241 @@ public class JdbcDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public long addMessagePartitions(String channelId, long messageId) {
+        long localChannelId = getLocalChannelId(channelId);
+
+        if (!isPartitioned(localChannelId)) {
+            return Long.MAX_VALUE;
+        }
+
+        return addMessagePartitions(localChannelId, messageId);
+    }
+
+    /**
+     * Adds partitions until there is at least one partition after the one containing the given
+     * message ID, and returns the first message ID of the last partition.
+     */
+    private long addMessagePartitions(long localChannelId, long messageId) {
+        TreeMap<Long, Long> partitions = getMessagePartitions(localChannelId);
+        TreeMap<Long, Long> newPartitions;
+
+        try {
+            newPartitions = getMessagePartitionsToAdd(partitions, messageId, partitionSize);
+        } catch (IllegalArgumentException e) {
+            throw new DonkeyDaoException("Unable to add message partitions for local channel id " + localChannelId + ": " + e.getMessage());
+        }
+
+        for (Entry<Long, Long> partition : newPartitions.entrySet()) {
+            addMessagePartition(localChannelId, partition.getKey(), partition.getValue());
+        }
+
+        return newPartitions.isEmpty() ? partitions.lastKey() : newPartitions.lastKey();
+    }
+
+    /**
+     * Returns the partitions that have to be added after the given ones so there is at least one
+     * partition after the one containing the given message ID. Partitions map their first message
+     * ID to the first message ID after them. If the partition size is 0, the size of the last
+     * existing partition is used instead, or an IllegalArgumentException is thrown if there are no
+     * existing partitions.
+     */
+    public static TreeMap<Long, Long> getMessagePartitionsToAdd(TreeMap<Long, Long> partitions, long messageId, long partitionSize) {
+        TreeMap<Long, Long> newPartitions = new TreeMap<Long, Long>();
+        long size = partitionSize;
+        long start;
+        long end;
+
+        if (partitions.isEmpty()) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("there are no existing partitions and the partition size is " + size);
+            }
+
+            start = (messageId / size) * size;
+            end = start + size;
+            newPartitions.put(start, end);
+        } else {
+            start = partitions.lastKey();
+            end = partitions.get(start);
+
+            // Keep the existing partition size if partitioning has since been disabled
+            if (size <= 0) {
+                size = end - start;
+            }
+        }
+
+        while (start <= messageId) {
+            start = end;
+            end = start + size;
+            newPartitions.put(start, end);
+        }
+
+        return newPartitions;
+    }
+
+    private void addMessagePartition(long localChannelId, long partitionId, long endId) {
+        logger.debug("adding message partition " + partitionId + " for local channel id " + localChannelId);
+        Statement statement = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", localChannelId);
+            values.put("partitionId", partitionId);
+            values.put("endId", endId);
+
+            statement = connection.createStatement();
+            statement.executeUpdate(querySource.getQuery("addMessagePartition", values));
+
+            PreparedStatement insertStatement = statementSource.getPreparedStatement("insertMessagePartition", localChannelId);
+            insertStatement.setLong(1, partitionId);
+            insertStatement.setLong(2, endId);
+            insertStatement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            insertStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DonkeyDaoException("Failed to add message partition", e);
+        } finally {
+            close(statement);
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getMessagePartitions(String channelId) {
+        long localChannelId = getLocalChannelId(channelId);
+
+        if (!isPartitioned(localChannelId)) {
+            return new TreeMap<Long, Long>();
+        }
+
+        return getMessagePartitions(localChannelId);
+    }
+
+    private TreeMap<Long, Long> getMessagePartitions(long localChannelId) {
+        TreeMap<Long, Long> partitions = new TreeMap<Long, Long>();
+        ResultSet resultSet = null;
+
+        try {
+            resultSet = statementSource.getPreparedStatement("getMessagePartitions", localChannelId).executeQuery();
+
+            while (resultSet.next()) {
+                partitions.put(resultSet.getLong(1), resultSet.getLong(2));
+            }
+
+            return partitions;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+        }
+    }
+
+    @Override
+    public void removeMessagePartition(String channelId, long partitionId) {
+        long localChannelId = getLocalChannelId(channelId);
+        Long endId = getMessagePartitions(channelId).get(partitionId);
+
+        if (endId == null) {
+            throw new DonkeyDaoException("Message partition " + partitionId + " does not exist for channel " + channelId);
+        }
+
+        logger.debug(channelId + ": removing message partition " + partitionId);
+        Statement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("localChannelId", localChannelId);
+            values.put("partitionId", partitionId);
+            values.put("endId", endId);
+
+            if (querySource.queryExists("getMessagePartitionNumber")) {
+                PreparedStatement numberStatement = prepareStatement("getMessagePartitionNumber", channelId);
+                numberStatement.setLong(1, partitionId);
+                resultSet = numberStatement.executeQuery();
+                resultSet.next();
+                values.put("partitionNumber", resultSet.getInt(1));
+            }
+
+            statement = connection.createStatement();
+            statement.executeUpdate(querySource.getQuery("removeMessagePartition", values));
+
+            PreparedStatement deleteStatement = prepareStatement("deleteMessagePartition", channelId);
+            deleteStatement.setLong(1, partitionId);
+            deleteStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DonkeyDaoException("Failed to remove message partition", e);
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
+    @Override
+    public long getMessageCount(String channelId, long minMessageId, long maxMessageId) {
+        ResultSet resultSet = null;
+
+        try {
+            PreparedStatement statement = prepareStatement("getMessageCountByRange", channelId);
+            statement.setLong(1, minMessageId);
+            statement.setLong(2, maxMessageId);
+            resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+        }
+    }
+
+    @Override
+    public long getMinMessageIdSince(String channelId, Calendar date) {
+        long localChannelId = getLocalChannelId(channelId);
+
+        if (!isPartitioned(localChannelId)) {
+            return 0;
+        }
+
+        List<Long> partitionIds = new ArrayList<Long>();
+        List<Long> createdTimes = new ArrayList<Long>();
+        ResultSet resultSet = null;
+
+        try {
+            resultSet = prepareStatement("getMessagePartitions", channelId).executeQuery();
+
+            while (resultSet.next()) {
+                partitionIds.add(resultSet.getLong(1));
+                createdTimes.add(resultSet.getTimestamp(3).getTime());
+            }
+        } catch (SQLException e) {
+            throw new DonkeyDaoException(e);
+        } finally {
+            close(resultSet);
+        }
+
+        return getMinMessageIdSince(partitionIds, createdTimes, date.getTimeInMillis());
+    }
+
+    /**
+     * Returns the first message ID of the earliest partition that may contain messages received
+     * at or after the given time, given the partitions in order and the times they were created.
+     */
+    public static long getMinMessageIdSince(List<Long> partitionIds, List<Long> createdTimes, long time) {
+        /*
+         * A partition is added once IDs from the partition before it start being handed out, so
+         * every message in partition i was received before partition i + 2 was created.
+         */
+        for (int i = 0; i < partitionIds.size(); i++) {
+            if (i + 2 >= partitionIds.size() || createdTimes.get(i + 2) > time) {
+                return partitionIds.get(i);
+            }
+        }
+
+        return 0;
+    }
+
+    private boolean isPartitioned(long localChannelId) {
+        return querySource.queryExists("addMessagePartition") && tableExists("d_mp" + localChannelId);
+    }
+
     @Override
     public void resetStatistics(String channelId, Integer metaDataId, Set<Status> statuses) {
         logger.debug(channelId + ": resetting statistics" + (metaDataId == null ? "" : (" for metadata id " + metaDataId)));
@@ -1693,7 +2227,9 @@ public class JdbcDao implements DonkeyDao {
 
     @Override
     public void commit(boolean durable) {
-        addChannelStatistics(transactionStats);
+        if (statisticsFlusher == null) {
+            addChannelStatistics(transactionStats);
+        }
 
         logger.debug("Committing transaction" + (durable ? "" : " asynchronously"));
 
@@ -1714,11 +2250,24 @@ public class JdbcDao implements DonkeyDao {
             throw new DonkeyDaoException(e);
         }
 
+        insertedErrorContent.clear();
+        insertedMapContent.clear();
+
+        for (Entry<MapContent, String> entry : uncommittedMapContent.entrySet()) {
+            entry.getKey().setPersistedContent(entry.getValue());
+        }
+
+        uncommittedMapContent.clear();
+
         if (transactionAlteredChannels) {
             localChannelIds = null;
             transactionAlteredChannels = false;
         }
 
+        if (statisticsFlusher != null) {
+            statisticsFlusher.update(transactionStats);
+        }
+
         if (currentStats != null) {
             // reset stats for any connectors that need to be reset
             for (Entry<String, Map<Integer, Set<Status>>> entry : resetCurrentStats.entrySet()) {
@@ -1783,9 +2332,30 @@ public class JdbcDao implements DonkeyDao {
             transactionStats.getStats().clear();
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
+        } finally {
+            resetInsertedContent();
         }
     }
 
+    /*
+     * Content that was inserted in a transaction that didn't commit is not in the database, so it
+     * has to be inserted again if the same message is written in a new transaction. Map content
+     * keeps the digest of what was last committed, so it's compared against that instead.
+     */
+    private void resetInsertedContent() {
+        for (ErrorContent errorContent : insertedErrorContent) {
+            errorContent.setPersisted(false);
+        }
+
+        for (MapContent mapContent : insertedMapContent) {
+            mapContent.setPersisted(false);
+        }
+
+        insertedErrorContent.clear();
+        insertedMapContent.clear();
+        uncommittedMapContent.clear();
+    }
+
     @Override
     public void close() {
         logger.debug("Closing connection");
@@ -1797,6 +2367,8 @@ public class JdbcDao implements DonkeyDao {
             }
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
+        } finally {
+            resetInsertedContent();
         }
     }
 
@@ -1881,6 +2453,10 @@ public class JdbcDao implements DonkeyDao {
     }
 
     private ConnectorMessage getConnectorMessageFromResultSet(String channelId, ResultSet resultSet, boolean includeContent) {
+        return getConnectorMessageFromResultSet(channelId, resultSet, includeContent, true);
+    }
+
+    private ConnectorMessage getConnectorMessageFromResultSet(String channelId, ResultSet resultSet, boolean includeContent, boolean includeMetaDataMap) {
         try {
             ConnectorMessage connectorMessage = new ConnectorMessage();
             long messageId = resultSet.getLong("message_id");
@@ -1926,7 +2502,10 @@ public class JdbcDao implements DonkeyDao {
                 loadMessageContent(connectorMessage, getMessageContent(channelId, messageId, metaDataId));
             }
 
-            connectorMessage.setMetaDataMap(getMetaDataMap(channelId, messageId, metaDataId));
+            if (includeMetaDataMap) {
+                connectorMessage.setMetaDataMap(getMetaDataMap(channelId, messageId, metaDataId));
+            }
+
             return connectorMessage;
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
@@ -1948,17 +2527,7 @@ public class JdbcDao implements DonkeyDao {
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                String content = resultSet.getString("content");
-                ContentType contentType = ContentType.fromCode(resultSet.getInt("content_type"));
-                String dataType = resultSet.getString("data_type");
-                boolean encrypted = resultSet.getBoolean("is_encrypted");
-
-                if ((decryptData || alwaysDecrypt.contains(contentType)) && encrypted && encryptor != null) {
-                    content = encryptor.decrypt(content);
-                    encrypted = false;
-                }
-
-                messageContents.add(new MessageContent(channelId, messageId, metaDataId, contentType, content, dataType, encrypted));
+                messageContents.add(getMessageContentFromResultSet(channelId, messageId, metaDataId, resultSet));
             }
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
@@ -1983,21 +2552,7 @@ public class JdbcDao implements DonkeyDao {
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                String content = resultSet.getString("content");
-                ContentType contentType = ContentType.fromCode(resultSet.getInt("content_type"));
-                String dataType = resultSet.getString("data_type");
-                boolean encrypted = resultSet.getBoolean("is_encrypted");
-
-                if ((decryptData || alwaysDecrypt.contains(contentType)) && encrypted && encryptor != null) {
-                    content = encryptor.decrypt(content);
-                    encrypted = false;
-                }
-
-                if (contentType == ContentType.ENCODED) {
-                    contentType = ContentType.RAW;
-                }
-
-                messageContents.add(new MessageContent(channelId, messageId, metaDataId, contentType, content, dataType, encrypted));
+                messageContents.add(getDestinationMessageContent(getMessageContentFromResultSet(channelId, messageId, 0, resultSet), metaDataId));
             }
         } catch (SQLException e) {
             throw new DonkeyDaoException(e);
@@ -2008,6 +2563,144 @@ public class JdbcDao implements DonkeyDao {
         return messageContents;
     }
 
+    private MessageContent getMessageContentFromResultSet(String channelId, long messageId, int metaDataId, ResultSet resultSet) throws SQLException {
+        String content = resultSet.getString("content");
+        ContentType contentType = ContentType.fromCode(resultSet.getInt("content_type"));
+        String dataType = resultSet.getString("data_type");
+        boolean encrypted = resultSet.getBoolean("is_encrypted");
+
+        if ((decryptData || alwaysDecrypt.contains(contentType)) && encrypted && encryptor != null) {
+            content = encryptor.decrypt(content);
+            encrypted = false;
+        }
+
+        if (!encrypted) {
+            content = CompressionUtil.decompress(content);
+        }
+
+        return new MessageContent(channelId, messageId, metaDataId, contentType, content, dataType, encrypted);
+    }
+
+    /**
+     * Convert content stored with the source connector into the content a destination connector
+     * uses. The source's encoded content is the destination's raw content.
+     */
+    private MessageContent getDestinationMessageContent(MessageContent sourceContent, int metaDataId) {
+        ContentType contentType = sourceContent.getContentType();
+
+        if (contentType == ContentType.ENCODED) {
+            contentType = ContentType.RAW;
+        }
+
+        return new MessageContent(sourceContent.getChannelId(), sourceContent.getMessageId(), metaDataId, contentType, sourceContent.getContent(), sourceContent.getDataType(), sourceContent.isEncrypted());
+    }
+
+    /**
+     * Load the content and metadata of many connector messages at once. Rather than running
+     * several queries for each connector message, all of the content is retrieved with one query
+     * and all of the metadata with another.
+     */
+    private void loadConnectorMessages(String channelId, List<ConnectorMessage> connectorMessages) throws SQLException {
+        if (connectorMessages.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Map<Integer, ConnectorMessage>> connectorMessageMap = new HashMap<Long, Map<Integer, ConnectorMessage>>();
+        Set<Integer> metaDataIds = new HashSet<Integer>();
+
+        for (ConnectorMessage connectorMessage : connectorMessages) {
+            Map<Integer, ConnectorMessage> messageConnectorMessages = connectorMessageMap.get(connectorMessage.getMessageId());
+
+            if (messageConnectorMessages == null) {
+                messageConnectorMessages = new HashMap<Integer, ConnectorMessage>();
+                connectorMessageMap.put(connectorMessage.getMessageId(), messageConnectorMessages);
+            }
+
+            messageConnectorMessages.put(connectorMessage.getMetaDataId(), connectorMessage);
+            metaDataIds.add(connectorMessage.getMetaDataId());
+            connectorMessage.setMetaDataMap(new HashMap<String, Object>());
+        }
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("localChannelId", getLocalChannelId(channelId));
+        values.put("messageIds", StringUtils.join(connectorMessageMap.keySet(), ','));
+        values.put("metaDataIds", StringUtils.join(metaDataIds, ','));
+
+        Map<Long, List<MessageContent>> sourceContents = new HashMap<Long, List<MessageContent>>();
+        Map<ConnectorMessage, List<MessageContent>> connectorContents = new HashMap<ConnectorMessage, List<MessageContent>>();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = connection.prepareStatement(querySource.getQuery("getMessageContentByMessageIds", values));
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                long messageId = resultSet.getLong("message_id");
+                int metaDataId = resultSet.getInt("metadata_id");
+                MessageContent messageContent = getMessageContentFromResultSet(channelId, messageId, metaDataId, resultSet);
+                ConnectorMessage connectorMessage = connectorMessageMap.get(messageId).get(metaDataId);
+
+                if (connectorMessage != null) {
+                    List<MessageContent> messageContents = connectorContents.get(connectorMessage);
+
+                    if (messageContents == null) {
+                        messageContents = new ArrayList<MessageContent>();
+                        connectorContents.put(connectorMessage, messageContents);
+                    }
+
+                    messageContents.add(messageContent);
+                }
+
+                if (metaDataId == 0 && (messageContent.getContentType() == ContentType.ENCODED || messageContent.getContentType() == ContentType.SOURCE_MAP)) {
+                    List<MessageContent> messageContents = sourceContents.get(messageId);
+
+                    if (messageContents == null) {
+                        messageContents = new ArrayList<MessageContent>();
+                        sourceContents.put(messageId, messageContents);
+                    }
+
+                    messageContents.add(messageContent);
+                }
+            }
+
+            close(resultSet);
+            close(statement);
+
+            for (ConnectorMessage connectorMessage : connectorMessages) {
+                if (connectorMessage.getMetaDataId() > 0 && sourceContents.containsKey(connectorMessage.getMessageId())) {
+                    // For destination connectors, load any content that is stored on the source connector first
+                    List<MessageContent> messageContents = new ArrayList<MessageContent>();
+
+                    for (MessageContent sourceContent : sourceContents.get(connectorMessage.getMessageId())) {
+                        messageContents.add(getDestinationMessageContent(sourceContent, connectorMessage.getMetaDataId()));
+                    }
+
+                    loadMessageContent(connectorMessage, messageContents);
+                }
+
+                if (connectorContents.containsKey(connectorMessage)) {
+                    loadMessageContent(connectorMessage, connectorContents.get(connectorMessage));
+                }
+            }
+
+            // do not cache this statement since metadata columns may be added/removed
+            statement = connection.prepareStatement(querySource.getQuery("getMetaDataMapsByMessageIds", values));
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                ConnectorMessage connectorMessage = connectorMessageMap.get(resultSet.getLong("message_id")).get(resultSet.getInt("metadata_id"));
+
+                if (connectorMessage != null) {
+                    connectorMessage.setMetaDataMap(getMetaDataMapFromResultSet(resultSet));
+                }
+            }
+        } finally {
+            close(resultSet);
+            close(statement);
+        }
+    }
+
     /**
      * Load message content into the connector message based on the content type
      */
@@ -2063,6 +2756,10 @@ public class JdbcDao implements DonkeyDao {
         }
     }
 
+    private String compress(String content) {
+        return compressData ? CompressionUtil.compress(content) : content;
+    }
+
     private MapContent getMapContentFromMessageContent(MessageContent content) {
         if (content == null) {
             return new MapContent(new HashMap<String, Object>(), false);
@@ -2070,7 +2767,11 @@ public class JdbcDao implements DonkeyDao {
             return new MapContent(new HashMap<String, Object>(), true);
         }
 
-        return new MapContent(MapUtil.deserializeMap(serializer, content.getContent()), true);
+        MapContent mapContent = new MapContent(MapUtil.deserializeMap(serializer, content.getContent()), true);
+        if (!content.isEncrypted()) {
+            mapContent.setPersistedContent(content.getContent());
+        }
+        return mapContent;
     }
 
     private ErrorContent getErrorContentFromMessageContent(MessageContent content) {
@@ -2098,31 +2799,7 @@ public class JdbcDao implements DonkeyDao {
             resultSet = statement.executeQuery();
 
             if (resultSet.next()) {
-                ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-                int columnCount = resultSetMetaData.getColumnCount();
-
-                for (int i = 1; i <= columnCount; i++) {
-                    MetaDataColumnType metaDataColumnType = MetaDataColumnType.fromSqlType(resultSetMetaData.getColumnType(i));
-                    Object value = null;
-
-                    switch (metaDataColumnType) {//@formatter:off
-                        case STRING: value = resultSet.getString(i); break;
-                        case NUMBER: value = resultSet.getBigDecimal(i); break;
-                        case BOOLEAN: value = resultSet.getBoolean(i); break;
-                        case TIMESTAMP:
-                            
-                            Timestamp timestamp = resultSet.getTimestamp(i);
-                            if (timestamp != null) {
-                                value = Calendar.getInstance();
-                                ((Calendar) value).setTimeInMillis(timestamp.getTime());
-                            }
-                            break;
-
-                        default: throw new Exception("Unrecognized MetaDataColumnType");
-                    } //@formatter:on
-
-                    metaDataMap.put(resultSetMetaData.getColumnName(i).toUpperCase(), value);
-                }
+                metaDataMap = getMetaDataMapFromResultSet(resultSet);
             }
 
             return metaDataMap;
@@ -2134,6 +2811,37 @@ public class JdbcDao implements DonkeyDao {
         }
     }
 
+    private Map<String, Object> getMetaDataMapFromResultSet(ResultSet resultSet) throws SQLException {
+        Map<String, Object> metaDataMap = new HashMap<String, Object>();
+        ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
+        int columnCount = resultSetMetaData.getColumnCount();
+
+        for (int i = 1; i <= columnCount; i++) {
+            MetaDataColumnType metaDataColumnType = MetaDataColumnType.fromSqlType(resultSetMetaData.getColumnType(i));
+            Object value = null;
+
+            switch (metaDataColumnType) {//@formatter:off
+                case STRING: value = resultSet.getString(i); break;
+                case NUMBER: value = resultSet.getBigDecimal(i); break;
+                case BOOLEAN: value = resultSet.getBoolean(i); break;
+                case TIMESTAMP:
+                    
+                    Timestamp timestamp = resultSet.getTimestamp(i);
+                    if (timestamp != null) {
+                        value = Calendar.getInstance();
+                        ((Calendar) value).setTimeInMillis(timestamp.getTime());
+                    }
+                    break;
+
+                default: throw new DonkeyDaoException("Unrecognized MetaDataColumnType");
+            } //@formatter:on
+
+            metaDataMap.put(resultSetMetaData.getColumnName(i).toUpperCase(), value);
+        }
+
+        return metaDataMap;
+    }
+
     /**
      * When using Derby, we manually cascade the deletion of records from dependent tables rather
      * than relying on ON DELETE CASCADE behavior. Derby uses a table-level lock when cascading
@@ -20,6 +20,7 @@ import com.mirth.connect.donkey.server.Donkey;
 import com.mirth.connect.donkey.server.controllers.ChannelController;
 import com.mirth.connect.donkey.server.data.DonkeyDaoException;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+import com.mirth.connect.donkey.server.data.StatisticsFlusher;
 import com.mirth.connect.donkey.util.Serializer;
 
 public class JdbcDaoFactory implements DonkeyDaoFactory {
@@ -49,8 +50,11 @@ public class JdbcDaoFactory implements DonkeyDaoFactory {
     private ConnectionPool connectionPool;
     private QuerySource querySource;
     private Serializer serializer;
+    private StatisticsFlusher statisticsFlusher;
     private boolean encryptData = false;
     private boolean decryptData = true;
+    private long partitionSize;
+    private boolean binaryMaps;
     private Map<Connection, PreparedStatementSource> statementSources = new ConcurrentHashMap<Connection, PreparedStatementSource>();
     private Logger logger = Logger.getLogger(getClass());
 
@@ -91,6 +95,30 @@ public class JdbcDaoFactory implements DonkeyDaoFactory {
         this.serializer = serializer;
     }
 
+    public StatisticsFlusher getStatisticsFlusher() {
+        return statisticsFlusher;
+    }
+
+    public void setStatisticsFlusher(StatisticsFlusher statisticsFlusher) {
+        this.statisticsFlusher = statisticsFlusher;
+    }
+
+    public long getPartitionSize() {
+        return partitionSize;
+    }
+
+    public void setPartitionSize(long partitionSize) {
+        this.partitionSize = partitionSize;
+    }
+
+    public boolean isBinaryMaps() {
+        return binaryMaps;
+    }
+
+    public void setBinaryMaps(boolean binaryMaps) {
+        this.binaryMaps = binaryMaps;
+    }
+
     public Map<Connection, PreparedStatementSource> getStatementSources() {
         return statementSources;
     }
@@ -141,6 +169,10 @@ public class JdbcDaoFactory implements DonkeyDaoFactory {
             }
         }
 
-        return new JdbcDao(donkey, connection, querySource, statementSource, serializer, encryptData, decryptData, channelController.getStatistics(), channelController.getTotalStatistics(), statsServerId);
+        JdbcDao dao = new JdbcDao(donkey, connection, querySource, statementSource, serializer, encryptData, decryptData, channelController.getStatistics(), channelController.getTotalStatistics(), statsServerId);
+        dao.setStatisticsFlusher(statisticsFlusher);
+        dao.setPartitionSize(partitionSize);
+        dao.setBinaryMaps(binaryMaps);
+        return dao;
     }
 }
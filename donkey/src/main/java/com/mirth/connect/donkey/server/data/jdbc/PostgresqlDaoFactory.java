@@ -20,17 +20,41 @@ public class PostgresqlDaoFactory extends JdbcDaoFactory {
     private final static String COMMAND = "SET LOCAL synchronous_commit TO OFF; COMMIT;";
     private final static int REQUIRED_MAJOR_VERSION = 8;
     private final static int REQUIRED_MINOR_VERSION = 3;
+    private final static int PARTITIONING_REQUIRED_MAJOR_VERSION = 12;
 
     private Boolean supported;
+    private Boolean partitioningSupported;
     private Logger logger = Logger.getLogger(this.getClass());
 
     @Override
     public JdbcDao getDao() {
         JdbcDao dao = super.getDao();
         dao.setAsyncCommitCommand(getAsyncCommitCommand(dao));
+
+        if (getPartitionSize() > 0 && !isPartitioningSupported(dao)) {
+            dao.setPartitionSize(0);
+        }
+
         return dao;
     }
 
+    private boolean isPartitioningSupported(JdbcDao dao) {
+        if (partitioningSupported == null) {
+            try {
+                // Foreign keys that reference partitioned tables require PostgreSQL 12
+                partitioningSupported = dao.getConnection().getMetaData().getDatabaseMajorVersion() >= PARTITIONING_REQUIRED_MAJOR_VERSION;
+
+                if (!partitioningSupported) {
+                    logger.warn("Partitioned message tables require PostgreSQL " + PARTITIONING_REQUIRED_MAJOR_VERSION + " or later, new channels will not be partitioned");
+                }
+            } catch (SQLException e) {
+                throw new DonkeyDaoException(e);
+            }
+        }
+
+        return partitioningSupported;
+    }
+
     private String getAsyncCommitCommand(JdbcDao dao) {
         if (supported == null) {
             try {
@@ -10,6 +10,9 @@
 package com.mirth.connect.donkey.server.data.passthru;
 
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +67,9 @@ public class PassthruDao implements DonkeyDao {
     @Override
     public void setDecryptData(boolean decryptData) {}
 
+    @Override
+    public void setCompressData(boolean compressData) {}
+
     @Override
     public void commit() {
         commit(false);
@@ -248,11 +254,39 @@ public class PassthruDao implements DonkeyDao {
         return 1L;
     }
 
+    @Override
+    public long addMessagePartitions(String channelId, long messageId) {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public Map<Long, Long> getMessagePartitions(String channelId) {
+        return new HashMap<Long, Long>();
+    }
+
+    @Override
+    public void removeMessagePartition(String channelId, long partitionId) {}
+
+    @Override
+    public long getMessageCount(String channelId, long minMessageId, long maxMessageId) {
+        return 0;
+    }
+
+    @Override
+    public long getMinMessageIdSince(String channelId, Calendar date) {
+        return 0;
+    }
+
     @Override
     public long getNextMessageId(String channelId) {
         return 1L;
     }
 
+    @Override
+    public List<Long> getNextMessageIds(String channelId, int count) {
+        return new ArrayList<Long>(Collections.nCopies(count, 1L));
+    }
+
     @Override
     public List<Attachment> getMessageAttachment(String channelId, long messageId) {
         return new ArrayList<Attachment>();
@@ -283,6 +317,21 @@ public class PassthruDao implements DonkeyDao {
         return new ArrayList<Message>();
     }
 
+    @Override
+    public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, long minMessageId, long maxMessageId, int limit) {
+        return new ArrayList<ConnectorMessage>();
+    }
+
+    @Override
+    public List<Message> getUnfinishedMessages(String channelId, String serverId, long minMessageId, long maxMessageId, int limit) {
+        return new ArrayList<Message>();
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getConnectorMessageMetaDataIds(String channelId, Collection<Long> messageIds) {
+        return new HashMap<Long, Set<Integer>>();
+    }
+
     @Override
     public int getConnectorMessageCount(String channelId, String serverId, int metaDataId, Status status) {
         return 0;
@@ -9,6 +9,8 @@
 
 package com.mirth.connect.donkey.server.data.timed;
 
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,6 +60,11 @@ public class TimedDao implements DonkeyDao {
         dao.setDecryptData(decryptData);
     }
 
+    @Override
+    public void setCompressData(boolean compressData) {
+        dao.setCompressData(compressData);
+    }
+
     @Override
     public void commit() {
         dao.commit();
@@ -457,6 +464,61 @@ public class TimedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public long addMessagePartitions(String channelId, long messageId) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.addMessagePartitions(channelId, messageId);
+        } finally {
+            timer.log("addMessagePartitions", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getMessagePartitions(String channelId) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getMessagePartitions(channelId);
+        } finally {
+            timer.log("getMessagePartitions", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public void removeMessagePartition(String channelId, long partitionId) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            dao.removeMessagePartition(channelId, partitionId);
+        } finally {
+            timer.log("removeMessagePartition", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public long getMessageCount(String channelId, long minMessageId, long maxMessageId) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getMessageCount(channelId, minMessageId, maxMessageId);
+        } finally {
+            timer.log("getMessageCount", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public long getMinMessageIdSince(String channelId, Calendar date) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getMinMessageIdSince(channelId, date);
+        } finally {
+            timer.log("getMinMessageIdSince", System.currentTimeMillis() - startTime);
+        }
+    }
+
     @Override
     public long getNextMessageId(String channelId) {
         long startTime = System.currentTimeMillis();
@@ -468,6 +530,17 @@ public class TimedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<Long> getNextMessageIds(String channelId, int count) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getNextMessageIds(channelId, count);
+        } finally {
+            timer.log("getNextMessageIds", System.currentTimeMillis() - startTime);
+        }
+    }
+
     @Override
     public List<Attachment> getMessageAttachment(String channelId, long messageId) {
         long startTime = System.currentTimeMillis();
@@ -567,6 +640,39 @@ public class TimedDao implements DonkeyDao {
         }
     }
 
+    @Override
+    public List<ConnectorMessage> getUnfinishedConnectorMessages(String channelId, String serverId, int metaDataId, long minMessageId, long maxMessageId, int limit) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getUnfinishedConnectorMessages(channelId, serverId, metaDataId, minMessageId, maxMessageId, limit);
+        } finally {
+            timer.log("getUnfinishedConnectorMessages", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public List<Message> getUnfinishedMessages(String channelId, String serverId, long minMessageId, long maxMessageId, int limit) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getUnfinishedMessages(channelId, serverId, minMessageId, maxMessageId, limit);
+        } finally {
+            timer.log("getUnfinishedMessages", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    @Override
+    public Map<Long, Set<Integer>> getConnectorMessageMetaDataIds(String channelId, Collection<Long> messageIds) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            return dao.getConnectorMessageMetaDataIds(channelId, messageIds);
+        } finally {
+            timer.log("getConnectorMessageMetaDataIds", System.currentTimeMillis() - startTime);
+        }
+    }
+
     @Override
     public List<MetaDataColumn> getMetaDataColumns(String channelId) {
         long startTime = System.currentTimeMillis();
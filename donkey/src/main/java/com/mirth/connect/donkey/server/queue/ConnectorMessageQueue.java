@@ -9,14 +9,25 @@
 
 package com.mirth.connect.donkey.server.queue;
 
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
 
 import com.mirth.connect.donkey.model.event.MessageEventType;
 import com.mirth.connect.donkey.model.message.ConnectorMessage;
@@ -24,21 +35,51 @@ import com.mirth.connect.donkey.server.Donkey;
 import com.mirth.connect.donkey.server.event.EventDispatcher;
 import com.mirth.connect.donkey.server.event.MessageEvent;
 
+/**
+ * A queue of connector messages that is backed by the database, with a buffer of the next messages
+ * held in memory. Polling, acquiring and releasing messages only touch concurrent structures, so
+ * multiple consumer threads don't contend on a single monitor. Operations that need to resync the
+ * buffer with the database (filling, invalidating and updating the size) are serialized with a
+ * separate lock, which callers can also hold with {@link #lock()} while they commit a message and
+ * add it to the queue.
+ *
+ * When queue rotation is disabled and there are more messages in the database than fit in the
+ * buffer, the next page of messages is prefetched on a background thread once the buffer is half
+ * empty, so consumers don't have to wait on the database.
+ */
 public class ConnectorMessageQueue {
-    private Map<Long, ConnectorMessage> buffer = new LinkedHashMap<Long, ConnectorMessage>();
-    private Integer size;
-    private int bufferCapacity = 1000;
-    private boolean reachedCapacity = false;
-    private boolean rotate = false;
-    private boolean invalidated = false;
-    private ConnectorMessageQueueDataSource dataSource;
+    private static final int UNKNOWN_SIZE = -1;
+
+    private static ExecutorService prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Queue Prefetch Thread");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private ConcurrentNavigableMap<Long, ConnectorMessage> buffer = new ConcurrentSkipListMap<Long, ConnectorMessage>();
+    private AtomicInteger size = new AtomicInteger(UNKNOWN_SIZE);
+    private volatile int bufferCapacity = 1000;
+    private volatile boolean reachedCapacity = false;
+    private volatile boolean rotate = false;
+    private volatile boolean invalidated = false;
+    private volatile ConnectorMessageQueueDataSource dataSource;
     private final AtomicBoolean timeoutLock = new AtomicBoolean(false);
+    private final ReentrantLock fillLock = new ReentrantLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean prefetching = new AtomicBoolean(false);
+    private final AtomicInteger reading = new AtomicInteger();
+    private volatile long prefetchMessageId = Long.MAX_VALUE;
 
     private EventDispatcher eventDispatcher = Donkey.getInstance().getEventDispatcher();
     private String channelId;
     private Integer metaDataId;
-    private Set<Long> checkedOut = new HashSet<Long>();
-    private Set<Long> deleted = new HashSet<Long>();
+    private Set<Long> checkedOut = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private Set<Long> deleted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private Set<Long> finished = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private Logger logger = Logger.getLogger(getClass());
 
     public ConnectorMessageQueue() {}
 
@@ -50,12 +91,19 @@ public class ConnectorMessageQueue {
         return bufferCapacity;
     }
 
-    public synchronized void setBufferCapacity(int bufferCapacity) {
-        if (bufferCapacity < this.bufferCapacity) {
-            buffer.clear();
-        }
+    public void setBufferCapacity(int bufferCapacity) {
+        fillLock.lock();
+
+        try {
+            if (bufferCapacity < this.bufferCapacity) {
+                generation.incrementAndGet();
+                buffer.clear();
+            }
 
-        this.bufferCapacity = bufferCapacity;
+            this.bufferCapacity = bufferCapacity;
+        } finally {
+            fillLock.unlock();
+        }
     }
 
     public ConnectorMessageQueueDataSource getDataSource() {
@@ -70,6 +118,20 @@ public class ConnectorMessageQueue {
         invalidate(false, true);
     }
 
+    /**
+     * Acquires the lock that serializes buffer fills. A caller that commits a message to the
+     * database and then adds it to the queue must hold this lock across both steps, otherwise a
+     * concurrent fill could read the message before it's added and it could be handed out twice.
+     * Polling and acquiring messages that are already buffered isn't blocked.
+     */
+    public void lock() {
+        fillLock.lock();
+    }
+
+    public void unlock() {
+        fillLock.unlock();
+    }
+
     public boolean isRotate() {
         return rotate;
     }
@@ -78,101 +140,112 @@ public class ConnectorMessageQueue {
         this.rotate = rotate;
     }
 
-    public synchronized void updateSize() {
-        size = dataSource.getSize();
+    public void updateSize() {
+        fillLock.lock();
+
+        try {
+            size.set(dataSource.getSize());
+        } finally {
+            fillLock.unlock();
+        }
     }
 
-    public synchronized void invalidate(boolean updateSize, boolean reset) {
-        buffer.clear();
+    public void invalidate(boolean updateSize, boolean reset) {
+        fillLock.lock();
 
-        if (reset) {
-            checkedOut.clear();
-            deleted.clear();
-        }
+        try {
+            generation.incrementAndGet();
+            buffer.clear();
+            finished.clear();
 
-        size = null;
-        invalidated = true;
+            if (reset) {
+                checkedOut.clear();
+                deleted.clear();
+            }
+
+            size.set(UNKNOWN_SIZE);
+            invalidated = true;
+            prefetchMessageId = Long.MAX_VALUE;
+        } finally {
+            fillLock.unlock();
+        }
 
         if (updateSize) {
-            eventDispatcher.dispatchEvent(new MessageEvent(channelId, metaDataId, MessageEventType.QUEUED, (long) size(), true));
+            dispatchQueuedEvent(true);
         }
     }
 
-    public synchronized boolean contains(ConnectorMessage connectorMessage) {
+    public boolean contains(ConnectorMessage connectorMessage) {
         return buffer.containsKey(connectorMessage.getMessageId());
     }
 
     public boolean isEmpty() {
-        if (size == null) {
-            updateSize();
-        }
-
-        return (size == 0);
+        return (getKnownSize() == 0);
     }
 
     public int size() {
-        if (size == null) {
-            if (dataSource == null) {
-                return 0;
-            }
-            updateSize();
+        if (dataSource == null) {
+            return 0;
         }
 
-        return size;
+        return getKnownSize();
     }
 
-    public synchronized void add(ConnectorMessage connectorMessage) {
+    public void add(ConnectorMessage connectorMessage) {
+        boolean added = false;
+
         if (invalidated) {
-            /*
-             * If the buffer's size was already updated after an invalidate, then we need to
-             * increment the size by one in order to account for the new message that was just
-             * added, since this method is only ever called after a new message is added to the
-             * database
-             */
-            if (size != null) {
-                size++;
+            fillLock.lock();
+
+            try {
+                if (invalidated) {
+                    /*
+                     * If the buffer's size was already updated after an invalidate, then we need
+                     * to increment the size by one in order to account for the new message that
+                     * was just added, since this method is only ever called after a new message is
+                     * added to the database
+                     */
+                    incrementSize(1);
+
+                    /*
+                     * If the buffer was never filled after an invalidate, we can't just insert the
+                     * message directly into the buffer because there could be messages that
+                     * should process before it. Therefore we'll just fill the buffer to resync it
+                     * with the database. This method can only be called after a new message was
+                     * added to the database
+                     */
+                    fillBuffer();
+                    added = true;
+                }
+            } finally {
+                fillLock.unlock();
             }
+        }
+
+        if (!added) {
+            int currentSize = getKnownSize();
 
-            /*
-             * If the buffer was never filled after an invalidate, we can't just insert the message
-             * directly into the buffer because there could be messages that should process before
-             * it. Therefore we'll just fill the buffer to resync it with the database. This method
-             * can only be called after a new message was added to the database
-             */
-            fillBuffer();
-        } else {
-            if (size == null) {
-                updateSize();
-            }
             if (!reachedCapacity) {
-                if (size < bufferCapacity && !dataSource.isQueueRotated()) {
+                if (currentSize < bufferCapacity && !dataSource.isQueueRotated()) {
                     buffer.put(connectorMessage.getMessageId(), connectorMessage);
 
                     // If there is a poll with timeout waiting, notify that an item was added to the buffer.
-                    if (timeoutLock.get()) {
-                        synchronized (timeoutLock) {
-                            timeoutLock.notifyAll();
-                            timeoutLock.set(false);
-                        }
-                    }
+                    notifyTimeoutLock();
                 } else {
                     reachedCapacity = true;
                 }
             }
-            size++;
+
+            incrementSize(1);
         }
 
-        eventDispatcher.dispatchEvent(new MessageEvent(channelId, metaDataId, MessageEventType.QUEUED, (long) size(), false));
+        dispatchQueuedEvent(false);
     }
 
-    public synchronized ConnectorMessage poll() {
-        if (size == null) {
-            updateSize();
-        }
-
+    public ConnectorMessage poll() {
         ConnectorMessage connectorMessage = null;
 
-        if (size > 0) {
+        if (getKnownSize() > 0) {
             connectorMessage = pollFirstValue();
 
             // if no element was received and there are elements in the database,
@@ -184,12 +257,13 @@ public class ConnectorMessageQueue {
 
             // if an element was found, decrement the overall count
             if (connectorMessage != null) {
-                size--;
+                incrementSize(-1);
             }
         }
 
         if (connectorMessage != null) {
-            eventDispatcher.dispatchEvent(new MessageEvent(channelId, metaDataId, MessageEventType.QUEUED, (long) size(), true));
+            prefetchIfNeeded(connectorMessage);
+            dispatchQueuedEvent(true);
         }
 
         return connectorMessage;
@@ -202,21 +276,12 @@ public class ConnectorMessageQueue {
     }
 
     private ConnectorMessage pollFirstValue() {
-        Iterator<Entry<Long, ConnectorMessage>> iterator = buffer.entrySet().iterator();
-
-        if (iterator.hasNext()) {
-            ConnectorMessage connectorMessage = iterator.next().getValue();
-
-            iterator.remove();
-
-            return connectorMessage;
-        }
-
-        return null;
+        Entry<Long, ConnectorMessage> entry = buffer.pollFirstEntry();
+        return entry != null ? entry.getValue() : null;
     }
 
     private void waitTimeout(long timeout, TimeUnit unit) throws InterruptedException {
-        if ((size == null || size == 0) && timeout > 0) {
+        if (size.get() <= 0 && timeout > 0) {
             synchronized (timeoutLock) {
                 timeoutLock.set(true);
                 timeoutLock.wait(TimeUnit.MILLISECONDS.convert(timeout, unit));
@@ -224,18 +289,25 @@ public class ConnectorMessageQueue {
         }
     }
 
-    public synchronized ConnectorMessage acquire() {
+    private void notifyTimeoutLock() {
+        if (timeoutLock.get()) {
+            synchronized (timeoutLock) {
+                timeoutLock.notifyAll();
+                timeoutLock.set(false);
+            }
+        }
+    }
+
+    public ConnectorMessage acquire() {
         ConnectorMessage connectorMessage = null;
 
         if (size() - checkedOut.size() > 0) {
             boolean bufferFilled = false;
 
-            do {
-                if (size == null) {
-                    updateSize();
-                }
+            while (true) {
+                connectorMessage = null;
 
-                if (size > 0) {
+                if (getKnownSize() > 0) {
                     connectorMessage = pollFirstValue();
 
                     // if no element was received and there are elements in the database,
@@ -251,22 +323,40 @@ public class ConnectorMessageQueue {
                         connectorMessage = pollFirstValue();
                     }
 
-                    // if an element was found, decrement the overall count
+                    // if an element was found, remember it as the last item for queue rotation
                     if (connectorMessage != null && rotate) {
                         dataSource.setLastItem(connectorMessage);
                     }
                 }
-            } while (connectorMessage != null && checkedOut.contains(connectorMessage.getMessageId()));
+
+                if (connectorMessage == null) {
+                    break;
+                }
+
+                /*
+                 * If the buffer was refilled, another thread may already have the same message, or
+                 * it may have been released after the buffer was read from the database.
+                 */
+                Long messageId = connectorMessage.getMessageId();
+
+                if (checkedOut.add(messageId)) {
+                    if (!finished.contains(messageId)) {
+                        break;
+                    }
+
+                    checkedOut.remove(messageId);
+                }
+            }
         }
 
         if (connectorMessage != null) {
-            checkedOut.add(connectorMessage.getMessageId());
+            prefetchIfNeeded(connectorMessage);
         }
 
         return connectorMessage;
     }
 
-    public synchronized boolean isCheckedOut(Long messageId) {
+    public boolean isCheckedOut(Long messageId) {
         boolean isCheckedOut = checkedOut.contains(messageId);
 
         /*
@@ -274,8 +364,7 @@ public class ConnectorMessageQueue {
          * to remove it from the deleted list as well as the buffer so that it does not get acquired
          * again.
          */
-        if (!isCheckedOut && deleted.contains(messageId)) {
-            deleted.remove(messageId);
+        if (!isCheckedOut && deleted.remove(messageId)) {
             buffer.remove(messageId);
             updateSize();
         }
@@ -283,11 +372,11 @@ public class ConnectorMessageQueue {
         return isCheckedOut;
     }
 
-    public synchronized void markAsDeleted(Long messageId) {
+    public void markAsDeleted(Long messageId) {
         deleted.add(messageId);
     }
 
-    public synchronized boolean releaseIfDeleted(ConnectorMessage connectorMessage) {
+    public boolean releaseIfDeleted(ConnectorMessage connectorMessage) {
         if (deleted.contains(connectorMessage.getMessageId())) {
             release(connectorMessage, true);
             return true;
@@ -296,52 +385,232 @@ public class ConnectorMessageQueue {
         return false;
     }
 
-    public synchronized void release(ConnectorMessage connectorMessage, boolean finished) {
+    public void release(ConnectorMessage connectorMessage, boolean finished) {
         if (connectorMessage != null) {
-            if (size != null) {
+            if (size.get() != UNKNOWN_SIZE) {
                 Long messageId = connectorMessage.getMessageId();
 
                 if (finished) {
-                    size--;
+                    incrementSize(-1);
 
-                    if (buffer.containsKey(messageId)) {
-                        buffer.remove(messageId);
+                    buffer.remove(messageId);
+
+                    // Keep track of the message in case a buffer fill is reading it right now
+                    if (reading.get() > 0) {
+                        this.finished.add(messageId);
                     }
                 } else {
-                    if (buffer.containsKey(messageId)) {
-                        buffer.put(messageId, connectorMessage);
-                    }
-
+                    buffer.replace(messageId, connectorMessage);
                     dataSource.rotateQueue();
                 }
             }
 
             if (finished) {
-                eventDispatcher.dispatchEvent(new MessageEvent(channelId, metaDataId, MessageEventType.QUEUED, (long) size(), true));
+                dispatchQueuedEvent(true);
             }
 
             checkedOut.remove(connectorMessage.getMessageId());
         }
     }
 
-    public synchronized void fillBuffer() {
-        if (size == null) {
-            updateSize();
-        }
+    public void fillBuffer() {
+        fillLock.lock();
 
-        invalidated = false;
-        buffer = dataSource.getItems(0, Math.min(bufferCapacity, size));
+        try {
+            generation.incrementAndGet();
 
-        if (buffer.size() == size) {
-            reachedCapacity = false;
+            int currentSize = size.get();
+            if (currentSize == UNKNOWN_SIZE) {
+                currentSize = dataSource.getSize();
+                size.set(currentSize);
+            }
+
+            invalidated = false;
+            Map<Long, ConnectorMessage> items;
+
+            reading.incrementAndGet();
+            Set<Long> finishedBeforeFill = new HashSet<Long>(finished);
+
+            try {
+                items = dataSource.getItems(0, Math.min(bufferCapacity, currentSize));
+
+                buffer.clear();
+                buffer.putAll(items);
+
+                /*
+                 * Remove any messages that were finished while the items were being retrieved.
+                 * Messages that were finished before the retrieval started can't be in this or any
+                 * later result, so they don't need to be tracked any more.
+                 */
+                buffer.keySet().removeAll(finished);
+                finished.removeAll(finishedBeforeFill);
+            } finally {
+                reading.decrementAndGet();
+            }
+
+            if (items.size() == currentSize) {
+                reachedCapacity = false;
+                prefetchMessageId = Long.MAX_VALUE;
+            } else {
+                prefetchMessageId = getPrefetchMessageId(items);
+            }
+        } finally {
+            fillLock.unlock();
         }
 
         // If there is a poll with timeout waiting, notify that an item was added to the buffer.
-        if (buffer.size() > 0 && timeoutLock.get()) {
-            synchronized (timeoutLock) {
-                timeoutLock.notifyAll();
-                timeoutLock.set(false);
+        if (!buffer.isEmpty()) {
+            notifyTimeoutLock();
+        }
+    }
+
+    /*
+     * Returns the size of the queue, retrieving it from the database if it isn't currently known.
+     */
+    private int getKnownSize() {
+        int currentSize = size.get();
+
+        if (currentSize == UNKNOWN_SIZE) {
+            fillLock.lock();
+
+            try {
+                currentSize = size.get();
+
+                if (currentSize == UNKNOWN_SIZE) {
+                    currentSize = dataSource.getSize();
+                    size.set(currentSize);
+                }
+            } finally {
+                fillLock.unlock();
             }
         }
+
+        return currentSize;
+    }
+
+    /*
+     * Adjusts the size by the given amount, unless the size isn't currently known.
+     */
+    private void incrementSize(int delta) {
+        int currentSize;
+
+        do {
+            currentSize = size.get();
+
+            if (currentSize == UNKNOWN_SIZE) {
+                return;
+            }
+        } while (!size.compareAndSet(currentSize, currentSize + delta));
+    }
+
+    /*
+     * Returns the ID of the message halfway through the given items. Once that message is
+     * consumed, the next half of a buffer is prefetched.
+     */
+    private long getPrefetchMessageId(Map<Long, ConnectorMessage> items) {
+        int index = 0;
+
+        for (Long messageId : items.keySet()) {
+            if (index++ >= items.size() / 2) {
+                return messageId;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /*
+     * If there are more messages in the database than in the buffer and the consumers have
+     * reached the prefetch point, load the messages that come after the last buffered message on a
+     * background thread. Prefetching only appends to the buffer, so it's skipped when the queue is
+     * rotating.
+     */
+    private void prefetchIfNeeded(ConnectorMessage connectorMessage) {
+        if (connectorMessage.getMessageId() < prefetchMessageId || rotate || invalidated || !prefetching.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long prefetchGeneration = generation.get();
+        final Long lastMessageId;
+        final int limit = Math.max(bufferCapacity / 2, 1);
+
+        try {
+            lastMessageId = buffer.lastKey();
+        } catch (NoSuchElementException e) {
+            // If the buffer is already empty, the next poll or acquire will fill it instead
+            prefetching.set(false);
+            return;
+        }
+
+        try {
+            prefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prefetch(prefetchGeneration, lastMessageId, limit);
+                    } catch (Throwable t) {
+                        logger.warn("Failed to prefetch queued messages for channel " + channelId + " (" + metaDataId + ").", t);
+                    } finally {
+                        prefetching.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            prefetching.set(false);
+            throw e;
+        }
+    }
+
+    private void prefetch(long prefetchGeneration, long lastMessageId, int limit) {
+        Map<Long, ConnectorMessage> items;
+
+        reading.incrementAndGet();
+        Set<Long> finishedBeforePrefetch = new HashSet<Long>(finished);
+
+        try {
+            items = dataSource.getItemsAfter(lastMessageId, limit);
+        } catch (RuntimeException e) {
+            reading.decrementAndGet();
+            throw e;
+        }
+
+        fillLock.lock();
+
+        try {
+            // Discard the items if the buffer was refilled or invalidated in the meantime
+            if (generation.get() != prefetchGeneration || invalidated) {
+                return;
+            }
+
+            for (Entry<Long, ConnectorMessage> entry : items.entrySet()) {
+                if (!checkedOut.contains(entry.getKey()) && !finished.contains(entry.getKey())) {
+                    buffer.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+
+            finished.removeAll(finishedBeforePrefetch);
+
+            if (items.size() < limit) {
+                // Every queued message is now either buffered or checked out
+                reachedCapacity = false;
+                prefetchMessageId = Long.MAX_VALUE;
+            } else {
+                // Prefetch again once the consumers reach the items that were just added
+                prefetchMessageId = lastMessageId + 1;
+            }
+        } finally {
+            reading.decrementAndGet();
+            fillLock.unlock();
+        }
+
+        if (!items.isEmpty()) {
+            notifyTimeoutLock();
+        }
+    }
+
+    private void dispatchQueuedEvent(boolean decrement) {
+        if (eventDispatcher != null) {
+            eventDispatcher.dispatchEvent(new MessageEvent(channelId, metaDataId, MessageEventType.QUEUED, (long) size(), decrement));
+        }
     }
 }
@@ -25,9 +25,9 @@ public class ConnectorMessageQueueDataSource {
     private int metaDataId;
     private Status status;
     private boolean rotate;
-    private Long maxMessageId = null;
-    private Long minMessageId = null;
-    private Long rotatedMessageId = null;
+    private volatile Long maxMessageId = null;
+    private volatile Long minMessageId = null;
+    private volatile Long rotatedMessageId = null;
 
     public ConnectorMessageQueueDataSource(String channelId, String serverId, int metaDataId, Status status, boolean rotate, DonkeyDaoFactory daoFactory) {
         this.channelId = channelId;
@@ -116,15 +116,34 @@ public class ConnectorMessageQueueDataSource {
                 connectorMessages = dao.getConnectorMessages(channelId, serverId, metaDataId, status, offset, limit, minMessageId, maxMessageId);
             }
 
-            Map<Long, ConnectorMessage> map = new LinkedHashMap<Long, ConnectorMessage>();
+            return toMap(connectorMessages);
+        } finally {
+            dao.close();
+        }
+    }
 
-            for (ConnectorMessage connectorMessage : connectorMessages) {
-                map.put(connectorMessage.getMessageId(), connectorMessage);
-            }
+    /**
+     * Returns up to the given number of items with a message ID greater than the given one, in
+     * order. This doesn't depend on or change the rotation state, so it can be called from a
+     * different thread than the one consuming the queue.
+     */
+    public Map<Long, ConnectorMessage> getItemsAfter(long messageId, int limit) {
+        DonkeyDao dao = daoFactory.getDao();
 
-            return map;
+        try {
+            return toMap(dao.getConnectorMessages(channelId, serverId, metaDataId, status, 0, limit, messageId + 1, Long.MAX_VALUE));
         } finally {
             dao.close();
         }
     }
+
+    private Map<Long, ConnectorMessage> toMap(List<ConnectorMessage> connectorMessages) {
+        Map<Long, ConnectorMessage> map = new LinkedHashMap<Long, ConnectorMessage>();
+
+        for (ConnectorMessage connectorMessage : connectorMessages) {
+            map.put(connectorMessage.getMessageId(), connectorMessage);
+        }
+
+        return map;
+    }
 }
@@ -12,20 +12,24 @@ package com.mirth.connect.donkey.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.codec.binary.StringUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
 
 public class Base64Util {
 
+    private static final int CHUNK_SIZE = 76;
+    private static final int CHUNK_SEPARATOR_LENGTH = 2;
+
     /**
      * Encodes binary data using the base64 algorithm and chunks the encoded output into 76
      * character blocks.
-     * This method sets the initial output buffer to a value that is "guaranteed" to be slightly
-     * larger than necessary.
-     * Therefore the buffer should never need to be expanded, making the maximum memory requirements
-     * much lower than
-     * using Base64.encodeBase64Chunked.
+     * This method sets the output buffer to the exact encoded length, so the buffer never needs to
+     * be expanded or copied, making the maximum memory requirements much lower than using
+     * Base64.encodeBase64Chunked.
      * 
      * @param bytes
      * @return
@@ -33,9 +37,8 @@ public class Base64Util {
      */
     public static byte[] encodeBase64(byte[] bytes) throws IOException {
         ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        // Set the size of the buffer to minimize peak memory usage
-        // A Base64 encoded message takes roughly 1.333 times the memory of the raw binary, so use 1.4 to be safe.
-        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) (bytes.length * 1.4));
+        // Size the buffer to the exact encoded length so the result can be returned without another copy
+        ByteArrayOutputStream baos = new ExactByteArrayOutputStream(getEncodedLength(bytes.length));
         Base64OutputStream b64os = new Base64OutputStream(baos);
 
         // Perform the encoding
@@ -49,29 +52,123 @@ public class Base64Util {
 
     /**
      * Decodes base64 data.
-     * This method sets the initial output buffer to a value that is "guaranteed" to be slightly
-     * larger than necessary.
-     * Therefore the buffer should never need to be expanded, making the maximum memory requirements
-     * much lower than
-     * using Base64.decodeBase64.
+     * This method sets the output buffer to the exact decoded length, so the buffer never needs to
+     * be expanded or copied, making the maximum memory requirements much lower than using
+     * Base64.decodeBase64. Like Base64.decodeBase64, null is returned for null input.
      * 
      * @param bytes
      * @return
      * @throws IOException
      */
     public static byte[] decodeBase64(byte[] bytes) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        // Set the size of the buffer to minimize peak memory usage
-        // A binary message takes roughly .75 times the memory of the Base64 encoded message, so use 0.8 to be safe.
-        ByteArrayOutputStream baos = new ByteArrayOutputStream((int) (bytes.length * 0.8));
+        if (bytes == null) {
+            return null;
+        }
+
+        int encodedLength = 0;
+
+        for (byte b : bytes) {
+            if (b != '=' && !Character.isWhitespace(b)) {
+                encodedLength++;
+            }
+        }
+
+        return decodeBase64(new ByteArrayInputStream(bytes), getDecodedLength(encodedLength));
+    }
+
+    /**
+     * Encodes binary data using the base64 algorithm and chunks the encoded output into 76
+     * character blocks, returning the result as a US-ASCII string. Only the encoded bytes and the
+     * string itself are ever allocated.
+     * 
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    public static String encodeBase64String(byte[] bytes) throws IOException {
+        return StringUtils.newStringUsAscii(encodeBase64(bytes));
+    }
+
+    /**
+     * Decodes base64 data directly from a string, without first copying the string into an
+     * intermediate byte array. Returns null if the data is null, such as content that was pruned.
+     * 
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public static byte[] decodeBase64(CharSequence data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+
+        int encodedLength = 0;
+
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+
+            if (c != '=' && !Character.isWhitespace(c)) {
+                encodedLength++;
+            }
+        }
+
+        return decodeBase64(new CharSequenceInputStream(data, "US-ASCII"), getDecodedLength(encodedLength));
+    }
+
+    private static byte[] decodeBase64(InputStream is, int decodedLength) throws IOException {
+        // Size the buffer to the exact decoded length so the result can be returned without another copy
+        ByteArrayOutputStream baos = new ExactByteArrayOutputStream(decodedLength);
         Base64OutputStream b64os = new Base64OutputStream(baos, false);
 
-        // Perform the encoding
-        IOUtils.copy(bais, b64os);
+        // Perform the decoding
+        IOUtils.copy(is, b64os);
 
         // Free up any memory from the input
         b64os.close();
 
         return baos.toByteArray();
     }
+
+    /**
+     * Returns the length of the chunked base64 encoding of the given number of bytes, including the
+     * CRLF that Base64OutputStream writes after every line.
+     */
+    static int getEncodedLength(int length) {
+        long encodedLength = ((length + 2L) / 3L) * 4L;
+
+        if (encodedLength > 0) {
+            encodedLength += ((encodedLength + CHUNK_SIZE - 1) / CHUNK_SIZE) * CHUNK_SEPARATOR_LENGTH;
+        }
+
+        return (int) Math.min(encodedLength, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Returns the number of bytes that the given count of base64 characters (excluding whitespace
+     * and padding) decodes to. Characters outside the base64 alphabet make this an overestimate,
+     * which only costs a final copy of the result.
+     */
+    static int getDecodedLength(int encodedLength) {
+        return (int) ((encodedLength * 3L) / 4L);
+    }
+
+    /**
+     * A ByteArrayOutputStream that returns its internal buffer instead of a copy when it was
+     * sized exactly.
+     */
+    private static class ExactByteArrayOutputStream extends ByteArrayOutputStream {
+
+        public ExactByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            if (count == buf.length) {
+                return buf;
+            }
+
+            return super.toByteArray();
+        }
+    }
 }
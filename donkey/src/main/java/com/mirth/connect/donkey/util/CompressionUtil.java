@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
+
+/**
+ * Compresses message content before it is stored. Compressed content is zlib (Deflate) output
+ * encoded in Base64 behind {@link #COMPRESSED_PREFIX}, so it can be kept in the same text columns
+ * as uncompressed content and told apart when it is read back. Every character of the stored form
+ * is ASCII, so it survives columns and databases that use a single-byte character set.
+ */
+public class CompressionUtil {
+
+    /**
+     * Marks compressed content. It begins with the ASCII control characters SOH and STX, which are
+     * not allowed in XML and do not appear at the start of HL7 or other text messages. The trailing
+     * digit is the format version. Content that happens to start with the prefix but does not
+     * decompress is read back as is, since the zlib header and checksum both have to be valid.
+     */
+    public static final String COMPRESSED_PREFIX = "\u0001\u0002Z1:";
+
+    /**
+     * Content shorter than this is stored as is. Small messages barely shrink once the Base64
+     * overhead is paid, so compressing them would only cost CPU.
+     */
+    public static final int MIN_COMPRESS_LENGTH = 1024;
+
+    /**
+     * Content at least this long is compressed at the default level rather than the fastest one.
+     * Writing and reading large content is dominated by I/O, so the better ratio is worth the
+     * extra time.
+     */
+    public static final int MAX_FAST_COMPRESS_LENGTH = 1024 * 1024;
+
+    /**
+     * Returns the compressed form of the content, or the content itself if it is too small to be
+     * worth compressing or would not get any smaller.
+     */
+    public static String compress(String content) {
+        if (content == null || content.length() < MIN_COMPRESS_LENGTH || isCompressed(content)) {
+            return content;
+        }
+
+        byte[] bytes = StringUtils.getBytesUtf8(content);
+        Deflater deflater = new Deflater(content.length() < MAX_FAST_COMPRESS_LENGTH ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater, 8192);
+            out.write(bytes);
+            out.close();
+
+            // Base64 grows the output by a third, so only keep it if it is still a saving
+            if (compressed.size() * 4 / 3 + COMPRESSED_PREFIX.length() >= content.length()) {
+                return content;
+            }
+
+            return COMPRESSED_PREFIX + Base64.encodeBase64String(compressed.toByteArray());
+        } catch (IOException e) {
+            // Only possible from the underlying stream, which is in memory
+            return content;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the original form of content returned by {@link #compress}. Content that is not
+     * compressed, or that starts with the prefix but is not valid compressed data, is returned as
+     * is.
+     */
+    public static String decompress(String content) {
+        if (!isCompressed(content)) {
+            return content;
+        }
+
+        InputStream in = new InflaterInputStream(new Base64InputStream(new CharSequenceInputStream(CharBuffer.wrap(content, COMPRESSED_PREFIX.length(), content.length()), "US-ASCII")));
+
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } catch (IOException e) {
+            // The zlib header or checksum didn't match, so this is stored content that only looks compressed
+            return content;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    public static boolean isCompressed(String content) {
+        return content != null && content.startsWith(COMPRESSED_PREFIX);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.util;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map that can be cheaply copied. Calling {@link #copy()} returns a new map that shares the same
+ * backing map as this one, and the backing map is only duplicated the first time either side is
+ * modified. This lets the channel and response maps be handed down to each destination without
+ * copying every entry up front, since most destinations never write to them.
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 8252231095806864206L;
+
+    private volatile Map<K, V> map;
+    private boolean shared;
+
+    public CopyOnWriteMap() {
+        this(new HashMap<K, V>());
+    }
+
+    public CopyOnWriteMap(Map<K, V> map) {
+        this(map, false);
+    }
+
+    private CopyOnWriteMap(Map<K, V> map, boolean shared) {
+        this.map = map;
+        this.shared = shared;
+    }
+
+    /**
+     * Returns a new map with the same entries as this one. Neither map will see changes made to the
+     * other.
+     */
+    public synchronized CopyOnWriteMap<K, V> copy() {
+        shared = true;
+        return new CopyOnWriteMap<K, V>(map, true);
+    }
+
+    private synchronized Map<K, V> getWritableMap() {
+        if (shared) {
+            map = new HashMap<K, V>(map);
+            shared = false;
+        }
+
+        return map;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        return getWritableMap().put(key, value);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (shared && !map.containsKey(key)) {
+            return null;
+        }
+
+        return getWritableMap().remove(key);
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> m) {
+        if (!m.isEmpty()) {
+            getWritableMap().putAll(m);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (shared) {
+            map = new HashMap<K, V>();
+            shared = false;
+        } else {
+            map.clear();
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /*
+     * Iterates over the backing map as it was when the iterator was created. If the backing map is
+     * still shared, removals and value changes go through the outer map so that a private copy is
+     * made first and the shared map is left untouched.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private Map<K, V> iteratedMap = map;
+        private Iterator<Entry<K, V>> iterator = iteratedMap.entrySet().iterator();
+        private Entry<K, V> current;
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            current = iterator.next();
+            return new CopyOnWriteEntry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            synchronized (CopyOnWriteMap.this) {
+                if (!shared && map == iteratedMap) {
+                    iterator.remove();
+                } else {
+                    CopyOnWriteMap.this.remove(current.getKey());
+                }
+            }
+
+            current = null;
+        }
+    }
+
+    private class CopyOnWriteEntry implements Entry<K, V> {
+        private Entry<K, V> entry;
+
+        public CopyOnWriteEntry(Entry<K, V> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public K getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public V getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = entry.getValue();
+            put(entry.getKey(), value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return entry.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+    }
+}
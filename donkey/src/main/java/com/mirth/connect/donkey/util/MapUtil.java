@@ -9,10 +9,21 @@
 
 package com.mirth.connect.donkey.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
 import org.apache.log4j.Logger;
 
 import com.mirth.connect.donkey.model.message.InvalidMapValue;
@@ -22,7 +33,31 @@ import com.mirth.connect.donkey.util.xstream.SerializerException;
 public class MapUtil {
     private static Logger logger = Logger.getLogger(MapUtil.class);
 
+    /**
+     * Prefix that identifies a map written by {@link #serializeMapBinary}. The trailing digit is the
+     * format version. It can never begin an XML document, so both formats can share a column.
+     */
+    public static final String BINARY_MAP_PREFIX = "#MAP1:";
+
+    private static final Class<?> UNMODIFIABLE_MAP_CLASS = Collections.unmodifiableMap(new HashMap<Object, Object>()).getClass();
+
+    private static final int FLAG_UNMODIFIABLE = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_SERIALIZED = 6;
+    private static final byte TYPE_INVALID = 7;
+
     public static String serializeMap(Serializer serializer, Map<String, Object> map) {
+        if (map instanceof CopyOnWriteMap) {
+            // Serialize as a plain map so the stored XML does not depend on how the map was copied
+            map = new HashMap<String, Object>(map);
+        }
+
         if (hasInvalidValues(map)) {
             try {
                 DonkeyElement mapElement = new DonkeyElement("<map/>");
@@ -89,8 +124,165 @@ public class MapUtil {
         return false;
     }
 
+    /**
+     * Serializes a map into a compact form that is much cheaper to write and read than the XML
+     * produced by {@link #serializeMap}. Strings, boxed primitives and nulls are written directly,
+     * while any other value is stored as its XML using the given serializer. The result is Base64
+     * encoded behind {@link #BINARY_MAP_PREFIX} so it can be stored anywhere a string can, but
+     * its values can't be matched by searching the stored content.
+     */
+    public static String serializeMapBinary(Serializer serializer, Map<String, Object> map) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(map.getClass() == UNMODIFIABLE_MAP_CLASS ? FLAG_UNMODIFIABLE : 0);
+            out.writeInt(map.size());
+
+            for (Entry<String, Object> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeValue(out, serializer, entry.getKey(), entry.getValue());
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+
+        return BINARY_MAP_PREFIX + Base64.encodeBase64String(bytes.toByteArray());
+    }
+
+    /**
+     * Returns true if the serialized map was written by {@link #serializeMapBinary}.
+     */
+    public static boolean isBinaryMap(String serializedMap) {
+        return serializedMap != null && serializedMap.startsWith(BINARY_MAP_PREFIX);
+    }
+
+    private static void writeValue(DataOutputStream out, Serializer serializer, String key, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value.getClass() == String.class) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value.getClass() == Integer.class) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value.getClass() == Long.class) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value.getClass() == Double.class) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value.getClass() == Boolean.class) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof InvalidMapValue) {
+            out.writeByte(TYPE_INVALID);
+            writeString(out, ((InvalidMapValue) value).getValueXML());
+        } else {
+            String valueXML;
+
+            try {
+                valueXML = serializer.serialize(value);
+            } catch (Exception e) {
+                logger.warn("Non-serializable value found in map, converting value to string with key: " + key);
+                out.writeByte(TYPE_STRING);
+                writeString(out, value.toString());
+                return;
+            }
+
+            out.writeByte(TYPE_SERIALIZED);
+            writeString(out, valueXML);
+        }
+    }
+
+    /*
+     * DataOutputStream.writeUTF is limited to 64K, which map values can easily exceed, so strings
+     * are written as a length followed by their UTF-8 bytes. A length of -1 denotes null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = StringUtils.getBytesUtf8(value);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, Object> deserializeBinaryMap(Serializer serializer, String serializedMap) {
+        InputStream decoded = new Base64InputStream(new CharSequenceInputStream(CharBuffer.wrap(serializedMap, BINARY_MAP_PREFIX.length(), serializedMap.length()), "US-ASCII"));
+        DataInputStream in = new DataInputStream(decoded);
+
+        try {
+            int flags = in.readByte();
+            int size = in.readInt();
+            Map<String, Object> map = new HashMap<String, Object>(Math.max((int) (size / .75f) + 1, 16));
+
+            for (int i = 0; i < size; i++) {
+                String key = readString(in);
+                map.put(key, readValue(in, serializer));
+            }
+
+            return (flags & FLAG_UNMODIFIABLE) != 0 ? Collections.unmodifiableMap(map) : map;
+        } catch (IOException e) {
+            throw new SerializerException(e);
+        }
+    }
+
+    private static Object readValue(DataInputStream in, Serializer serializer) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_INVALID:
+                return new InvalidMapValue(readString(in));
+            case TYPE_SERIALIZED:
+                String valueXML = readString(in);
+
+                try {
+                    return serializer.deserialize(valueXML, Object.class);
+                } catch (Exception e) {
+                    return new InvalidMapValue(valueXML);
+                }
+            default:
+                throw new IOException("Unknown map value type: " + type);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return StringUtils.newStringUtf8(bytes);
+    }
+
+    /**
+     * Deserializes a map written by either {@link #serializeMap} or {@link #serializeMapBinary}.
+     */
     @SuppressWarnings("unchecked")
     public static Map<String, Object> deserializeMap(Serializer serializer, String serializedMap) {
+        if (isBinaryMap(serializedMap)) {
+            return deserializeBinaryMap(serializer, serializedMap);
+        }
+
         try {
             return (Map<String, Object>) serializer.deserialize(serializedMap, Map.class);
         } catch (Exception e) {
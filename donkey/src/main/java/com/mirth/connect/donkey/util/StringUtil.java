@@ -24,8 +24,16 @@ public class StringUtil {
      * be used when memory is an issue.
      */
     public static byte[] getBytesUncheckedChunked(String string, String charset) {
-        int offset = 0;
-        int length = string.length();
+        return getBytesUncheckedChunked(string, 0, string.length(), charset);
+    }
+
+    /**
+     * Gets the bytes of the characters between start (inclusive) and end (exclusive) of a string,
+     * without first copying that region into a new string.
+     */
+    public static byte[] getBytesUncheckedChunked(String string, int start, int end, String charset) {
+        int offset = start;
+        int length = end;
 
         // Calculate the size of the string after byte encoding
         ByteCounterOutputStream outputStream = new ByteCounterOutputStream();
@@ -38,7 +46,7 @@ public class StringUtil {
         // Create a byte array the size of the exact size required
         byte[] data = new byte[outputStream.size()];
         int position = 0;
-        offset = 0;
+        offset = start;
 
         // Perform the conversion again and write the data to the byte array
         while ((length - offset) > 0) {
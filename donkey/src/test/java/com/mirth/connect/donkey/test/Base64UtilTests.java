@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.StringUtils;
+import org.junit.Test;
+
+import com.mirth.connect.donkey.util.Base64Util;
+
+public class Base64UtilTests {
+
+    @Test
+    public void testEncodeBase64() throws Exception {
+        Random random = new Random(0);
+
+        // Cover every padding length and lines that end exactly on a chunk boundary
+        for (int length = 0; length <= 500; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            assertArrayEquals(Base64.encodeBase64Chunked(bytes), Base64Util.encodeBase64(bytes));
+            assertEquals(StringUtils.newStringUsAscii(Base64.encodeBase64Chunked(bytes)), Base64Util.encodeBase64String(bytes));
+        }
+    }
+
+    @Test
+    public void testDecodeBase64() throws Exception {
+        Random random = new Random(0);
+
+        for (int length = 0; length <= 500; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            assertArrayEquals(bytes, Base64Util.decodeBase64(Base64.encodeBase64Chunked(bytes)));
+            assertArrayEquals(bytes, Base64Util.decodeBase64(Base64.encodeBase64(bytes)));
+            assertArrayEquals(bytes, Base64Util.decodeBase64(Base64.encodeBase64String(bytes)));
+            assertArrayEquals(bytes, Base64Util.decodeBase64(Base64Util.encodeBase64String(bytes)));
+        }
+    }
+
+    @Test
+    public void testDecodeBase64Null() throws Exception {
+        // Pruned content is null, and decodes to null as it did with Base64.decodeBase64
+        assertNull(Base64Util.decodeBase64((byte[]) null));
+        assertNull(Base64Util.decodeBase64((String) null));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.mirth.connect.donkey.test.util.TestUtils;
+import com.mirth.connect.donkey.util.CompressionUtil;
+
+public class CompressionUtilTests {
+
+    @Test
+    public void testCompress() throws Exception {
+        String content = StringUtils.repeat(TestUtils.TEST_HL7_MESSAGE + "é中", 20);
+        String compressedContent = CompressionUtil.compress(content);
+
+        assertTrue(CompressionUtil.isCompressed(compressedContent));
+        assertTrue(compressedContent.length() < content.length());
+        assertEquals(content, CompressionUtil.decompress(compressedContent));
+
+        // Compressing twice has no effect
+        assertSame(compressedContent, CompressionUtil.compress(compressedContent));
+
+        // The stored form is ASCII, so it can be kept in a single-byte character set column
+        assertTrue(StringUtils.isAsciiPrintable(compressedContent.substring(CompressionUtil.COMPRESSED_PREFIX.length()).replaceAll("[\\r\\n]", "")));
+        assertEquals(compressedContent, new String(compressedContent.getBytes("ISO-8859-1"), "ISO-8859-1"));
+    }
+
+    @Test
+    public void testContentWithPrefix() throws Exception {
+        // Content that only looks compressed is read back as is
+        String content = CompressionUtil.COMPRESSED_PREFIX + "not compressed";
+        assertTrue(CompressionUtil.isCompressed(content));
+        assertSame(content, CompressionUtil.decompress(content));
+
+        content = CompressionUtil.COMPRESSED_PREFIX + "eJwrSS0uAQAEXQHB";
+        assertEquals("test", CompressionUtil.decompress(content));
+        content = CompressionUtil.COMPRESSED_PREFIX + "eJwrSS0uAQAEXQHC";
+        assertSame(content, CompressionUtil.decompress(content));
+    }
+
+    @Test
+    public void testLargeContent() throws Exception {
+        String content = StringUtils.repeat(TestUtils.TEST_HL7_MESSAGE, CompressionUtil.MAX_FAST_COMPRESS_LENGTH / TestUtils.TEST_HL7_MESSAGE.length() + 1);
+        String compressedContent = CompressionUtil.compress(content);
+
+        assertTrue(CompressionUtil.isCompressed(compressedContent));
+        assertEquals(content, CompressionUtil.decompress(compressedContent));
+    }
+
+    @Test
+    public void testContentLeftUncompressed() throws Exception {
+        assertNull(CompressionUtil.compress(null));
+        assertNull(CompressionUtil.decompress(null));
+
+        // Too small to be worth compressing
+        assertSame(TestUtils.TEST_HL7_MESSAGE, CompressionUtil.compress(TestUtils.TEST_HL7_MESSAGE));
+
+        // Random content would not get any smaller
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            builder.append((char) (33 + random.nextInt(94)));
+        }
+        String content = builder.toString();
+        assertSame(content, CompressionUtil.compress(content));
+
+        assertFalse(CompressionUtil.isCompressed(content));
+        assertSame(content, CompressionUtil.decompress(content));
+    }
+}
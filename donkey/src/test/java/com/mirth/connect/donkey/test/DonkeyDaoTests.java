@@ -19,11 +19,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.junit.AfterClass;
@@ -641,6 +644,70 @@ public class DonkeyDaoTests {
         }
     }
 
+    /*
+     * Create a new channel, and a source connector message
+     * Set a channel map value and a processing error on the message
+     * Update the maps and errors in a transaction that is closed without
+     * committing, then update them again in a new transaction, and assert that:
+     * - The channel map was inserted
+     * - The processing error was inserted
+     * 
+     * Change the channel map value and do the same, and assert that:
+     * - The changed channel map was stored
+     */
+    @Test
+    public final void testUpdateMapsAfterRollback() throws Exception {
+        Channel channel = TestUtils.createDefaultChannel(channelId, serverId);
+        DonkeyDaoFactory unbufferedDaoFactory = ((BufferedDaoFactory) daoFactory).getDelegateFactory();
+
+        logger.info("Testing DonkeyDao.updateMaps after a rollback...");
+
+        ConnectorMessage sourceMessage = TestUtils.createAndStoreNewMessage(new RawMessage(testMessage), channel.getChannelId(), channel.getServerId(), daoFactory).getConnectorMessages().get(0);
+        sourceMessage.getChannelMap().put("key1", "value1");
+        sourceMessage.setProcessingError("testerror");
+
+        DonkeyDao dao = null;
+
+        try {
+            dao = unbufferedDaoFactory.getDao();
+            dao.updateMaps(sourceMessage);
+            dao.updateErrors(sourceMessage);
+        } finally {
+            TestUtils.close(dao);
+        }
+
+        try {
+            dao = unbufferedDaoFactory.getDao();
+            dao.updateMaps(sourceMessage);
+            dao.updateErrors(sourceMessage);
+            dao.commit();
+        } finally {
+            TestUtils.close(dao);
+        }
+
+        assertEquals("value1", TestUtils.getChannelMap(channel.getChannelId(), sourceMessage.getMessageId(), 0).get("key1"));
+        assertEquals("testerror", TestUtils.getErrorFromMessageContent(TestUtils.getMessageContent(channel.getChannelId(), sourceMessage.getMessageId(), 0, ContentType.PROCESSING_ERROR)));
+
+        sourceMessage.getChannelMap().put("key1", "value2");
+
+        try {
+            dao = unbufferedDaoFactory.getDao();
+            dao.updateMaps(sourceMessage);
+        } finally {
+            TestUtils.close(dao);
+        }
+
+        try {
+            dao = unbufferedDaoFactory.getDao();
+            dao.updateMaps(sourceMessage);
+            dao.commit();
+        } finally {
+            TestUtils.close(dao);
+        }
+
+        assertEquals("value2", TestUtils.getChannelMap(channel.getChannelId(), sourceMessage.getMessageId(), 0).get("key1"));
+    }
+
     /*
      * Create a new channel, and source connector messages
      * For each message, set the response map
@@ -1538,6 +1605,42 @@ public class DonkeyDaoTests {
         }
     }
     
+    @Test
+    public void testGetNextMessageIds() throws Exception {
+        DonkeyDao dao = null;
+
+        try {
+            dao = daoFactory.getDao();
+            
+            List<Long> block1 = dao.getNextMessageIds(channelId, 10);
+            List<Long> block2 = dao.getNextMessageIds(channelId, 10);
+            long nextId = dao.getNextMessageId(channelId);
+            dao.commit();
+            
+            logger.debug("block1: " + block1);
+            logger.debug("block2: " + block2);
+            
+            assertEquals(10, block1.size());
+            assertEquals(10, block2.size());
+            
+            // Each block must be in order and must not overlap with IDs handed out afterwards
+            Set<Long> ids = new HashSet<Long>();
+            long lastId = 0;
+            
+            for (List<Long> block : Arrays.asList(block1, block2)) {
+                for (Long id : block) {
+                    assertTrue(id > lastId);
+                    assertTrue(ids.add(id));
+                    lastId = id;
+                }
+            }
+            
+            assertTrue(nextId > lastId);
+        } finally {
+            TestUtils.close(dao);
+        }
+    }
+    
     /*
      * Deploy new channel, send messages, and catch the Message objects returned
      * from the process method
@@ -1799,6 +1902,57 @@ public class DonkeyDaoTests {
         }
     }
     
+    /*
+     * Create unfinished messages, then get them a page at a time and assert that:
+     * - Only messages within the min and max message IDs are returned
+     * - No more than the limit are returned
+     * - They're ordered by message ID
+     */
+    @Test
+    public final void testGetUnfinishedMessagesPaged() throws Exception {
+        List<ConnectorMessage> sourceMessages = new ArrayList<ConnectorMessage>();
+        List<Long> messageIds = new ArrayList<Long>();
+
+        for (int i = 0; i < TEST_SIZE; i++) {
+            ConnectorMessage sourceMessage = TestUtils.createAndStoreNewMessage(new RawMessage(testMessage), channelId, serverId, daoFactory).getConnectorMessages().get(0);
+            sourceMessages.add(sourceMessage);
+            messageIds.add(sourceMessage.getMessageId());
+        }
+
+        long minMessageId = messageIds.get(2);
+        long maxMessageId = messageIds.get(7);
+        DonkeyDao dao = null;
+
+        try {
+            dao = daoFactory.getDao();
+
+            // RECEIVED source messages are recovered as connector messages
+            List<ConnectorMessage> connectorMessages = dao.getUnfinishedConnectorMessages(channelId, serverId, 0, minMessageId, maxMessageId, TEST_SIZE);
+            assertEquals(messageIds.subList(2, 8), getConnectorMessageIds(connectorMessages));
+
+            connectorMessages = dao.getUnfinishedConnectorMessages(channelId, serverId, 0, minMessageId, maxMessageId, 4);
+            assertEquals(messageIds.subList(2, 6), getConnectorMessageIds(connectorMessages));
+            assertTrue(dao.getUnfinishedConnectorMessages(channelId, serverId, 0, maxMessageId + 1, maxMessageId, TEST_SIZE).isEmpty());
+
+            // Once the source has finished, the rest of the message is recovered as a whole
+            for (ConnectorMessage sourceMessage : sourceMessages) {
+                sourceMessage.setStatus(Status.TRANSFORMED);
+                dao.updateStatus(sourceMessage, Status.RECEIVED);
+            }
+
+            dao.commit();
+
+            List<Message> messages = dao.getUnfinishedMessages(channelId, serverId, minMessageId, maxMessageId, TEST_SIZE);
+            assertEquals(messageIds.subList(2, 8), getMessageIds(messages));
+
+            messages = dao.getUnfinishedMessages(channelId, serverId, minMessageId, maxMessageId, 4);
+            assertEquals(messageIds.subList(2, 6), getMessageIds(messages));
+            assertTrue(dao.getUnfinishedMessages(channelId, serverId, maxMessageId + 1, maxMessageId, TEST_SIZE).isEmpty());
+        } finally {
+            TestUtils.close(dao);
+        }
+    }
+
     /*
      * Create a list of metadata columns and add the list to the channel's
      * metadata columns
@@ -1958,4 +2112,24 @@ public class DonkeyDaoTests {
 //            channel.undeploy();
 //        }
 //    }
+
+    private List<Long> getMessageIds(List<Message> messages) {
+        List<Long> messageIds = new ArrayList<Long>();
+
+        for (Message message : messages) {
+            messageIds.add(message.getMessageId());
+        }
+
+        return messageIds;
+    }
+
+    private List<Long> getConnectorMessageIds(List<ConnectorMessage> connectorMessages) {
+        List<Long> messageIds = new ArrayList<Long>();
+
+        for (ConnectorMessage connectorMessage : connectorMessages) {
+            messageIds.add(connectorMessage.getMessageId());
+        }
+
+        return messageIds;
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.mirth.connect.donkey.model.message.InvalidMapValue;
+import com.mirth.connect.donkey.model.message.MapContent;
+import com.mirth.connect.donkey.util.CopyOnWriteMap;
+import com.mirth.connect.donkey.util.MapUtil;
+import com.mirth.connect.donkey.util.Serializer;
+import com.mirth.connect.donkey.util.xstream.XStreamSerializer;
+
+public class MapUtilTests {
+    private Serializer serializer = new XStreamSerializer();
+
+    @Test
+    public void testBinaryMapRoundTrip() throws Exception {
+        List<String> list = new ArrayList<String>();
+        list.add("item");
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("string", "value é中");
+        map.put("empty", "");
+        map.put("large", StringUtils.repeat("x", 100000));
+        map.put("integer", 5);
+        map.put("long", Long.MAX_VALUE);
+        map.put("double", 1.5d);
+        map.put("boolean", true);
+        map.put("null", null);
+        map.put(null, "null key");
+        map.put("list", list);
+
+        String serializedMap = MapUtil.serializeMapBinary(serializer, map);
+        assertTrue(MapUtil.isBinaryMap(serializedMap));
+        assertEquals(map, MapUtil.deserializeMap(serializer, serializedMap));
+    }
+
+    @Test
+    public void testBinaryMapPreservesReadOnlyMaps() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("key", "value");
+
+        Map<String, Object> deserializedMap = MapUtil.deserializeMap(serializer, MapUtil.serializeMapBinary(serializer, Collections.unmodifiableMap(map)));
+        assertEquals(map, deserializedMap);
+
+        try {
+            deserializedMap.put("key", "other");
+            fail("Expected the deserialized map to be read-only");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        MapUtil.deserializeMap(serializer, MapUtil.serializeMapBinary(serializer, map)).put("key", "other");
+    }
+
+    @Test
+    public void testBinaryMapInvalidValues() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("invalid", new InvalidMapValue("<com.example.Missing/>"));
+
+        Map<String, Object> deserializedMap = MapUtil.deserializeMap(serializer, MapUtil.serializeMapBinary(serializer, map));
+        assertTrue(deserializedMap.get("invalid") instanceof InvalidMapValue);
+        assertEquals("<com.example.Missing/>", ((InvalidMapValue) deserializedMap.get("invalid")).getValueXML());
+    }
+
+    @Test
+    public void testXmlMapStillReadable() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("string", "value");
+        map.put("integer", 5);
+
+        String serializedMap = MapUtil.serializeMap(serializer, map);
+        assertFalse(MapUtil.isBinaryMap(serializedMap));
+        assertEquals(map, MapUtil.deserializeMap(serializer, serializedMap));
+
+        // Copied maps are stored as plain maps
+        assertEquals(serializedMap, MapUtil.serializeMap(serializer, new CopyOnWriteMap<String, Object>(map)));
+    }
+
+    @Test
+    public void testMapContentChanged() throws Exception {
+        MapContent mapContent = new MapContent();
+        assertTrue(mapContent.isChanged("content"));
+
+        mapContent.setPersistedContent("content");
+        assertFalse(mapContent.isChanged("content"));
+        assertTrue(mapContent.isChanged("other content"));
+
+        mapContent.setPersistedContent(null);
+        assertTrue(mapContent.isChanged("content"));
+    }
+
+    @Test
+    public void testCopyOnWriteMap() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", 1);
+        map.put("b", 2);
+
+        MapContent mapContent = new MapContent(map, false);
+        Map<String, Object> copy = mapContent.copyMap();
+        Map<String, Object> original = mapContent.getMap();
+        assertEquals(map, copy);
+
+        copy.put("c", 3);
+        assertFalse(original.containsKey("c"));
+        assertEquals(3, copy.get("c"));
+
+        original.remove("a");
+        assertTrue(copy.containsKey("a"));
+        assertNull(original.get("a"));
+
+        // Changes through the views of a shared map must not leak into the other map
+        Map<String, Object> secondCopy = mapContent.copyMap();
+        for (Iterator<Entry<String, Object>> iterator = secondCopy.entrySet().iterator(); iterator.hasNext();) {
+            Entry<String, Object> entry = iterator.next();
+            entry.setValue(10);
+            iterator.remove();
+        }
+
+        assertTrue(secondCopy.isEmpty());
+        assertEquals(1, original.size());
+        assertEquals(2, original.get("b"));
+
+        // An unshared map is modified in place while iterating
+        for (Iterator<String> iterator = copy.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().equals("a")) {
+                iterator.remove();
+            }
+        }
+
+        assertFalse(copy.containsKey("a"));
+        assertEquals(2, copy.size());
+    }
+}
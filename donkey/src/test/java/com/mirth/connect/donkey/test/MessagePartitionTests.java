@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.mirth.connect.donkey.server.data.jdbc.JdbcDao;
+
+public class MessagePartitionTests {
+
+    @Test
+    public void testFirstPartitions() throws Exception {
+        // A new channel gets the partition for the first message ID and the one after it
+        assertEquals(partitions(0, 1000, 1000, 2000), JdbcDao.getMessagePartitionsToAdd(partitions(), 0, 1000));
+        assertEquals(partitions(0, 1000, 1000, 2000), JdbcDao.getMessagePartitionsToAdd(partitions(), 999, 1000));
+
+        // Partitions start at a multiple of the partition size
+        assertEquals(partitions(2000, 3000, 3000, 4000), JdbcDao.getMessagePartitionsToAdd(partitions(), 2500, 1000));
+    }
+
+    @Test
+    public void testNextPartitions() throws Exception {
+        TreeMap<Long, Long> existing = partitions(0, 1000, 1000, 2000);
+
+        // Nothing is added while the message ID is before the last partition
+        assertTrue(JdbcDao.getMessagePartitionsToAdd(existing, 999, 1000).isEmpty());
+
+        // Once the last partition is reached, the next one is added
+        assertEquals(partitions(2000, 3000), JdbcDao.getMessagePartitionsToAdd(existing, 1000, 1000));
+
+        // Skipped partitions are filled in
+        assertEquals(partitions(2000, 3000, 3000, 4000, 4000, 5000, 5000, 6000), JdbcDao.getMessagePartitionsToAdd(existing, 4200, 1000));
+
+        // A changed partition size only applies to new partitions
+        assertEquals(partitions(2000, 2500), JdbcDao.getMessagePartitionsToAdd(existing, 1500, 500));
+    }
+
+    @Test
+    public void testPartitioningDisabled() throws Exception {
+        // The size of the last partition is kept if partitioning was disabled after the channel was created
+        assertEquals(partitions(1000, 1500, 1500, 2000), JdbcDao.getMessagePartitionsToAdd(partitions(0, 500, 500, 1000), 1200, 0));
+
+        try {
+            JdbcDao.getMessagePartitionsToAdd(partitions(), 0, 0);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // There's no size to take from an existing partition
+        }
+    }
+
+    @Test
+    public void testMinMessageIdSince() throws Exception {
+        List<Long> partitionIds = Arrays.asList(0L, 1000L, 2000L, 3000L);
+        List<Long> createdTimes = Arrays.asList(100L, 200L, 300L, 400L);
+
+        // Every message in a partition was received before the partition two after it was created
+        assertEquals(0, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, 250));
+        assertEquals(0, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, 299));
+        assertEquals(1000, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, 300));
+        assertEquals(1000, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, 399));
+
+        // The last two partitions are always searched, since there's no later partition to bound them
+        assertEquals(2000, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, 400));
+        assertEquals(2000, JdbcDao.getMinMessageIdSince(partitionIds, createdTimes, Long.MAX_VALUE));
+        assertEquals(0, JdbcDao.getMinMessageIdSince(Arrays.asList(0L), Arrays.asList(100L), Long.MAX_VALUE));
+
+        // Without partitions every message is searched
+        assertEquals(0, JdbcDao.getMinMessageIdSince(Arrays.<Long> asList(), Arrays.<Long> asList(), 0));
+    }
+
+    private TreeMap<Long, Long> partitions(long... bounds) {
+        TreeMap<Long, Long> partitions = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            partitions.put(bounds[i], bounds[i + 1]);
+        }
+
+        return partitions;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.donkey.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import com.mirth.connect.donkey.model.message.ConnectorMessage;
+import com.mirth.connect.donkey.model.message.Status;
+import com.mirth.connect.donkey.server.queue.ConnectorMessageQueue;
+import com.mirth.connect.donkey.server.queue.ConnectorMessageQueueDataSource;
+
+/**
+ * Measures how many messages per second a destination queue can hand out to 1, 4 and 16 consumer
+ * threads. The queue is backed by an in-memory data source with a small simulated query latency,
+ * so the results reflect the queue itself rather than the database.
+ */
+public class QueuePerformanceTests {
+    private final static int TEST_SIZE = 100000;
+    private final static int BUFFER_CAPACITY = 1000;
+    private final static int QUERY_LATENCY_MILLIS = 2;
+
+    private static String channelId = "queueperformancetest";
+    private Logger logger = Logger.getLogger(this.getClass());
+
+    @Test
+    public final void testOneConsumer() throws Exception {
+        runTest(1);
+    }
+
+    @Test
+    public final void testFourConsumers() throws Exception {
+        runTest(4);
+    }
+
+    @Test
+    public final void testSixteenConsumers() throws Exception {
+        runTest(16);
+    }
+
+    private void runTest(int numThreads) throws Exception {
+        final MemoryDataSource dataSource = new MemoryDataSource();
+
+        for (long messageId = 1; messageId <= TEST_SIZE; messageId++) {
+            ConnectorMessage connectorMessage = new ConnectorMessage();
+            connectorMessage.setChannelId(channelId);
+            connectorMessage.setMessageId(messageId);
+            connectorMessage.setMetaDataId(1);
+            connectorMessage.setStatus(Status.QUEUED);
+            dataSource.messages.put(messageId, connectorMessage);
+        }
+
+        final ConnectorMessageQueue queue = new ConnectorMessageQueue();
+        queue.setBufferCapacity(BUFFER_CAPACITY);
+        queue.setDataSource(dataSource);
+
+        final AtomicInteger processed = new AtomicInteger();
+        final Set<Long> processedIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        Thread[] threads = new Thread[numThreads];
+
+        long startTime = System.currentTimeMillis();
+
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    while (processed.get() < TEST_SIZE) {
+                        ConnectorMessage connectorMessage = queue.acquire();
+
+                        if (connectorMessage == null) {
+                            Thread.yield();
+                            continue;
+                        }
+
+                        // Sending the message removes it from the queue in the database before it's released
+                        processedIds.add(connectorMessage.getMessageId());
+                        dataSource.messages.remove(connectorMessage.getMessageId());
+                        queue.release(connectorMessage, true);
+                        processed.incrementAndGet();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+
+        assertEquals(TEST_SIZE, processedIds.size());
+        assertEquals(0, queue.size());
+
+        logger.info(String.format("Consumer threads: %d, messages: %d, time: %d ms, messages/second: %.2f", numThreads, TEST_SIZE, duration, TEST_SIZE * 1000d / duration));
+    }
+
+    private class MemoryDataSource extends ConnectorMessageQueueDataSource {
+        private ConcurrentNavigableMap<Long, ConnectorMessage> messages = new ConcurrentSkipListMap<Long, ConnectorMessage>();
+
+        public MemoryDataSource() {
+            super(channelId, "testserverid", 1, Status.QUEUED, false, null);
+        }
+
+        @Override
+        public int getSize() {
+            simulateLatency();
+            return messages.size();
+        }
+
+        @Override
+        public Map<Long, ConnectorMessage> getItems(int offset, int limit) {
+            simulateLatency();
+            return copy(messages, limit);
+        }
+
+        @Override
+        public Map<Long, ConnectorMessage> getItemsAfter(long messageId, int limit) {
+            simulateLatency();
+            return copy(messages.tailMap(messageId, false), limit);
+        }
+
+        private Map<Long, ConnectorMessage> copy(Map<Long, ConnectorMessage> source, int limit) {
+            Map<Long, ConnectorMessage> items = new LinkedHashMap<Long, ConnectorMessage>();
+
+            for (ConnectorMessage connectorMessage : source.values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+
+                items.put(connectorMessage.getMessageId(), connectorMessage);
+            }
+
+            return items;
+        }
+
+        private void simulateLatency() {
+            try {
+                Thread.sleep(QUERY_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
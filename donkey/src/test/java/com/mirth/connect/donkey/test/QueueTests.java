@@ -349,7 +349,9 @@ public class QueueTests {
 
         ConnectorMessage sourceMessage = null;
 
-        synchronized (channel.getSourceQueue()) {
+        sourceQueue.lock();
+
+        try {
             /*
              * Send a message (not waiting for destinations) that will cause the
              * data to get written to the database, but the queue size is never
@@ -393,6 +395,8 @@ public class QueueTests {
             // Queue up the message from before that wasn't queued
             System.out.println("Calling the queue method for the previous message that wasn't queued...");
             channel.queue(sourceMessage);
+        } finally {
+            sourceQueue.unlock();
         }
 
         // Wait until the queue has cleared
@@ -504,10 +508,14 @@ public class QueueTests {
 
         // Place messages directly into the destination connector's queue
         for (int i = 1; i <= TEST_SIZE; i++) {
-            synchronized (destinationConnector.getQueue()) {
+            destinationConnector.getQueue().lock();
+
+            try {
                 Message message = TestUtils.createAndStoreNewMessage(new RawMessage(testMessage), channelId, serverId, daoFactory);
                 ConnectorMessage destinationMessage = TestUtils.createAndStoreDestinationConnectorMessage(daoFactory, channelId, serverId, message.getMessageId(), destinationConnector.getMetaDataId(), testMessage, Status.QUEUED);
                 destinationConnector.getQueue().add(destinationMessage);
+            } finally {
+                destinationConnector.getQueue().unlock();
             }
         }
 
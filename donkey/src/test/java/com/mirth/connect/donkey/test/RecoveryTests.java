@@ -19,6 +19,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -297,6 +298,65 @@ public class RecoveryTests {
         }
     }
 
+    /*
+     * Store unfinished messages, start the channel with concurrent recovery, send new messages
+     * while recovery runs, and assert that:
+     * - Every recovered and new message is sent by the destination exactly once
+     * - The new messages all have IDs after the recovered ones
+     */
+    @Test
+    public final void testConcurrentRecovery() throws Exception {
+        testConcurrentRecovery(true);
+    }
+
+    @Test
+    public final void testConcurrentRecoveryWithSourceQueue() throws Exception {
+        testConcurrentRecovery(false);
+    }
+
+    private void testConcurrentRecovery(boolean respondAfterProcessing) throws Exception {
+        TestChannel channel = TestUtils.createDefaultChannel(channelId, serverId, respondAfterProcessing, 1, 1);
+        channel.setRecoverConcurrently(true);
+
+        TestSourceConnector sourceConnector = (TestSourceConnector) channel.getSourceConnector();
+        TestDestinationConnector destinationConnector = (TestDestinationConnector) channel.getDestinationChains().get(0).getDestinationConnectors().get(1);
+        List<Long> messageIds = new ArrayList<Long>();
+
+        for (int i = 0; i < TEST_SIZE; i++) {
+            messageIds.add(TestUtils.createAndStoreNewMessage(testMessage, channelId, serverId, daoFactory).getMessageId());
+        }
+
+        long maxRecoveredMessageId = messageIds.get(messageIds.size() - 1);
+
+        try {
+            channel.deploy();
+            channel.start();
+
+            for (int i = 0; i < TEST_SIZE; i++) {
+                sourceConnector.readTestMessage(TestUtils.TEST_HL7_MESSAGE);
+            }
+
+            // Queued messages are processed by the queue thread once recovery finishes
+            long timeout = System.currentTimeMillis() + 10000;
+
+            while (destinationConnector.getMessageIds().size() < TEST_SIZE * 2 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100);
+            }
+        } finally {
+            channel.stop();
+            channel.undeploy();
+        }
+
+        for (Long messageId : sourceConnector.getMessageIds()) {
+            assertTrue(messageId > maxRecoveredMessageId);
+            messageIds.add(messageId);
+        }
+
+        List<Long> sentMessageIds = new ArrayList<Long>(destinationConnector.getMessageIds());
+        Collections.sort(sentMessageIds);
+        assertEquals(messageIds, sentMessageIds);
+    }
+
     private void createDestinationMessage(DonkeyDao dao, ConnectorMessage sourceMessage, int metaDataId, Status status) {
         final String responseContent = (new XStreamSerializer()).serialize(new Response(Status.SENT, "test response"));
 
@@ -31,9 +31,11 @@ import com.mirth.connect.donkey.server.channel.DestinationChain;
 import com.mirth.connect.donkey.server.channel.DestinationConnector;
 import com.mirth.connect.donkey.server.channel.FilterTransformerExecutor;
 import com.mirth.connect.donkey.server.channel.FilterTransformerResult;
+import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.channel.components.FilterTransformerException;
 import com.mirth.connect.donkey.server.controllers.ChannelController;
 import com.mirth.connect.donkey.server.data.DonkeyDaoFactory;
+import com.mirth.connect.donkey.server.data.StatisticsFlusher;
 import com.mirth.connect.donkey.server.queue.ConnectorMessageQueue;
 import com.mirth.connect.donkey.server.queue.ConnectorMessageQueueDataSource;
 import com.mirth.connect.donkey.test.util.TestChannel;
@@ -471,6 +473,64 @@ public class StatisticsTests {
         ChannelController.getInstance().removeChannel(channel.getChannelId());
     }
 
+    /*
+     * Update a statistics flusher from multiple threads at once
+     * 
+     * Assert that:
+     * - Nothing is written to the statistics table until the flusher is flushed
+     * - After flushing, the connector and channel rows contain the combined
+     * updates from all threads
+     * - Flushing again without any new updates doesn't change the rows
+     */
+    @Test
+    public final void testStatisticsFlusher() throws Exception {
+        final int numThreads = 4;
+        TestUtils.initChannel(channelId);
+
+        final StatisticsFlusher statisticsFlusher = new StatisticsFlusher(Donkey.getInstance().getDaoFactory(), 60000);
+        final Statistics statistics = new Statistics(false);
+        statistics.update(channelId, 0, Status.RECEIVED, null);
+        statistics.update(channelId, 1, Status.SENT, null);
+        statistics.update(channelId, 2, Status.ERROR, null);
+
+        Thread[] threads = new Thread[numThreads];
+
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < TEST_SIZE; j++) {
+                        statisticsFlusher.update(statistics);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(TestUtils.getChannelStatistics(channelId).isEmpty());
+
+        long expected = numThreads * TEST_SIZE;
+
+        for (int i = 0; i < 2; i++) {
+            statisticsFlusher.flush();
+
+            Map<Integer, Map<Status, Long>> stats = TestUtils.getChannelStatistics(channelId);
+            assertEquals((Long) expected, stats.get(0).get(Status.RECEIVED));
+            assertEquals((Long) expected, stats.get(1).get(Status.SENT));
+            assertEquals((Long) expected, stats.get(2).get(Status.ERROR));
+            assertEquals((Long) expected, stats.get(null).get(Status.RECEIVED));
+            assertEquals((Long) expected, stats.get(null).get(Status.SENT));
+            assertEquals((Long) expected, stats.get(null).get(Status.ERROR));
+            assertEquals((Long) 0L, stats.get(null).get(Status.FILTERED));
+        }
+
+        ChannelController.getInstance().removeChannel(channelId);
+    }
+
     private void statsEqual(String channelId, Integer metaDataId, Long received, Long filtered, Long transformed, Long pending, Long sent, Long error) {
         assertStatsEqual(ChannelController.getInstance().getStatistics().getConnectorStats(channelId, metaDataId), received, filtered, transformed, pending, sent, error);
     }
@@ -10,6 +10,7 @@
 package com.mirth.connect.donkey.test.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.mirth.connect.donkey.model.channel.ConnectorProperties;
@@ -28,7 +29,7 @@ public class TestDestinationConnector extends DestinationConnector {
     final public static String TEST_RESPONSE_PREFIX = "response";
     private volatile boolean queueThreadRunning = false;
 
-    private List<Long> messageIds = new ArrayList<Long>();
+    private List<Long> messageIds = Collections.synchronizedList(new ArrayList<Long>());
     private boolean isDeployed = false;
 
     public List<Long> getMessageIds() {
@@ -133,6 +133,7 @@ public class TestUtils {
 
         TestDestinationConnector destinationConnector = (TestDestinationConnector) TestUtils.createDefaultDestinationConnector();
         destinationConnector.setChannelId(channelId);
+        destinationConnector.setChannel(channel);
         destinationConnector.setMetaDataId(1);
         destinationConnector.setResponseTransformerExecutor(TestUtils.createDefaultResponseTransformerExecutor());
 
@@ -192,6 +193,7 @@ public class TestUtils {
                 int metaDataId = (i - 1) * numDestinationsPerChain + j;
                 TestDestinationConnector destinationConnector = (TestDestinationConnector) TestUtils.createDestinationConnector(channel.getChannelId(), channel.getServerId(), new TestConnectorProperties(), TestUtils.DEFAULT_DESTINATION_NAME, new TestDataType(), new TestDataType(), new TestResponseTransformer(), metaDataId);
                 destinationConnector.setChannelId(channelId);
+                destinationConnector.setChannel(channel);
                 chain.addDestination(metaDataId, TestUtils.createDefaultFilterTransformerExecutor(), destinationConnector);
             }
 
@@ -45,6 +45,7 @@ public class FileConnector {
     private boolean passive;
     private boolean secure;
     private boolean validateConnection;
+    private int maxConnections = GenericObjectPool.DEFAULT_MAX_ACTIVE;
 
     public FileConnector(String channelId, ConnectorProperties connectorProperties) {
         this.channelId = channelId;
@@ -135,6 +136,18 @@ public class FileConnector {
         this.validateConnection = validateConnection;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections each pool will open, and keep open while idle. This
+     * must be set before the first connection is requested.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
     /**
      * URI.getPath() does not retrieve the desired result for relative paths. The first directory
      * would be omitted and the second directory would be used with the system's root as the base.
@@ -287,6 +300,8 @@ public class FileConnector {
         ObjectPool pool = pools.get(key);
         if (pool == null) {
             GenericObjectPool.Config config = new GenericObjectPool.Config();
+            config.maxActive = maxConnections;
+            config.maxIdle = maxConnections;
             if (isValidateConnection()) {
                 config.testOnBorrow = true;
                 config.testOnReturn = true;
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import com.mirth.connect.connectors.file.filesystems.FileInfo;
+
+/**
+ * Remembers the size and last modified time of files that have already been read and left in
+ * place, so an incremental scan can skip the files that haven't changed since. The index is saved
+ * to a file, so it survives redeploys and restarts.
+ */
+public class FileIndex {
+    private static final int FORMAT_VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private Logger logger = Logger.getLogger(getClass());
+    private File file;
+    private ConcurrentSkipListMap<String, IndexEntry> entries = new ConcurrentSkipListMap<String, IndexEntry>();
+    private volatile boolean changed;
+
+    public FileIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the entries saved by a previous deploy. If the index can't be read, it starts out empty
+     * and files will be read again.
+     */
+    public void load() {
+        entries.clear();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        DataInputStream input = null;
+
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (input.readInt() != FORMAT_VERSION) {
+                return;
+            }
+
+            int count = input.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                entries.put(path, new IndexEntry(input.readLong(), input.readLong()));
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read file index " + file.getAbsolutePath() + ", all files will be scanned again.", e);
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Saves the index if it has changed since it was last loaded or saved.
+     */
+    public synchronized void save() {
+        if (!changed) {
+            return;
+        }
+
+        changed = false;
+        File tempFile = null;
+        DataOutputStream output = null;
+
+        try {
+            file.getParentFile().mkdirs();
+            tempFile = File.createTempFile(file.getName(), TEMP_SUFFIX, file.getParentFile());
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            // Copy the entries first, since files may be added while the index is saved
+            Map<String, IndexEntry> snapshot = new HashMap<String, IndexEntry>(entries);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(snapshot.size());
+
+            for (Entry<String, IndexEntry> entry : snapshot.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().size);
+                output.writeLong(entry.getValue().lastModified);
+            }
+
+            output.close();
+            output = null;
+
+            FileUtils.deleteQuietly(file);
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tempFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            changed = true;
+            logger.warn("Unable to write file index " + file.getAbsolutePath() + ".", e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Returns true if the file is in the index with the same size and last modified time.
+     */
+    public boolean isUnchanged(FileInfo fileInfo) {
+        IndexEntry entry = entries.get(fileInfo.getAbsolutePath());
+        return entry != null && entry.size == fileInfo.getSize() && entry.lastModified == fileInfo.getLastModified();
+    }
+
+    public void put(FileInfo fileInfo) {
+        entries.put(fileInfo.getAbsolutePath(), new IndexEntry(fileInfo.getSize(), fileInfo.getLastModified()));
+        changed = true;
+    }
+
+    public void remove(FileInfo fileInfo) {
+        if (entries.remove(fileInfo.getAbsolutePath()) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Removes the entries for files that were deleted. A path may also be a deleted directory, in
+     * which case the entries for every file under it are removed.
+     */
+    public void removeAll(Set<String> paths) {
+        for (String path : paths) {
+            if (entries.remove(path) != null) {
+                changed = true;
+            }
+
+            // Separators sort right before the characters after them, so this covers the directory
+            Map<String, IndexEntry> children = entries.subMap(path + File.separatorChar, path + (char) (File.separatorChar + 1));
+
+            if (!children.isEmpty()) {
+                children.clear();
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries for files that weren't seen by a complete scan, i.e. files that have
+     * since been moved or deleted.
+     */
+    public void retainAll(Set<String> paths) {
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext();) {
+            if (!paths.contains(iterator.next())) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static class IndexEntry {
+        private long size;
+        private long lastModified;
+
+        public IndexEntry(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
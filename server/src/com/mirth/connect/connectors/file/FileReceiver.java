@@ -16,16 +16,29 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
 import java.util.UUID;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -34,6 +47,8 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.mirth.connect.connectors.file.filesystems.DirectoryWatcher;
+import com.mirth.connect.connectors.file.filesystems.FileConnection;
 import com.mirth.connect.connectors.file.filesystems.FileInfo;
 import com.mirth.connect.connectors.file.filesystems.FileSystemConnection;
 import com.mirth.connect.donkey.model.event.ConnectionStatusEventType;
@@ -56,6 +71,7 @@ import com.mirth.connect.donkey.server.message.BatchMessageProcessor;
 import com.mirth.connect.donkey.server.message.BatchMessageProcessorException;
 import com.mirth.connect.donkey.server.message.DataType;
 import com.mirth.connect.model.CodeTemplate.ContextType;
+import com.mirth.connect.server.controllers.ConfigurationController;
 import com.mirth.connect.server.controllers.ControllerFactory;
 import com.mirth.connect.server.controllers.EventController;
 import com.mirth.connect.server.controllers.ExtensionController;
@@ -63,7 +79,7 @@ import com.mirth.connect.server.util.TemplateValueReplacer;
 import com.mirth.connect.server.util.javascript.JavaScriptUtil;
 import com.mirth.connect.util.CharsetUtils;
 
-public class FileReceiver extends PollConnector implements BatchMessageProcessor {
+public class FileReceiver extends PollConnector {
     protected transient Log logger = LogFactory.getLog(getClass());
 
     private String readDir = null;
@@ -77,8 +93,6 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
     private TemplateValueReplacer replacer = new TemplateValueReplacer();
     private FileConnector fileConnector = null;
 
-    private String originalFilename = null;
-
     private FileReceiverProperties connectorProperties;
     private String charsetEncoding;
     private String batchScriptId;
@@ -87,6 +101,15 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
     private long fileSizeMinimum;
     private long fileSizeMaximum;
 
+    private int processingThreads;
+    private ExecutorService processingExecutor;
+
+    private FileIndex fileIndex;
+    private DirectoryWatcher directoryWatcher;
+    private boolean fullScanNeeded;
+    // Files that were too new to process, which are checked again on the next poll
+    private ConcurrentMap<String, Set<String>> deferredFiles = new ConcurrentHashMap<String, Set<String>>();
+
     @Override
     public void onDeploy() throws DeployException {
         this.connectorProperties = (FileReceiverProperties) SerializationUtils.clone(getConnectorProperties());
@@ -100,6 +123,10 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
 
         this.fileConnector = new FileConnector(getChannelId(), connectorProperties);
 
+        // Each processing thread needs a connection to read and move its file, plus one for listing
+        processingThreads = Math.max(NumberUtils.toInt(replacer.replaceValues(connectorProperties.getProcessingThreads(), getChannelId()), 1), 1);
+        fileConnector.setMaxConnections(Math.max(fileConnector.getMaxConnections(), processingThreads + 1));
+
         try {
             uri = fileConnector.getEndpointURI(connectorProperties.getHost());
         } catch (URISyntaxException e1) {
@@ -133,6 +160,11 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         fileSizeMinimum = NumberUtils.toLong(connectorProperties.getFileSizeMinimum(), 0);
         fileSizeMaximum = NumberUtils.toLong(connectorProperties.getFileSizeMaximum(), 0);
 
+        if (connectorProperties.isIncrementalScan()) {
+            fileIndex = new FileIndex(new File(new File(ConfigurationController.getInstance().getApplicationDataDir(), "fileindex"), getChannelId() + "_" + getMetaDataId() + ".index"));
+            fileIndex.load();
+        }
+
         eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.IDLE));
     }
 
@@ -151,10 +183,53 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         } catch (Exception e) {
             throw new StartException(e.getMessage(), e);
         }
+
+        if (processingThreads > 1) {
+            processingExecutor = Executors.newFixedThreadPool(processingThreads, new ThreadFactory() {
+                private AtomicInteger threadNumber = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "File Reader Thread " + threadNumber.getAndIncrement() + " on " + getChannelId());
+                }
+            });
+        }
+
+        fullScanNeeded = true;
+        deferredFiles.clear();
+
+        if (connectorProperties.isIncrementalScan() && connectorProperties.getScheme() == FileScheme.FILE) {
+            try {
+                directoryWatcher = new DirectoryWatcher(readDir, connectorProperties.isDirectoryRecursion());
+            } catch (Throwable t) {
+                // The directories will be listed on every poll instead
+                logger.warn("Unable to watch directory " + readDir + " in channel: " + getChannelId(), t);
+            }
+        }
     }
 
     @Override
     public void onStop() throws StopException {
+        // The poll thread has already waited for any files in progress
+        if (processingExecutor != null) {
+            processingExecutor.shutdown();
+            processingExecutor = null;
+        }
+
+        if (directoryWatcher != null) {
+            try {
+                directoryWatcher.close();
+            } catch (IOException e) {
+                logger.warn("Unable to stop watching directory " + readDir + " in channel: " + getChannelId(), e);
+            }
+
+            directoryWatcher = null;
+        }
+
+        if (fileIndex != null) {
+            fileIndex.save();
+        }
+
         try {
             fileConnector.doStop();
         } catch (FileConnectorException e) {
@@ -166,6 +241,10 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
 
     @Override
     public void onHalt() throws HaltException {
+        if (processingExecutor != null) {
+            processingExecutor.shutdownNow();
+        }
+
         fileConnector.disconnect();
         try {
             onStop();
@@ -175,30 +254,100 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
     }
 
     @Override
-    protected void poll() {
+    protected void poll() throws InterruptedException {
         eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.POLLING));
         try {
-            if (connectorProperties.isDirectoryRecursion()) {
-                Set<String> visitedDirectories = new HashSet<String>();
-                Stack<String> directoryStack = new Stack<String>();
-                directoryStack.push(readDir);
+            Map<String, Set<String>> changes = null;
 
-                FileInfo[] files;
+            if (directoryWatcher != null && !fullScanNeeded) {
+                changes = directoryWatcher.takeChanges();
 
-                while ((files = listFilesRecursively(visitedDirectories, directoryStack)) != null) {
-                    processFiles(files);
+                // Otherwise the index would keep every file that was ever read and then deleted
+                if (fileIndex != null) {
+                    fileIndex.removeAll(directoryWatcher.takeDeletedPaths());
                 }
+            }
+
+            if (changes != null) {
+                scanChanges(changes);
             } else {
-                processFiles(listFiles(readDir));
+                scanAll();
             }
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Throwable t) {
             eventController.dispatchEvent(new ErrorEvent(getChannelId(), getMetaDataId(), ErrorEventType.SOURCE_CONNECTOR, getSourceName(), connectorProperties.getName(), null, t));
             logger.error("Error polling in channel: " + getChannelId(), t);
         } finally {
+            if (fileIndex != null) {
+                fileIndex.save();
+            }
+
             eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.IDLE));
         }
     }
 
+    /*
+     * Lists and processes every file in the read directory, and its subdirectories if recursion is
+     * enabled.
+     */
+    private void scanAll() throws Exception {
+        Set<String> listedPaths = fileIndex != null ? new HashSet<String>() : null;
+
+        if (connectorProperties.isDirectoryRecursion()) {
+            Set<String> visitedDirectories = new HashSet<String>();
+            Stack<String> directoryStack = new Stack<String>();
+            directoryStack.push(readDir);
+
+            FileInfo[] files;
+
+            while ((files = listFilesRecursively(visitedDirectories, directoryStack)) != null) {
+                processFiles(files, listedPaths);
+            }
+        } else {
+            processFiles(listFiles(readDir), listedPaths);
+        }
+
+        if (!isTerminated()) {
+            fullScanNeeded = false;
+
+            // Forget the files that are no longer there
+            if (fileIndex != null) {
+                fileIndex.retainAll(listedPaths);
+            }
+        }
+    }
+
+    /*
+     * Processes only the files the directory watcher reported as created or modified, along with
+     * any files that were too new to process on the last poll.
+     */
+    private void scanChanges(Map<String, Set<String>> changes) throws Exception {
+        for (Entry<String, Set<String>> entry : deferredFiles.entrySet()) {
+            if (!changes.containsKey(entry.getKey())) {
+                changes.put(entry.getKey(), new HashSet<String>());
+            }
+
+            if (changes.get(entry.getKey()) != null) {
+                changes.get(entry.getKey()).addAll(entry.getValue());
+            }
+        }
+
+        deferredFiles.clear();
+
+        for (Entry<String, Set<String>> entry : changes.entrySet()) {
+            if (isTerminated()) {
+                return;
+            }
+
+            if (entry.getValue() == null) {
+                processFiles(listFiles(entry.getKey()), null);
+            } else {
+                processFiles(listFiles(entry.getKey(), entry.getValue()), null);
+            }
+        }
+    }
+
     private FileInfo[] listFilesRecursively(Set<String> visitedDirectories, Stack<String> directoryStack) throws Exception {
         while (!directoryStack.isEmpty()) {
             // Get the current directory
@@ -222,10 +371,19 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         return null;
     }
 
-    private void processFiles(FileInfo[] files) {
+    private void processFiles(FileInfo[] files, Set<String> listedPaths) throws InterruptedException {
+        if (fileIndex != null) {
+            files = removeUnchangedFiles(files, listedPaths);
+        }
+
         // sort files by specified attribute before processing
         sortFiles(files);
 
+        if (processingExecutor != null) {
+            processFilesConcurrently(files);
+            return;
+        }
+
         for (int i = 0; i < files.length; i++) {
             if (isTerminated()) {
                 return;
@@ -239,6 +397,68 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         }
     }
 
+    /*
+     * Removes the files that were already read and haven't changed since. The paths of all the
+     * files are added to listedPaths, if given.
+     */
+    private FileInfo[] removeUnchangedFiles(FileInfo[] files, Set<String> listedPaths) {
+        List<FileInfo> changedFiles = new ArrayList<FileInfo>(files.length);
+
+        for (FileInfo file : files) {
+            if (listedPaths != null) {
+                listedPaths.add(file.getAbsolutePath());
+            }
+
+            if (file.isDirectory() || !fileIndex.isUnchanged(file)) {
+                changedFiles.add(file);
+            }
+        }
+
+        return changedFiles.toArray(new FileInfo[changedFiles.size()]);
+    }
+
+    /*
+     * Hands the files to the processing threads in sorted order, and waits until all of them have
+     * been processed so the next poll doesn't pick up files that are still in progress.
+     */
+    private void processFilesConcurrently(FileInfo[] files) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>(files.length);
+
+        eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.READING));
+
+        try {
+            for (final FileInfo file : files) {
+                if (!file.isDirectory()) {
+                    futures.add(processingExecutor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isTerminated()) {
+                                processFile(file);
+                            }
+                        }
+                    }));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // processFile reports its own errors, so this would only be an unexpected error
+                    logger.error("Error processing file in channel: " + getChannelId(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+
+            throw e;
+        } finally {
+            eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.IDLE));
+        }
+    }
+
     public void sortFiles(FileInfo[] files) {
         String sortAttribute = connectorProperties.getSortBy();
 
@@ -263,28 +483,31 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         }
     }
 
-    public synchronized void processFile(FileInfo file) {
+    public void processFile(FileInfo file) {
         try {
             boolean checkFileAge = connectorProperties.isCheckFileAge();
             if (checkFileAge) {
                 long fileAge = Long.valueOf(connectorProperties.getFileAge());
                 long lastMod = file.getLastModified();
                 long now = System.currentTimeMillis();
-                if ((now - lastMod) < fileAge)
+                if ((now - lastMod) < fileAge) {
+                    deferFile(file);
                     return;
+                }
             }
 
             long fileSize = file.getSize();
 
-            if (fileSize < fileSizeMinimum) {
-                return;
-            }
-            if (!connectorProperties.isIgnoreFileSizeMaximum() && fileSize > fileSizeMaximum) {
+            if (fileSize < fileSizeMinimum || (!connectorProperties.isIgnoreFileSizeMaximum() && fileSize > fileSizeMaximum)) {
+                // Skip the file until its size changes
+                if (fileIndex != null) {
+                    fileIndex.put(file);
+                }
                 return;
             }
 
             // Add the original filename to the channel map
-            originalFilename = file.getName();
+            String originalFilename = file.getName();
             Map<String, Object> sourceMap = new HashMap<String, Object>();
             sourceMap.put("originalFilename", originalFilename);
 
@@ -314,7 +537,7 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
                         if (connectorProperties.isBinary()) {
                             rawMessage = new RawMessage(getBytesFromFile(file));
                         } else {
-                            rawMessage = new RawMessage(new String(getBytesFromFile(file), charsetEncoding));
+                            rawMessage = new RawMessage(getStringFromFile(file));
                         }
 
                         rawMessage.setSourceMap(sourceMap);
@@ -396,6 +619,20 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
                     }
                 }
 
+                // Files that were read and left in place are skipped until they change
+                if (fileIndex != null) {
+                    if (!error && action != FileAction.MOVE && action != FileAction.DELETE) {
+                        fileIndex.put(file);
+                    } else {
+                        fileIndex.remove(file);
+                    }
+                }
+
+                // Files left in place after an error are retried on the next poll
+                if (error && action != FileAction.MOVE && action != FileAction.DELETE) {
+                    deferFile(file);
+                }
+
                 if (fileProcessedException != null) {
                     throw fileProcessedException;
                 }
@@ -406,6 +643,13 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         }
     }
 
+    private void deferFile(FileInfo file) {
+        if (directoryWatcher != null) {
+            deferredFiles.putIfAbsent(file.getParent(), Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+            deferredFiles.get(file.getParent()).add(file.getName());
+        }
+    }
+
     private boolean filesEqual(String dir1, String name1, String dir2, String name2) {
         String separator = System.getProperty("file.separator");
         String escapedSeparator = StringEscapeUtils.escapeJava(separator);
@@ -440,7 +684,7 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
             Reader in = null;
             try {
                 in = new InputStreamReader(con.readFile(file.getName(), file.getParent()), charsetEncoding);
-                batchAdaptor.processBatch(in, this);
+                batchAdaptor.processBatch(in, new FileBatchMessageProcessor(file.getName()));
             } finally {
                 if (in != null) {
                     in.close();
@@ -528,6 +772,30 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         }
     }
 
+    /*
+     * Returns the contents of the file decoded with the selected charset. The characters are decoded
+     * as they're read, so the file's bytes are never held in memory all at once.
+     */
+    private String getStringFromFile(FileInfo file) throws Exception {
+        FileSystemConnection con = fileConnector.getConnection(uri, null, connectorProperties);
+
+        try {
+            Reader reader = new InputStreamReader(con.readFile(file.getName(), file.getParent()), charsetEncoding);
+
+            try {
+                // The size is only a hint, the file may have changed since it was listed
+                StringBuilderWriter writer = new StringBuilderWriter((int) Math.min(Math.max(file.getSize(), 0), Integer.MAX_VALUE - 8));
+                IOUtils.copy(reader, writer);
+                return writer.toString();
+            } finally {
+                reader.close();
+                con.closeReadFile();
+            }
+        } finally {
+            fileConnector.releaseConnection(uri, con, null, connectorProperties);
+        }
+    }
+
     /**
      * Get a list of files to be processed.
      * 
@@ -545,6 +813,20 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
         }
     }
 
+    /*
+     * Get a list of the named files within a local directory, without listing the whole directory.
+     */
+    private FileInfo[] listFiles(String fromDir, Set<String> names) throws Exception {
+        FileSystemConnection con = fileConnector.getConnection(uri, null, connectorProperties);
+
+        try {
+            List<FileInfo> files = ((FileConnection) con).listFiles(fromDir, names, filenamePattern, connectorProperties.isRegex(), connectorProperties.isIgnoreDot());
+            return files.toArray(new FileInfo[files.size()]);
+        } finally {
+            fileConnector.releaseConnection(uri, con, null, connectorProperties);
+        }
+    }
+
     /**
      * Get a list of subdirectories within a directory.
      * 
@@ -562,37 +844,49 @@ public class FileReceiver extends PollConnector implements BatchMessageProcessor
     }
 
     @Override
-    public boolean processBatchMessage(String message) throws BatchMessageProcessorException {
-        if (isTerminated()) {
-            return false;
+    public void handleRecoveredResponse(DispatchResult dispatchResult) {
+        //TODO add cleanup code
+        finishDispatch(dispatchResult);
+    }
+
+    /*
+     * Dispatches the messages of a single batch file. Each file gets its own processor, so that
+     * files processed at the same time keep their own original filename.
+     */
+    private class FileBatchMessageProcessor implements BatchMessageProcessor {
+        private String originalFilename;
+
+        public FileBatchMessageProcessor(String originalFilename) {
+            this.originalFilename = originalFilename;
         }
 
-        Map<String, Object> sourceMap = new HashMap<String, Object>();
-        sourceMap.put("originalFilename", originalFilename);
+        @Override
+        public boolean processBatchMessage(String message) throws BatchMessageProcessorException {
+            if (isTerminated()) {
+                return false;
+            }
 
-        RawMessage rawMessage = new RawMessage(message);
-        rawMessage.setSourceMap(sourceMap);
-        DispatchResult dispatchResult = null;
+            Map<String, Object> sourceMap = new HashMap<String, Object>();
+            sourceMap.put("originalFilename", originalFilename);
 
-        try {
-            dispatchResult = dispatchRawMessage(rawMessage);
-        } catch (ChannelException e) {
-            throw new BatchMessageProcessorException(e);
-        } finally {
-            finishDispatch(dispatchResult);
-        }
+            RawMessage rawMessage = new RawMessage(message);
+            rawMessage.setSourceMap(sourceMap);
+            DispatchResult dispatchResult = null;
 
-        return true;
-    }
+            try {
+                dispatchResult = dispatchRawMessage(rawMessage);
+            } catch (ChannelException e) {
+                throw new BatchMessageProcessorException(e);
+            } finally {
+                finishDispatch(dispatchResult);
+            }
 
-    @Override
-    public String getBatchScriptId() {
-        return batchScriptId;
-    }
+            return true;
+        }
 
-    @Override
-    public void handleRecoveredResponse(DispatchResult dispatchResult) {
-        //TODO add cleanup code
-        finishDispatch(dispatchResult);
+        @Override
+        public String getBatchScriptId() {
+            return batchScriptId;
+        }
     }
 }
@@ -55,6 +55,8 @@ public class FileReceiverProperties extends ConnectorProperties implements PollC
     private boolean binary;
     private String charsetEncoding;
     private boolean processBatch;
+    private String processingThreads;
+    private boolean incrementalScan;
 
     public static final String SORT_BY_NAME = "name";
     public static final String SORT_BY_SIZE = "size";
@@ -93,6 +95,8 @@ public class FileReceiverProperties extends ConnectorProperties implements PollC
         binary = false;
         charsetEncoding = CharsetUtils.DEFAULT_ENCODING;
         processBatch = false;
+        processingThreads = "1";
+        incrementalScan = false;
     }
 
     public FileScheme getScheme() {
@@ -327,6 +331,32 @@ public class FileReceiverProperties extends ConnectorProperties implements PollC
         this.processBatch = processBatch;
     }
 
+    public String getProcessingThreads() {
+        return processingThreads;
+    }
+
+    /**
+     * The number of files to process at the same time. Files are still handed to the processing
+     * threads in the order given by the sort attribute, but with more than one thread they may
+     * finish out of order.
+     */
+    public void setProcessingThreads(String processingThreads) {
+        this.processingThreads = processingThreads;
+    }
+
+    public boolean isIncrementalScan() {
+        return incrementalScan;
+    }
+
+    /**
+     * If true, files that were read and left in place are skipped until their size or last
+     * modified time changes, and local directories are watched for changes instead of being listed
+     * on every poll.
+     */
+    public void setIncrementalScan(boolean incrementalScan) {
+        this.incrementalScan = incrementalScan;
+    }
+
     @Override
     public String getProtocol() {
         return "File";
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.file.filesystems;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches a local directory, and optionally its subdirectories, for files that are created, modified
+ * or deleted. This lets the File Reader look at just the files that changed, instead of listing every
+ * directory on every poll.
+ */
+public class DirectoryWatcher {
+    private WatchService watchService;
+    private Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    private Set<String> deletedPaths = new HashSet<String>();
+    private boolean recursive;
+
+    public DirectoryWatcher(String directory, boolean recursive) throws IOException {
+        this.recursive = recursive;
+        watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            register(Paths.get(directory).toAbsolutePath(), null);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of the files that were created or modified since the last call, grouped by
+     * directory. A directory maps to null if all of its files need to be listed, which is the case
+     * for new subdirectories. Returns null if events were lost, in which case every directory needs
+     * to be listed again.
+     */
+    public synchronized Map<String, Set<String>> takeChanges() throws IOException {
+        Map<String, Set<String>> changes = new HashMap<String, Set<String>>();
+        boolean overflow = false;
+        WatchKey key;
+
+        while ((key = watchService.poll()) != null) {
+            Path directory = directories.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || directory == null) {
+                    overflow = true;
+                    continue;
+                }
+
+                Path child = directory.resolve((Path) event.context());
+
+                if (event.kind() == ENTRY_DELETE) {
+                    deletedPaths.add(child.toString());
+                } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    if (recursive && event.kind() == ENTRY_CREATE) {
+                        register(child, changes);
+                    }
+                } else {
+                    String directoryName = directory.toString();
+
+                    if (!changes.containsKey(directoryName)) {
+                        changes.put(directoryName, new HashSet<String>());
+                    }
+
+                    Set<String> names = changes.get(directoryName);
+
+                    // A null set means the whole directory is listed anyway
+                    if (names != null) {
+                        names.add(child.getFileName().toString());
+                    }
+                }
+            }
+
+            // The directory is no longer accessible, e.g. it was deleted
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+
+        return overflow ? null : changes;
+    }
+
+    /**
+     * Returns the absolute paths of the files and directories that were deleted, as seen by the
+     * calls to takeChanges since the last call.
+     */
+    public synchronized Set<String> takeDeletedPaths() {
+        Set<String> paths = deletedPaths;
+        deletedPaths = new HashSet<String>();
+        return paths;
+    }
+
+    public synchronized void close() throws IOException {
+        directories.clear();
+        deletedPaths.clear();
+        watchService.close();
+    }
+
+    /*
+     * Registers the directory, and all of its subdirectories if recursive. If changes is not null,
+     * the directories are added to it so any files already in them are listed.
+     */
+    private void register(Path directory, final Map<String, Set<String>> changes) throws IOException {
+        if (recursive) {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path subdirectory, BasicFileAttributes attributes) throws IOException {
+                    registerDirectory(subdirectory, changes);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            registerDirectory(directory, changes);
+        }
+    }
+
+    private void registerDirectory(Path directory, Map<String, Set<String>> changes) throws IOException {
+        directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+
+        if (changes != null) {
+            changes.put(directory.toString(), null);
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
@@ -106,13 +107,7 @@ public class FileConnection implements FileSystemConnection, FileIgnoring {
 
     @Override
     public List<FileInfo> listFiles(String fromDir, String filenamePattern, boolean isRegex, boolean ignoreDot) throws Exception {
-        FilenameFilter filenameFilter;
-
-        if (isRegex) {
-            filenameFilter = new RegexFilenameFilter(filenamePattern);
-        } else {
-            filenameFilter = new WildcardFileFilter(filenamePattern.trim().split("\\s*,\\s*"));
-        }
+        FilenameFilter filenameFilter = getFilenameFilter(filenamePattern, isRegex);
 
         File readDirectory = getReadDirectory(fromDir);
 
@@ -136,6 +131,39 @@ public class FileConnection implements FileSystemConnection, FileIgnoring {
         }
     }
 
+    /**
+     * Gets a List of FileInfo for the named files in the specified folder that still exist and
+     * match the specified pattern. This looks up files that are known to have changed without
+     * listing the whole folder.
+     */
+    public List<FileInfo> listFiles(String fromDir, Collection<String> names, String filenamePattern, boolean isRegex, boolean ignoreDot) throws Exception {
+        FilenameFilter filenameFilter = getFilenameFilter(filenamePattern, isRegex);
+        File readDirectory = getReadDirectory(fromDir);
+        List<FileInfo> result = new ArrayList<FileInfo>(names.size());
+
+        try {
+            for (String name : names) {
+                File f = new File(readDirectory, name);
+
+                if (f.exists() && filenameFilter.accept(readDirectory, name) && !name.endsWith(IGNORE) && !isFileIgnored(f) && !(ignoreDot && name.startsWith("."))) {
+                    result.add(new FileFileInfo(f));
+                }
+            }
+        } catch (Exception e) {
+            throw new FileConnectorException("Error listing files from [" + fromDir + "] for pattern [" + filenamePattern + "]", e);
+        }
+
+        return result;
+    }
+
+    private FilenameFilter getFilenameFilter(String filenamePattern, boolean isRegex) {
+        if (isRegex) {
+            return new RegexFilenameFilter(filenamePattern);
+        } else {
+            return new WildcardFileFilter(filenamePattern.trim().split("\\s*,\\s*"));
+        }
+    }
+
     @Override
     public List<String> listDirectories(String fromDir) throws Exception {
         List<String> directories = new ArrayList<String>();
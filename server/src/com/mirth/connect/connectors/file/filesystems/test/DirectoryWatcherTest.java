@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.file.filesystems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.file.filesystems.DirectoryWatcher;
+
+public class DirectoryWatcherTest {
+    private static final long TIMEOUT = 10000;
+
+    private File someFolder;
+    private DirectoryWatcher watcher;
+
+    @Test
+    public void testCreateAndModify() throws Exception {
+        watcher = new DirectoryWatcher(someFolder.getAbsolutePath(), false);
+        assertTrue(watcher.takeChanges().isEmpty());
+
+        File file = new File(someFolder, "a.txt");
+        FileUtils.writeStringToFile(file, "abc");
+        assertEquals(Collections.singleton("a.txt"), waitForChanges(someFolder).get(someFolder.getAbsolutePath()));
+
+        FileUtils.writeStringToFile(file, "abcd");
+        assertEquals(Collections.singleton("a.txt"), waitForChanges(someFolder).get(someFolder.getAbsolutePath()));
+        assertTrue(watcher.takeDeletedPaths().isEmpty());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        File file = new File(someFolder, "a.txt");
+        FileUtils.writeStringToFile(file, "abc");
+        watcher = new DirectoryWatcher(someFolder.getAbsolutePath(), false);
+
+        assertTrue(file.delete());
+        assertEquals(Collections.singleton(file.getAbsolutePath()), waitForDeletedPaths(1));
+
+        // Deleted files aren't reported as changes, since there's nothing left to read
+        assertTrue(watcher.takeChanges().isEmpty());
+        assertTrue(watcher.takeDeletedPaths().isEmpty());
+    }
+
+    @Test
+    public void testSubdirectories() throws Exception {
+        watcher = new DirectoryWatcher(someFolder.getAbsolutePath(), true);
+
+        // A new subdirectory is listed in full, since files may have been added before it was watched
+        File subdirectory = new File(someFolder, "sub");
+        assertTrue(subdirectory.mkdir());
+        Map<String, Set<String>> changes = waitForChanges(subdirectory);
+        assertTrue(changes.containsKey(subdirectory.getAbsolutePath()));
+        assertNull(changes.get(subdirectory.getAbsolutePath()));
+
+        // Files in the subdirectory are watched from then on
+        File file = new File(subdirectory, "b.txt");
+        FileUtils.writeStringToFile(file, "abc");
+        assertEquals(Collections.singleton("b.txt"), waitForChanges(subdirectory).get(subdirectory.getAbsolutePath()));
+
+        // Deleting the subdirectory reports both the file and the directory
+        FileUtils.deleteDirectory(subdirectory);
+        Set<String> deletedPaths = waitForDeletedPaths(2);
+        assertTrue(deletedPaths.contains(file.getAbsolutePath()));
+        assertTrue(deletedPaths.contains(subdirectory.getAbsolutePath()));
+    }
+
+    @Test
+    public void testNotRecursive() throws Exception {
+        watcher = new DirectoryWatcher(someFolder.getAbsolutePath(), false);
+
+        File subdirectory = new File(someFolder, "sub");
+        assertTrue(subdirectory.mkdir());
+        FileUtils.writeStringToFile(new File(someFolder, "a.txt"), "abc");
+        FileUtils.writeStringToFile(new File(subdirectory, "b.txt"), "abc");
+
+        Map<String, Set<String>> changes = waitForChanges(someFolder);
+        assertEquals(Collections.singleton("a.txt"), changes.get(someFolder.getAbsolutePath()));
+        assertFalse(changes.containsKey(subdirectory.getAbsolutePath()));
+    }
+
+    /*
+     * Events are delivered asynchronously, so keep taking changes until the directory shows up.
+     */
+    private Map<String, Set<String>> waitForChanges(File directory) throws Exception {
+        Map<String, Set<String>> allChanges = new HashMap<String, Set<String>>();
+        long end = System.currentTimeMillis() + TIMEOUT;
+
+        do {
+            Thread.sleep(100);
+
+            for (Entry<String, Set<String>> entry : watcher.takeChanges().entrySet()) {
+                if (entry.getValue() == null || !allChanges.containsKey(entry.getKey())) {
+                    allChanges.put(entry.getKey(), entry.getValue());
+                } else if (allChanges.get(entry.getKey()) != null) {
+                    allChanges.get(entry.getKey()).addAll(entry.getValue());
+                }
+            }
+        } while (!allChanges.containsKey(directory.getAbsolutePath()) && System.currentTimeMillis() < end);
+
+        return allChanges;
+    }
+
+    private Set<String> waitForDeletedPaths(int count) throws Exception {
+        Set<String> deletedPaths = new HashSet<String>();
+        long end = System.currentTimeMillis() + TIMEOUT;
+
+        do {
+            Thread.sleep(100);
+            watcher.takeChanges();
+            deletedPaths.addAll(watcher.takeDeletedPaths());
+        } while (deletedPaths.size() < count && System.currentTimeMillis() < end);
+
+        return deletedPaths;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        someFolder = new File("TEST_DirectoryWatcher").getAbsoluteFile();
+        FileUtils.deleteDirectory(someFolder);
+        someFolder.mkdir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+
+        FileUtils.deleteDirectory(someFolder);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.file.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.file.FileIndex;
+import com.mirth.connect.connectors.file.filesystems.FileConnection;
+import com.mirth.connect.connectors.file.filesystems.FileInfo;
+
+public class FileIndexTest {
+    private FileConnection fc;
+    private File someFolder;
+    private File indexFile;
+
+    @Test
+    public void testIsUnchanged() throws Exception {
+        FileIndex index = new FileIndex(indexFile);
+        File file = createFile("a.txt", "abc");
+
+        assertFalse(index.isUnchanged(info(file)));
+        index.put(info(file));
+        assertTrue(index.isUnchanged(info(file)));
+
+        // A different size or last modified time means the file has to be read again
+        FileUtils.writeStringToFile(file, "abcd");
+        assertFalse(index.isUnchanged(info(file)));
+
+        index.put(info(file));
+        file.setLastModified(file.lastModified() - 10000);
+        assertFalse(index.isUnchanged(info(file)));
+
+        index.remove(info(file));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        FileIndex index = new FileIndex(indexFile);
+        File file1 = createFile("a.txt", "abc");
+        File file2 = createFile("b.txt", "def");
+        index.put(info(file1));
+        index.put(info(file2));
+        index.save();
+
+        FileIndex loadedIndex = new FileIndex(indexFile);
+        loadedIndex.load();
+        assertEquals(2, loadedIndex.size());
+        assertTrue(loadedIndex.isUnchanged(info(file1)));
+        assertTrue(loadedIndex.isUnchanged(info(file2)));
+
+        // An index that can't be read starts out empty
+        FileUtils.writeStringToFile(indexFile, "not an index");
+        loadedIndex.load();
+        assertEquals(0, loadedIndex.size());
+
+        // Nothing is written if nothing changed since the last save
+        index.save();
+        assertEquals("not an index", FileUtils.readFileToString(indexFile));
+    }
+
+    @Test
+    public void testRetainAll() throws Exception {
+        FileIndex index = new FileIndex(indexFile);
+        File file1 = createFile("a.txt", "abc");
+        File file2 = createFile("b.txt", "def");
+        index.put(info(file1));
+        index.put(info(file2));
+
+        index.retainAll(Collections.singleton(file2.getAbsolutePath()));
+        assertEquals(1, index.size());
+        assertFalse(index.isUnchanged(info(file1)));
+        assertTrue(index.isUnchanged(info(file2)));
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        FileIndex index = new FileIndex(indexFile);
+        File file1 = createFile("a.txt", "abc");
+        File file2 = createFile("dir/b.txt", "def");
+        File file3 = createFile("dir/sub/c.txt", "ghi");
+        File file4 = createFile("dir2/d.txt", "jkl");
+        File file5 = createFile("dir-e.txt", "mno");
+
+        for (File file : new File[] { file1, file2, file3, file4, file5 }) {
+            index.put(info(file));
+        }
+
+        // Deleted files are removed
+        index.removeAll(Collections.singleton(file1.getAbsolutePath()));
+        assertEquals(4, index.size());
+        assertFalse(index.isUnchanged(info(file1)));
+
+        // A deleted directory removes everything under it, but not files that only share its name
+        Set<String> deletedPaths = new HashSet<String>();
+        deletedPaths.add(new File(someFolder, "dir").getAbsolutePath());
+        deletedPaths.add(new File(someFolder, "missing.txt").getAbsolutePath());
+        index.removeAll(deletedPaths);
+        assertEquals(2, index.size());
+        assertTrue(index.isUnchanged(info(file4)));
+        assertTrue(index.isUnchanged(info(file5)));
+
+        // The removals are saved
+        index.save();
+        FileIndex loadedIndex = new FileIndex(indexFile);
+        loadedIndex.load();
+        assertEquals(2, loadedIndex.size());
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        File file = new File(someFolder, name);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+
+    private FileInfo info(File file) {
+        return fc.new FileFileInfo(file);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        fc = new FileConnection();
+        someFolder = new File("TEST_FileIndex").getAbsoluteFile();
+        FileUtils.deleteDirectory(someFolder);
+        someFolder.mkdir();
+        indexFile = new File(someFolder, "index/test.index");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(someFolder);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.file.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.file.FileAction;
+import com.mirth.connect.connectors.file.FileReceiver;
+import com.mirth.connect.connectors.file.FileReceiverProperties;
+import com.mirth.connect.connectors.tests.TestAutoResponder;
+import com.mirth.connect.connectors.tests.TestResponseValidator;
+import com.mirth.connect.connectors.tests.TestSerializer;
+import com.mirth.connect.donkey.model.message.RawMessage;
+import com.mirth.connect.donkey.server.channel.ChannelException;
+import com.mirth.connect.donkey.server.channel.DispatchResult;
+import com.mirth.connect.donkey.server.channel.FilterTransformerExecutor;
+import com.mirth.connect.donkey.server.message.DataType;
+import com.mirth.connect.server.Mirth;
+import com.mirth.connect.server.channel.MirthMetaDataReplacer;
+import com.mirth.connect.server.controllers.ConfigurationController;
+import com.mirth.connect.server.test.TestUtils.DummyChannel;
+
+public class FileReceiverTests {
+    private final static String TEST_CHANNEL_ID = "testchannel";
+    private final static String TEST_SERVER_ID = "testserver";
+    private final static int NUM_FILES = 20;
+
+    private static Mirth server = new Mirth();
+
+    private File readDirectory;
+    private ConcurrentDummyChannel testChannel;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        // start a basic server
+        Executors.newSingleThreadExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                server.run();
+            }
+        });
+
+        while (ConfigurationController.getInstance().getStatus() != ConfigurationController.STATUS_OK) {
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public final void testParallelProcessing() throws Exception {
+        for (int i = 0; i < NUM_FILES; i++) {
+            FileUtils.writeStringToFile(new File(readDirectory, "file" + i + ".txt"), "message" + i);
+        }
+
+        FileReceiverProperties properties = getDefaultProperties();
+        properties.setAfterProcessingAction(FileAction.DELETE);
+        properties.setProcessingThreads("4");
+
+        FileReceiver fileReceiver = createFileReceiver(properties);
+        fileReceiver.onDeploy();
+        fileReceiver.start();
+
+        waitForMessages(NUM_FILES);
+
+        fileReceiver.stop();
+        fileReceiver.onUndeploy();
+
+        // Every file is read exactly once, and more than one file was read at a time
+        assertEquals(NUM_FILES, testChannel.getRawMessages().size());
+        assertEquals(NUM_FILES, getRawData().size());
+        assertTrue(testChannel.getMaxConcurrentMessages() > 1);
+        assertEquals(0, readDirectory.list().length);
+    }
+
+    @Test
+    public final void testIncrementalScan() throws Exception {
+        for (int i = 0; i < NUM_FILES; i++) {
+            FileUtils.writeStringToFile(new File(readDirectory, "file" + i + ".txt"), "message" + i);
+        }
+
+        FileReceiverProperties properties = getDefaultProperties();
+        properties.setIncrementalScan(true);
+
+        FileReceiver fileReceiver = createFileReceiver(properties);
+        fileReceiver.onDeploy();
+        fileReceiver.start();
+
+        // The files are left in place, but are only read on the first poll
+        waitForMessages(NUM_FILES);
+        Thread.sleep(1000);
+        assertEquals(NUM_FILES, testChannel.getRawMessages().size());
+
+        // Only new and changed files are read after that
+        File changedFile = new File(readDirectory, "file0.txt");
+        FileUtils.writeStringToFile(changedFile, "changed message");
+        changedFile.setLastModified(System.currentTimeMillis() + 10000);
+        FileUtils.writeStringToFile(new File(readDirectory, "newfile.txt"), "new message");
+
+        waitForMessages(NUM_FILES + 2);
+        Thread.sleep(1000);
+
+        fileReceiver.stop();
+        fileReceiver.onUndeploy();
+
+        assertEquals(NUM_FILES + 2, testChannel.getRawMessages().size());
+        assertTrue(getRawData().contains("changed message"));
+        assertTrue(getRawData().contains("new message"));
+
+        // The index survives a redeploy, so none of the files are read again
+        fileReceiver = createFileReceiver(properties);
+        fileReceiver.onDeploy();
+        fileReceiver.start();
+
+        Thread.sleep(1000);
+
+        fileReceiver.stop();
+        fileReceiver.onUndeploy();
+
+        assertEquals(NUM_FILES + 2, testChannel.getRawMessages().size());
+    }
+
+    private FileReceiverProperties getDefaultProperties() {
+        FileReceiverProperties properties = new FileReceiverProperties();
+        properties.setHost(readDirectory.getAbsolutePath());
+        properties.setCheckFileAge(false);
+        properties.getPollConnectorProperties().setPollingFrequency(100);
+        return properties;
+    }
+
+    private FileReceiver createFileReceiver(FileReceiverProperties properties) {
+        FileReceiver connector = new FileReceiver();
+        connector.setConnectorProperties(properties);
+        connector.setChannelId(testChannel.getChannelId());
+        connector.setMetaDataId(0);
+        connector.setChannel(testChannel);
+        connector.setMetaDataReplacer(new MirthMetaDataReplacer());
+        connector.setRespondAfterProcessing(true);
+        connector.setInboundDataType(new DataType("HL7V2", new TestSerializer(), null, new TestAutoResponder(), new TestResponseValidator()));
+
+        testChannel.setSourceConnector(connector);
+        testChannel.setSourceFilterTransformer(new FilterTransformerExecutor(connector.getInboundDataType(), connector.getOutboundDataType()));
+        return connector;
+    }
+
+    private void waitForMessages(int count) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+
+        while (testChannel.getRawMessages().size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+    }
+
+    private Set<String> getRawData() {
+        Set<String> rawData = new HashSet<String>();
+
+        synchronized (testChannel) {
+            for (RawMessage rawMessage : testChannel.getRawMessages()) {
+                rawData.add(rawMessage.getRawData());
+            }
+        }
+
+        return rawData;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        readDirectory = new File("TEST_FileReceiver").getAbsoluteFile();
+        FileUtils.deleteDirectory(readDirectory);
+        readDirectory.mkdir();
+
+        testChannel = new ConcurrentDummyChannel();
+        FileUtils.deleteQuietly(new File(new File(ConfigurationController.getInstance().getApplicationDataDir(), "fileindex"), TEST_CHANNEL_ID + "_0.index"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(readDirectory);
+    }
+
+    /*
+     * Files can be dispatched from several processing threads at once, so keep track of how many
+     * are in progress and only let one at a time add to the raw messages.
+     */
+    private static class ConcurrentDummyChannel extends DummyChannel {
+        private AtomicInteger concurrentMessages = new AtomicInteger();
+        private AtomicInteger maxConcurrentMessages = new AtomicInteger();
+
+        public ConcurrentDummyChannel() {
+            super(TEST_CHANNEL_ID, TEST_SERVER_ID);
+        }
+
+        @Override
+        protected DispatchResult dispatchRawMessage(RawMessage rawMessage) throws ChannelException {
+            int concurrent = concurrentMessages.incrementAndGet();
+
+            try {
+                synchronized (maxConcurrentMessages) {
+                    maxConcurrentMessages.set(Math.max(maxConcurrentMessages.get(), concurrent));
+                }
+
+                // Give the other processing threads a chance to start on their files
+                Thread.sleep(50);
+
+                synchronized (this) {
+                    return super.dispatchRawMessage(rawMessage);
+                }
+            } catch (InterruptedException e) {
+                throw new ChannelException(false, e);
+            } finally {
+                concurrentMessages.decrementAndGet();
+            }
+        }
+
+        public int getMaxConcurrentMessages() {
+            return maxConcurrentMessages.get();
+        }
+    }
+}
@@ -9,28 +9,31 @@
 
 package com.mirth.connect.connectors.jdbc;
 
-import java.io.BufferedReader;
-import java.io.Reader;
-import java.sql.Blob;
-import java.sql.Clob;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.dbutils.BasicRowProcessor;
 import org.apache.commons.dbutils.DbUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import com.mirth.connect.donkey.model.event.ConnectionStatusEventType;
 import com.mirth.connect.donkey.model.event.ErrorEventType;
+import com.mirth.connect.donkey.model.message.ConnectorMessage;
 import com.mirth.connect.donkey.model.message.RawMessage;
 import com.mirth.connect.donkey.server.DeployException;
 import com.mirth.connect.donkey.server.HaltException;
@@ -41,15 +44,21 @@ import com.mirth.connect.donkey.server.channel.DispatchResult;
 import com.mirth.connect.donkey.server.channel.PollConnector;
 import com.mirth.connect.donkey.server.event.ConnectionStatusEvent;
 import com.mirth.connect.donkey.server.event.ErrorEvent;
-import com.mirth.connect.model.converters.DocumentSerializer;
 import com.mirth.connect.server.controllers.ChannelController;
 import com.mirth.connect.server.controllers.ControllerFactory;
 import com.mirth.connect.server.controllers.EventController;
+import com.mirth.connect.server.util.TemplateValueReplacer;
 
 public class DatabaseReceiver extends PollConnector {
+    // The number of records the reader thread can convert ahead of the records being dispatched
+    private static final int RECORD_BUFFER_SIZE = 100;
+    private static final Record END_OF_RECORDS = new Record(null, null, null);
 
     private DatabaseReceiverProperties connectorProperties;
     private DatabaseReceiverDelegate delegate;
+    private int aggregateRowCount;
+    private ExecutorService readerExecutor;
+    private ResultMapXmlWriter xmlWriter = new ResultMapXmlWriter();
     private EventController eventController = ControllerFactory.getFactory().createEventController();
     private Logger logger = Logger.getLogger(getClass());
 
@@ -69,6 +78,9 @@ public class DatabaseReceiver extends PollConnector {
 
         delegate.deploy();
 
+        // Rows are dispatched one at a time unless they are aggregated into a single message
+        aggregateRowCount = Math.max(NumberUtils.toInt(new TemplateValueReplacer().replaceValues(connectorProperties.getAggregateRowCount(), getChannelId()), 1), 1);
+
         eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.IDLE));
     }
 
@@ -79,12 +91,25 @@ public class DatabaseReceiver extends PollConnector {
 
     @Override
     public void onStart() throws StartException {
+        readerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Database Reader Thread on " + getChannelId());
+            }
+        });
+
         delegate.start();
     }
 
     @Override
     public void onStop() throws StopException {
-        delegate.stop();
+        try {
+            delegate.stop();
+        } finally {
+            if (readerExecutor != null) {
+                readerExecutor.shutdownNow();
+            }
+        }
     }
 
     @Override
@@ -149,27 +174,112 @@ public class DatabaseReceiver extends PollConnector {
 
     /**
      * For each record in the given ResultSet, convert it to XML and dispatch it as a raw message to
-     * the channel. Then run the post-process if applicable.
+     * the channel. Then run the post-process if applicable. Rows are read and converted to XML on a
+     * separate thread, so the next records are ready by the time the current one has been
+     * dispatched.
+     */
+    private void processResultSet(final ResultSet resultSet) throws SQLException, InterruptedException, DatabaseReceiverException {
+        final BlockingQueue<Record> records = new ArrayBlockingQueue<Record>(RECORD_BUFFER_SIZE);
+        final AtomicBoolean stopped = new AtomicBoolean();
+
+        Future<Void> reader = readerExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    readRecords(resultSet, records, stopped);
+                } finally {
+                    putRecord(records, END_OF_RECORDS, stopped);
+                }
+
+                return null;
+            }
+        });
+
+        try {
+            while (!isTerminated()) {
+                Record record = records.poll(100, TimeUnit.MILLISECONDS);
+
+                if (record == END_OF_RECORDS) {
+                    break;
+                } else if (record != null) {
+                    processRecord(record);
+                } else if (reader.isDone() && records.isEmpty()) {
+                    // The reader was interrupted before it could signal the end of the records
+                    break;
+                }
+            }
+
+            reader.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+
+            throw new DatabaseReceiverException(e.getCause());
+        } finally {
+            stopped.set(true);
+            records.clear();
+
+            // The ResultSet is closed after this returns, so wait until the reader is done with it
+            try {
+                reader.get();
+            } catch (InterruptedException e) {
+                reader.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Already reported above
+            }
+        }
+    }
+
+    /*
+     * Reads rows from the ResultSet and converts them into records, until there are no rows left or
+     * the dispatching thread stops.
      */
     @SuppressWarnings("unchecked")
-    private void processResultSet(ResultSet resultSet) throws SQLException, InterruptedException, DatabaseReceiverException {
+    private void readRecords(ResultSet resultSet, BlockingQueue<Record> records, AtomicBoolean stopped) throws SQLException, InterruptedException {
         BasicRowProcessor basicRowProcessor = new BasicRowProcessor();
+        List<Map<String, Object>> resultMaps = new ArrayList<Map<String, Object>>(aggregateRowCount);
 
         // loop through the ResultSet rows and convert them into hash maps for processing
-        while (resultSet.next()) {
-            if (isTerminated()) {
-                return;
+        while (!stopped.get() && resultSet.next()) {
+            resultMaps.add(basicRowProcessor.toMap(resultSet));
+
+            if (resultMaps.size() >= aggregateRowCount) {
+                if (!putRecord(records, createRecord(resultMaps), stopped)) {
+                    return;
+                }
+
+                resultMaps = new ArrayList<Map<String, Object>>(aggregateRowCount);
             }
+        }
 
-            processRecord((Map<String, Object>) basicRowProcessor.toMap(resultSet));
+        if (!resultMaps.isEmpty()) {
+            putRecord(records, createRecord(resultMaps), stopped);
         }
     }
 
+    /*
+     * Waits for room in the queue, returning false if the dispatching thread stopped first.
+     */
+    private boolean putRecord(BlockingQueue<Record> records, Record record, AtomicBoolean stopped) throws InterruptedException {
+        while (!records.offer(record, 100, TimeUnit.MILLISECONDS)) {
+            if (stopped.get()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * For each record in the given list, convert it to XML and dispatch it as a raw message to the
      * channel. Then run the post-process if applicable.
      */
+    @SuppressWarnings("unchecked")
     private void processResultList(List<Map<String, Object>> resultList) throws InterruptedException, DatabaseReceiverException {
+        List<Map<String, Object>> resultMaps = new ArrayList<Map<String, Object>>(aggregateRowCount);
+
         for (Object object : resultList) {
             if (isTerminated()) {
                 return;
@@ -178,24 +288,53 @@ public class DatabaseReceiver extends PollConnector {
             if (object instanceof Map) {
                 Map<String, Object> caseInsensitiveMap = new BasicRowProcessor.CaseInsensitiveHashMap();
                 caseInsensitiveMap.putAll((Map<String, Object>) object);
-                processRecord(caseInsensitiveMap);
+                resultMaps.add(caseInsensitiveMap);
+
+                if (resultMaps.size() >= aggregateRowCount) {
+                    processRecord(createRecord(resultMaps));
+                    resultMaps = new ArrayList<Map<String, Object>>(aggregateRowCount);
+                }
             } else {
                 String errorMessage = "Received invalid list entry in channel \"" + ChannelController.getInstance().getDeployedChannelById(getChannelId()).getName() + "\", expected Map<String, Object>: " + object.toString();
                 logger.error(errorMessage);
                 eventController.dispatchEvent(new ErrorEvent(getChannelId(), getMetaDataId(), ErrorEventType.SOURCE_CONNECTOR, getSourceName(), connectorProperties.getName(), errorMessage, null));
             }
         }
+
+        if (!resultMaps.isEmpty() && !isTerminated()) {
+            processRecord(createRecord(resultMaps));
+        }
+    }
+
+    /*
+     * Converts one or more rows into the XML for a single message. If the conversion fails, the
+     * error is kept with the record and reported when it's processed.
+     */
+    private Record createRecord(List<Map<String, Object>> resultMaps) {
+        try {
+            if (aggregateRowCount == 1) {
+                return new Record(resultMaps, xmlWriter.toXml(resultMaps.get(0)), null);
+            } else {
+                return new Record(resultMaps, xmlWriter.toXml(resultMaps), null);
+            }
+        } catch (Exception e) {
+            return new Record(resultMaps, null, e);
+        }
     }
 
     /**
-     * Convert the given resultMap into XML and dispatch it as a raw message to the channel. Then
-     * run the post-process if applicable.
+     * Dispatch the XML for the given record as a raw message to the channel. Then run the
+     * post-process for each of its rows if applicable.
      */
-    private void processRecord(Map<String, Object> resultMap) throws InterruptedException, DatabaseReceiverException {
+    private void processRecord(Record record) throws InterruptedException, DatabaseReceiverException {
         DispatchResult dispatchResult = null;
 
         try {
-            dispatchResult = dispatchRawMessage(new RawMessage(resultMapToXml(resultMap)));
+            if (record.error != null) {
+                throw record.error;
+            }
+
+            dispatchResult = dispatchRawMessage(new RawMessage(record.xml));
         } catch (InterruptedException e) {
             throw e;
         } catch (Exception e) {
@@ -208,74 +347,30 @@ public class DatabaseReceiver extends PollConnector {
 
         // if the message was persisted (dispatchResult != null), then run the on-update SQL
         if (dispatchResult != null) {
+            ConnectorMessage mergedConnectorMessage = null;
+
             if (dispatchResult.getProcessedMessage() != null) {
-                delegate.runPostProcess(resultMap, dispatchResult.getProcessedMessage().getMergedConnectorMessage());
-            } else {
-                delegate.runPostProcess(resultMap, null);
+                mergedConnectorMessage = dispatchResult.getProcessedMessage().getMergedConnectorMessage();
             }
-        }
-    }
 
-    /**
-     * Convert a resultMap representing a message into XML.
-     */
-    private String resultMapToXml(Map<String, Object> resultMap) throws Exception {
-        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        Element root = document.createElement("result");
-        document.appendChild(root);
-
-        for (Entry<String, Object> entry : resultMap.entrySet()) {
-            String value = objectToString(entry.getValue());
-
-            if (value != null) {
-                Element child = document.createElement(entry.getKey());
-                child.appendChild(document.createTextNode(value));
-                root.appendChild(child);
+            for (Map<String, Object> resultMap : record.resultMaps) {
+                delegate.runPostProcess(resultMap, mergedConnectorMessage);
             }
         }
-
-        return new DocumentSerializer().toXML(document);
     }
 
-    /**
-     * Convert an object into a string for insertion in the XML
+    /*
+     * One or more rows and the XML message created from them.
      */
-    private String objectToString(Object object) throws Exception {
-        if (object == null) {
-            return null;
-        }
-
-        if (object instanceof byte[]) {
-            return new String((byte[]) object);
-        }
-
-        if (object instanceof Clob) {
-            return clobToString((Clob) object);
-        }
-
-        if (object instanceof Blob) {
-            Blob blob = (Blob) object;
-            return new String(blob.getBytes(1, (int) blob.length()));
-        }
-
-        return object.toString();
-    }
-
-    private String clobToString(Clob clob) throws Exception {
-        StringBuilder stringBuilder = new StringBuilder();
-        Reader reader = clob.getCharacterStream();
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        int c;
-
-        try {
-            while ((c = bufferedReader.read()) != -1) {
-                stringBuilder.append((char) c);
-            }
-
-            return stringBuilder.toString();
-        } finally {
-            IOUtils.closeQuietly(bufferedReader);
-            IOUtils.closeQuietly(reader);
+    private static class Record {
+        private List<Map<String, Object>> resultMaps;
+        private String xml;
+        private Exception error;
+
+        public Record(List<Map<String, Object>> resultMaps, String xml, Exception error) {
+            this.resultMaps = resultMaps;
+            this.xml = xml;
+            this.error = error;
         }
     }
 }
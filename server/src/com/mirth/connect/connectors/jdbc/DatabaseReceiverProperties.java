@@ -40,6 +40,7 @@ public class DatabaseReceiverProperties extends ConnectorProperties implements P
     private String retryCount;
     private String retryInterval;
     private String fetchSize;
+    private String aggregateRowCount;
 
     public DatabaseReceiverProperties() {
         pollConnectorProperties = new PollConnectorProperties();
@@ -57,6 +58,7 @@ public class DatabaseReceiverProperties extends ConnectorProperties implements P
         retryCount = "3";
         retryInterval = "10000";
         fetchSize = "1000";
+        aggregateRowCount = "1";
     }
 
     @Override
@@ -183,6 +185,18 @@ public class DatabaseReceiverProperties extends ConnectorProperties implements P
         this.fetchSize = fetchSize;
     }
 
+    public String getAggregateRowCount() {
+        return aggregateRowCount;
+    }
+
+    /**
+     * The number of rows to include in a single message. When greater than one, the message has a
+     * "results" root element with a "result" child for each row.
+     */
+    public void setAggregateRowCount(String aggregateRowCount) {
+        this.aggregateRowCount = aggregateRowCount;
+    }
+
     @Override
     public ResponseConnectorProperties getResponseConnectorProperties() {
         return responseConnectorProperties;
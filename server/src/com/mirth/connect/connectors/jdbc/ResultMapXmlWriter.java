@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
+
+/**
+ * Converts rows retrieved by the Database Reader into XML messages, writing each column directly
+ * with a StAX writer instead of building a DOM. The output is the same as serializing the
+ * equivalent DOM with DocumentSerializer. The output buffer is reused between messages, so an
+ * instance must only be used by one thread at a time.
+ */
+public class ResultMapXmlWriter {
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String INDENT = "    ";
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private StringBuilder builder = new StringBuilder();
+    private StringBuilderWriter writer = new StringBuilderWriter(builder);
+
+    /**
+     * Returns a message with a single "result" root element, with one child element for each
+     * column.
+     */
+    public String toXml(Map<String, Object> resultMap) throws Exception {
+        builder.setLength(0);
+        XMLStreamWriter streamWriter = startDocument();
+        writeResult(streamWriter, resultMap, 0);
+        return endDocument(streamWriter);
+    }
+
+    /**
+     * Returns a message with a "results" root element, with a "result" element for each row.
+     */
+    public String toXml(List<Map<String, Object>> resultMaps) throws Exception {
+        builder.setLength(0);
+        XMLStreamWriter streamWriter = startDocument();
+        streamWriter.writeStartElement("results");
+
+        for (Map<String, Object> resultMap : resultMaps) {
+            writeLine(streamWriter, 1);
+            writeResult(streamWriter, resultMap, 1);
+        }
+
+        writeLine(streamWriter, 0);
+        streamWriter.writeEndElement();
+        return endDocument(streamWriter);
+    }
+
+    private XMLStreamWriter startDocument() throws XMLStreamException {
+        builder.append(XML_DECLARATION).append(LINE_SEPARATOR);
+        return outputFactory.createXMLStreamWriter(writer);
+    }
+
+    private String endDocument(XMLStreamWriter streamWriter) throws XMLStreamException {
+        // Finishes an empty root element, which the writer otherwise leaves unterminated
+        streamWriter.writeEndDocument();
+        streamWriter.close();
+        builder.append(LINE_SEPARATOR);
+        return builder.toString();
+    }
+
+    private void writeResult(XMLStreamWriter streamWriter, Map<String, Object> resultMap, int depth) throws Exception {
+        boolean empty = true;
+
+        for (Entry<String, Object> entry : resultMap.entrySet()) {
+            String value = objectToString(entry.getValue());
+
+            if (value != null) {
+                if (!isValidName(entry.getKey())) {
+                    throw new DatabaseReceiverException("The column name \"" + entry.getKey() + "\" is not a valid XML element name.");
+                }
+
+                if (empty) {
+                    streamWriter.writeStartElement("result");
+                    empty = false;
+                }
+
+                writeLine(streamWriter, depth + 1);
+
+                if (value.length() == 0) {
+                    streamWriter.writeEmptyElement(entry.getKey());
+                } else {
+                    streamWriter.writeStartElement(entry.getKey());
+                    writeText(streamWriter, value);
+                    streamWriter.writeEndElement();
+                }
+            }
+        }
+
+        if (empty) {
+            streamWriter.writeEmptyElement("result");
+        } else {
+            writeLine(streamWriter, depth);
+            streamWriter.writeEndElement();
+        }
+    }
+
+    /*
+     * Control characters and characters outside the Basic Multilingual Plane are written as
+     * character references, the same way DocumentSerializer writes them. Carriage returns in
+     * particular would otherwise be normalized into line feeds when the message is parsed.
+     */
+    private void writeText(XMLStreamWriter streamWriter, String value) throws XMLStreamException {
+        int start = 0;
+        int index = 0;
+
+        while (index < value.length()) {
+            int codePoint = value.codePointAt(index);
+            int length = Character.charCount(codePoint);
+
+            if (isCharacterReference(codePoint)) {
+                if (index > start) {
+                    streamWriter.writeCharacters(value.substring(start, index));
+                }
+
+                streamWriter.writeEntityRef("#" + codePoint);
+                start = index + length;
+            }
+
+            index += length;
+        }
+
+        if (start < value.length()) {
+            streamWriter.writeCharacters(start == 0 ? value : value.substring(start));
+        }
+    }
+
+    private boolean isCharacterReference(int codePoint) {
+        return (codePoint < 0x20 && codePoint != '\t' && codePoint != '\n') || (codePoint >= 0x7F && codePoint <= 0x9F) || codePoint > 0xFFFF;
+    }
+
+    private void writeLine(XMLStreamWriter streamWriter, int depth) throws XMLStreamException {
+        StringBuilder line = new StringBuilder(LINE_SEPARATOR);
+
+        for (int i = 0; i < depth; i++) {
+            line.append(INDENT);
+        }
+
+        streamWriter.writeCharacters(line.toString());
+    }
+
+    /*
+     * Checks the name against the XML 1.0 name rules closely enough to reject column names that
+     * can't be used as element names, such as expressions that weren't given an alias.
+     */
+    private boolean isValidName(String name) {
+        if (name == null || name.length() == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (!(Character.isLetter(c) || c == '_' || c == ':' || (i > 0 && (Character.isDigit(c) || c == '-' || c == '.')))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Convert an object into a string for insertion in the XML
+     */
+    private String objectToString(Object object) throws Exception {
+        if (object == null) {
+            return null;
+        }
+
+        if (object instanceof byte[]) {
+            return new String((byte[]) object);
+        }
+
+        if (object instanceof Clob) {
+            return clobToString((Clob) object);
+        }
+
+        if (object instanceof Blob) {
+            Blob blob = (Blob) object;
+            return new String(blob.getBytes(1, (int) blob.length()));
+        }
+
+        return object.toString();
+    }
+
+    private String clobToString(Clob clob) throws Exception {
+        StringBuilder stringBuilder = new StringBuilder();
+        Reader reader = clob.getCharacterStream();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        int c;
+
+        try {
+            while ((c = bufferedReader.read()) != -1) {
+                stringBuilder.append((char) c);
+            }
+
+            return stringBuilder.toString();
+        } finally {
+            IOUtils.closeQuietly(bufferedReader);
+            IOUtils.closeQuietly(reader);
+        }
+    }
+}
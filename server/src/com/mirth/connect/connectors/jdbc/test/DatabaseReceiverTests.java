@@ -10,6 +10,7 @@
 package com.mirth.connect.connectors.jdbc.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -125,6 +126,36 @@ public class DatabaseReceiverTests {
         runTest(properties);
     }
 
+    @Test
+    public final void testAggregateRows() throws Exception {
+        DatabaseReceiverProperties properties = getDefaultProperties(false, DatabaseReceiverProperties.UPDATE_EACH);
+        properties.setAggregateRowCount(String.valueOf(Integer.MAX_VALUE));
+        initTable();
+
+        testChannel = new DummyChannel(TEST_CHANNEL_ID, TEST_SERVER_ID);
+
+        DatabaseReceiver databaseReceiver = createDatabaseReceiver(properties);
+        databaseReceiver.onDeploy();
+        databaseReceiver.start();
+
+        Thread.sleep(300);
+
+        databaseReceiver.stop();
+        databaseReceiver.onUndeploy();
+
+        // All of the rows are sent in a single message, and the update still runs for each row
+        assertEquals(1, testChannel.getRawMessages().size());
+        assertTrue(testChannel.getRawMessages().get(0).getRawData().startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"));
+        assertTrue(testChannel.getRawMessages().get(0).getRawData().contains("<results>"));
+
+        Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE + " WHERE processed = FALSE");
+        result.next();
+        assertEquals(0, result.getInt(1));
+        result.close();
+        statement.close();
+    }
+
     @Test
     public final void testMultipleStatements() throws Exception {
         final String testLastName = "newlastname";
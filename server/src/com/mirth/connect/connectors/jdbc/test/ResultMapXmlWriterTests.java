@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.jdbc.test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.mirth.connect.connectors.jdbc.ResultMapXmlWriter;
+import com.mirth.connect.model.converters.DocumentSerializer;
+
+public class ResultMapXmlWriterTests {
+
+    @Test
+    public final void testSameBytesAsDocument() throws Exception {
+        Map<String, Object> resultMap = new LinkedHashMap<String, Object>();
+        resultMap.put("id", 1);
+        resultMap.put("firstname", "John");
+        resultMap.put("lastname", null);
+        resultMap.put("address", "");
+        resultMap.put("notes", "Line 1\r\nLine 2\rLine 3\n\tLine 4\r");
+        resultMap.put("markup", "<a href=\"x\">Tom & 'Jerry'</a> ]]> >");
+        resultMap.put("unicode", "café über 中文 😀");
+        resultMap.put("data", "bytes".getBytes());
+        resultMap.put("whitespace", "   ");
+        resultMap.put("control", "\u0001\u001F\u007F\u0085\u009F\u00A0");
+
+        assertSameBytes(resultMap);
+    }
+
+    @Test
+    public final void testEmptyRowSameBytesAsDocument() throws Exception {
+        Map<String, Object> resultMap = new LinkedHashMap<String, Object>();
+        assertSameBytes(resultMap);
+
+        resultMap.put("id", null);
+        assertSameBytes(resultMap);
+    }
+
+    @Test
+    public final void testWriterReuse() throws Exception {
+        ResultMapXmlWriter writer = new ResultMapXmlWriter();
+        Map<String, Object> resultMap = new LinkedHashMap<String, Object>();
+
+        for (int i = 0; i < 3; i++) {
+            resultMap.put("column" + i, "value" + i);
+
+            // Nothing from the previous message is left in the reused buffer
+            assertArrayEquals(toDocumentXml(resultMap).getBytes("UTF-8"), writer.toXml(resultMap).getBytes("UTF-8"));
+        }
+    }
+
+    private void assertSameBytes(Map<String, Object> resultMap) throws Exception {
+        assertArrayEquals(toDocumentXml(resultMap).getBytes("UTF-8"), new ResultMapXmlWriter().toXml(resultMap).getBytes("UTF-8"));
+    }
+
+    /*
+     * Builds and serializes a DOM the way the Database Reader did before ResultMapXmlWriter.
+     */
+    private String toDocumentXml(Map<String, Object> resultMap) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element root = document.createElement("result");
+        document.appendChild(root);
+
+        for (Entry<String, Object> entry : resultMap.entrySet()) {
+            Object value = entry.getValue();
+
+            if (value != null) {
+                Element child = document.createElement(entry.getKey());
+                child.appendChild(document.createTextNode(value instanceof byte[] ? new String((byte[]) value) : value.toString()));
+                root.appendChild(child);
+            }
+        }
+
+        return new DocumentSerializer().toXML(document);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import com.mirth.connect.model.transmission.ScanningInputStream;
+
+/**
+ * Provides blocking input and output streams on top of a non-blocking SocketChannel. This allows a
+ * channel to stay registered with a shared selector while it's idle, and still be read from with
+ * the regular stream handlers once data arrives.
+ * 
+ * The selector thread calls readAvailable to buffer whatever has arrived without blocking, so that
+ * a worker only needs to be given the connection once a whole message is buffered. If a worker
+ * still has to wait for data, it waits on a private selector, honoring the socket timeout the same
+ * way a blocking socket would.
+ */
+public class SocketChannelStreams {
+
+    // The maximum amount of time to wait at once, so that closed channels and interrupts are noticed
+    private static final int MAX_WAIT = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    // The input buffer grows up to this size while waiting for the rest of a message
+    private static final int MAX_BUFFER_SIZE = 1048576;
+
+    private SocketChannel channel;
+    private int timeout;
+    private Selector selector;
+    private volatile boolean endOfStream;
+    private ChannelInputStream inputStream;
+    private OutputStream outputStream;
+
+    public SocketChannelStreams(SocketChannel channel, int timeout) {
+        this(channel, timeout, DEFAULT_BUFFER_SIZE);
+    }
+
+    public SocketChannelStreams(SocketChannel channel, int timeout, int bufferSize) {
+        this.channel = channel;
+        this.timeout = timeout;
+        inputStream = new ChannelInputStream(bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE);
+        outputStream = new ChannelOutputStream();
+    }
+
+    /**
+     * Returns a buffered input stream that also holds any bytes read ahead by readAvailable. It is
+     * a ScanningInputStream, so frame stream handlers can copy whole runs of buffered bytes.
+     */
+    public ScanningInputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Returns true if a read from the channel has returned an EOF, meaning the remote side has
+     * closed the connection.
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * Reads whatever the channel currently has into the input stream's buffer, without blocking.
+     * This must not be called while another thread is reading from the input stream.
+     * 
+     * @return The number of bytes read, or -1 if the end of the stream was reached.
+     */
+    public int readAvailable() throws IOException {
+        return inputStream.readAvailable();
+    }
+
+    /**
+     * Returns the number of bytes that have been buffered but not yet read from the input stream.
+     */
+    public int getBufferedSize() {
+        return inputStream.getBufferedSize();
+    }
+
+    /**
+     * Returns true if the input buffer has reached its maximum size, so nothing more can be read
+     * ahead until some of it is consumed.
+     */
+    public boolean isBufferFull() {
+        return inputStream.isFull();
+    }
+
+    /**
+     * Returns true if the given byte sequence appears in the bytes that have been buffered but not
+     * yet read from the input stream.
+     */
+    public boolean isBuffered(byte[] sequence) {
+        return inputStream.contains(sequence);
+    }
+
+    /**
+     * Closes the private selector, if one was opened. The channel itself is not closed, and a new
+     * selector is opened the next time the streams have to wait.
+     */
+    public synchronized void close() throws IOException {
+        if (selector != null) {
+            selector.close();
+            selector = null;
+        }
+    }
+
+    private synchronized void waitFor(int operation, long deadline) throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+        }
+
+        SelectionKey key = channel.keyFor(selector);
+        if (key == null) {
+            key = channel.register(selector, operation);
+        } else {
+            key.interestOps(operation);
+        }
+
+        while (true) {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+
+            long wait = MAX_WAIT;
+
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Timed out waiting for socket channel");
+                }
+
+                wait = Math.min(wait, remaining);
+            }
+
+            if (selector.select(wait) > 0) {
+                selector.selectedKeys().clear();
+                return;
+            }
+        }
+    }
+
+    private long getDeadline() {
+        return timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+    }
+
+    /*
+     * Buffers reads from the channel, and lets bytes be read ahead into the same buffer so that they
+     * are never held anywhere a stream handler can't reach.
+     */
+    private class ChannelInputStream extends ScanningInputStream {
+
+        // Where to continue searching for a byte sequence, so buffered bytes aren't searched again
+        private int searchIndex;
+
+        public ChannelInputStream(int size) {
+            super(new RawChannelInputStream(), size);
+        }
+
+        public synchronized int readAvailable() throws IOException {
+            if (endOfStream) {
+                return -1;
+            }
+
+            int total = 0;
+
+            while (!isFull()) {
+                makeRoom();
+
+                int read = channel.read(ByteBuffer.wrap(buf, count, buf.length - count));
+
+                if (read == -1) {
+                    endOfStream = true;
+                    return total > 0 ? total : -1;
+                } else if (read == 0) {
+                    break;
+                }
+
+                count += read;
+                total += read;
+            }
+
+            return total;
+        }
+
+        public synchronized int getBufferedSize() {
+            return count - pos;
+        }
+
+        public synchronized boolean isFull() {
+            // Nothing can be moved out of the way, and the buffer can't grow any further
+            return buf != null && count == buf.length && buf.length >= MAX_BUFFER_SIZE && (markpos >= 0 ? markpos : pos) == 0;
+        }
+
+        public synchronized boolean contains(byte[] sequence) {
+            if (sequence.length == 0 || buf == null) {
+                return false;
+            }
+
+            for (int i = Math.max(searchIndex, pos); i <= count - sequence.length; i++) {
+                int j = 0;
+
+                while (j < sequence.length && buf[i + j] == sequence[j]) {
+                    j++;
+                }
+
+                if (j == sequence.length) {
+                    searchIndex = i;
+                    return true;
+                }
+            }
+
+            searchIndex = Math.max(count - sequence.length + 1, pos);
+            return false;
+        }
+
+        /*
+         * Called when the superclass refills the buffer itself, which moves the unread bytes.
+         */
+        private void resetSearch() {
+            searchIndex = 0;
+        }
+
+        /*
+         * If the buffer is full, moves the unread bytes to the start of it, or grows it if they
+         * already fill it. Marked bytes are kept, since a batch stream reader may still reset to
+         * them.
+         */
+        private void makeRoom() throws IOException {
+            if (buf == null) {
+                throw new IOException("Stream closed");
+            } else if (count < buf.length) {
+                return;
+            }
+
+            int keep = markpos >= 0 ? markpos : pos;
+
+            if (keep > 0) {
+                System.arraycopy(buf, keep, buf, 0, count - keep);
+                count -= keep;
+                pos -= keep;
+                searchIndex = Math.max(searchIndex - keep, 0);
+
+                if (markpos >= 0) {
+                    markpos = 0;
+                }
+            } else {
+                buf = Arrays.copyOf(buf, Math.min(buf.length * 2, MAX_BUFFER_SIZE));
+            }
+        }
+    }
+
+    private class RawChannelInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (endOfStream) {
+                return -1;
+            }
+
+            inputStream.resetSearch();
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            long deadline = 0;
+            int count;
+
+            while ((count = channel.read(buffer)) == 0) {
+                if (deadline == 0) {
+                    deadline = getDeadline();
+                }
+                waitFor(SelectionKey.OP_READ, deadline);
+            }
+
+            if (count == -1) {
+                endOfStream = true;
+            }
+
+            return count;
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            long deadline = 0;
+
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    if (deadline == 0) {
+                        deadline = getDeadline();
+                    }
+                    waitFor(SelectionKey.OP_WRITE, deadline);
+                }
+            }
+        }
+    }
+}
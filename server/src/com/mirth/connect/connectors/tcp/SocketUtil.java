@@ -12,6 +12,7 @@ package com.mirth.connect.connectors.tcp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.UnknownHostException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -58,11 +59,11 @@ public class SocketUtil {
         return socket;
     }
 
-    public static void connectSocket(StateAwareSocket socket, String host, int port, int timeout) throws UnknownHostException, IOException {
+    public static void connectSocket(Socket socket, String host, int port, int timeout) throws UnknownHostException, IOException {
         socket.connect(new InetSocketAddress(InetAddress.getByName(TcpUtil.getFixedHost(host)), port), timeout);
     }
 
-    public static void closeSocket(StateAwareSocket socket) throws IOException {
+    public static void closeSocket(Socket socket) throws IOException {
         if (socket != null) {
             /*
              * MIRTH-2984: The shutdownInput() and shutdownOutput() methods are no longer being
@@ -73,7 +74,7 @@ public class SocketUtil {
         }
     }
 
-    public static String getInetAddress(StateAwareSocket socket) {
+    public static String getInetAddress(Socket socket) {
         String inetAddress = socket == null || socket.getInetAddress() == null ? "" : socket.getInetAddress().toString() + ":" + socket.getPort();
 
         if (inetAddress.startsWith("/")) {
@@ -83,7 +84,7 @@ public class SocketUtil {
         return inetAddress;
     }
 
-    public static String getLocalAddress(StateAwareSocket socket) {
+    public static String getLocalAddress(Socket socket) {
         String localAddress = socket == null || socket.getLocalAddress() == null ? "" : socket.getLocalAddress().toString() + ":" + socket.getLocalPort();
 
         // If addresses begin with a slash "/", remove it.
@@ -17,6 +17,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketImpl;
 
+import com.mirth.connect.model.transmission.ScanningInputStream;
+
 public class StateAwareSocket extends Socket {
 
     protected BufferedInputStream bis = null;
@@ -40,7 +42,8 @@ public class StateAwareSocket extends Socket {
     @Override
     public InputStream getInputStream() throws IOException {
         if (bis == null) {
-            bis = new BufferedInputStream(super.getInputStream());
+            // Allows stream handlers to read whole frames from the buffer instead of byte by byte
+            bis = new ScanningInputStream(super.getInputStream());
         }
         return bis;
     }
@@ -77,4 +80,4 @@ public class StateAwareSocket extends Socket {
             }
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
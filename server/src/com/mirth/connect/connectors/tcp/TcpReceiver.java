@@ -11,6 +11,8 @@ package com.mirth.connect.connectors.tcp;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -18,16 +20,25 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -72,6 +83,8 @@ import com.mirth.connect.util.TcpUtil;
 public class TcpReceiver extends SourceConnector {
     // This determines how many client requests can queue up while waiting for the server socket to accept
     private static final int DEFAULT_BACKLOG = 256;
+    // The maximum amount of time the selector waits before checking for idle connections and completed tasks
+    private static final int SELECT_TIMEOUT = 1000;
 
     private Logger logger = Logger.getLogger(this.getClass());
     private EventController eventController = ControllerFactory.getFactory().createEventController();
@@ -79,6 +92,9 @@ public class TcpReceiver extends SourceConnector {
     private TemplateValueReplacer replacer = new TemplateValueReplacer();
 
     private StateAwareServerSocket serverSocket;
+    private ServerSocketChannel serverSocketChannel;
+    private Selector selector;
+    private Queue<TcpReader> resumedReaders = new ConcurrentLinkedQueue<TcpReader>();
     private StateAwareSocket clientSocket;
     private StateAwareSocket recoveryResponseSocket;
     private Thread thread;
@@ -88,19 +104,29 @@ public class TcpReceiver extends SourceConnector {
     private AtomicBoolean disposing;
 
     private int maxConnections;
+    private boolean multiplexConnections;
     private int timeout;
     private int bufferSize;
     private int reconnectInterval;
+    private byte[] endOfMessageBytes;
     TransmissionModeProvider transmissionModeProvider;
 
     @Override
     public void onDeploy() throws DeployException {
         connectorProperties = (TcpReceiverProperties) getConnectorProperties();
         maxConnections = NumberUtils.toInt(connectorProperties.getMaxConnections());
+        multiplexConnections = connectorProperties.isServerMode() && connectorProperties.isMultiplexConnections();
         timeout = NumberUtils.toInt(connectorProperties.getReceiveTimeout());
         bufferSize = NumberUtils.toInt(connectorProperties.getBufferSize());
         reconnectInterval = NumberUtils.toInt(connectorProperties.getReconnectInterval());
 
+        // Used to tell when a whole message has been buffered for a multiplexed connection
+        if (connectorProperties.getTransmissionModeProperties() instanceof FrameModeProperties) {
+            endOfMessageBytes = TcpUtil.stringToByteArray(((FrameModeProperties) connectorProperties.getTransmissionModeProperties()).getEndOfMessageBytes());
+        } else {
+            endOfMessageBytes = new byte[0];
+        }
+
         String pluginPointName = (String) connectorProperties.getTransmissionModeProperties().getPluginPointName();
         if (pluginPointName.equals("Basic")) {
             transmissionModeProvider = new BasicModeProvider();
@@ -125,8 +151,18 @@ public class TcpReceiver extends SourceConnector {
         disposing.set(false);
         results.clear();
         clientReaders.clear();
-
-        if (connectorProperties.isServerMode()) {
+        resumedReaders.clear();
+
+        if (multiplexConnections) {
+            /*
+             * If connections are multiplexed, only connections with data to read occupy a thread, so
+             * the max connections property limits the number of worker threads instead. Any
+             * connections that become readable while all workers are busy wait in the queue.
+             */
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(Math.max(maxConnections, 1), Math.max(maxConnections, 1), 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        } else if (connectorProperties.isServerMode()) {
             // If we're in server mode, use the max connections property to initialize the thread pool
             executor = new ThreadPoolExecutor(0, maxConnections, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
         } else {
@@ -146,6 +182,11 @@ public class TcpReceiver extends SourceConnector {
         thread = new Thread() {
             @Override
             public void run() {
+                if (multiplexConnections) {
+                    runSelector();
+                    return;
+                }
+
                 while (getCurrentState() == DeployedState.STARTED) {
                     StateAwareSocket socket = null;
 
@@ -244,6 +285,14 @@ public class TcpReceiver extends SourceConnector {
                     firstCause = new StopException("Error closing server socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
                 }
             }
+
+            try {
+                closeServerSocketChannel();
+            } catch (IOException e) {
+                if (firstCause == null) {
+                    firstCause = new StopException("Error closing server socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+                }
+            }
         } else {
             // Close the client socket
             try {
@@ -356,6 +405,14 @@ public class TcpReceiver extends SourceConnector {
                     firstCause = new HaltException("Error closing server socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
                 }
             }
+
+            try {
+                closeServerSocketChannel();
+            } catch (IOException e) {
+                if (firstCause == null) {
+                    firstCause = new HaltException("Error closing server socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+                }
+            }
         } else {
             // Close the client socket
             try {
@@ -460,26 +517,142 @@ public class TcpReceiver extends SourceConnector {
     }
 
     protected class TcpReader implements Callable<Throwable> {
-        private StateAwareSocket socket = null;
-        private StateAwareSocket responseSocket = null;
+        private Socket socket = null;
+        private Socket responseSocket = null;
         private AtomicBoolean reading = null;
         private AtomicBoolean canRead = null;
+        private SocketChannelStreams channelStreams = null;
+        private SelectionKey selectionKey = null;
+        private boolean connected = false;
+        private long idleSince;
 
         public TcpReader(StateAwareSocket socket) throws SocketException {
+            this((Socket) socket);
+        }
+
+        /**
+         * Creates a reader for a non-blocking socket channel registered with the connector's
+         * selector. The reader is only submitted once a whole message has been buffered.
+         */
+        public TcpReader(SocketChannel socketChannel) throws SocketException {
+            this(socketChannel.socket());
+            // The input stream lives as long as the connection, so bytes read ahead aren't lost between messages
+            channelStreams = new SocketChannelStreams(socketChannel, timeout, bufferSize);
+            idleSince = System.currentTimeMillis();
+        }
+
+        private TcpReader(Socket socket) throws SocketException {
             this.socket = socket;
             initSocket(socket);
             reading = new AtomicBoolean(false);
             canRead = new AtomicBoolean(true);
         }
 
-        public StateAwareSocket getSocket() {
+        public Socket getSocket() {
             return socket;
         }
 
-        public StateAwareSocket getResponseSocket() {
+        public Socket getResponseSocket() {
             return responseSocket;
         }
 
+        public void setSelectionKey(SelectionKey selectionKey) {
+            this.selectionKey = selectionKey;
+        }
+
+        public long getIdleTime() {
+            return System.currentTimeMillis() - idleSince;
+        }
+
+        /*
+         * Called from the selector thread when this reader has finished processing, so that the
+         * selector will submit it again once more data arrives.
+         */
+        private void resumeSelection() {
+            try {
+                idleSince = System.currentTimeMillis();
+                selectionKey.interestOps(SelectionKey.OP_READ);
+            } catch (CancelledKeyException e) {
+                disconnect();
+            }
+        }
+
+        /*
+         * Called from the selector thread when the connection has data to read. Buffers whatever
+         * has arrived, and returns true once the reader can be submitted without a worker having
+         * to wait on the sender for the rest of the message.
+         */
+        private boolean readAvailable() {
+            try {
+                if (channelStreams.readAvailable() > 0) {
+                    idleSince = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                // Let the worker read from the connection and report the error
+                return true;
+            }
+
+            return isMessageBuffered();
+        }
+
+        /*
+         * Returns true if the next message can be read without waiting for more data. Without end
+         * of message bytes the end of a message can't be detected ahead of time, so any buffered
+         * data counts. A message too large for the buffer is left to the worker to finish reading.
+         */
+        private boolean isMessageBuffered() {
+            if (channelStreams.isEndOfStream() || channelStreams.isBufferFull()) {
+                return true;
+            } else if (endOfMessageBytes.length == 0) {
+                return channelStreams.getBufferedSize() > 0;
+            }
+
+            return channelStreams.isBuffered(endOfMessageBytes);
+        }
+
+        private InputStream getInputStream() throws IOException {
+            return channelStreams != null ? channelStreams.getInputStream() : socket.getInputStream();
+        }
+
+        private OutputStream getOutputStream() throws IOException {
+            return channelStreams != null ? channelStreams.getOutputStream() : socket.getOutputStream();
+        }
+
+        private boolean checkSocket() throws IOException {
+            if (channelStreams != null) {
+                return !connectorProperties.isKeepConnectionOpen() || socket.isClosed() || channelStreams.isEndOfStream() && channelStreams.getBufferedSize() == 0;
+            }
+
+            return TcpReceiver.this.checkSocket((StateAwareSocket) socket);
+        }
+
+        /*
+         * Closes the connection and removes this reader from the connector.
+         */
+        private void disconnect() {
+            logger.debug("Done with socket, closing (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ")...");
+
+            // We're done reading, so close everything up
+            closeSocketQuietly(socket);
+            if (connectorProperties.getRespondOnNewConnection() == TcpReceiverProperties.NEW_CONNECTION) {
+                closeSocketQuietly(responseSocket);
+            }
+
+            if (channelStreams != null) {
+                try {
+                    channelStreams.close();
+                } catch (IOException e) {
+                    logger.debug("Error closing socket channel selector (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+                }
+            }
+
+            eventController.dispatchEvent(new ConnectorCountEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.DISCONNECTED, SocketUtil.getLocalAddress(socket) + " -> " + SocketUtil.getInetAddress(socket), false));
+
+            synchronized (clientReaders) {
+                clientReaders.remove(this);
+            }
+        }
+
         public boolean isReading() {
             return reading.get();
         }
@@ -492,12 +665,25 @@ public class TcpReceiver extends SourceConnector {
         public Throwable call() {
             Throwable t = null;
             boolean done = false;
+            boolean parked = false;
+            boolean firstRead = true;
 
-            eventController.dispatchEvent(new ConnectorCountEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.CONNECTED, SocketUtil.getLocalAddress(socket) + " -> " + SocketUtil.getInetAddress(socket), true));
+            if (!connected) {
+                connected = true;
+                eventController.dispatchEvent(new ConnectorCountEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.CONNECTED, SocketUtil.getLocalAddress(socket) + " -> " + SocketUtil.getInetAddress(socket), true));
+            }
 
             try {
                 while (!done && getCurrentState() == DeployedState.STARTED) {
                     ThreadUtils.checkInterruptedStatus();
+
+                    // If the connection is multiplexed, hand it back to the selector until the next whole message has arrived
+                    if (channelStreams != null && !firstRead && !isMessageBuffered()) {
+                        parked = true;
+                        break;
+                    }
+
+                    firstRead = false;
                     StreamHandler streamHandler = null;
 
                     try {
@@ -508,19 +694,19 @@ public class TcpReceiver extends SourceConnector {
                         BatchStreamReader batchStreamReader = null;
                         if (connectorProperties.isProcessBatch() && getInboundDataType().getType().equals("HL7V2")) {
                             if (connectorProperties.getTransmissionModeProperties() instanceof FrameModeProperties) {
-                                batchStreamReader = new ER7BatchStreamReader(socket.getInputStream(), TcpUtil.stringToByteArray(((FrameModeProperties) connectorProperties.getTransmissionModeProperties()).getEndOfMessageBytes()));
+                                batchStreamReader = new ER7BatchStreamReader(getInputStream(), TcpUtil.stringToByteArray(((FrameModeProperties) connectorProperties.getTransmissionModeProperties()).getEndOfMessageBytes()));
                             } else {
-                                batchStreamReader = new ER7BatchStreamReader(socket.getInputStream());
+                                batchStreamReader = new ER7BatchStreamReader(getInputStream());
                             }
                         } else {
-                            batchStreamReader = new DefaultBatchStreamReader(socket.getInputStream());
+                            batchStreamReader = new DefaultBatchStreamReader(getInputStream());
                         }
-                        streamHandler = transmissionModeProvider.getStreamHandler(socket.getInputStream(), socket.getOutputStream(), batchStreamReader, connectorProperties.getTransmissionModeProperties());
+                        streamHandler = transmissionModeProvider.getStreamHandler(getInputStream(), getOutputStream(), batchStreamReader, connectorProperties.getTransmissionModeProperties());
 
                         if (connectorProperties.getRespondOnNewConnection() != TcpReceiverProperties.NEW_CONNECTION) {
                             // If we're not responding on a new connection, then write to the output stream of the same socket
                             responseSocket = socket;
-                            BufferedOutputStream bos = new BufferedOutputStream(responseSocket.getOutputStream(), bufferSize);
+                            BufferedOutputStream bos = new BufferedOutputStream(getOutputStream(), bufferSize);
                             streamHandler.setOutputStream(bos);
                         }
 
@@ -647,7 +833,7 @@ public class TcpReceiver extends SourceConnector {
                         logger.debug("Done with socket input stream (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").");
 
                         // If we're not keeping the connection open or if the remote side has already closed the connection, then we're done with the socket
-                        if (checkSocket(socket)) {
+                        if (checkSocket()) {
                             done = true;
                         }
                     } catch (IOException e) {
@@ -693,18 +879,28 @@ public class TcpReceiver extends SourceConnector {
                 eventController.dispatchEvent(new ErrorEvent(getChannelId(), getMetaDataId(), ErrorEventType.SOURCE_CONNECTOR, getSourceName(), connectorProperties.getName(), "Error receiving message", e));
                 eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.FAILURE, "Error receiving message from " + SocketUtil.getLocalAddress(socket) + ": " + e.getMessage()));
             } finally {
-                logger.debug("Done with socket, closing (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ")...");
+                if (parked) {
+                    synchronized (clientReaders) {
+                        // Only hand the connection back if the selector thread isn't being stopped
+                        if (disposing.get()) {
+                            parked = false;
+                        } else {
+                            // An idle connection doesn't need its own selector to wait on
+                            try {
+                                channelStreams.close();
+                            } catch (IOException e) {
+                                logger.debug("Error closing socket channel selector (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+                            }
 
-                // We're done reading, so close everything up
-                closeSocketQuietly(socket);
-                if (connectorProperties.getRespondOnNewConnection() == TcpReceiverProperties.NEW_CONNECTION) {
-                    closeSocketQuietly(responseSocket);
+                            // Wait for the selector to submit this reader again once the next message has arrived
+                            resumedReaders.add(this);
+                            selector.wakeup();
+                        }
+                    }
                 }
 
-                eventController.dispatchEvent(new ConnectorCountEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.DISCONNECTED, SocketUtil.getLocalAddress(socket) + " -> " + SocketUtil.getInetAddress(socket), false));
-
-                synchronized (clientReaders) {
-                    clientReaders.remove(this);
+                if (!parked) {
+                    disconnect();
                 }
             }
 
@@ -726,7 +922,11 @@ public class TcpReceiver extends SourceConnector {
         while (!success) {
             try {
                 bindAttempts++;
-                if (hostAddress.equals(InetAddress.getLocalHost()) || hostAddress.isLoopbackAddress() || host.trim().equals("localhost")) {
+                boolean anyAddress = hostAddress.equals(InetAddress.getLocalHost()) || hostAddress.isLoopbackAddress() || host.trim().equals("localhost");
+
+                if (multiplexConnections) {
+                    createServerSocketChannel(anyAddress ? new InetSocketAddress(port) : new InetSocketAddress(hostAddress, port), backlog);
+                } else if (anyAddress) {
                     serverSocket = new StateAwareServerSocket(port, backlog);
                 } else {
                     serverSocket = new StateAwareServerSocket(port, backlog, hostAddress);
@@ -746,12 +946,213 @@ public class TcpReceiver extends SourceConnector {
         }
     }
 
+    /*
+     * Opens a non-blocking server socket channel and registers it with a new selector, which the
+     * acceptor thread uses to accept connections and to detect when they have data to read.
+     */
+    private void createServerSocketChannel(InetSocketAddress address, int backlog) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address, backlog);
+
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+            serverSocketChannel = channel;
+        } catch (IOException e) {
+            channel.close();
+            if (selector != null) {
+                selector.close();
+                selector = null;
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * Closes the server socket channel and wakes up the selector, so that the acceptor thread can
+     * release any idle connections and close the selector.
+     */
+    private void closeServerSocketChannel() throws IOException {
+        if (serverSocketChannel != null) {
+            logger.debug("Closing server socket channel (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").");
+
+            try {
+                serverSocketChannel.close();
+            } finally {
+                if (selector != null) {
+                    selector.wakeup();
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs the selector loop used when connections are multiplexed. Idle connections stay
+     * registered with the selector, which reads any data that arrives into the connection's buffer.
+     * A TcpReader is only submitted to the worker pool once a whole message has been buffered. Once
+     * the reader has consumed all buffered messages, it hands the connection back to this thread
+     * through the resumed readers queue.
+     */
+    private void runSelector() {
+        try {
+            while (!disposing.get()) {
+                TcpReader resumedReader;
+                while ((resumedReader = resumedReaders.poll()) != null) {
+                    resumedReader.resumeSelection();
+                }
+
+                logger.trace("Waiting for new client socket or data (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").");
+                selector.select(SELECT_TIMEOUT);
+                ThreadUtils.checkInterruptedStatus();
+
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    try {
+                        if (key.isAcceptable()) {
+                            acceptChannel();
+                        } else if (key.isReadable()) {
+                            TcpReader reader = (TcpReader) key.attachment();
+
+                            // Partial messages are buffered here, so slow senders don't hold up a worker
+                            if (reader.readAvailable()) {
+                                // Stop selecting the connection while a worker is reading from it
+                                key.interestOps(0);
+                                submitReader(reader);
+                            }
+                        }
+                    } catch (CancelledKeyException e) {
+                        // The connection was closed since it was selected
+                    }
+                }
+
+                closeIdleConnections();
+
+                // Remove any completed tasks from the list, but don't try to retrieve currently running tasks
+                cleanup(false, false, true);
+            }
+        } catch (ClosedSelectorException e) {
+            logger.debug("Selector closed (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+        } catch (InterruptedException e) {
+            logger.debug("Interruption during selector operation (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+        } catch (IOException e) {
+            logger.error("Error selecting client sockets (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+        } finally {
+            // Disconnect any connections that are not currently being read from by a worker
+            synchronized (clientReaders) {
+                disposing.set(true);
+            }
+
+            TcpReader resumedReader;
+            while ((resumedReader = resumedReaders.poll()) != null) {
+                resumedReader.disconnect();
+            }
+
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() != null && isIdle(key)) {
+                        ((TcpReader) key.attachment()).disconnect();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // Already closed
+            }
+
+            try {
+                serverSocketChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Error closing selector (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+            }
+        }
+    }
+
+    private void acceptChannel() {
+        SocketChannel socketChannel = null;
+
+        try {
+            socketChannel = serverSocketChannel.accept();
+            if (socketChannel == null) {
+                return;
+            }
+            logger.trace("Accepted new socket: " + socketChannel.socket().getRemoteSocketAddress().toString() + " -> " + socketChannel.socket().getLocalSocketAddress());
+
+            socketChannel.configureBlocking(false);
+
+            synchronized (clientReaders) {
+                // Only allow new connections if we're not currently trying to stop the connector
+                if (disposing.get()) {
+                    socketChannel.close();
+                    return;
+                }
+                TcpReader reader = new TcpReader(socketChannel);
+                clientReaders.add(reader);
+                reader.setSelectionKey(socketChannel.register(selector, SelectionKey.OP_READ, reader));
+            }
+        } catch (IOException e) {
+            logger.debug("Error accepting new socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+            if (socketChannel != null) {
+                closeSocketQuietly(socketChannel.socket());
+            }
+        }
+    }
+
+    private void submitReader(TcpReader reader) {
+        try {
+            synchronized (clientReaders) {
+                if (disposing.get()) {
+                    return;
+                }
+                results.add(executor.submit(reader));
+            }
+        } catch (RejectedExecutionException e) {
+            logger.debug("Executor rejected new task (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").", e);
+            reader.disconnect();
+        }
+    }
+
+    /*
+     * If the connection isn't kept open, a connection that hasn't sent any data within the receive
+     * timeout is closed, the same way a blocking read would have timed out.
+     */
+    private void closeIdleConnections() {
+        if (timeout <= 0 || connectorProperties.isKeepConnectionOpen()) {
+            return;
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            TcpReader reader = (TcpReader) key.attachment();
+
+            if (reader != null && isIdle(key) && reader.getIdleTime() >= timeout) {
+                key.cancel();
+                eventController.dispatchEvent(new ConnectionStatusEvent(getChannelId(), getMetaDataId(), getSourceName(), ConnectionStatusEventType.FAILURE, "Timeout waiting for message from " + SocketUtil.getLocalAddress(reader.getSocket()) + ". "));
+                reader.disconnect();
+            }
+        }
+    }
+
+    /*
+     * Returns true if the key's connection is waiting in the selector rather than being read from
+     * by a worker.
+     */
+    private boolean isIdle(SelectionKey key) {
+        try {
+            return key.isValid() && key.interestOps() != 0;
+        } catch (CancelledKeyException e) {
+            return false;
+        }
+    }
+
     private StateAwareSocket createResponseSocket() throws IOException {
         logger.debug("Creating response socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").");
         return SocketUtil.createSocket();
     }
 
-    private void connectResponseSocket(StateAwareSocket responseSocket, StreamHandler streamHandler) throws IOException {
+    private void connectResponseSocket(Socket responseSocket, StreamHandler streamHandler) throws IOException {
         int responsePort = NumberUtils.toInt(replacer.replaceValues(connectorProperties.getResponsePort(), getChannelId()));
         SocketUtil.connectSocket(responseSocket, replacer.replaceValues(connectorProperties.getResponseAddress(), getChannelId()), responsePort, timeout);
         initSocket(responseSocket);
@@ -759,7 +1160,7 @@ public class TcpReceiver extends SourceConnector {
         streamHandler.setOutputStream(bos);
     }
 
-    private void sendResponse(String response, StateAwareSocket responseSocket, StreamHandler streamHandler, boolean newConnection) throws IOException {
+    private void sendResponse(String response, Socket responseSocket, StreamHandler streamHandler, boolean newConnection) throws IOException {
         try {
             if (responseSocket != null && streamHandler != null) {
                 // Send the response
@@ -769,7 +1170,7 @@ public class TcpReceiver extends SourceConnector {
                 throw new IOException((responseSocket == null ? "Response socket" : "Stream handler") + " is null.");
             }
         } catch (IOException e) {
-            if (responseSocket != null && responseSocket.remoteSideHasClosed()) {
+            if (responseSocket instanceof StateAwareSocket && ((StateAwareSocket) responseSocket).remoteSideHasClosed()) {
                 e = new IOException("Remote socket has closed.");
             }
 
@@ -783,7 +1184,7 @@ public class TcpReceiver extends SourceConnector {
         return !connectorProperties.isKeepConnectionOpen() || socket.isClosed() || socket.remoteSideHasClosed();
     }
 
-    private void closeSocketQuietly(StateAwareSocket socket) {
+    private void closeSocketQuietly(Socket socket) {
         try {
             if (socket != null) {
                 logger.trace("Closing client socket (" + connectorProperties.getName() + " \"Source\" on channel " + getChannelId() + ").");
@@ -42,6 +42,7 @@ public class TcpReceiverProperties extends ConnectorProperties implements Listen
     private String receiveTimeout;
     private String bufferSize;
     private String maxConnections;
+    private boolean multiplexConnections;
     private boolean keepConnectionOpen;
     private boolean processBatch;
     private boolean dataTypeBinary;
@@ -67,6 +68,7 @@ public class TcpReceiverProperties extends ConnectorProperties implements Listen
         this.receiveTimeout = "0";
         this.bufferSize = "65536";
         this.maxConnections = "10";
+        this.multiplexConnections = false;
         this.keepConnectionOpen = true;
         this.processBatch = false;
         this.dataTypeBinary = false;
@@ -158,6 +160,19 @@ public class TcpReceiverProperties extends ConnectorProperties implements Listen
         this.maxConnections = maxConnections;
     }
 
+    /**
+     * If enabled in server mode, all client connections are multiplexed on a single selector
+     * thread, and max connections limits the number of connections that are processing data at
+     * once instead of the number of open connections.
+     */
+    public boolean isMultiplexConnections() {
+        return multiplexConnections;
+    }
+
+    public void setMultiplexConnections(boolean multiplexConnections) {
+        this.multiplexConnections = multiplexConnections;
+    }
+
     public boolean isKeepConnectionOpen() {
         return keepConnectionOpen;
     }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tcp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.connectors.tcp.SocketChannelStreams;
+import com.mirth.connect.model.transmission.StreamHandler;
+import com.mirth.connect.model.transmission.batch.DefaultBatchStreamReader;
+import com.mirth.connect.model.transmission.framemode.FrameModeProperties;
+import com.mirth.connect.model.transmission.framemode.FrameStreamHandler;
+import com.mirth.connect.util.TcpUtil;
+
+public class SocketChannelStreamsTest {
+
+    private static final byte[] START_BYTES = new byte[] { 0x0B };
+    private static final byte[] END_BYTES = new byte[] { 0x1C, 0x0D };
+    private static final String MESSAGE = "MSH|^~\\&|ADT1|SHM|SHMADT|SHM|200812091126|SECURITY|ADT^A01^ADT_A01|MSG00001|P|2.5|\r";
+
+    private ServerSocketChannel serverChannel;
+    private SocketChannel client;
+    private SocketChannel channel;
+
+    @Before
+    public void before() throws Exception {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(serverChannel.socket().getLocalSocketAddress());
+        channel = serverChannel.accept();
+        channel.configureBlocking(false);
+    }
+
+    @After
+    public void after() throws Exception {
+        client.close();
+        channel.close();
+        serverChannel.close();
+    }
+
+    @Test
+    public void testPartialFrame() throws Exception {
+        SocketChannelStreams streams = new SocketChannelStreams(channel, 5000);
+        byte[] frame = frame(MESSAGE);
+        int split = frame.length / 2;
+
+        // The first half of the frame is buffered without waiting for the rest
+        send(frame, 0, split);
+        readAvailable(streams, split);
+        assertFalse(streams.isBuffered(END_BYTES));
+
+        // The rest of the frame arrives along with the start of the next one
+        send(frame, split, frame.length - split);
+        send(START_BYTES, 0, START_BYTES.length);
+        readAvailable(streams, frame.length + START_BYTES.length);
+        assertTrue(streams.isBuffered(END_BYTES));
+
+        // The whole frame is read from the buffer, and the start of the next one is left in it
+        assertArrayEquals(MESSAGE.getBytes("US-ASCII"), createStreamHandler(streams.getInputStream()).read());
+        assertEquals(START_BYTES.length, streams.getBufferedSize());
+        assertFalse(streams.isBuffered(END_BYTES));
+    }
+
+    @Test
+    public void testSlowSender() throws Exception {
+        SocketChannelStreams streams = new SocketChannelStreams(channel, 5000);
+        byte[] frame = frame(MESSAGE);
+
+        // Nothing blocks while the frame trickles in a byte at a time
+        for (int i = 0; i < frame.length; i++) {
+            assertFalse(streams.isBuffered(END_BYTES));
+            send(frame, i, 1);
+            readAvailable(streams, i + 1);
+        }
+
+        assertTrue(streams.isBuffered(END_BYTES));
+        assertArrayEquals(MESSAGE.getBytes("US-ASCII"), createStreamHandler(streams.getInputStream()).read());
+        assertEquals(0, streams.getBufferedSize());
+    }
+
+    @Test
+    public void testBufferGrows() throws Exception {
+        // A frame larger than the initial buffer is still buffered whole
+        SocketChannelStreams streams = new SocketChannelStreams(channel, 5000, 16);
+        byte[] frame = frame(MESSAGE + MESSAGE + MESSAGE);
+
+        send(frame, 0, frame.length);
+        readAvailable(streams, frame.length);
+        assertTrue(streams.isBuffered(END_BYTES));
+        assertFalse(streams.isBufferFull());
+        assertArrayEquals((MESSAGE + MESSAGE + MESSAGE).getBytes("US-ASCII"), createStreamHandler(streams.getInputStream()).read());
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception {
+        SocketChannelStreams streams = new SocketChannelStreams(channel, 5000);
+        byte[] frame = frame(MESSAGE);
+
+        send(frame, 0, frame.length);
+        client.close();
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!streams.isEndOfStream() && System.currentTimeMillis() < timeout) {
+            streams.readAvailable();
+            Thread.sleep(10);
+        }
+
+        // The buffered frame can still be read after the remote side has closed the connection
+        assertTrue(streams.isEndOfStream());
+        assertEquals(frame.length, streams.getBufferedSize());
+        assertArrayEquals(MESSAGE.getBytes("US-ASCII"), createStreamHandler(streams.getInputStream()).read());
+        assertEquals(-1, streams.getInputStream().read());
+    }
+
+    private byte[] frame(String message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(START_BYTES);
+        bos.write(message.getBytes("US-ASCII"));
+        bos.write(END_BYTES);
+        return bos.toByteArray();
+    }
+
+    private void send(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    /*
+     * Reads ahead until the expected number of bytes is buffered, the way the selector thread does
+     * each time the connection is readable.
+     */
+    private void readAvailable(SocketChannelStreams streams, int bufferedSize) throws Exception {
+        long timeout = System.currentTimeMillis() + 5000;
+
+        while (streams.getBufferedSize() < bufferedSize && System.currentTimeMillis() < timeout) {
+            streams.readAvailable();
+            Thread.sleep(1);
+        }
+
+        assertEquals(bufferedSize, streams.getBufferedSize());
+    }
+
+    private StreamHandler createStreamHandler(InputStream inputStream) {
+        FrameModeProperties frameModeProperties = new FrameModeProperties("MLLP");
+        frameModeProperties.setStartOfMessageBytes(TcpUtil.DEFAULT_LLP_START_BYTES);
+        frameModeProperties.setEndOfMessageBytes(TcpUtil.DEFAULT_LLP_END_BYTES);
+
+        return new FrameStreamHandler(inputStream, null, new DefaultBatchStreamReader(inputStream), frameModeProperties);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.connectors.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.mirth.connect.model.transmission.ScanningInputStream;
+import com.mirth.connect.model.transmission.StreamHandler;
+import com.mirth.connect.model.transmission.batch.DefaultBatchStreamReader;
+import com.mirth.connect.model.transmission.framemode.FrameModeProperties;
+import com.mirth.connect.model.transmission.framemode.FrameStreamHandler;
+import com.mirth.connect.server.controllers.tests.TestUtils;
+import com.mirth.connect.util.TcpUtil;
+
+/**
+ * Compares the throughput of reading LLP frames one byte at a time through the batch stream reader
+ * against reading whole blocks from a ScanningInputStream, which is what the TCP connectors use.
+ */
+public class StreamHandlerPerformanceTests {
+    private final static int TEST_SIZE = 20000;
+    private final static int WARMUP_SIZE = 2000;
+    private final static int BUFFER_SIZE = 65536;
+
+    private static Logger logger = Logger.getLogger(StreamHandlerPerformanceTests.class);
+    private static byte[] smallFrames;
+    private static byte[] largeFrames;
+    private static FrameModeProperties frameModeProperties;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        frameModeProperties = new FrameModeProperties("MLLP");
+        frameModeProperties.setStartOfMessageBytes(TcpUtil.DEFAULT_LLP_START_BYTES);
+        frameModeProperties.setEndOfMessageBytes(TcpUtil.DEFAULT_LLP_END_BYTES);
+
+        byte[] testMessageBytes = StreamHandlerTests.testMessage.getBytes(StreamHandlerTests.testMessageCharset);
+        smallFrames = createFrames(testMessageBytes, TEST_SIZE);
+
+        // Create a message of roughly 100 KB
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        while (bos.size() < 100000) {
+            bos.write(testMessageBytes);
+        }
+        largeFrames = createFrames(bos.toByteArray(), TEST_SIZE / 100);
+    }
+
+    @Test
+    public void testSmallMessages() throws Exception {
+        runTest("small messages", smallFrames, TEST_SIZE);
+    }
+
+    @Test
+    public void testLargeMessages() throws Exception {
+        runTest("large messages", largeFrames, TEST_SIZE / 100);
+    }
+
+    private void runTest(String testName, byte[] frames, int testSize) throws Exception {
+        // Warm up both read paths before timing them
+        for (int i = 0; i < WARMUP_SIZE / testSize + 1; i++) {
+            readFrames(new BufferedInputStream(new ByteArrayInputStream(frames), BUFFER_SIZE), testSize);
+            readFrames(new ScanningInputStream(new ByteArrayInputStream(frames), BUFFER_SIZE), testSize);
+        }
+
+        long startTime = System.currentTimeMillis();
+        readFrames(new BufferedInputStream(new ByteArrayInputStream(frames), BUFFER_SIZE), testSize);
+        long byteDuration = Math.max(System.currentTimeMillis() - startTime, 1);
+
+        startTime = System.currentTimeMillis();
+        readFrames(new ScanningInputStream(new ByteArrayInputStream(frames), BUFFER_SIZE), testSize);
+        long blockDuration = Math.max(System.currentTimeMillis() - startTime, 1);
+
+        logger.info(TestUtils.getPerformanceText("Byte reads, " + testName, testSize, byteDuration));
+        logger.info(TestUtils.getPerformanceText("Block reads, " + testName, testSize, blockDuration));
+    }
+
+    private void readFrames(InputStream is, int testSize) throws Exception {
+        int numMessages = 0;
+
+        // A new stream handler is created for each message, the same way the TCP listener does
+        while (true) {
+            StreamHandler streamHandler = new FrameStreamHandler(is, null, new DefaultBatchStreamReader(is), frameModeProperties);
+
+            if (streamHandler.read() == null) {
+                break;
+            }
+
+            numMessages++;
+        }
+
+        assertEquals(testSize, numMessages);
+    }
+
+    private static byte[] createFrames(byte[] message, int count) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        for (int i = 0; i < count; i++) {
+            bos.write(StreamHandlerTests.llpStartBytes);
+            bos.write(message);
+            bos.write(StreamHandlerTests.llpEndBytes);
+        }
+
+        return bos.toByteArray();
+    }
+}
@@ -11,6 +11,7 @@ package com.mirth.connect.connectors.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -24,6 +25,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.mirth.connect.model.transmission.ScanningInputStream;
 import com.mirth.connect.model.transmission.StreamHandler;
 import com.mirth.connect.model.transmission.TransmissionModeProperties;
 import com.mirth.connect.model.transmission.batch.BatchStreamReader;
@@ -33,6 +35,7 @@ import com.mirth.connect.model.transmission.batch.ER7BatchStreamReader;
 import com.mirth.connect.model.transmission.batch.RegexBatchStreamReader;
 import com.mirth.connect.model.transmission.framemode.FrameModeProperties;
 import com.mirth.connect.model.transmission.framemode.FrameStreamHandler;
+import com.mirth.connect.model.transmission.framemode.FrameStreamHandlerException;
 import com.mirth.connect.util.TcpUtil;
 
 public class StreamHandlerTests {
@@ -411,4 +414,60 @@ public class StreamHandlerTests {
         // Assert that two messages were returned
         assertEquals(5, numMessages);
     }
+
+    @Test
+    public void readScanningStream() throws Exception {
+        byte[] testBytes = testMessageBytes;
+        ByteArrayOutputStream bos;
+        InputStream is;
+        BatchStreamReader batchStreamHandler;
+        StreamHandler streamHandler;
+        int numMessages = 5;
+
+        // Add multiple LLP frames to the output stream, with extra bytes in between
+        bos = new ByteArrayOutputStream();
+        for (int i = 0; i < numMessages; i++) {
+            bos.write(llpStartBytes);
+            bos.write(testBytes);
+            bos.write(llpEndBytes);
+            bos.write("Testing".getBytes(testMessageCharset));
+        }
+        // Use a small buffer so that frames span multiple reads from the underlying stream
+        is = new ScanningInputStream(new ByteArrayInputStream(bos.toByteArray()), 64);
+
+        // Create a new stream handler for each message, the same way the TCP listener does
+        for (int i = 0; i < numMessages; i++) {
+            batchStreamHandler = new DefaultBatchStreamReader(is);
+            streamHandler = new FrameStreamHandler(is, null, batchStreamHandler, defaultMLLPProps);
+            // Assert that the bytes returned from the stream handler are correct
+            assertTrue(Arrays.equals(testBytes, streamHandler.read()));
+            // Assert that the handler is done after the end bytes were detected
+            assertEquals(null, streamHandler.read());
+        }
+
+        // Create an LLP frame whose end bytes are never received
+        bos = new ByteArrayOutputStream();
+        bos.write(llpStartBytes);
+        bos.write(testBytes);
+        is = new ScanningInputStream(new ByteArrayInputStream(bos.toByteArray()), 64);
+        batchStreamHandler = new DefaultBatchStreamReader(is);
+        streamHandler = new FrameStreamHandler(is, null, batchStreamHandler, defaultMLLPProps);
+
+        try {
+            streamHandler.read();
+            fail("End of message bytes should not have been detected");
+        } catch (FrameStreamHandlerException e) {
+            // Expected
+        }
+
+        // Create a frame without end bytes, which should return the entire stream contents
+        FrameModeProperties frameModeProperties = new FrameModeProperties();
+        frameModeProperties.setStartOfMessageBytes("");
+        frameModeProperties.setEndOfMessageBytes("");
+        is = new ScanningInputStream(new ByteArrayInputStream(testBytes), 64);
+        batchStreamHandler = new DefaultBatchStreamReader(is);
+        streamHandler = new FrameStreamHandler(is, null, batchStreamHandler, frameModeProperties);
+        assertTrue(Arrays.equals(testBytes, streamHandler.read()));
+        assertEquals(null, streamHandler.read());
+    }
 }
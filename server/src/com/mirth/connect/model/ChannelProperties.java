@@ -30,6 +30,7 @@ public class ChannelProperties implements Serializable, Migratable {
     private boolean clearGlobalChannelMap;
     private MessageStorageMode messageStorageMode;
     private boolean encryptData;
+    private boolean compressData;
     private boolean removeContentOnCompletion;
     private boolean removeAttachmentsOnCompletion;
     private DeployedState initialState;
@@ -40,6 +41,10 @@ public class ChannelProperties implements Serializable, Migratable {
     private Integer pruneMetaDataDays;
     private Integer pruneContentDays;
     private boolean archiveEnabled;
+    private int processingThreads;
+    private int messageIdBlockSize;
+    private String partitionKeyScript;
+    private boolean recoverConcurrently;
 
     public ChannelProperties() {
         clearGlobalChannelMap = true;
@@ -50,6 +55,7 @@ public class ChannelProperties implements Serializable, Migratable {
         metaDataColumns = new ArrayList<MetaDataColumn>();
         attachmentProperties = AttachmentHandlerType.NONE.getDefaultProperties();
         archiveEnabled = true;
+        processingThreads = 1;
     }
 
     public boolean isClearGlobalChannelMap() {
@@ -76,6 +82,17 @@ public class ChannelProperties implements Serializable, Migratable {
         this.encryptData = encryptData;
     }
 
+    /**
+     * Whether large message content is compressed before it is stored (and encrypted).
+     */
+    public boolean isCompressData() {
+        return compressData;
+    }
+
+    public void setCompressData(boolean compressData) {
+        this.compressData = compressData;
+    }
+
     public boolean isRemoveContentOnCompletion() {
         return removeContentOnCompletion;
     }
@@ -156,6 +173,43 @@ public class ChannelProperties implements Serializable, Migratable {
         this.archiveEnabled = archiveEnabled;
     }
 
+    public int getProcessingThreads() {
+        return processingThreads;
+    }
+
+    public void setProcessingThreads(int processingThreads) {
+        this.processingThreads = processingThreads;
+    }
+
+    /**
+     * The number of message IDs to reserve from the database at once, or 0 to use the server's
+     * default of 1. With a larger block, any IDs left in the current block are skipped when the
+     * channel is undeployed or the server restarts, so message IDs can have gaps.
+     */
+    public int getMessageIdBlockSize() {
+        return messageIdBlockSize;
+    }
+
+    public void setMessageIdBlockSize(int messageIdBlockSize) {
+        this.messageIdBlockSize = messageIdBlockSize;
+    }
+
+    public String getPartitionKeyScript() {
+        return partitionKeyScript;
+    }
+
+    public void setPartitionKeyScript(String partitionKeyScript) {
+        this.partitionKeyScript = partitionKeyScript;
+    }
+
+    public boolean isRecoverConcurrently() {
+        return recoverConcurrently;
+    }
+
+    public void setRecoverConcurrently(boolean recoverConcurrently) {
+        this.recoverConcurrently = recoverConcurrently;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return EqualsBuilder.reflectionEquals(this, obj);
@@ -47,6 +47,7 @@ public class DashboardStatus implements Serializable {
     private boolean queueEnabled;
     private Long queued = 0L;
     private boolean waitForPrevious = false;
+    private boolean serializationSkipped = false;
     private Set<String> tags = new LinkedHashSet<String>();
     private StatusType statusType;
 
@@ -146,6 +147,14 @@ public class DashboardStatus implements Serializable {
         this.waitForPrevious = waitForPrevious;
     }
 
+    public boolean isSerializationSkipped() {
+        return serializationSkipped;
+    }
+
+    public void setSerializationSkipped(boolean serializationSkipped) {
+        this.serializationSkipped = serializationSkipped;
+    }
+
     public Set<String> getTags() {
         return tags;
     }
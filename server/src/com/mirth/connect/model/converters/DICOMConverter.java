@@ -17,6 +17,7 @@ import java.io.InputStream;
 
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
 import org.dcm4che2.data.BasicDicomObject;
 import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.TransferSyntax;
@@ -28,17 +29,30 @@ import com.mirth.connect.donkey.util.ByteCounterOutputStream;
 public class DICOMConverter {
 
     public static DicomObject byteArrayToDicomObject(byte[] bytes, boolean decodeBase64) throws IOException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        InputStream inputStream;
+        if (decodeBase64) {
+            inputStream = new BufferedInputStream(new Base64InputStream(bais));
+        } else {
+            inputStream = bais;
+        }
+
+        return inputStreamToDicomObject(inputStream);
+    }
+
+    /**
+     * Reads a DicomObject from base64 encoded data, decoding it as it is read instead of first
+     * copying the string into a byte array.
+     */
+    public static DicomObject base64StringToDicomObject(String data) throws IOException {
+        return inputStreamToDicomObject(new BufferedInputStream(new Base64InputStream(new CharSequenceInputStream(data, "US-ASCII"))));
+    }
+
+    private static DicomObject inputStreamToDicomObject(InputStream inputStream) throws IOException {
         DicomObject basicDicomObject = new BasicDicomObject();
         DicomInputStream dis = null;
 
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            InputStream inputStream;
-            if (decodeBase64) {
-                inputStream = new BufferedInputStream(new Base64InputStream(bais));
-            } else {
-                inputStream = bais;
-            }
             dis = new DicomInputStream(inputStream);
             /*
              * This parameter was added in dcm4che 2.0.28. We use it to retain the memory allocation
@@ -82,7 +82,7 @@ public class XMLPrettyPrinter implements ContentHandler {
         try {
             // indent();
             if (encodeEntities) {
-                out.write(MirthXmlUtil.encode(text, start, length));
+                MirthXmlUtil.encode(text, start, length, out);
             } else {
                 out.write(text, start, length);
             }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.model.transmission;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array used by stream handlers to capture the bytes of the current frame. Unlike
+ * ByteArrayOutputStream it is not synchronized, and it exposes the backing array so that the
+ * captured bytes can be scanned without making a copy. The same buffer is meant to be reused for
+ * every frame read from a connection.
+ */
+public class FrameBuffer {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    // Buffers that grew beyond this size are released when reset, so large messages aren't retained
+    private static final int MAX_RETAINED_CAPACITY = 1048576;
+
+    private byte[] bytes;
+    private int size;
+
+    public FrameBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameBuffer(int capacity) {
+        bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Returns the backing array. Only the first size() bytes are valid, and the array may be
+     * replaced by any subsequent write.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte get(int index) {
+        return bytes[index];
+    }
+
+    public void write(int b) {
+        if (size == bytes.length) {
+            ensureCapacity(size + 1);
+        }
+        bytes[size++] = (byte) b;
+    }
+
+    public void write(byte[] src) {
+        write(src, 0, src.length);
+    }
+
+    public void write(byte[] src, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(src, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Returns true if the captured bytes end with the entire given byte sequence.
+     */
+    public boolean endsWith(byte[] suffix) {
+        int length = suffix.length;
+
+        if (length == 0 || length > size) {
+            return false;
+        }
+
+        // Check the last byte first since that's the one most likely to differ
+        int start = size - length;
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[start + i] != suffix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a copy of the first length bytes.
+     */
+    public byte[] toByteArray(int length) {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    public byte[] toByteArray() {
+        return toByteArray(size);
+    }
+
+    /**
+     * Returns a copy of the last bytes captured, up to the given length.
+     */
+    public byte[] getLastBytes(int length) {
+        length = Math.min(length, size);
+        return Arrays.copyOfRange(bytes, size - length, size);
+    }
+
+    /**
+     * Discards all captured bytes so the buffer can be used for the next frame.
+     */
+    public void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[DEFAULT_CAPACITY];
+        }
+        size = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            if (capacity < 0) {
+                throw new OutOfMemoryError();
+            }
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length << 1 > 0 ? bytes.length << 1 : Integer.MAX_VALUE));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.model.transmission;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A ScanningInputStream is a BufferedInputStream that allows a stream handler to copy whole runs
+ * of buffered bytes at once, stopping after a given byte. This avoids reading a frame one byte at a
+ * time while never consuming bytes past the end of the frame, so the stream can be persisted
+ * across multiple reads (e.g. on a socket that is kept open).
+ */
+public class ScanningInputStream extends BufferedInputStream {
+
+    public ScanningInputStream(InputStream in) {
+        super(in);
+    }
+
+    public ScanningInputStream(InputStream in, int size) {
+        super(in, size);
+    }
+
+    /**
+     * Copies bytes into the frame buffer up to and including the first occurrence of the stop
+     * byte, or all currently buffered bytes if the stop byte isn't found. If nothing is buffered,
+     * this blocks until at least one byte can be read from the underlying stream.
+     *
+     * @param stopByte
+     *            The byte (0-255) after which to stop copying, or -1 to copy everything that is
+     *            currently buffered.
+     * @return The number of bytes copied, or -1 if the end of the stream has been reached.
+     * @throws IOException
+     */
+    public synchronized int scan(int stopByte, FrameBuffer frameBuffer) throws IOException {
+        int copied = 0;
+
+        if (pos >= count) {
+            // Nothing is buffered, so let the superclass fill the buffer
+            int currentByte = read();
+
+            if (currentByte == -1) {
+                return -1;
+            }
+
+            frameBuffer.write(currentByte);
+            copied++;
+
+            if (currentByte == stopByte) {
+                return copied;
+            }
+        }
+
+        byte[] buffer = buf;
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+
+        int start = pos;
+        int end = count;
+        int index = start;
+
+        if (stopByte >= 0) {
+            byte stop = (byte) stopByte;
+
+            while (index < end && buffer[index] != stop) {
+                index++;
+            }
+
+            // Include the stop byte itself
+            if (index < end) {
+                index++;
+            }
+        } else {
+            index = end;
+        }
+
+        frameBuffer.write(buffer, start, index - start);
+        pos = index;
+
+        return copied + index - start;
+    }
+}
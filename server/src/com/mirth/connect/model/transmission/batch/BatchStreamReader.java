@@ -9,10 +9,10 @@
 
 package com.mirth.connect.model.transmission.batch;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+
+import com.mirth.connect.model.transmission.FrameBuffer;
 
 public abstract class BatchStreamReader {
 
@@ -79,17 +79,30 @@ public abstract class BatchStreamReader {
      * example an intermediate message determined by a delimiter may not include
      * the delimiter itself).
      * 
-     * The subclass has access to capturedBytes and endBytesBuffer, which
-     * together compose all bytes so far returned from getNextByte. It also has
-     * access to lastByte, which is the last byte returned from getNextByte
-     * (this doesn't include EOFs or repeat bytes caused by cycling back through
-     * endBytesBuffer).
+     * The subclass has access to frameBuffer, which contains all bytes so far
+     * returned from getNextByte. The first capturedLength bytes are the ones
+     * that cannot be part of the ending byte sequence; any remaining bytes may
+     * still turn out to be the start of the ending bytes. It also has access to
+     * lastByte, which is the last byte returned from getNextByte (this doesn't
+     * include EOFs). The frame buffer is reused, so any bytes returned must be
+     * a copy.
      * 
      * @return A byte array representing the next intermediate message in the
      *         stream, or null if no intermediate message is yet detected.
      * @throws IOException
      */
-    public byte[] checkForIntermediateMessage(ByteArrayOutputStream capturedBytes, List<Byte> endBytesBuffer, int lastByte) throws IOException {
+    public byte[] checkForIntermediateMessage(FrameBuffer frameBuffer, int capturedLength, int lastByte) throws IOException {
         return null;
     }
+
+    /**
+     * Returns true if getNextByte returns the bytes of the underlying input
+     * stream unchanged and checkForIntermediateMessage never detects a
+     * message. In that case the stream handler is free to bypass both methods
+     * and copy whole blocks of bytes from the input stream at once. Subclasses
+     * that override either method must return false.
+     */
+    public boolean isPassThrough() {
+        return false;
+    }
 }
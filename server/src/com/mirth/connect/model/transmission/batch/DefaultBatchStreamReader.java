@@ -9,10 +9,10 @@
 
 package com.mirth.connect.model.transmission.batch;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+
+import com.mirth.connect.model.transmission.FrameBuffer;
 
 public class DefaultBatchStreamReader extends BatchStreamReader {
 
@@ -26,7 +26,11 @@ public class DefaultBatchStreamReader extends BatchStreamReader {
         return inputStream.read();
     }
 
-    public byte[] checkForIntermediateMessage(ByteArrayOutputStream capturedBytes, List<Byte> endBytesBuffer, int lastByte) throws IOException {
+    public byte[] checkForIntermediateMessage(FrameBuffer frameBuffer, int capturedLength, int lastByte) throws IOException {
         return null;
     }
+
+    public boolean isPassThrough() {
+        return true;
+    }
 }
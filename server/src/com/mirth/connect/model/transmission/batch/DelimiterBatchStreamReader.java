@@ -10,10 +10,10 @@
 package com.mirth.connect.model.transmission.batch;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+
+import com.mirth.connect.model.transmission.FrameBuffer;
 
 public class DelimiterBatchStreamReader extends BatchStreamReader {
 
@@ -47,7 +47,7 @@ public class DelimiterBatchStreamReader extends BatchStreamReader {
     }
 
     @Override
-    public byte[] checkForIntermediateMessage(ByteArrayOutputStream capturedBytes, List<Byte> endBytesBuffer, int lastByte) throws IOException {
+    public byte[] checkForIntermediateMessage(FrameBuffer frameBuffer, int capturedLength, int lastByte) throws IOException {
         inputStream.mark(delimiterBytes.length);
 
         boolean delimiterFound = true;
@@ -59,19 +59,12 @@ public class DelimiterBatchStreamReader extends BatchStreamReader {
         }
 
         if (delimiterFound) {
-            // If there are any bytes in the buffer, flush them out
-            for (Byte bufferByte : endBytesBuffer) {
-                capturedBytes.write(bufferByte);
-            }
-
-            // If we're including the delimiter, write it to the output stream
+            // If we're including the delimiter, write it to the frame buffer
             if (includeDelimiter) {
-                for (byte delimiterByte : delimiterBytes) {
-                    capturedBytes.write(delimiterByte);
-                }
+                frameBuffer.write(delimiterBytes);
             }
 
-            return capturedBytes.toByteArray();
+            return frameBuffer.toByteArray();
         } else {
             // No delimiter was found, so reset the input stream
             inputStream.reset();
@@ -9,12 +9,11 @@
 
 package com.mirth.connect.model.transmission.batch;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 
 import com.mirth.connect.model.transmission.EOFCheckInputStream;
+import com.mirth.connect.model.transmission.FrameBuffer;
 
 public class ER7BatchStreamReader extends BatchStreamReader {
 
@@ -50,7 +49,7 @@ public class ER7BatchStreamReader extends BatchStreamReader {
     }
 
     @Override
-    public byte[] checkForIntermediateMessage(ByteArrayOutputStream capturedBytes, List<Byte> endBytesBuffer, int lastByte) throws IOException {
+    public byte[] checkForIntermediateMessage(FrameBuffer frameBuffer, int capturedLength, int lastByte) throws IOException {
         if (previousByte == -1 || lastByte == '\r' || lastByte == '\n') {
             skipSegments();
 
@@ -58,13 +57,8 @@ public class ER7BatchStreamReader extends BatchStreamReader {
             inputStream.mark(3);
             try {
                 if (inputStream.read() == 'M' && inputStream.read() == 'S' && inputStream.read() == 'H') {
-                    // If there are any bytes in the buffer, flush them out
-                    if (endBytesBuffer != null) {
-                        for (Byte bufferByte : endBytesBuffer) {
-                            capturedBytes.write(bufferByte);
-                        }
-                    }
-                    return capturedBytes.toByteArray();
+                    // Include any bytes that could have been part of the ending byte sequence
+                    return frameBuffer.toByteArray();
                 }
             } finally {
                 // Reset the input stream position regardless of whether a new message was found
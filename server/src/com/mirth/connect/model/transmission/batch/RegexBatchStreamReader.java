@@ -9,14 +9,14 @@
 
 package com.mirth.connect.model.transmission.batch;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.mirth.connect.model.transmission.FrameBuffer;
+
 public class RegexBatchStreamReader extends BatchStreamReader {
 
     private Pattern delimiterRegex;
@@ -55,9 +55,9 @@ public class RegexBatchStreamReader extends BatchStreamReader {
     }
 
     @Override
-    public byte[] checkForIntermediateMessage(ByteArrayOutputStream capturedBytes, List<Byte> endBytesBuffer, int lastByte) throws IOException {
+    public byte[] checkForIntermediateMessage(FrameBuffer frameBuffer, int capturedLength, int lastByte) throws IOException {
         // We need to decode the string every time to account for variable-width charset encodings
-        String encodedString = new String(capturedBytes.toByteArray(), charsetEncoding);
+        String encodedString = new String(frameBuffer.getBytes(), 0, capturedLength, charsetEncoding);
 
         Matcher matcher = delimiterRegex.matcher(encodedString);
         if (matcher.find()) {
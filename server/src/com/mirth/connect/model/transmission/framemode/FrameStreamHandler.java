@@ -9,18 +9,16 @@
 
 package com.mirth.connect.model.transmission.framemode;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.log4j.Logger;
 
+import com.mirth.connect.model.transmission.FrameBuffer;
+import com.mirth.connect.model.transmission.ScanningInputStream;
 import com.mirth.connect.model.transmission.StreamHandler;
 import com.mirth.connect.model.transmission.TransmissionModeProperties;
 import com.mirth.connect.model.transmission.batch.BatchStreamReader;
@@ -34,8 +32,7 @@ public class FrameStreamHandler extends StreamHandler {
     protected byte[] endOfMessageBytes;
     protected boolean returnDataOnException; // Determines whether data should be returned if an exception occurs.
 
-    private ByteArrayOutputStream capturedBytes; // The bytes captured so far by the reader, not including any in the end bytes buffer.
-    private List<Byte> endBytesBuffer; // An interim buffer of bytes used to capture the ending byte sequence.
+    private FrameBuffer frameBuffer; // The bytes captured so far by the reader, reused for each frame.
     private byte lastByte; // The last byte returned from getNextByte.
     private boolean streamDone; // This is true if an EOF has been read in, or if the ending byte sequence has been detected.
 
@@ -93,7 +90,7 @@ public class FrameStreamHandler extends StreamHandler {
      * batch).
      * 
      * @return A byte array representing the next whole message in the stream (could be the entire
-     *         stream contents or part of a batch), or null if the stream is done. If an IOException
+     *         stream contents or part of a batch), or null if the stream is done. If an exception
      *         is caught while reading (e.g. a socket timeout) and returnDataOnException is true,
      *         then all bytes accumulated up to that point are returned.
      * @throws IOException
@@ -106,10 +103,14 @@ public class FrameStreamHandler extends StreamHandler {
             return null;
         }
 
-        capturedBytes = new ByteArrayOutputStream();
-        List<Byte> firstBytes = new ArrayList<Byte>();
-        // A List is used here to allow the buffer to simulate a "shifting window" of potential bytes.
-        endBytesBuffer = new ArrayList<Byte>();
+        if (frameBuffer == null) {
+            frameBuffer = new FrameBuffer();
+        } else {
+            frameBuffer.reset();
+        }
+
+        byte[] firstBytes = new byte[startOfMessageBytes.length];
+        int firstBytesLength = 0;
 
         try {
             // Skip to the beginning of the message
@@ -121,8 +122,8 @@ public class FrameStreamHandler extends StreamHandler {
                     logger.trace("Checking for start of message bytes, currentByte: " + currentByte);
 
                     if (currentByte != -1) {
-                        if (firstBytes.size() < startOfMessageBytes.length) {
-                            firstBytes.add((byte) currentByte);
+                        if (firstBytesLength < firstBytes.length) {
+                            firstBytes[firstBytesLength++] = (byte) currentByte;
                         }
 
                         if (currentByte == (int) (startOfMessageBytes[i] & 0xFF)) {
@@ -132,8 +133,8 @@ public class FrameStreamHandler extends StreamHandler {
                         }
                     } else {
                         streamDone = true;
-                        if (firstBytes.size() > 0) {
-                            throw new FrameStreamHandlerException(true, startOfMessageBytes, ArrayUtils.toPrimitive(firstBytes.toArray(new Byte[0])));
+                        if (firstBytesLength > 0) {
+                            throw new FrameStreamHandlerException(true, startOfMessageBytes, Arrays.copyOf(firstBytes, firstBytesLength));
                         } else {
                             // The input stream ended before the begin bytes were detected, so return null
                             return null;
@@ -148,77 +149,53 @@ public class FrameStreamHandler extends StreamHandler {
             // Allow the handler to initialize anything it needs to (e.g. mark the input stream)
             batchStreamReader.initialize();
 
-            // Iterate while there are still bytes to read, or if we're checking for end bytes and its buffer is not empty
-            while ((currentByte = batchStreamReader.getNextByte()) != -1 || (endOfMessageBytes.length > 0 && !endBytesBuffer.isEmpty())) {
-                // If the input stream is done, get the byte from the buffer instead
-                if (currentByte == -1) {
-                    currentByte = endBytesBuffer.remove(0);
-                    streamDone = true;
-                } else {
-                    lastByte = (byte) currentByte;
-                }
-
-                // Check to see if an end frame has been received
-                if (endOfMessageBytes.length > 0 && !streamDone) {
-                    if (endBytesBuffer.size() == endOfMessageBytes.length) {
-                        // Shift the buffer window over one, popping the first element and writing it to the output stream
-                        capturedBytes.write(endBytesBuffer.remove(0));
-                    }
-
-                    // Add the byte to the buffer
-                    endBytesBuffer.add((byte) currentByte);
-
-                    // Check to see if the current buffer window equals the ending byte sequence
-                    boolean endBytesFound = true;
-                    for (int i = 0; i <= endBytesBuffer.size() - 1; i++) {
-                        if (endBytesBuffer.get(i) != endOfMessageBytes[i]) {
-                            endBytesFound = false;
-                            break;
-                        }
-                    }
+            byte[] returnBytes;
 
-                    if (endBytesFound) {
-                        // Ending bytes sequence has been detected
-                        streamDone = true;
-                        return capturedBytes.toByteArray();
-                    }
-                } else {
-                    // Add the byte to the main output stream
-                    capturedBytes.write(currentByte);
-                }
+            if (batchStreamReader.isPassThrough() && batchStreamReader.getInputStream() instanceof ScanningInputStream) {
+                returnBytes = readBlocks((ScanningInputStream) batchStreamReader.getInputStream());
+            } else {
+                returnBytes = readBytes();
+            }
 
-                if (!streamDone) {
-                    // Allow subclass to check the current byte stream and return immediately
-                    byte[] returnBytes = batchStreamReader.checkForIntermediateMessage(capturedBytes, endBytesBuffer, lastByte);
-                    if (returnBytes != null) {
-                        return returnBytes;
-                    }
-                }
+            if (returnBytes != null) {
+                return returnBytes;
             }
         } catch (Throwable e) {
             if (!returnDataOnException) {
                 if (e instanceof IOException) {
                     // If an IOException occurred and we're not allowing data to return, throw the exception
 
-                    if (checkStartOfMessageBytes && firstBytes.size() > 0) {
+                    if (checkStartOfMessageBytes && firstBytesLength > 0) {
                         // At least some bytes have been read, but the start of message bytes were not detected
-                        throw new FrameStreamHandlerException(true, startOfMessageBytes, ArrayUtils.toPrimitive(firstBytes.toArray(new Byte[0])), e);
+                        throw new FrameStreamHandlerException(true, startOfMessageBytes, Arrays.copyOf(firstBytes, firstBytesLength), e);
                     }
-                    if (capturedBytes.size() + endBytesBuffer.size() > 0 && endOfMessageBytes.length > 0) {
+                    if (frameBuffer.size() > 0 && endOfMessageBytes.length > 0) {
                         // At least some bytes have been captured, but the end of message bytes were not detected
-                        throw new FrameStreamHandlerException(false, endOfMessageBytes, getLastBytes(), e);
+                        throw new FrameStreamHandlerException(false, endOfMessageBytes, frameBuffer.getLastBytes(endOfMessageBytes.length), e);
                     }
                     throw (IOException) e;
                 } else {
                     // If any other Throwable was caught, return null to indicate that we're done
                     return null;
                 }
+            } else {
+                /*
+                 * Return everything captured so far. If end bytes are expected the next read will
+                 * continue the current frame, otherwise the exception marks the end of the frame
+                 * and the starting bytes need to be captured again.
+                 */
+                if (endOfMessageBytes.length == 0) {
+                    checkStartOfMessageBytes = true;
+                }
+
+                return frameBuffer.size() > 0 ? frameBuffer.toByteArray() : null;
             }
         }
 
         if (endOfMessageBytes.length > 0) {
             // If we got here, then the end of message bytes were not captured
-            throw new FrameStreamHandlerException(false, endOfMessageBytes, getLastBytes());
+            streamDone = true;
+            throw new FrameStreamHandlerException(false, endOfMessageBytes, frameBuffer.getLastBytes(endOfMessageBytes.length));
         } else {
             /*
              * If we got here, no end of message bytes were expected, but we should reset the check
@@ -228,12 +205,56 @@ public class FrameStreamHandler extends StreamHandler {
             checkStartOfMessageBytes = true;
         }
 
-        // Flush the buffer to the main output stream
-        for (Byte bufByte : endBytesBuffer) {
-            capturedBytes.write(bufByte);
+        return frameBuffer.size() > 0 ? frameBuffer.toByteArray() : null;
+    }
+
+    /*
+     * Reads the frame one byte at a time through the batch stream reader, allowing it to
+     * preprocess bytes and detect intermediate messages. Returns null if the end of the stream was
+     * reached.
+     */
+    private byte[] readBytes() throws IOException {
+        while ((currentByte = batchStreamReader.getNextByte()) != -1) {
+            lastByte = (byte) currentByte;
+            frameBuffer.write(currentByte);
+
+            // Check to see if an end frame has been received
+            if (endOfMessageBytes.length > 0 && lastByte == endOfMessageBytes[endOfMessageBytes.length - 1] && frameBuffer.endsWith(endOfMessageBytes)) {
+                // Ending bytes sequence has been detected
+                streamDone = true;
+                return frameBuffer.toByteArray(frameBuffer.size() - endOfMessageBytes.length);
+            }
+
+            // Allow subclass to check the current byte stream and return immediately
+            int capturedLength = frameBuffer.size() - Math.min(endOfMessageBytes.length, frameBuffer.size());
+            byte[] returnBytes = batchStreamReader.checkForIntermediateMessage(frameBuffer, capturedLength, lastByte);
+            if (returnBytes != null) {
+                return returnBytes;
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Copies whole runs of buffered bytes at a time, only stopping to check for the ending byte
+     * sequence when its last byte is seen. This is only used when the batch stream reader doesn't
+     * need to see individual bytes. Returns null if the end of the stream was reached.
+     */
+    private byte[] readBlocks(ScanningInputStream scanningInputStream) throws IOException {
+        int stopByte = endOfMessageBytes.length > 0 ? endOfMessageBytes[endOfMessageBytes.length - 1] & 0xFF : -1;
+
+        while (scanningInputStream.scan(stopByte, frameBuffer) != -1) {
+            lastByte = frameBuffer.get(frameBuffer.size() - 1);
+
+            if (frameBuffer.endsWith(endOfMessageBytes)) {
+                // Ending bytes sequence has been detected
+                streamDone = true;
+                return frameBuffer.toByteArray(frameBuffer.size() - endOfMessageBytes.length);
+            }
         }
 
-        return capturedBytes.size() > 0 ? capturedBytes.toByteArray() : null;
+        return null;
     }
 
     @Override
@@ -250,46 +271,16 @@ public class FrameStreamHandler extends StreamHandler {
             return;
         }
 
-        DataOutputStream dos = new DataOutputStream(outputStream);
-
         for (byte[] data : dataArrays) {
             if (data != null) {
-                for (byte b : data) {
-                    dos.writeByte(b);
-                }
+                outputStream.write(data);
             }
         }
 
         try {
-            dos.flush();
+            outputStream.flush();
         } catch (SocketException e) {
             logger.debug("Socket closed while trying to flush.");
         }
     }
-
-    private byte[] getLastBytes() {
-        int capturedBytesLength = capturedBytes != null ? capturedBytes.size() : 0;
-        int endBytesBufferLength = endBytesBuffer != null ? endBytesBuffer.size() : 0;
-        // If the total bytes read is less than the number of expected end bytes, use the smaller value
-        byte[] lastBytes = new byte[Math.min(capturedBytesLength + endBytesBufferLength, endOfMessageBytes.length)];
-        int index = 0;
-
-        // Add any captured bytes, leaving room for the end bytes buffer
-        if (capturedBytes != null) {
-            byte[] capturedByteArray = capturedBytes.toByteArray();
-
-            for (int i = capturedBytesLength - lastBytes.length + endBytesBufferLength; i >= 0 && i < capturedBytesLength; i++) {
-                lastBytes[index++] = capturedByteArray[i];
-            }
-        }
-
-        // Fill the remainder of the array with the end bytes buffer
-        if (endBytesBuffer != null) {
-            for (byte b : endBytesBuffer) {
-                lastBytes[index++] = b;
-            }
-        }
-
-        return lastBytes;
-    }
 }
@@ -34,6 +34,7 @@ import com.mirth.connect.model.Channel;
 import com.mirth.connect.model.Connector;
 import com.mirth.connect.server.controllers.ControllerFactory;
 import com.mirth.connect.server.event.EventListener;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
 
 public class DashboardConnectorEventListener extends EventListener {
     private Logger logger = Logger.getLogger(this.getClass());
@@ -48,6 +49,11 @@ public class DashboardConnectorEventListener extends EventListener {
     private Map<String, Map<String, Long>> lastDisplayedLogIndexBySessionId = new ConcurrentHashMap<String, Map<String, Long>>();
     private Map<String, Boolean> channelsDeployedFlagForEachClient = new ConcurrentHashMap<String, Boolean>();
 
+    public DashboardConnectorEventListener() {
+        // Only the latest state of each connector is displayed, so older states can be collapsed
+        super(BackpressurePolicy.COALESCE);
+    }
+
     @Override
     protected void onShutdown() {
 
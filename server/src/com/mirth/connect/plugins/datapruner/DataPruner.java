@@ -19,8 +19,15 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -60,11 +67,13 @@ public class DataPruner implements Runnable {
     private final static int ARCHIVE_BATCH_SIZE = 1000;
     private final static int ID_RETRIEVE_LIMIT = 100000;
 
-    private int numExported;
+    private AtomicInteger numExported = new AtomicInteger();
     private int retryCount;
     private boolean skipIncomplete;
     private Status[] skipStatuses;
     private Integer blockSize;
+    private int numThreads;
+    private int blockDelay;
     private boolean archiveEnabled;
     private MessageWriterOptions archiverOptions;
     private boolean pruneEvents;
@@ -75,20 +84,23 @@ public class DataPruner implements Runnable {
     private Thread pruneThread;
     private DataPrunerStatus status = new DataPrunerStatus();
     private DataPrunerStatus lastStatus;
+    private int numArchiving;
+    private int numPruning;
     private Logger logger = Logger.getLogger(getClass());
 
     public DataPruner() {
         this.retryCount = 3;
         this.skipIncomplete = true;
         this.skipStatuses = new Status[] { Status.ERROR, Status.QUEUED };
+        this.numThreads = 1;
     }
 
     public int getNumExported() {
-        return numExported;
+        return numExported.get();
     }
 
     public void setNumExported(int numExported) {
-        this.numExported = numExported;
+        this.numExported.set(numExported);
     }
 
     public int getRetryCount() {
@@ -127,6 +139,30 @@ public class DataPruner implements Runnable {
         }
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of channels that may be archived, and the number that may be pruned, at the
+     * same time.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(numThreads, 1);
+    }
+
+    public int getBlockDelay() {
+        return blockDelay;
+    }
+
+    /**
+     * Set the number of milliseconds to pause after each block of delete queries, to limit the load
+     * the pruner puts on the database.
+     */
+    public void setBlockDelay(int blockDelay) {
+        this.blockDelay = Math.max(blockDelay, 0);
+    }
+
     public boolean isArchiveEnabled() {
         return archiveEnabled;
     }
@@ -289,48 +325,8 @@ public class DataPruner implements Runnable {
 
             logger.debug("Pruner task queue built, " + taskQueue.size() + " channels will be processed");
 
-            while (!taskQueue.isEmpty()) {
-                ThreadUtils.checkInterruptedStatus();
-                PrunerTask task = taskQueue.poll();
-
-                try {
-                    status.setCurrentChannelId(task.getChannelId());
-                    status.setCurrentChannelName(task.getChannelName());
-                    status.setTaskStartTime(Calendar.getInstance());
-
-                    PruneResult result = pruneChannel(task.getChannelId(), task.getMessageDateThreshold(), task.getContentDateThreshold(), archiveFolder, task.isArchiveEnabled());
-
-                    status.getProcessedChannelIds().add(task.getChannelId());
-
-                    Map<String, String> attributes = new HashMap<String, String>();
-                    attributes.put("Channel ID", task.getChannelId());
-                    attributes.put("Channel Name", task.getChannelName());
-
-                    if (archiveEnabled && task.isArchiveEnabled()) {
-                        attributes.put("Messages Archived", Long.toString(result.numMessagesArchived));
-                    }
-
-                    attributes.put("Messages Pruned", Long.toString(result.numMessagesPruned));
-                    attributes.put("Content Rows Pruned", Long.toString(result.numContentPruned));
-                    attributes.put("Time Elapsed", getTimeElapsed());
-                    eventController.dispatchEvent(new ServerEvent(DataPrunerService.PLUGINPOINT, Level.INFORMATION, Outcome.SUCCESS, attributes));
-                } catch (InterruptedException e) {
-                    throw e;
-                } catch (Exception e) {
-                    status.getFailedChannelIds().add(task.getChannelId());
-
-                    Map<String, String> attributes = new HashMap<String, String>();
-                    attributes.put("channel", task.getChannelName());
-                    attributes.put("error", e.getMessage());
-                    attributes.put("trace", ExceptionUtils.getStackTrace(e));
-                    eventController.dispatchEvent(new ServerEvent(DataPrunerService.PLUGINPOINT, Level.ERROR, Outcome.FAILURE, attributes));
-                    logger.error("Could not prune messages for channel: " + task.getChannelName(), e);
-                } finally {
-                    status.getPendingChannelIds().remove(task.getChannelId());
-                    status.setCurrentChannelId(null);
-                    status.setCurrentChannelName(null);
-                }
-            }
+            numExported.set(0);
+            pruneChannels(taskQueue, archiveFolder);
 
             logger.debug("Pruner job finished executing");
         } catch (InterruptedException e) {
@@ -346,6 +342,119 @@ public class DataPruner implements Runnable {
         }
     }
 
+    /*
+     * Channels are handled by two pools of workers. The first retrieves (and archives) the messages
+     * to prune for a channel and then hands the IDs to the second, which runs the delete queries. This
+     * lets archiving one channel overlap with deleting another.
+     */
+    private void pruneChannels(Queue<PrunerTask> taskQueue, final String archiveFolder) throws InterruptedException {
+        final ExecutorService archiveExecutor = Executors.newFixedThreadPool(numThreads);
+        final ExecutorService pruneExecutor = Executors.newFixedThreadPool(numThreads);
+        final CountDownLatch latch = new CountDownLatch(taskQueue.size());
+
+        try {
+            for (final PrunerTask task : taskQueue) {
+                archiveExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean handedOff = false;
+
+                        try {
+                            startTask(task);
+                            retrieveIdsToPrune(task, archiveFolder);
+
+                            pruneExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        pruneIds(task);
+                                        finishTask(task, null);
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                    } catch (Throwable t) {
+                                        finishTask(task, t);
+                                    } finally {
+                                        latch.countDown();
+                                    }
+                                }
+                            });
+
+                            handedOff = true;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Throwable t) {
+                            finishTask(task, t);
+                        } finally {
+                            if (!handedOff) {
+                                latch.countDown();
+                            }
+                        }
+                    }
+                });
+            }
+
+            latch.await();
+        } finally {
+            archiveExecutor.shutdownNow();
+            pruneExecutor.shutdownNow();
+
+            // Don't report the pruner as stopped until every worker has finished
+            archiveExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            pruneExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void startTask(PrunerTask task) throws InterruptedException {
+        ThreadUtils.checkInterruptedStatus();
+        task.setStartTime(Calendar.getInstance());
+
+        synchronized (status) {
+            status.setCurrentChannelId(task.getChannelId());
+            status.setCurrentChannelName(task.getChannelName());
+            status.setTaskStartTime(task.getStartTime());
+        }
+    }
+
+    private void finishTask(PrunerTask task, Throwable error) {
+        synchronized (status) {
+            if (error == null) {
+                status.getProcessedChannelIds().add(task.getChannelId());
+            } else {
+                status.getFailedChannelIds().add(task.getChannelId());
+            }
+
+            status.getPendingChannelIds().remove(task.getChannelId());
+
+            if (task.getChannelId().equals(status.getCurrentChannelId())) {
+                status.setCurrentChannelId(null);
+                status.setCurrentChannelName(null);
+            }
+        }
+
+        Map<String, String> attributes = new HashMap<String, String>();
+
+        if (error == null) {
+            PruneResult result = task.getResult();
+            attributes.put("Channel ID", task.getChannelId());
+            attributes.put("Channel Name", task.getChannelName());
+
+            if (archiveEnabled && task.isArchiveEnabled()) {
+                attributes.put("Messages Archived", Long.toString(result.numMessagesArchived));
+            }
+
+            attributes.put("Messages Pruned", Long.toString(result.numMessagesPruned));
+            attributes.put("Content Rows Pruned", Long.toString(result.numContentPruned));
+            attributes.put("Time Elapsed", getTimeElapsed(task.getStartTime()));
+            eventController.dispatchEvent(new ServerEvent(DataPrunerService.PLUGINPOINT, Level.INFORMATION, Outcome.SUCCESS, attributes));
+        } else {
+            attributes.put("channel", task.getChannelName());
+            attributes.put("error", error.getMessage());
+            attributes.put("trace", ExceptionUtils.getStackTrace(error));
+            eventController.dispatchEvent(new ServerEvent(DataPrunerService.PLUGINPOINT, Level.ERROR, Outcome.FAILURE, attributes));
+            logger.error("Could not prune messages for channel: " + task.getChannelName(), error);
+        }
+    }
+
     private void pruneEvents() {
         logger.debug("Pruning events");
         status.setPruningEvents(true);
@@ -366,7 +475,7 @@ public class DataPruner implements Runnable {
 
                 Map<String, String> attributes = new HashMap<String, String>();
                 attributes.put("Events Pruned", Integer.toString(numEventsPruned));
-                attributes.put("Time Elapsed", getTimeElapsed());
+                attributes.put("Time Elapsed", getTimeElapsed(status.getTaskStartTime()));
                 eventController.dispatchEvent(new ServerEvent(DataPrunerService.PLUGINPOINT, Level.INFORMATION, Outcome.SUCCESS, attributes));
             } finally {
                 session.close();
@@ -378,10 +487,25 @@ public class DataPruner implements Runnable {
     }
 
     public PruneResult pruneChannel(String channelId, Calendar messageDateThreshold, Calendar contentDateThreshold, String archiveFolder, boolean channelArchiveEnabled) throws InterruptedException, DataPrunerException {
+        PrunerTask task = new PrunerTask(channelId, null, messageDateThreshold, contentDateThreshold, channelArchiveEnabled);
+        retrieveIdsToPrune(task, archiveFolder);
+        pruneIds(task);
+        return task.getResult();
+    }
+
+    /*
+     * Retrieves the IDs of the messages and content to prune for a channel, archiving the messages
+     * first if needed. The IDs are stored in the task for pruneIds.
+     */
+    private void retrieveIdsToPrune(PrunerTask task, String archiveFolder) throws InterruptedException, DataPrunerException {
+        String channelId = task.getChannelId();
+        Calendar messageDateThreshold = task.getMessageDateThreshold();
+        Calendar contentDateThreshold = task.getContentDateThreshold();
+
         logger.debug("Executing pruner for channel: " + channelId);
 
         if (messageDateThreshold == null && contentDateThreshold == null) {
-            return new PruneResult();
+            return;
         }
 
         // the content date threshold is only used/needed if it is later than the message date threshold
@@ -415,16 +539,50 @@ public class DataPruner implements Runnable {
                     params.put("skipStatuses", getSkipStatuses());
                 }
 
-                PruneResult result = new PruneResult();
                 PruneIds messageIds = new PruneIds();
                 PruneIds contentMessageIds = new PruneIds();
 
-                if (!archiveEnabled || !channelArchiveEnabled) {
+                if (!archiveEnabled || !task.isArchiveEnabled()) {
                     getIdsToPrune(params, messageDateThreshold, messageIds, contentMessageIds);
                 } else {
-                    archiveAndGetIdsToPrune(params, channelId, messageDateThreshold, archiveFolder, messageIds, contentMessageIds);
+                    task.getResult().numMessagesArchived = archiveAndGetIdsToPrune(params, channelId, messageDateThreshold, archiveFolder, messageIds, contentMessageIds);
                 }
 
+                task.setMessageIds(messageIds);
+                task.setContentMessageIds(contentMessageIds);
+                task.setMaxMessageId(maxMessageId);
+                return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (retries > 0) {
+                    retries--;
+                } else {
+                    throw new DataPrunerException("Failed to prune messages", e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs the delete queries for the IDs retrieved by retrieveIdsToPrune. The delete queries can be
+     * run again safely, so a failed attempt is retried with the same IDs.
+     */
+    private void pruneIds(PrunerTask task) throws InterruptedException, DataPrunerException {
+        PruneResult result = task.getResult();
+        int retries = retryCount;
+        long localChannelId = ChannelController.getInstance().getLocalChannelId(task.getChannelId());
+        long numPartitionMessagesPruned = removePrunedPartitions(task);
+
+        while (true) {
+            ThreadUtils.checkInterruptedStatus();
+            PruneIds contentMessageIds = task.getContentMessageIds().copy();
+            PruneIds messageIds = task.getMessageIds().copy();
+
+            try {
+                result.numContentPruned = 0;
+                result.numMessagesPruned = numPartitionMessagesPruned;
+
                 while (contentMessageIds.hasNext()) {
                     result.numContentPruned += pruneChannelByIds(localChannelId, contentMessageIds, true);
                 }
@@ -433,7 +591,10 @@ public class DataPruner implements Runnable {
                     result.numMessagesPruned += pruneChannelByIds(localChannelId, messageIds, false);
                 }
 
-                return result;
+                // Release the IDs, since the task is kept until every channel has been pruned
+                task.setMessageIds(new PruneIds());
+                task.setContentMessageIds(new PruneIds());
+                return;
             } catch (InterruptedException e) {
                 throw e;
             } catch (Exception e) {
@@ -446,6 +607,90 @@ public class DataPruner implements Runnable {
         }
     }
 
+    /*
+     * If the channel's message tables are partitioned, drops the partitions in which every message
+     * is being pruned, which is much faster than deleting the messages. The IDs in the dropped
+     * partitions are removed from the task so they aren't deleted again. A partition is only
+     * dropped once the two partitions after it exist, so no more messages are being added to it.
+     * If anything goes wrong, the messages are deleted the usual way instead.
+     */
+    private long removePrunedPartitions(PrunerTask task) throws InterruptedException {
+        String channelId = task.getChannelId();
+        long numPruned = 0;
+
+        if (!task.getMessageIds().hasNext()) {
+            return numPruned;
+        }
+
+        try {
+            TreeMap<Long, Long> partitions;
+            DonkeyDao dao = getDaoFactory().getDao();
+
+            try {
+                partitions = new TreeMap<Long, Long>(dao.getMessagePartitions(channelId));
+            } finally {
+                dao.close();
+            }
+
+            if (partitions.size() < 3) {
+                return numPruned;
+            }
+
+            // The last two partitions may still be receiving messages
+            long maxPartitionId = partitions.lowerKey(partitions.lowerKey(partitions.lastKey()));
+            Map<Long, Long> counts = new HashMap<Long, Long>();
+            PruneIds messageIds = task.getMessageIds().copy();
+
+            while (messageIds.hasNext()) {
+                Long partitionId = partitions.floorKey(messageIds.next());
+
+                if (partitionId != null) {
+                    Long count = counts.get(partitionId);
+                    counts.put(partitionId, count == null ? 1L : count + 1);
+                }
+            }
+
+            TreeMap<Long, Long> removedPartitions = new TreeMap<Long, Long>();
+
+            for (Entry<Long, Long> partition : partitions.headMap(maxPartitionId, true).entrySet()) {
+                ThreadUtils.checkInterruptedStatus();
+                long partitionId = partition.getKey();
+                long endId = partition.getValue();
+                Long count = counts.get(partitionId);
+
+                if (count == null || endId > task.getMaxMessageId() + 1) {
+                    continue;
+                }
+
+                dao = getDaoFactory().getDao();
+
+                try {
+                    if (dao.getMessageCount(channelId, partitionId, endId - 1) == count) {
+                        dao.removeMessagePartition(channelId, partitionId);
+                        dao.commit();
+
+                        removedPartitions.put(partitionId, endId);
+                        numPruned += count;
+                    }
+                } finally {
+                    dao.close();
+                }
+            }
+
+            if (!removedPartitions.isEmpty()) {
+                logger.debug("Removed " + removedPartitions.size() + " message partitions for channel " + channelId);
+                task.setMessageIds(task.getMessageIds().copyExcluding(removedPartitions));
+                task.setContentMessageIds(task.getContentMessageIds().copyExcluding(removedPartitions));
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Failed to remove message partitions for channel " + channelId + ", deleting the messages instead", e);
+        }
+
+        return numPruned;
+    }
+
     private void getIdsToPrune(Map<String, Object> params, Calendar messageDateThreshold, PruneIds messageIds, PruneIds contentMessageIds) throws DataPrunerException, InterruptedException {
         params.put("limit", ID_RETRIEVE_LIMIT);
         params.put("archive", false);
@@ -477,7 +722,7 @@ public class DataPruner implements Runnable {
         } while (maps != null && maps.size() == ID_RETRIEVE_LIMIT);
     }
 
-    private void archiveAndGetIdsToPrune(Map<String, Object> params, String channelId, Calendar messageDateThreshold, String archiveFolder, PruneIds messageIds, PruneIds contentMessageIds) throws DataPrunerException, InterruptedException {
+    private long archiveAndGetIdsToPrune(Map<String, Object> params, String channelId, Calendar messageDateThreshold, String archiveFolder, PruneIds messageIds, PruneIds contentMessageIds) throws DataPrunerException, InterruptedException {
         params.put("limit", ARCHIVE_BATCH_SIZE);
         params.put("archive", true);
 
@@ -496,10 +741,10 @@ public class DataPruner implements Runnable {
             }
 
             logger.debug("Running archiver, channel: " + channelId + ", root folder: " + messageWriterOptions.getRootFolder() + ", archive format: " + messageWriterOptions.getArchiveFormat() + ", archive filename: " + messageWriterOptions.getArchiveFileName() + ", file pattern: " + messageWriterOptions.getFilePattern());
-            status.setArchiving(true);
+            setArchiving(true);
             MessageWriter archiver = MessageWriterFactory.getInstance().getMessageWriter(messageWriterOptions, ConfigurationController.getInstance().getEncryptor());
 
-            numExported = 0;
+            long numArchived = 0;
             long minMessageId = 0;
             List<Message> messageList = null;
             do {
@@ -514,7 +759,8 @@ public class DataPruner implements Runnable {
 
                         try {
                             if (archiver.write(message)) {
-                                numExported++;
+                                numArchived++;
+                                numExported.incrementAndGet();
                             }
 
                         } catch (Exception e) {
@@ -542,12 +788,14 @@ public class DataPruner implements Runnable {
                     logger.error("Failed to move " + tempChannelFolder + " to " + finalChannelFolder, e);
                 }
             }
+
+            return numArchived;
         } catch (Throwable t) {
             FileUtils.deleteQuietly(new File(tempChannelFolder));
             FileUtils.deleteQuietly(new File(finalChannelFolder));
             throw new DataPrunerException(t);
         } finally {
-            status.setArchiving(false);
+            setArchiving(false);
         }
     }
 
@@ -603,7 +851,7 @@ public class DataPruner implements Runnable {
             return 0;
         }
 
-        int numPruned = 0;
+        long numPruned = 0;
 
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("localChannelId", localChannelId);
@@ -629,7 +877,11 @@ public class DataPruner implements Runnable {
                     params.put("maxMessageId", endRange);
                 }
 
-                numPruned = runDeleteQueries(params, contentOnly);
+                numPruned += runDeleteQueries(params, contentOnly);
+
+                if (blockDelay > 0) {
+                    Thread.sleep(blockDelay);
+                }
             }
         }
 
@@ -670,26 +922,48 @@ public class DataPruner implements Runnable {
         }
 
         try {
-            status.setPruning(true);
+            setPruning(true);
 
             int count = session.delete(query, params);
             ThreadUtils.checkInterruptedStatus();
             return count;
         } finally {
             session.close();
-            status.setPruning(false);
+            setPruning(false);
+        }
+    }
+
+    /*
+     * Several workers may be archiving or pruning at once, so the status flags are only cleared
+     * once the last of them has finished.
+     */
+    private void setArchiving(boolean archiving) {
+        synchronized (status) {
+            numArchiving += archiving ? 1 : -1;
+            status.setArchiving(numArchiving > 0);
         }
     }
 
-    private String getTimeElapsed() {
-        long ms = System.currentTimeMillis() - status.getTaskStartTime().getTimeInMillis();
+    private void setPruning(boolean pruning) {
+        synchronized (status) {
+            numPruning += pruning ? 1 : -1;
+            status.setPruning(numPruning > 0);
+        }
+    }
+
+    private String getTimeElapsed(Calendar startTime) {
+        long ms = System.currentTimeMillis() - startTime.getTimeInMillis();
         long mins = ms / 60000;
         long secs = (ms % 60000) / 1000;
 
         return mins + " minute" + (mins == 1 ? "" : "s") + ", " + secs + " second" + (secs == 1 ? "" : "s");
     }
 
-    private class PruneIds implements Iterator<Long> {
+    /**
+     * The IDs of the messages to prune, in ascending order. Runs of consecutive IDs are stored as
+     * ranges.
+     */
+    public static class PruneIds implements Iterator<Long> {
         private int currentIdIndex = 0;
         private int currentRangeIndex = 0;
         private long lastId = 0;
@@ -697,6 +971,36 @@ public class DataPruner implements Runnable {
         private List<Long> ids = new ArrayList<Long>();
         private List<Long> ranges = new ArrayList<Long>();
 
+        /**
+         * Returns a new iterator over the same IDs, starting from the beginning.
+         */
+        public PruneIds copy() {
+            PruneIds copy = new PruneIds();
+            copy.ids = ids;
+            copy.ranges = ranges;
+            return copy;
+        }
+
+        /**
+         * Returns a new iterator over the same IDs, leaving out the IDs in the given ranges. The
+         * ranges map the first ID of each range to the first ID after it.
+         */
+        public PruneIds copyExcluding(TreeMap<Long, Long> excludedRanges) {
+            PruneIds source = copy();
+            PruneIds result = new PruneIds();
+
+            while (source.hasNext()) {
+                long messageId = source.next();
+                Entry<Long, Long> range = excludedRanges.floorEntry(messageId);
+
+                if (range == null || messageId >= range.getValue()) {
+                    result.add(messageId);
+                }
+            }
+
+            return result;
+        }
+
         public void add(Long messageId) {
             int lastIdIndex = ids.size() - 1;
             int lastRangeIndex = ranges.size() - 1;
@@ -756,6 +1060,11 @@ public class DataPruner implements Runnable {
         private Calendar messageDateThreshold;
         private Calendar contentDateThreshold;
         private boolean archiveEnabled;
+        private Calendar startTime;
+        private long maxMessageId;
+        private PruneIds messageIds = new PruneIds();
+        private PruneIds contentMessageIds = new PruneIds();
+        private PruneResult result = new PruneResult();
 
         public PrunerTask(String channelId, String channelName, Calendar messageDateThreshold, Calendar contentDateThreshold, boolean archiveEnabled) {
             this.channelId = channelId;
@@ -784,5 +1093,41 @@ public class DataPruner implements Runnable {
         public boolean isArchiveEnabled() {
             return archiveEnabled;
         }
+
+        public Calendar getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(Calendar startTime) {
+            this.startTime = startTime;
+        }
+
+        public long getMaxMessageId() {
+            return maxMessageId;
+        }
+
+        public void setMaxMessageId(long maxMessageId) {
+            this.maxMessageId = maxMessageId;
+        }
+
+        public PruneIds getMessageIds() {
+            return messageIds;
+        }
+
+        public void setMessageIds(PruneIds messageIds) {
+            this.messageIds = messageIds;
+        }
+
+        public PruneIds getContentMessageIds() {
+            return contentMessageIds;
+        }
+
+        public void setContentMessageIds(PruneIds contentMessageIds) {
+            this.contentMessageIds = contentMessageIds;
+        }
+
+        public PruneResult getResult() {
+            return result;
+        }
     }
 }
@@ -49,6 +49,8 @@ import com.mirth.connect.util.messagewriter.MessageWriterOptions;
 public class DataPrunerService implements ServicePlugin {
     public static final String PLUGINPOINT = "Data Pruner";
     private static final int DEFAULT_PRUNING_BLOCK_SIZE = 0;
+    private static final int DEFAULT_PRUNING_THREADS = 1;
+    private static final int DEFAULT_PRUNING_BLOCK_DELAY = 0;
     private static final String PRUNER_JOB_KEY = "prunerJob";
     private static final String PRUNER_TRIGGER_KEY = "prunerTrigger";
     private static final String DATE_FORMAT = "MM/dd/yyyy hh:mm aa";
@@ -250,6 +252,8 @@ public class DataPrunerService implements ServicePlugin {
         properties.put("interval", "disabled");
         properties.put("time", "12:00 AM");
         properties.put("pruningBlockSize", String.valueOf(DEFAULT_PRUNING_BLOCK_SIZE));
+        properties.put("pruningThreads", String.valueOf(DEFAULT_PRUNING_THREADS));
+        properties.put("pruningBlockDelay", String.valueOf(DEFAULT_PRUNING_BLOCK_DELAY));
         properties.put("archiveEnabled", serializer.serialize(false));
 //        properties.put("includeAttachments", serializer.serialize(false));
         properties.put("archiverOptions", serializer.serialize(new MessageWriterOptions()));
@@ -273,6 +277,18 @@ public class DataPrunerService implements ServicePlugin {
             pruner.setBlockSize(DEFAULT_PRUNING_BLOCK_SIZE);
         }
 
+        if (StringUtils.isNotEmpty(properties.getProperty("pruningThreads"))) {
+            pruner.setNumThreads(Integer.parseInt(properties.getProperty("pruningThreads")));
+        } else {
+            pruner.setNumThreads(DEFAULT_PRUNING_THREADS);
+        }
+
+        if (StringUtils.isNotEmpty(properties.getProperty("pruningBlockDelay"))) {
+            pruner.setBlockDelay(Integer.parseInt(properties.getProperty("pruningBlockDelay")));
+        } else {
+            pruner.setBlockDelay(DEFAULT_PRUNING_BLOCK_DELAY);
+        }
+
         pruner.setArchiveEnabled(Boolean.parseBoolean(properties.getProperty("archiveEnabled", Boolean.FALSE.toString())));
 //        boolean includeAttachments = Boolean.parseBoolean(properties.getProperty("includeAttachments", Boolean.FALSE.toString()));
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.plugins.datapruner.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.mirth.connect.plugins.datapruner.DataPruner.PruneIds;
+
+public class PruneIdsTest {
+
+    @Test
+    public void testCopyExcluding() throws Exception {
+        PruneIds ids = ids(1, 2, 3, 5, 8, 9, 10, 11, 12, 20);
+
+        // Ranges map the first excluded ID to the first ID after the range
+        assertEquals(Arrays.asList(1L, 2L, 3L, 5L, 11L, 12L, 20L), list(ids.copyExcluding(ranges(6, 11))));
+        assertEquals(Arrays.asList(5L, 8L, 9L, 10L, 11L, 12L), list(ids.copyExcluding(ranges(0, 4, 15, 25))));
+        assertEquals(Arrays.<Long> asList(), list(ids.copyExcluding(ranges(0, 100))));
+
+        // Range boundaries that fall inside a run of consecutive IDs split the run
+        assertEquals(Arrays.asList(1L, 2L, 3L, 5L, 8L, 12L, 20L), list(ids.copyExcluding(ranges(9, 12))));
+    }
+
+    @Test
+    public void testCopyExcludingNothing() throws Exception {
+        PruneIds ids = ids(1, 2, 3, 7);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 7L), list(ids.copyExcluding(new TreeMap<Long, Long>())));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 7L), list(ids.copyExcluding(ranges(4, 7, 8, 10))));
+    }
+
+    @Test
+    public void testCopyExcludingLeavesSource() throws Exception {
+        PruneIds ids = ids(1, 2, 3);
+        ids.copyExcluding(ranges(2, 3));
+
+        // The copy is made from the beginning, so the original can still be iterated
+        assertEquals(Arrays.asList(1L, 2L, 3L), list(ids));
+    }
+
+    private PruneIds ids(long... messageIds) {
+        PruneIds ids = new PruneIds();
+
+        for (long messageId : messageIds) {
+            ids.add(messageId);
+        }
+
+        return ids;
+    }
+
+    private TreeMap<Long, Long> ranges(long... bounds) {
+        TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            ranges.put(bounds[i], bounds[i + 1]);
+        }
+
+        return ranges;
+    }
+
+    private List<Long> list(PruneIds ids) {
+        List<Long> list = new ArrayList<Long>();
+
+        while (ids.hasNext()) {
+            list.add(ids.next());
+        }
+
+        return list;
+    }
+}
@@ -25,8 +25,8 @@ import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.codec.binary.Base64InputStream;
-import org.apache.commons.codec.binary.StringUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
 import org.dcm4che2.data.BasicDicomObject;
 import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.Tag;
@@ -137,7 +137,7 @@ public class DICOMSerializer implements IXMLSerializer {
             ContentHandlerAdapter contentHandler = new ContentHandlerAdapter(dicomObject);
             byte[] documentBytes = documentSerializer.toXML(document).trim().getBytes(charset);
             parser.parse(new InputSource(new ByteArrayInputStream(documentBytes)), contentHandler);
-            return StringUtils.newStringUsAscii(Base64Util.encodeBase64(DICOMConverter.dicomObjectToByteArray(dicomObject)));
+            return Base64Util.encodeBase64String(DICOMConverter.dicomObjectToByteArray(dicomObject));
         } catch (Exception e) {
             throw new XmlSerializerException("Error converting XML to DICOM", e, ErrorMessageBuilder.buildErrorMessage(this.getClass().getSimpleName(), "Error converting XML to DICOM", e));
         }
@@ -146,10 +146,8 @@ public class DICOMSerializer implements IXMLSerializer {
     @Override
     public String toXML(String source) throws XmlSerializerException {
         try {
-            byte[] encodedMessage = org.apache.commons.codec.binary.StringUtils.getBytesUsAscii(source);
-
             StringWriter output = new StringWriter();
-            DicomInputStream dis = new DicomInputStream(new BufferedInputStream(new Base64InputStream(new ByteArrayInputStream(encodedMessage))));
+            DicomInputStream dis = new DicomInputStream(new BufferedInputStream(new Base64InputStream(new CharSequenceInputStream(source, "US-ASCII"))));
             /*
              * This parameter was added in dcm4che 2.0.28. We use it to retain the memory allocation
              * behavior from 2.0.25.
@@ -9,29 +9,33 @@
 
 package com.mirth.connect.plugins.datatypes.hl7v2;
 
-import java.io.BufferedReader;
+import java.io.CharArrayWriter;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.io.Reader;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.xerces.parsers.SAXParser;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+/**
+ * Parses an ER7-encoded HL7 message into SAX events. The message is read into a single character
+ * buffer and scanned in place, so the character data passed to the content handler refers directly
+ * to that buffer instead of to copies of each segment, field, and component.
+ */
 public class ER7Reader extends SAXParser {
     private Logger logger = Logger.getLogger(this.getClass());
     private boolean handleRepetitions = false;
     private boolean handleSubcomponents = false;
     private String segmentDelimiter;
 
-    private static final char[] EMPTY_CHAR_ARRAY = "".toCharArray();
-    private static final String DEFAULT_FIELD_SEPARATOR = "|";
-    private static final String DEFAULT_COMPONENT_SEPARATOR = "^";
-    private static final String DEFAULT_REPETITION_SEPARATOR = "~";
-    private static final String DEFAULT_ESCAPE_CHARACTER = "";
-    private static final String DEFAULT_SUBCOMPONENT_TERMINATOR = "";
+    private static final char DEFAULT_FIELD_SEPARATOR = '|';
+    private static final char DEFAULT_COMPONENT_SEPARATOR = '^';
+    private static final char DEFAULT_REPETITION_SEPARATOR = '~';
+    private static final int DEFAULT_ESCAPE_CHARACTER = -1;
+    private static final int DEFAULT_SUBCOMPONENT_TERMINATOR = -1;
+    private static final int READ_BUFFER_SIZE = 8192;
     public static final String MESSAGE_ROOT_ID = "HL7Message";
 
     public ER7Reader(boolean handleRepetitions, boolean handleSubcomponents, String segmentDelimiter) {
@@ -40,125 +44,140 @@ public class ER7Reader extends SAXParser {
         this.segmentDelimiter = segmentDelimiter;
     }
 
-    private String getMessageFromSource(InputSource source) throws IOException {
-        BufferedReader reader = new BufferedReader(source.getCharacterStream());
-        StringBuilder builder = new StringBuilder();
-
-        int c;
+    private MessageBuffer getMessageFromSource(InputSource source) throws IOException {
+        Reader reader = source.getCharacterStream();
+        MessageBuffer buffer = new MessageBuffer();
+        char[] readBuffer = new char[READ_BUFFER_SIZE];
+        int count;
 
-        while ((c = reader.read()) != -1) {
-            builder.append((char) c);
+        while ((count = reader.read(readBuffer)) != -1) {
+            buffer.write(readBuffer, 0, count);
         }
 
-        return builder.toString().trim();
+        return buffer;
     }
 
     public void parse(InputSource source) throws SAXException, IOException {
-        String message = getMessageFromSource(source);
+        MessageBuffer buffer = getMessageFromSource(source);
+        char[] message = buffer.getBuffer();
+        int start = 0;
+        int end = buffer.size();
+
+        // trim the message the same way String.trim() would, without copying it
+        while (start < end && message[start] <= ' ') {
+            start++;
+        }
+
+        while (end > start && message[end - 1] <= ' ') {
+            end--;
+        }
+
         ContentHandler contentHandler = getContentHandler();
         contentHandler.startDocument();
 
         // first tokenize the segments
-        if ((message == null) || (message.length() < 6)) {
-            throw new SAXException("Unable to parse message. It is NULL or too short. " + message);
+        if (end - start < 6) {
+            throw new SAXException("Unable to parse message. It is NULL or too short. " + new String(message, start, end - start));
         }
 
         // usually |
-        String fieldSeparator = DEFAULT_FIELD_SEPARATOR;
-        String componentSeparator = DEFAULT_COMPONENT_SEPARATOR;
-        String repetitionSeparator = DEFAULT_REPETITION_SEPARATOR;
-        String escapeCharacter = DEFAULT_ESCAPE_CHARACTER;
-        String subcomponentSeparator = DEFAULT_SUBCOMPONENT_TERMINATOR;
+        char fieldSeparator = DEFAULT_FIELD_SEPARATOR;
+        char componentSeparator = DEFAULT_COMPONENT_SEPARATOR;
+        char repetitionSeparator = DEFAULT_REPETITION_SEPARATOR;
+        int escapeCharacter = DEFAULT_ESCAPE_CHARACTER;
+        int subcomponentSeparator = DEFAULT_SUBCOMPONENT_TERMINATOR;
 
         // if we have a header, grab the actual separators from the message
-        String firstSegment = message.substring(0, 3);
+        String firstSegment = new String(message, start, 3);
         if (firstSegment.equalsIgnoreCase("MSH") || firstSegment.equalsIgnoreCase("FHS") || firstSegment.equalsIgnoreCase("BHS")) {
-            fieldSeparator = new String(new char[] { message.charAt(3) });
+            fieldSeparator = message[start + 3];
 
-            int nextDelimiter = message.indexOf(message.charAt(3), 4);
-            if (nextDelimiter == -1) {
-                // If the message is just MSH|^~\&, we still want to extract the encoding characters
-                nextDelimiter = message.length();
-            }
+            int nextDelimiter = indexOf(message, fieldSeparator, start + 4, end) - start;
 
             if (nextDelimiter > 4) {
                 // usually ^
-                componentSeparator = new String(new char[] { message.charAt(4) });
+                componentSeparator = message[start + 4];
             }
 
             if (nextDelimiter > 5) {
                 // usually ~
-                repetitionSeparator = new String(new char[] { message.charAt(5) });
+                repetitionSeparator = message[start + 5];
             }
 
             if (nextDelimiter > 6) {
                 // usually \
-                escapeCharacter = new String(new char[] { message.charAt(6) });
+                escapeCharacter = message[start + 6];
             }
 
             if (nextDelimiter > 7) {
                 // usually &
-                subcomponentSeparator = new String(new char[] { message.charAt(7) });
+                subcomponentSeparator = message[start + 7];
             }
         }
 
         // replace the special case of ^~& with ^~\& (MIRTH-1544)
-        if (message.length() >= 8 && "^~&|".equals(message.substring(4, 8))) {
-            escapeCharacter = "\\";
-            subcomponentSeparator = "&";
-            repetitionSeparator = "~";
-            componentSeparator = "^";
+        if (end - start >= 8 && message[start + 4] == '^' && message[start + 5] == '~' && message[start + 6] == '&' && message[start + 7] == '|') {
+            escapeCharacter = '\\';
+            subcomponentSeparator = '&';
+            repetitionSeparator = '~';
+            componentSeparator = '^';
         }
 
-        // tokenize the segments first
-        String[] segments = StringUtils.split(message, segmentDelimiter);
-        String documentHead = handleSegments("", contentHandler, fieldSeparator, componentSeparator, subcomponentSeparator, repetitionSeparator, escapeCharacter, segments);
+        String documentHead = handleSegments("", contentHandler, fieldSeparator, componentSeparator, subcomponentSeparator, repetitionSeparator, escapeCharacter, message, start, end);
         contentHandler.endElement("", documentHead, "");
         contentHandler.endDocument();
     }
 
-    private String handleSegments(String documentHead, ContentHandler contentHandler, String fieldSeparator, String componentSeparator, String subcomponentSeparator, String repetitionSeparator, String escapeCharacter, String[] segments) throws SAXException {
-        for (int segmentIndex = 0; segmentIndex < segments.length; segmentIndex++) {
-            String segment = segments[segmentIndex];
-            logger.trace("handling segment: " + segment);
-            // loop through each segment and pull out the fields
-            StringTokenizer fieldTokenizer = new StringTokenizer(segment, fieldSeparator, true);
+    private String handleSegments(String documentHead, ContentHandler contentHandler, char fieldSeparator, char componentSeparator, int subcomponentSeparator, char repetitionSeparator, int escapeCharacter, char[] message, int start, int end) throws SAXException {
+        int segmentIndex = 0;
+        int segmentStart = start;
 
-            if (fieldTokenizer.hasMoreTokens()) {
-                // the XML element is named after the first field
-                String segmentId = fieldTokenizer.nextToken().trim();
+        while (segmentStart < end) {
+            // skip over consecutive segment delimiters, so that empty segments are ignored
+            if (isSegmentDelimiter(message[segmentStart])) {
+                segmentStart++;
+                continue;
+            }
 
-                if (segmentIndex == 0) {
-                    documentHead = MESSAGE_ROOT_ID;
-                    contentHandler.startElement("", documentHead, "", null);
-                }
+            int segmentEnd = segmentStart + 1;
+            while (segmentEnd < end && !isSegmentDelimiter(message[segmentEnd])) {
+                segmentEnd++;
+            }
 
-                contentHandler.startElement("", segmentId, "", null);
-                handleFieldOrRepetitions(contentHandler, fieldSeparator, componentSeparator, subcomponentSeparator, repetitionSeparator, escapeCharacter, segmentId, fieldTokenizer);
-                contentHandler.endElement("", segmentId, "");
-            } else {
-                throw new SAXException("Could not find fields in segment: " + segment);
+            if (logger.isTraceEnabled()) {
+                logger.trace("handling segment: " + new String(message, segmentStart, segmentEnd - segmentStart));
             }
+
+            // the XML element is named after the first field
+            int segmentIdEnd = message[segmentStart] == fieldSeparator ? segmentStart + 1 : indexOf(message, fieldSeparator, segmentStart, segmentEnd);
+            String segmentId = new String(message, segmentStart, segmentIdEnd - segmentStart).trim();
+
+            if (segmentIndex == 0) {
+                documentHead = MESSAGE_ROOT_ID;
+                contentHandler.startElement("", documentHead, "", null);
+            }
+
+            contentHandler.startElement("", segmentId, "", null);
+            handleFieldOrRepetitions(contentHandler, fieldSeparator, componentSeparator, subcomponentSeparator, repetitionSeparator, escapeCharacter, segmentId, message, segmentIdEnd, segmentEnd);
+            contentHandler.endElement("", segmentId, "");
+
+            segmentIndex++;
+            segmentStart = segmentEnd;
         }
 
         return documentHead;
     }
 
-    private void handleFieldOrRepetitions(ContentHandler contentHandler, String fieldSeparator, String componentSeparator, String subcomponentSeparator, String repetitionSeparator, String escapeCharacter, String segmentId, StringTokenizer fieldTokenizer) throws SAXException {
+    private void handleFieldOrRepetitions(ContentHandler contentHandler, char fieldSeparator, char componentSeparator, int subcomponentSeparator, char repetitionSeparator, int escapeCharacter, String segmentId, char[] message, int start, int end) throws SAXException {
+        // batch support
+        boolean enteredHeader = segmentId.equals("MSH") || segmentId.equals("FHS") || segmentId.equals("BHS");
         int fieldId = 0;
         boolean atLastField = false;
+        int index = start;
 
-        while (fieldTokenizer.hasMoreTokens()) {
-            boolean enteredHeader = false;
-
-            /*
-             * Go through each element and add as new child under the segment
-             * element
-             */
-            String field = fieldTokenizer.nextToken();
-
+        while (index < end) {
             // the naming is SEG.<field#>
-            if (field.equals(fieldSeparator)) {
+            if (message[index] == fieldSeparator) {
                 if (atLastField) {
                     contentHandler.startElement("", segmentId + "." + fieldId, "", null);
                     contentHandler.endElement("", segmentId + "." + fieldId, "");
@@ -166,29 +185,34 @@ public class ER7Reader extends SAXParser {
 
                 fieldId++;
                 atLastField = true;
+                index++;
             } else {
-                logger.trace("handling field or repetition: " + field);
-                atLastField = false;
-
-                // batch support
-                if (segmentId.equals("MSH") || segmentId.equals("FHS") || segmentId.equals("BHS")) {
-                    enteredHeader = true;
+                /*
+                 * Go through each element and add as new child under the segment
+                 * element
+                 */
+                int fieldEnd = indexOf(message, fieldSeparator, index, end);
+
+                if (logger.isTraceEnabled()) {
+                    logger.trace("handling field or repetition: " + new String(message, index, fieldEnd - index));
                 }
 
+                atLastField = false;
+
                 if (enteredHeader && (fieldId == 1)) {
                     contentHandler.startElement("", segmentId + "." + fieldId, "", null);
-                    contentHandler.characters(fieldSeparator.toCharArray(), 0, 1);
+                    contentHandler.characters(new char[] { fieldSeparator }, 0, 1);
                     contentHandler.endElement("", segmentId + "." + (fieldId), null);
                     fieldId++;
                     contentHandler.startElement("", segmentId + "." + fieldId, "", null);
 
                     char[] specialCharacters;
-                    if (!subcomponentSeparator.isEmpty()) {
-                        specialCharacters = new char[] { componentSeparator.charAt(0), repetitionSeparator.charAt(0), escapeCharacter.charAt(0), subcomponentSeparator.charAt(0) };
-                    } else if (!escapeCharacter.isEmpty()) {
-                        specialCharacters = new char[] { componentSeparator.charAt(0), repetitionSeparator.charAt(0), escapeCharacter.charAt(0), };
+                    if (subcomponentSeparator != -1) {
+                        specialCharacters = new char[] { componentSeparator, repetitionSeparator, (char) escapeCharacter, (char) subcomponentSeparator };
+                    } else if (escapeCharacter != -1) {
+                        specialCharacters = new char[] { componentSeparator, repetitionSeparator, (char) escapeCharacter };
                     } else {
-                        specialCharacters = new char[] { componentSeparator.charAt(0), repetitionSeparator.charAt(0), };
+                        specialCharacters = new char[] { componentSeparator, repetitionSeparator };
                     }
 
                     contentHandler.characters(specialCharacters, 0, specialCharacters.length);
@@ -196,12 +220,16 @@ public class ER7Reader extends SAXParser {
                 } else if (enteredHeader && (fieldId == 2)) {
                     // do nothing
                 } else {
+                    String fieldName = segmentId + "." + fieldId;
+
                     if (handleRepetitions) {
-                        handleFieldRepetitions(contentHandler, componentSeparator, repetitionSeparator, subcomponentSeparator, segmentId, fieldId, field);
+                        handleFieldRepetitions(contentHandler, componentSeparator, repetitionSeparator, subcomponentSeparator, fieldName, message, index, fieldEnd);
                     } else {
-                        handleField(contentHandler, componentSeparator, subcomponentSeparator, segmentId, fieldId, field);
+                        handleField(contentHandler, componentSeparator, subcomponentSeparator, fieldName, message, index, fieldEnd);
                     }
                 }
+
+                index = fieldEnd;
             }
         }
 
@@ -211,125 +239,172 @@ public class ER7Reader extends SAXParser {
         }
     }
 
-    private void handleFieldRepetitions(ContentHandler contentHandler, String componentSeparator, String repetitionSeparator, String subcomponentSeparator, String segmentId, int fieldId, String field) throws SAXException {
-        StringTokenizer fieldRepetitionTokenizer = new StringTokenizer(field, repetitionSeparator, true);
+    private void handleFieldRepetitions(ContentHandler contentHandler, char componentSeparator, char repetitionSeparator, int subcomponentSeparator, String fieldName, char[] message, int start, int end) throws SAXException {
         boolean atLastRepetition = true;
+        int index = start;
 
-        while (fieldRepetitionTokenizer.hasMoreTokens()) {
-            field = fieldRepetitionTokenizer.nextToken();
-
-            if (field.equals(repetitionSeparator)) {
+        while (index < end) {
+            if (message[index] == repetitionSeparator) {
                 // check for ~~
                 if (atLastRepetition) {
-                    contentHandler.startElement("", segmentId + "." + fieldId, "", null);
-                    contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-                    contentHandler.endElement("", segmentId + "." + fieldId, "");
+                    handleEmptyElement(contentHandler, fieldName, message, index);
                 }
 
                 atLastRepetition = true;
+                index++;
             } else {
-                logger.trace("handling repetition: " + field);
+                int repetitionEnd = indexOf(message, repetitionSeparator, index, end);
+
+                if (logger.isTraceEnabled()) {
+                    logger.trace("handling repetition: " + new String(message, index, repetitionEnd - index));
+                }
+
                 atLastRepetition = false;
-                handleField(contentHandler, componentSeparator, subcomponentSeparator, segmentId, fieldId, field);
+                handleField(contentHandler, componentSeparator, subcomponentSeparator, fieldName, message, index, repetitionEnd);
+                index = repetitionEnd;
             }
         }
 
         if (atLastRepetition) {
-            contentHandler.startElement("", segmentId + "." + fieldId, "", null);
-            contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-            contentHandler.endElement("", segmentId + "." + fieldId, "");
+            handleEmptyElement(contentHandler, fieldName, message, end);
         }
     }
 
-    private void handleField(ContentHandler contentHandler, String componentSeparator, String subcomponentSeparator, String segmentId, int fieldId, String field) throws SAXException {
-        if ((field.indexOf(componentSeparator) > -1) || (handleSubcomponents && (field.indexOf(subcomponentSeparator) > -1))) {
-            contentHandler.startElement("", segmentId + "." + fieldId, "", null);
-            StringTokenizer componentTokenizer = new StringTokenizer(field, componentSeparator, true);
-            handleComponents(contentHandler, componentSeparator, subcomponentSeparator, segmentId, fieldId, 1, componentTokenizer);
-            contentHandler.endElement("", segmentId + "." + fieldId, null);
+    private void handleField(ContentHandler contentHandler, char componentSeparator, int subcomponentSeparator, String fieldName, char[] message, int start, int end) throws SAXException {
+        if ((indexOf(message, componentSeparator, start, end) < end) || (handleSubcomponents && subcomponentSeparator != -1 && (indexOf(message, (char) subcomponentSeparator, start, end) < end))) {
+            contentHandler.startElement("", fieldName, "", null);
+            handleComponents(contentHandler, componentSeparator, subcomponentSeparator, fieldName, 1, message, start, end);
+            contentHandler.endElement("", fieldName, null);
         } else {
-            logger.trace("handling field: " + field);
-            contentHandler.startElement("", segmentId + "." + fieldId, "", null);
-            contentHandler.startElement("", segmentId + "." + fieldId + ".1", "", null);
-            contentHandler.characters(field.toCharArray(), 0, field.length());
-            contentHandler.endElement("", segmentId + "." + fieldId + ".1", null);
-            contentHandler.endElement("", segmentId + "." + fieldId, null);
+            if (logger.isTraceEnabled()) {
+                logger.trace("handling field: " + new String(message, start, end - start));
+            }
+
+            contentHandler.startElement("", fieldName, "", null);
+            contentHandler.startElement("", fieldName + ".1", "", null);
+            contentHandler.characters(message, start, end - start);
+            contentHandler.endElement("", fieldName + ".1", null);
+            contentHandler.endElement("", fieldName, null);
         }
     }
 
-    private void handleComponents(ContentHandler contentHandler, String componentSeparator, String subcomponentSeparator, String segmentId, int fieldId, int componentId, StringTokenizer componentTokenizer) throws SAXException {
+    private void handleComponents(ContentHandler contentHandler, char componentSeparator, int subcomponentSeparator, String fieldName, int componentId, char[] message, int start, int end) throws SAXException {
         boolean atLastComponent = true;
+        int index = start;
 
-        while (componentTokenizer.hasMoreTokens()) {
-            String component = componentTokenizer.nextToken();
-
-            if (component.equals(componentSeparator)) {
+        while (index < end) {
+            if (message[index] == componentSeparator) {
                 if (atLastComponent) {
-                    contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId, "", null);
-                    contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-                    contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId, "");
+                    handleEmptyElement(contentHandler, fieldName + "." + componentId, message, index);
                 }
 
                 componentId++;
                 atLastComponent = true;
+                index++;
             } else {
+                int componentEnd = indexOf(message, componentSeparator, index, end);
                 atLastComponent = false;
-                handleComponent(contentHandler, subcomponentSeparator, segmentId, fieldId, componentId, component);
+                handleComponent(contentHandler, subcomponentSeparator, fieldName + "." + componentId, message, index, componentEnd);
+                index = componentEnd;
             }
         }
 
         if (atLastComponent) {
-            contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId, "", null);
-            contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-            contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId, "");
+            handleEmptyElement(contentHandler, fieldName + "." + componentId, message, end);
         }
     }
 
-    private void handleComponent(ContentHandler contentHandler, String subcomponentSeparator, String segmentId, int fieldId, int componentId, String component) throws SAXException {
-        if (handleSubcomponents && !subcomponentSeparator.isEmpty() && (component.indexOf(subcomponentSeparator) > -1)) {
-            contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId, "", null);
+    private void handleComponent(ContentHandler contentHandler, int subcomponentSeparator, String componentName, char[] message, int start, int end) throws SAXException {
+        if (handleSubcomponents && subcomponentSeparator != -1 && (indexOf(message, (char) subcomponentSeparator, start, end) < end)) {
+            contentHandler.startElement("", componentName, "", null);
             // check if we have subcomponents, if so add them
-            StringTokenizer subcomponentTokenizer = new StringTokenizer(component, subcomponentSeparator, true);
-            handleSubcomponents(contentHandler, subcomponentSeparator, segmentId, fieldId, componentId, 1, subcomponentTokenizer);
-            contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId, null);
+            handleSubcomponents(contentHandler, (char) subcomponentSeparator, componentName, 1, message, start, end);
+            contentHandler.endElement("", componentName, null);
         } else {
-            logger.trace("handling component: " + component);
+            if (logger.isTraceEnabled()) {
+                logger.trace("handling component: " + new String(message, start, end - start));
+            }
+
             // the naming is SEG.<field#>.<component#>
-            contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId, "", null);
-            contentHandler.characters(component.toCharArray(), 0, component.length());
-            contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId, "");
+            contentHandler.startElement("", componentName, "", null);
+            contentHandler.characters(message, start, end - start);
+            contentHandler.endElement("", componentName, "");
         }
     }
 
-    private void handleSubcomponents(ContentHandler contentHandler, String subcomponentSeparator, String segmentId, int fieldId, int componentId, int subcomponentId, StringTokenizer subcomponentTokenizer) throws SAXException {
+    private void handleSubcomponents(ContentHandler contentHandler, char subcomponentSeparator, String componentName, int subcomponentId, char[] message, int start, int end) throws SAXException {
         boolean atLastSubcomponent = true;
+        int index = start;
 
-        while (subcomponentTokenizer.hasMoreTokens()) {
-            String subcomponent = subcomponentTokenizer.nextToken();
-
-            if (subcomponent.equals(subcomponentSeparator)) {
+        while (index < end) {
+            if (message[index] == subcomponentSeparator) {
                 if (atLastSubcomponent) {
-                    contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "", null);
-                    contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-                    contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "");
+                    handleEmptyElement(contentHandler, componentName + "." + subcomponentId, message, index);
                 }
 
                 subcomponentId++;
                 atLastSubcomponent = true;
+                index++;
             } else {
-                logger.trace("handling subcomponent: " + subcomponentId);
+                int subcomponentEnd = indexOf(message, subcomponentSeparator, index, end);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("handling subcomponent: " + subcomponentId);
+                }
+
+
                 atLastSubcomponent = false;
                 // the naming is SEG.<field#>.<component#>.<subcomponent#>
-                contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "", null);
-                contentHandler.characters(subcomponent.toCharArray(), 0, subcomponent.length());
-                contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "");
+                contentHandler.startElement("", componentName + "." + subcomponentId, "", null);
+                contentHandler.characters(message, index, subcomponentEnd - index);
+                contentHandler.endElement("", componentName + "." + subcomponentId, "");
+                index = subcomponentEnd;
             }
         }
 
         if (atLastSubcomponent) {
-            contentHandler.startElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "", null);
-            contentHandler.characters(EMPTY_CHAR_ARRAY, 0, 0);
-            contentHandler.endElement("", segmentId + "." + fieldId + "." + componentId + "." + subcomponentId, "");
+            handleEmptyElement(contentHandler, componentName + "." + subcomponentId, message, end);
+        }
+    }
+
+    private void handleEmptyElement(ContentHandler contentHandler, String name, char[] message, int index) throws SAXException {
+        contentHandler.startElement("", name, "", null);
+        contentHandler.characters(message, index, 0);
+        contentHandler.endElement("", name, "");
+    }
+
+    private boolean isSegmentDelimiter(char c) {
+        // matches the behavior of StringUtils.split, which splits on whitespace if no delimiter is given
+        if (segmentDelimiter == null) {
+            return Character.isWhitespace(c);
+        }
+
+        return segmentDelimiter.indexOf(c) != -1;
+    }
+
+    /*
+     * Returns the index of the first occurrence of the character in the given range, or the end of
+     * the range if it isn't found.
+     */
+    private int indexOf(char[] message, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (message[i] == c) {
+                return i;
+            }
+        }
+
+        return end;
+    }
+
+    /*
+     * Exposes the underlying buffer so the message can be parsed without copying it again.
+     */
+    private static class MessageBuffer extends CharArrayWriter {
+        public MessageBuffer() {
+            super(READ_BUFFER_SIZE);
+        }
+
+        public char[] getBuffer() {
+            return buf;
         }
     }
 }
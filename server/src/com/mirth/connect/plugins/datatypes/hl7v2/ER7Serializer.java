@@ -14,7 +14,6 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -52,10 +51,6 @@ public class ER7Serializer implements IXMLSerializer {
     private HL7v2SerializationProperties serializationProperties;
     private HL7v2DeserializationProperties deserializationProperties;
 
-    private static Pattern ampersandPattern = Pattern.compile("&amp;");
-    private static Pattern prettyPattern1 = Pattern.compile("\\s*<([^/][^>]*)>");
-    private static Pattern prettyPattern2 = Pattern.compile("<(/[^>]*)>\\s*");
-
     public ER7Serializer(SerializerProperties properties) {
         serializationProperties = (HL7v2SerializationProperties) properties.getSerializationProperties();
         deserializationProperties = (HL7v2DeserializationProperties) properties.getDeserializationProperties();
@@ -252,7 +247,7 @@ public class ER7Serializer implements IXMLSerializer {
                  * Our delimiters usually look like this:
                  * <MSH.2>^~\&amp;</MSH.2> We need to decode XML entities
                  */
-                String separators = ampersandPattern.matcher(getNodeValue(source, "<MSH.2>", "</MSH.2>")).replaceAll("&");
+                String separators = StringUtils.replace(getNodeValue(source, "<MSH.2>", "</MSH.2>"), "&amp;", "&");
 
                 if (separators.length() == 4) {
                     // usually ^
@@ -271,10 +266,14 @@ public class ER7Serializer implements IXMLSerializer {
                 reader.setErrorHandler(handler);
 
                 /*
-                 * Parse, but first replace all spaces between brackets. This
-                 * fixes pretty-printed XML we might receive.
+                 * The handler ignores the whitespace between elements in
+                 * pretty-printed XML, so the source can be parsed as is. Only
+                 * leading whitespace is skipped, since it isn't allowed before
+                 * the XML declaration.
                  */
-                reader.parse(new InputSource(new StringReader(prettyPattern2.matcher(prettyPattern1.matcher(source).replaceAll("<$1>")).replaceAll("<$1>"))));
+                StringReader stringReader = new StringReader(source);
+                stringReader.skip(getLeadingWhitespaceLength(source));
+                reader.parse(new InputSource(stringReader));
                 return handler.getOutput().toString();
             }
         } catch (Exception e) {
@@ -282,6 +281,16 @@ public class ER7Serializer implements IXMLSerializer {
         }
     }
 
+    private int getLeadingWhitespaceLength(String source) {
+        int index = 0;
+
+        while (index < source.length() && Character.isWhitespace(source.charAt(index))) {
+            index++;
+        }
+
+        return index;
+    }
+
     private String getNodeValue(String source, String startTag, String endTag) {
         int startIndex = -1;
 
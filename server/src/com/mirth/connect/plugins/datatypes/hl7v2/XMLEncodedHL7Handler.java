@@ -28,6 +28,7 @@ public class XMLEncodedHL7Handler extends DefaultHandler {
     private String subcomponentSeparator;
     private boolean encodeEntities = false;
     private boolean inElement = false;
+    private int textStart = -1;
     private int rootLevel = -1;
 
     private int previousDelimeterCount = -1;
@@ -57,7 +58,24 @@ public class XMLEncodedHL7Handler extends DefaultHandler {
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
         logger.trace("starting element: " + localName);
+
+        /*
+         * Pretty-printed XML has whitespace between an element and its first
+         * child. Remove any whitespace written since the last start tag so it
+         * doesn't end up in the output.
+         */
+        if (inElement && textStart != -1) {
+            int length = output.length();
+
+            while (length > textStart && isWhitespace(output.charAt(length - 1))) {
+                length--;
+            }
+
+            output.setLength(length);
+        }
+
         inElement = true;
+        textStart = -1;
 
         String[] localNameArray = StringUtils.split(localName, ID_DELIMETER);
 
@@ -258,15 +276,20 @@ public class XMLEncodedHL7Handler extends DefaultHandler {
 
     @Override
     public void characters(char ch[], int start, int length) throws SAXException {
-        String str = new String(ch, start, length);
-
         /*
-         * Write the substring to the output buffer, unless it is the field
+         * Write the characters to the output buffer, unless they are the field
          * separators (to avoid MSH.1. being written out).
          */
-        if (inElement && !str.equals(fieldSeparator)) {
-            logger.trace("writing output: " + str);
-            output.append(str);
+        if (inElement && !isFieldSeparator(ch, start, length)) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("writing output: " + new String(ch, start, length));
+            }
+
+            if (textStart == -1) {
+                textStart = output.length();
+            }
+
+            output.append(ch, start, length);
         }
     }
 
@@ -276,6 +299,27 @@ public class XMLEncodedHL7Handler extends DefaultHandler {
         logger.trace("found ignorable whitespace: length=" + length);
     }
 
+    private boolean isFieldSeparator(char[] ch, int start, int length) {
+        if (length != fieldSeparator.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (ch[start + i] != fieldSeparator.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Matches the whitespace characters of the \s regular expression class.
+     */
+    private boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     /**
      * This awesome piece of code returns true if the string is MSH|[B|F]HS
      * 
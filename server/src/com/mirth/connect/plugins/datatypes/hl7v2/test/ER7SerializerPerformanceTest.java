@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.plugins.datatypes.hl7v2.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mirth.connect.plugins.datatypes.hl7v2.ER7Serializer;
+import com.mirth.connect.plugins.datatypes.hl7v2.HL7v2DataTypeProperties;
+
+/**
+ * Measures the throughput and allocation of the non-strict ER7 serializer, for the test messages in
+ * the tests folder and for an ORU message with a large embedded document in OBX-5.
+ */
+public class ER7SerializerPerformanceTest {
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 100;
+    private static final int EMBEDDED_DOCUMENT_SIZE = 4 * 1024 * 1024;
+
+    private Logger logger = Logger.getLogger(this.getClass());
+    private ER7Serializer serializer;
+    private List<String> corpus;
+
+    @Before
+    public void setUp() throws Exception {
+        serializer = new ER7Serializer(new HL7v2DataTypeProperties().getSerializerProperties());
+        corpus = new ArrayList<String>();
+
+        for (String fileName : new String[] { "test-hl7-input.txt", "test-hl7-batch-input.txt",
+                "test-hl7-repetitions-input.txt", "test-hl7-subcomponents-input.txt",
+                "test-hl7-whitespace-input.txt" }) {
+            corpus.add(FileUtils.readFileToString(new File("tests/" + fileName)));
+        }
+    }
+
+    @Test
+    public void testToXmlAndFromXml() throws Exception {
+        run("test corpus", corpus, ITERATIONS);
+    }
+
+    @Test
+    public void testEmbeddedDocument() throws Exception {
+        List<String> messages = new ArrayList<String>();
+        messages.add(createEmbeddedDocumentMessage());
+        run("embedded document", messages, ITERATIONS / 10);
+    }
+
+    private void run(String name, List<String> messages, int iterations) throws Exception {
+        List<String> xmlMessages = new ArrayList<String>();
+
+        for (String message : messages) {
+            String xml = serializer.toXML(message);
+            // Make sure the message survives the round trip before measuring it
+            Assert.assertEquals(serializer.toXML(serializer.fromXML(xml)), xml);
+            xmlMessages.add(xml);
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            for (int j = 0; j < messages.size(); j++) {
+                serializer.toXML(messages.get(j));
+                serializer.fromXML(xmlMessages.get(j));
+            }
+        }
+
+        long toXmlTime = 0;
+        long toXmlBytes = 0;
+        long fromXmlTime = 0;
+        long fromXmlBytes = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            for (int j = 0; j < messages.size(); j++) {
+                long bytes = getAllocatedBytes();
+                long time = System.nanoTime();
+                serializer.toXML(messages.get(j));
+                toXmlTime += System.nanoTime() - time;
+                toXmlBytes += getAllocatedBytes() - bytes;
+
+                bytes = getAllocatedBytes();
+                time = System.nanoTime();
+                serializer.fromXML(xmlMessages.get(j));
+                fromXmlTime += System.nanoTime() - time;
+                fromXmlBytes += getAllocatedBytes() - bytes;
+            }
+        }
+
+        long count = (long) iterations * messages.size();
+        logger.info(String.format("%s toXML: %.3f ms/message, %d bytes allocated/message", name, toXmlTime / 1000000d / count, toXmlBytes / count));
+        logger.info(String.format("%s fromXML: %.3f ms/message, %d bytes allocated/message", name, fromXmlTime / 1000000d / count, fromXmlBytes / count));
+    }
+
+    private String createEmbeddedDocumentMessage() {
+        StringBuilder builder = new StringBuilder(EMBEDDED_DOCUMENT_SIZE + 1024);
+        builder.append("MSH|^~\\&|LAB|FACILITY|EMR|FACILITY|20130101120000||ORU^R01|123456|P|2.3\r");
+        builder.append("PID|1||12345^^^MRN||DOE^JOHN^A||19700101|M\r");
+        builder.append("OBR|1|ORD1|FIL1|PDF^Report|||20130101120000\r");
+        builder.append("OBX|1|ED|PDF^Report||^AP^PDF^Base64^");
+
+        // Base64 alphabet, so the document contains no HL7 delimiters
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < EMBEDDED_DOCUMENT_SIZE; i++) {
+            builder.append(alphabet.charAt(i % alphabet.length()));
+        }
+
+        builder.append("||||||F\r");
+        return builder.toString();
+    }
+
+    /*
+     * Returns the number of bytes allocated by the current thread, or 0 if the JVM doesn't support
+     * measuring it.
+     */
+    private long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+}
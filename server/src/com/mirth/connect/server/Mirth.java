@@ -63,6 +63,7 @@ import com.mirth.connect.server.controllers.ScriptController;
 import com.mirth.connect.server.controllers.UserController;
 import com.mirth.connect.server.logging.JuliToLog4JService;
 import com.mirth.connect.server.logging.LogOutputStream;
+import com.mirth.connect.server.messageindex.MessageContentIndexer;
 import com.mirth.connect.server.servlets.AlertServlet;
 import com.mirth.connect.server.servlets.ChannelServlet;
 import com.mirth.connect.server.servlets.ChannelStatisticsServlet;
@@ -272,6 +273,8 @@ public class Mirth extends Thread {
             logger.error(e);
         }
 
+        MessageContentIndexer.getInstance().start();
+
         configurationController.setStatus(ConfigurationController.STATUS_OK);
         printSplashScreen();
     }
@@ -283,6 +286,7 @@ public class Mirth extends Thread {
     public void shutdown() {
         logger.info("shutting down mirth due to normal request");
 
+        MessageContentIndexer.getInstance().stop();
         stopEngine();
 
         try {
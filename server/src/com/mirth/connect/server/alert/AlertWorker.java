@@ -35,6 +35,7 @@ import com.mirth.connect.server.controllers.ControllerFactory;
 import com.mirth.connect.server.controllers.EngineController;
 import com.mirth.connect.server.controllers.EventController;
 import com.mirth.connect.server.event.EventListener;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
 import com.mirth.connect.server.util.ServerSMTPConnectionFactory;
 import com.mirth.connect.server.util.TemplateValueReplacer;
 
@@ -48,7 +49,12 @@ public abstract class AlertWorker extends EventListener {
     private EngineController engineController = ControllerFactory.getFactory().createEngineController();
 
     public AlertWorker() {
-        super();
+        /*
+         * Alert actions dispatch messages to channels, which can raise more events for this worker.
+         * Waiting for room would stall those channels behind a full queue, so the oldest pending
+         * events are dropped instead.
+         */
+        super(BackpressurePolicy.DROP_OLDEST);
     }
 
     public void enableAlert(AlertModel alertModel) {
@@ -9,7 +9,6 @@
 
 package com.mirth.connect.server.attachments;
 
-import org.apache.commons.codec.binary.StringUtils;
 import org.dcm4che2.data.DicomElement;
 import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.Tag;
@@ -34,12 +33,11 @@ public class DICOMAttachmentHandler extends MirthAttachmentHandler {
 
     @Override
     public void initialize(String message, Channel channel) throws AttachmentException {
-        // Taking a string is much more inefficient than taking in a byte array. 
         // If the user manually sends a message, it will arrive as a base64 encoded string, so we must support Strings for DICOM still.
-        // However, DICOM messages that use this initializer should be relatively small in size.
+        // The string is decoded as it is read, so it is never copied into an intermediate byte array.
         index = 0;
         try {
-            dicomObject = DICOMConverter.byteArrayToDicomObject(StringUtils.getBytesUsAscii(message), true);
+            dicomObject = DICOMConverter.base64StringToDicomObject(message);
             dicomElement = dicomObject.remove(Tag.PixelData);
         } catch (Throwable t) {
             throw new AttachmentException(t);
@@ -81,10 +79,10 @@ public class DICOMAttachmentHandler extends MirthAttachmentHandler {
     @Override
     public String shutdown() throws AttachmentException {
         try {
-            byte[] encodedMessage = Base64Util.encodeBase64(DICOMConverter.dicomObjectToByteArray(dicomObject));
+            String encodedMessage = Base64Util.encodeBase64String(DICOMConverter.dicomObjectToByteArray(dicomObject));
             dicomElement = null;
             dicomObject = null;
-            return StringUtils.newStringUsAscii(encodedMessage);
+            return encodedMessage;
         } catch (Throwable t) {
             throw new AttachmentException(t);
         }
@@ -152,6 +152,11 @@ public abstract class MirthAttachmentHandler implements AttachmentHandler {
             dicomObject = null;
             attachmentMap = null;
 
+            // If there is nothing to replace in binary content, decode straight from the template without copying it first
+            if (binary && replacementObjects.isEmpty()) {
+                return Base64Util.decodeBase64(raw);
+            }
+
             // Initialize the stream's buffer size. The buffer size will always be slightly large than needed,
             // because the template keys are never removed from the buffer size.
             // It is not worth doing any extra calculations for the amount of memory saved. 
@@ -9,6 +9,7 @@
 
 package com.mirth.connect.server.attachments;
 
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -70,30 +71,45 @@ public class RegexAttachmentHandler extends MirthAttachmentHandler {
                 while (matcher.find()) {
 
                     String uuid = ServerUUIDGenerator.getUUID();
-                    String attachmentString = message.substring(matcher.start(group), matcher.end(group));
-
-                    for (Entry<String, String> replacementEntry : replacements.entrySet()) {
-                        String replaceKey = replacementEntry.getKey();
-                        String replaceValue = replacementEntry.getValue();
-
-                        if (replaceKey != null && replaceValue != null) {
-                            attachmentString = attachmentString.replace(replaceKey, replaceValue);
-                        }
-                    }
+                    int start = matcher.start(group);
+                    int end = matcher.end(group);
 
                     // Don't store blank attachments.
-                    if (StringUtils.isBlank(attachmentString)) {
+                    if (StringUtils.isBlank(CharBuffer.wrap(message, start, end))) {
                         return null;
                     }
 
-                    Attachment attachment = new Attachment(uuid, StringUtil.getBytesUncheckedChunked(attachmentString, Constants.ATTACHMENT_CHARSET), mimeType);
+                    byte[] content;
+
+                    if (replacements.isEmpty()) {
+                        // Encode the attachment straight from the message so its text is never copied
+                        content = StringUtil.getBytesUncheckedChunked(message, start, end, Constants.ATTACHMENT_CHARSET);
+                    } else {
+                        String attachmentString = message.substring(start, end);
+
+                        for (Entry<String, String> replacementEntry : replacements.entrySet()) {
+                            String replaceKey = replacementEntry.getKey();
+                            String replaceValue = replacementEntry.getValue();
+
+                            if (replaceKey != null && replaceValue != null) {
+                                attachmentString = attachmentString.replace(replaceKey, replaceValue);
+                            }
+                        }
+
+                        // Don't store blank attachments.
+                        if (StringUtils.isBlank(attachmentString)) {
+                            return null;
+                        }
 
-                    attachmentString = null;
+                        content = StringUtil.getBytesUncheckedChunked(attachmentString, Constants.ATTACHMENT_CHARSET);
+                    }
 
-                    newMessage.append(message.substring(offset, matcher.start(group)));
+                    Attachment attachment = new Attachment(uuid, content, mimeType);
+
+                    newMessage.append(message, offset, start);
                     newMessage.append(attachment.getAttachmentId());
 
-                    offset = matcher.end(group);
+                    offset = end;
 
                     return attachment;
                 }
@@ -108,12 +124,20 @@ public class RegexAttachmentHandler extends MirthAttachmentHandler {
     @Override
     public String shutdown() throws AttachmentException {
         try {
-            newMessage.append(message.substring(offset));
+            String finalMessage;
+
+            if (offset == 0) {
+                // Nothing was extracted, so the message can be returned without copying it
+                finalMessage = message;
+            } else {
+                newMessage.append(message, offset, message.length());
+                finalMessage = newMessage.toString();
+            }
+
             // We are finished with the matcher and message now so we can free their memory
             matcher = null;
             message = null;
 
-            String finalMessage = newMessage.toString();
             // We are finished with the new message buffer now so we can free its memory
             newMessage = null;
 
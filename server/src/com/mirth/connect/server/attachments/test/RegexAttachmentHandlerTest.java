@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.attachments.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.commons.codec.binary.StringUtils;
+import org.junit.Test;
+
+import com.mirth.connect.donkey.model.message.attachment.Attachment;
+import com.mirth.connect.donkey.model.message.attachment.AttachmentHandlerProperties;
+import com.mirth.connect.server.attachments.RegexAttachmentHandler;
+
+public class RegexAttachmentHandlerTest {
+
+    @Test
+    public void testExtractAttachments() throws Exception {
+        RegexAttachmentHandler handler = createHandler("OBX\\|\\d+\\|ED\\|\\|\\|([^|\\r]+)");
+        handler.initialize("MSH|^~\\&|\rOBX|1|ED|||SGVsbG8=\rOBX|2|ED|||V29ybGQ=|F\r", null);
+
+        Attachment first = handler.nextAttachment();
+        assertEquals("SGVsbG8=", StringUtils.newStringUtf8(first.getContent()));
+        assertEquals("text/plain", first.getType());
+
+        Attachment second = handler.nextAttachment();
+        assertEquals("V29ybGQ=", StringUtils.newStringUtf8(second.getContent()));
+
+        assertNull(handler.nextAttachment());
+        assertEquals("MSH|^~\\&|\rOBX|1|ED|||" + first.getAttachmentId() + "\rOBX|2|ED|||" + second.getAttachmentId() + "|F\r", handler.shutdown());
+    }
+
+    @Test
+    public void testReplacements() throws Exception {
+        RegexAttachmentHandler handler = new RegexAttachmentHandler();
+        AttachmentHandlerProperties properties = new AttachmentHandlerProperties(RegexAttachmentHandler.class.getName(), "Regex");
+        properties.getProperties().put("regex.pattern", "<data>(.*?)</data>");
+        properties.getProperties().put("regex.mimetype", "text/plain");
+        properties.getProperties().put("regex.replaceKey0", "&amp;");
+        properties.getProperties().put("regex.replaceValue0", "&");
+        handler.setProperties(properties);
+
+        handler.initialize("<root><data>a&amp;b</data></root>", null);
+
+        Attachment attachment = handler.nextAttachment();
+        assertEquals("a&b", StringUtils.newStringUtf8(attachment.getContent()));
+        assertNull(handler.nextAttachment());
+        assertEquals("<root><data>" + attachment.getAttachmentId() + "</data></root>", handler.shutdown());
+    }
+
+    @Test
+    public void testNoAttachments() throws Exception {
+        RegexAttachmentHandler handler = createHandler("<data>(.*?)</data>");
+        String message = "<root><other>value</other></root>";
+        handler.initialize(message, null);
+
+        assertNull(handler.nextAttachment());
+        assertSame(message, handler.shutdown());
+    }
+
+    private RegexAttachmentHandler createHandler(String regex) {
+        AttachmentHandlerProperties properties = new AttachmentHandlerProperties(RegexAttachmentHandler.class.getName(), "Regex");
+        properties.getProperties().put("regex.pattern", regex);
+        properties.getProperties().put("regex.mimetype", "text/plain");
+
+        RegexAttachmentHandler handler = new RegexAttachmentHandler();
+        handler.setProperties(properties);
+        return handler;
+    }
+}
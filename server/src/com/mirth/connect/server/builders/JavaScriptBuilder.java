@@ -11,12 +11,26 @@ package com.mirth.connect.server.builders;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.WithStatement;
 
 import com.mirth.connect.model.CodeTemplate;
 import com.mirth.connect.model.CodeTemplate.CodeSnippetType;
@@ -35,6 +49,14 @@ import com.mirth.connect.server.controllers.ScriptController;
 public class JavaScriptBuilder {
     private static Logger logger = Logger.getLogger(JavaScriptBuilder.class);
 
+    /*
+     * The variables that hold the serialized message and template, the connector message methods
+     * that return the serialized message, and eval, since it could reference any of them without it
+     * being visible to the parser.
+     */
+    private static final Set<String> MESSAGE_VARIABLES = new HashSet<String>(Arrays.asList(new String[] {
+            "msg", "tmp", "getTransformed", "getTransformedData", "eval", "Function" }));
+
     /*
      * Generates the global JavaScript contained in all new scopes created
      */
@@ -111,28 +133,38 @@ public class JavaScriptBuilder {
     }
 
     public static String generateFilterTransformerScript(Filter filter, Transformer transformer) throws BuilderException {
+        return generateFilterTransformerScript(filter, transformer, true);
+    }
+
+    /**
+     * Generates the filter/transformer script. If the message isn't serialized, msg and tmp are not
+     * set up at all, so this should only be done if the scripts don't reference them.
+     */
+    public static String generateFilterTransformerScript(Filter filter, Transformer transformer, boolean serialized) throws BuilderException {
         logger.debug("generating script");
 
         StringBuilder builder = new StringBuilder();
 
-        DataTypeServerPlugin inboundServerPlugin = ExtensionController.getInstance().getDataTypePlugins().get(transformer.getInboundDataType());
+        if (serialized) {
+            DataTypeServerPlugin inboundServerPlugin = ExtensionController.getInstance().getDataTypePlugins().get(transformer.getInboundDataType());
 
-        switch (inboundServerPlugin.getSerializationType()) {
-            case XML:
-                // Turn the inbound message into an E4X XML object
-                builder.append("msg = new XML(connectorMessage.getTransformedData());\n");
+            switch (inboundServerPlugin.getSerializationType()) {
+                case XML:
+                    // Turn the inbound message into an E4X XML object
+                    builder.append("msg = new XML(connectorMessage.getTransformedData());\n");
 
-                // Set the default namespace if there is one left on the root node, otherwise set it to ''.
-                builder.append("if (msg.namespace('') != undefined) { default xml namespace = msg.namespace(''); } else { default xml namespace = ''; }\n");
-                break;
+                    // Set the default namespace if there is one left on the root node, otherwise set it to ''.
+                    builder.append("if (msg.namespace('') != undefined) { default xml namespace = msg.namespace(''); } else { default xml namespace = ''; }\n");
+                    break;
 
-            case RAW:
-                builder.append("if (connectorMessage.getProcessedRawData() != null) { msg = new String(connectorMessage.getProcessedRawData()); } else { msg = new String(connectorMessage.getRawData()); } \n");
-                break;
+                case RAW:
+                    builder.append("if (connectorMessage.getProcessedRawData() != null) { msg = new String(connectorMessage.getProcessedRawData()); } else { msg = new String(connectorMessage.getRawData()); } \n");
+                    break;
+            }
         }
 
         // Turn the outbound template into an E4X XML object, if there is one
-        if (StringUtils.isNotBlank(transformer.getOutboundTemplate())) {
+        if (serialized && StringUtils.isNotBlank(transformer.getOutboundTemplate())) {
             DataTypeServerPlugin outboundServerPlugin = ExtensionController.getInstance().getDataTypePlugins().get(transformer.getOutboundDataType());
 
             switch (outboundServerPlugin.getSerializationType()) {
@@ -200,6 +232,82 @@ public class JavaScriptBuilder {
         return builder.toString();
     }
 
+    /**
+     * Returns true if any of the filter rules or transformer steps, or any of the code templates
+     * available to them, reference the msg or tmp variables. If none of them do, the message
+     * doesn't need to be serialized before the scripts are executed.
+     */
+    public static boolean isMessageReferenced(Filter filter, Transformer transformer) throws BuilderException {
+        List<String> scripts = new ArrayList<String>();
+
+        for (Rule rule : filter.getRules()) {
+            scripts.add(getStepScript(rule.getType(), rule.getScript()));
+        }
+
+        for (Step step : transformer.getSteps()) {
+            scripts.add(getStepScript(step.getType(), step.getScript()));
+        }
+
+        StringBuilder codeTemplates = new StringBuilder();
+        appendCodeTemplates(codeTemplates, ContextType.MESSAGE_CONTEXT);
+        scripts.add(codeTemplates.toString());
+
+        for (String script : scripts) {
+            if (isMessageReferenced(script)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses the script and looks for any identifier that could refer to the message. Comments and
+     * string literals are ignored. Code that can look up variables by a computed name, such as eval,
+     * Function, with statements and uses of this other than a plain property access, is also
+     * treated as a reference. If the script can't be parsed, it's assumed to reference the message.
+     */
+    public static boolean isMessageReferenced(String script) {
+        final boolean[] referenced = new boolean[] { false };
+
+        try {
+            // Wrap the script in a function the same way it's built, since steps can return
+            AstRoot root = new Parser(new CompilerEnvirons()).parse("function step() {\n" + script + "\n}", null, 1);
+
+            root.visit(new NodeVisitor() {
+                @Override
+                public boolean visit(AstNode node) {
+                    if (node instanceof Name && MESSAGE_VARIABLES.contains(((Name) node).getIdentifier())) {
+                        referenced[0] = true;
+                    } else if (node instanceof WithStatement) {
+                        referenced[0] = true;
+                    } else if (node.getType() == Token.THIS && !(node.getParent() instanceof PropertyGet && ((PropertyGet) node.getParent()).getTarget() == node)) {
+                        // this[...] or an alias of the global scope could read any variable
+                        referenced[0] = true;
+                    }
+
+                    return !referenced[0];
+                }
+            });
+        } catch (RhinoException e) {
+            return true;
+        }
+
+        return referenced[0];
+    }
+
+    private static String getStepScript(String type, String script) throws BuilderException {
+        if (type.equalsIgnoreCase("External Script")) {
+            try {
+                return FileUtils.readFileToString(new File(script));
+            } catch (IOException e) {
+                throw new BuilderException("Could not add script file.", e);
+            }
+        }
+
+        return script;
+    }
+
     /*
      * General functions used by the generation methods to build scripts
      */
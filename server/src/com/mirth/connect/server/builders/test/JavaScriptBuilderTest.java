@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.builders.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.mirth.connect.server.builders.JavaScriptBuilder;
+
+public class JavaScriptBuilderTest {
+
+    @Test
+    public void testMessageReferenced() throws Exception {
+        assertTrue(JavaScriptBuilder.isMessageReferenced("channelMap.put('name', msg['PID']['PID.5']['PID.5.1'].toString());"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("tmp['PID']['PID.3'] = '12345';"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var data = connectorMessage.getTransformedData();"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("eval('m' + 'sg');"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("if (msg == null) {\n    return false;\n}\nreturn true;"));
+    }
+
+    @Test
+    public void testMessageReferencedIndirectly() throws Exception {
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var data = eval('msg');"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var data = Function('return msg')();"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var data = new Function('return m' + 'sg')();"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var data = this['msg'];"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var global = this;\nvar data = global['m' + 'sg'];"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("with (this) {\n    logger.info('test');\n}"));
+        assertTrue(JavaScriptBuilder.isMessageReferenced("with ({}) {\n    logger.info('test');\n}"));
+    }
+
+    @Test
+    public void testMessageNotReferenced() throws Exception {
+        assertFalse(JavaScriptBuilder.isMessageReferenced(""));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("channelMap.put('count', 1);\nreturn true;"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("var message = 'test';\nlogger.info(message.length);"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("var m = { msgCount: 1, tmpValue: 2 };"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("var count = this.count;"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("logger.info('Function(\\'return msg\\')');"));
+    }
+
+    @Test
+    public void testMessageReferencedInComment() throws Exception {
+        assertFalse(JavaScriptBuilder.isMessageReferenced("// msg['PID']['PID.3'] = '12345';\nchannelMap.put('count', 1);"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("/* tmp = msg; */\nreturn true;"));
+    }
+
+    @Test
+    public void testMessageReferencedInStringLiteral() throws Exception {
+        assertFalse(JavaScriptBuilder.isMessageReferenced("logger.info('msg');"));
+        assertFalse(JavaScriptBuilder.isMessageReferenced("channelMap.put(\"tmp\", \"msg['PID']\");"));
+    }
+
+    @Test
+    public void testUnparseableScript() throws Exception {
+        assertTrue(JavaScriptBuilder.isMessageReferenced("var x = ;"));
+    }
+}
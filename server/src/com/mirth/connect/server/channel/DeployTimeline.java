@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.channel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records how long each phase of deploying or undeploying a set of channels took for each channel,
+ * so the slowest channels and phases can be reported afterwards. Phases can be recorded from
+ * multiple threads at once.
+ */
+public class DeployTimeline {
+    private String operation;
+    private int threads;
+    private long startTime;
+    private long endTime;
+    private ConcurrentMap<String, ChannelTimeline> channelTimelines = new ConcurrentHashMap<String, ChannelTimeline>();
+
+    public DeployTimeline(String operation, int threads) {
+        this.operation = operation;
+        this.threads = threads;
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds the time since the given start time to a phase of the given channel.
+     */
+    public void addPhase(String channelId, String channelName, String phase, long phaseStartTime) {
+        ChannelTimeline channelTimeline = channelTimelines.get(channelId);
+
+        if (channelTimeline == null) {
+            channelTimeline = new ChannelTimeline(channelId, channelName);
+            ChannelTimeline existingTimeline = channelTimelines.putIfAbsent(channelId, channelTimeline);
+
+            if (existingTimeline != null) {
+                channelTimeline = existingTimeline;
+            }
+        }
+
+        channelTimeline.addPhase(phase, System.currentTimeMillis() - phaseStartTime);
+    }
+
+    public void finish() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public long getDuration() {
+        return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * Returns a summary of the whole operation: the number of channels, the elapsed time and the
+     * time spent in each phase across all channels.
+     */
+    public String getSummary() {
+        Map<String, Long> phaseTotals = new LinkedHashMap<String, Long>();
+
+        for (ChannelTimeline channelTimeline : channelTimelines.values()) {
+            for (Entry<String, Long> entry : channelTimeline.getPhases().entrySet()) {
+                Long total = phaseTotals.get(entry.getKey());
+                phaseTotals.put(entry.getKey(), (total == null ? 0 : total) + entry.getValue());
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(operation).append(' ').append(channelTimelines.size()).append(" channel(s) in ").append(getDuration()).append(" ms using ").append(threads).append(" thread(s)");
+
+        if (!phaseTotals.isEmpty()) {
+            builder.append(", total time per phase: ");
+            appendPhases(builder, phaseTotals);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns one line per channel with the time spent in each phase, slowest channels first. If
+     * limit is greater than zero, only that many channels are included.
+     */
+    public String getReport(int limit) {
+        List<ChannelTimeline> timelines = new ArrayList<ChannelTimeline>(channelTimelines.values());
+
+        Collections.sort(timelines, new Comparator<ChannelTimeline>() {
+            @Override
+            public int compare(ChannelTimeline o1, ChannelTimeline o2) {
+                long total1 = o1.getTotal();
+                long total2 = o2.getTotal();
+                return total1 > total2 ? -1 : (total1 < total2 ? 1 : 0);
+            }
+        });
+
+        if (limit > 0 && timelines.size() > limit) {
+            timelines = timelines.subList(0, limit);
+        }
+
+        StringBuilder builder = new StringBuilder();
+
+        for (ChannelTimeline channelTimeline : timelines) {
+            builder.append("\n    ").append(channelTimeline.channelName).append(" (").append(channelTimeline.channelId).append("): ").append(channelTimeline.getTotal()).append(" ms [");
+            appendPhases(builder, channelTimeline.getPhases());
+            builder.append(']');
+        }
+
+        return builder.toString();
+    }
+
+    private void appendPhases(StringBuilder builder, Map<String, Long> phases) {
+        boolean first = true;
+
+        for (Entry<String, Long> entry : phases.entrySet()) {
+            if (!first) {
+                builder.append(", ");
+            }
+
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append(" ms");
+            first = false;
+        }
+    }
+
+    private class ChannelTimeline {
+        private String channelId;
+        private String channelName;
+        private Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+        public ChannelTimeline(String channelId, String channelName) {
+            this.channelId = channelId;
+            this.channelName = channelName;
+        }
+
+        public synchronized void addPhase(String phase, long duration) {
+            Long total = phases.get(phase);
+            phases.put(phase, (total == null ? 0 : total) + duration);
+        }
+
+        public synchronized Map<String, Long> getPhases() {
+            return new LinkedHashMap<String, Long>(phases);
+        }
+
+        public synchronized long getTotal() {
+            long total = 0;
+
+            for (Long duration : phases.values()) {
+                total += duration;
+            }
+
+            return total;
+        }
+    }
+}
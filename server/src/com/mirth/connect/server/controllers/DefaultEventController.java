@@ -13,11 +13,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
@@ -34,6 +35,7 @@ import com.mirth.connect.model.ServerEvent;
 import com.mirth.connect.model.filters.EventFilter;
 import com.mirth.connect.server.event.AuditableEventListener;
 import com.mirth.connect.server.event.EventListener;
+import com.mirth.connect.server.event.EventQueue;
 import com.mirth.connect.server.util.DatabaseUtil;
 import com.mirth.connect.server.util.SqlConfig;
 
@@ -42,12 +44,12 @@ public class DefaultEventController extends EventController {
 
     private static DefaultEventController instance = null;
 
-    private static Map<Object, BlockingQueue<Event>> messageEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
-    private static Map<Object, BlockingQueue<Event>> errorEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
-    private static Map<Object, BlockingQueue<Event>> deployedStateEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
-    private static Map<Object, BlockingQueue<Event>> connectionStatusEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
-    private static Map<Object, BlockingQueue<Event>> serverEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
-    private static Map<Object, BlockingQueue<Event>> genericEventQueues = new ConcurrentHashMap<Object, BlockingQueue<Event>>();
+    private static Map<Object, EventListener> messageEventListeners = new ConcurrentHashMap<Object, EventListener>();
+    private static Map<Object, EventListener> errorEventListeners = new ConcurrentHashMap<Object, EventListener>();
+    private static Map<Object, EventListener> deployedStateEventListeners = new ConcurrentHashMap<Object, EventListener>();
+    private static Map<Object, EventListener> connectionStatusEventListeners = new ConcurrentHashMap<Object, EventListener>();
+    private static Map<Object, EventListener> serverEventListeners = new ConcurrentHashMap<Object, EventListener>();
+    private static Map<Object, EventListener> genericEventListeners = new ConcurrentHashMap<Object, EventListener>();
 
     private DefaultEventController() {
         addListener(new AuditableEventListener());
@@ -66,69 +68,81 @@ public class DefaultEventController extends EventController {
     @Override
     public void addListener(EventListener listener) {
         Set<EventType> types = listener.getEventTypes();
-        BlockingQueue<Event> queue = listener.getQueue();
         
         if (types.contains(EventType.MESSAGE)) {
-            messageEventQueues.put(listener, queue);
+            messageEventListeners.put(listener, listener);
         }
 
         if (types.contains(EventType.ERROR)) {
-            errorEventQueues.put(listener, queue);
+            errorEventListeners.put(listener, listener);
         }
 
         if (types.contains(EventType.DEPLOY_STATE)) {
-            deployedStateEventQueues.put(listener, queue);
+            deployedStateEventListeners.put(listener, listener);
         }
 
         if (types.contains(EventType.CONNECTION_STATUS)) {
-            connectionStatusEventQueues.put(listener, queue);
+            connectionStatusEventListeners.put(listener, listener);
         }
         
         if (types.contains(EventType.SERVER)) {
-            serverEventQueues.put(listener, queue);
+            serverEventListeners.put(listener, listener);
         }
         
         if (types.contains(EventType.GENERIC)) {
-            genericEventQueues.put(listener, queue);
+            genericEventListeners.put(listener, listener);
         }
     }
 
     @Override
     public void removeListener(EventListener listener) {
-        messageEventQueues.remove(listener);
-        errorEventQueues.remove(listener);
-        deployedStateEventQueues.remove(listener);
-        connectionStatusEventQueues.remove(listener);
-        serverEventQueues.remove(listener);
-        genericEventQueues.remove(listener);
+        messageEventListeners.remove(listener);
+        errorEventListeners.remove(listener);
+        deployedStateEventListeners.remove(listener);
+        connectionStatusEventListeners.remove(listener);
+        serverEventListeners.remove(listener);
+        genericEventListeners.remove(listener);
 
         listener.shutdown();
     }
 
+    @Override
+    public Map<String, EventQueue> getListenerQueues() {
+        Map<String, EventQueue> listenerQueues = new TreeMap<String, EventQueue>();
+
+        for (Map<Object, EventListener> listeners : Arrays.asList(messageEventListeners, errorEventListeners, deployedStateEventListeners, connectionStatusEventListeners, serverEventListeners, genericEventListeners)) {
+            for (EventListener listener : listeners.values()) {
+                listenerQueues.put(listener.getClass().getName(), listener.getQueue());
+            }
+        }
+
+        return listenerQueues;
+    }
+
     @Override
     public void dispatchEvent(Event event) {
         try {
-            Map<Object, BlockingQueue<Event>> queues = null;
+            Map<Object, EventListener> listeners = null;
             /*
              * Using instanceof is several thousand times faster than using a map to store the
              * different queue sets.
              */
             if (event instanceof MessageEvent) {
-                queues = messageEventQueues;
+                listeners = messageEventListeners;
             } else if (event instanceof ErrorEvent) {
-                queues = errorEventQueues;
+                listeners = errorEventListeners;
             } else if (event instanceof DeployedStateEvent) {
-                queues = deployedStateEventQueues;
+                listeners = deployedStateEventListeners;
             } else if (event instanceof ConnectionStatusEvent) {
-                queues = connectionStatusEventQueues;
+                listeners = connectionStatusEventListeners;
             } else if (event instanceof ServerEvent) {
-                queues = serverEventQueues;
+                listeners = serverEventListeners;
             } else {
-                queues = genericEventQueues;
+                listeners = genericEventListeners;
             }
 
-            for (BlockingQueue<Event> queue : queues.values()) {
-                queue.put(event);
+            for (EventListener listener : listeners.values()) {
+                listener.dispatchEvent(event);
             }
         } catch (InterruptedException e) {
         	Thread.currentThread().interrupt();
@@ -19,12 +19,21 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.log4j.Logger;
 
 import com.mirth.commons.encryption.Encryptor;
+import com.mirth.connect.connectors.vm.VmDispatcherProperties;
 import com.mirth.connect.donkey.model.channel.ConnectorProperties;
 import com.mirth.connect.donkey.model.channel.ResponseConnectorProperties;
 import com.mirth.connect.donkey.model.channel.ResponseConnectorPropertiesInterface;
@@ -56,11 +65,14 @@ import com.mirth.connect.donkey.server.channel.ResponseTransformerExecutor;
 import com.mirth.connect.donkey.server.channel.SourceConnector;
 import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.channel.StorageSettings;
+import com.mirth.connect.donkey.server.channel.components.Partitioner;
 import com.mirth.connect.donkey.server.channel.components.PostProcessor;
 import com.mirth.connect.donkey.server.channel.components.PreProcessor;
+import com.mirth.connect.donkey.server.data.GroupCommitter;
 import com.mirth.connect.donkey.server.data.buffered.BufferedDaoFactory;
 import com.mirth.connect.donkey.server.data.passthru.DelayedStatisticsUpdater;
 import com.mirth.connect.donkey.server.data.passthru.PassthruDaoFactory;
+import com.mirth.connect.donkey.server.data.passthru.StatisticsUpdater;
 import com.mirth.connect.donkey.server.event.ErrorEvent;
 import com.mirth.connect.donkey.server.event.EventDispatcher;
 import com.mirth.connect.donkey.server.message.DataType;
@@ -83,9 +95,11 @@ import com.mirth.connect.server.attachments.JavaScriptAttachmentHandler;
 import com.mirth.connect.server.attachments.MirthAttachmentHandler;
 import com.mirth.connect.server.attachments.PassthruAttachmentHandler;
 import com.mirth.connect.server.builders.JavaScriptBuilder;
+import com.mirth.connect.server.channel.DeployTimeline;
 import com.mirth.connect.server.channel.MirthMetaDataReplacer;
 import com.mirth.connect.server.message.DataTypeFactory;
 import com.mirth.connect.server.transformers.JavaScriptFilterTransformer;
+import com.mirth.connect.server.transformers.JavaScriptPartitioner;
 import com.mirth.connect.server.transformers.JavaScriptPostprocessor;
 import com.mirth.connect.server.transformers.JavaScriptPreprocessor;
 import com.mirth.connect.server.transformers.JavaScriptResponseTransformer;
@@ -93,9 +107,12 @@ import com.mirth.connect.server.util.GlobalChannelVariableStoreFactory;
 import com.mirth.connect.server.util.GlobalVariableStore;
 import com.mirth.connect.server.util.javascript.JavaScriptExecutorException;
 import com.mirth.connect.server.util.javascript.JavaScriptUtil;
+import com.mirth.connect.util.PropertyLoader;
 
 public class DonkeyEngineController implements EngineController {
     private static DonkeyEngineController instance = null;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = 100;
+    private static final int DEPLOY_TIMELINE_REPORT_SIZE = 10;
 
     public static DonkeyEngineController getInstance() {
         synchronized (DonkeyEngineController.class) {
@@ -116,6 +133,10 @@ public class DonkeyEngineController implements EngineController {
     private EventController eventController = ControllerFactory.getFactory().createEventController();
     private ExtensionController extensionController = ControllerFactory.getFactory().createExtensionController();
     private int queueBufferSize = Constants.DEFAULT_QUEUE_BUFFER_SIZE;
+    private boolean groupCommitEnabled = false;
+    private int groupCommitMaxBatchSize = DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE;
+    private int groupCommitMaxWait = 0;
+    private int deployThreads = Runtime.getRuntime().availableProcessors();
 
     private DonkeyEngineController() {}
 
@@ -150,7 +171,30 @@ public class DonkeyEngineController implements EngineController {
             }
         };
 
-        donkey.startEngine(new DonkeyConfiguration(configurationController.getApplicationDataDir(), configurationController.getDatabaseSettings().getProperties(), donkeyEncryptor, eventDispatcher, configurationController.getServerId()));
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        DonkeyConfiguration donkeyConfiguration = new DonkeyConfiguration(configurationController.getApplicationDataDir(), configurationController.getDatabaseSettings().getProperties(), donkeyEncryptor, eventDispatcher, configurationController.getServerId());
+        donkeyConfiguration.setStatisticsFlushInterval(NumberUtils.toInt(StringUtils.trim(properties.getProperty("statistics.flushinterval")), Constants.DEFAULT_STATISTICS_FLUSH_INTERVAL));
+        donkeyConfiguration.setPartitionSize(NumberUtils.toLong(StringUtils.trim(properties.getProperty("partition.size")), 0));
+        donkeyConfiguration.setBinaryMaps("true".equalsIgnoreCase(StringUtils.trim(properties.getProperty("binarymaps.enabled"))));
+
+        donkey.startEngine(donkeyConfiguration);
+
+        /*
+         * Checks mirth.properties for the groupcommit.* properties. When group commit is enabled,
+         * the threads of a channel that commit at the same time share a single transaction. Each
+         * channel gets its own group committer, so channels never wait on each other's commits.
+         */
+        groupCommitEnabled = "true".equalsIgnoreCase(StringUtils.trim(properties.getProperty("groupcommit.enabled")));
+        groupCommitMaxBatchSize = NumberUtils.toInt(StringUtils.trim(properties.getProperty("groupcommit.maxbatchsize")), DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE);
+        groupCommitMaxWait = NumberUtils.toInt(StringUtils.trim(properties.getProperty("groupcommit.maxwait")), 0);
+
+        if (groupCommitEnabled) {
+            logger.debug("group commit enabled, max batch size: " + groupCommitMaxBatchSize + ", max wait: " + groupCommitMaxWait + " ms");
+        }
+
+        // Number of channels that are built, compiled and started at the same time when deploying
+        deployThreads = Math.max(NumberUtils.toInt(StringUtils.trim(properties.getProperty("deploy.threads")), Runtime.getRuntime().availableProcessors()), 1);
     }
 
     @Override
@@ -165,7 +209,7 @@ public class DonkeyEngineController implements EngineController {
     }
 
     @Override
-    public synchronized void deployChannels(Set<String> channelIds, ServerEventContext context) {
+    public synchronized void deployChannels(Set<String> channelIds, final ServerEventContext context) {
         if (channelIds == null) {
             throw new NullPointerException();
         }
@@ -182,26 +226,96 @@ public class DonkeyEngineController implements EngineController {
             channelPlugin.deploy(context);
         }
 
-        List<Channel> channels = channelController.getChannels(channelIds);
+        List<Channel> channels = new ArrayList<Channel>();
 
-        for (Channel channel : channels) {
-            try {
-                deployChannel(channel, context);
-            } catch (Exception e) {
-                logger.error("Error deploying channel " + channel.getId() + ".", e);
+        for (Channel channel : channelController.getChannels(channelIds)) {
+            if (channel.isEnabled()) {
+                channels.add(channel);
             }
         }
-    }
 
-    private synchronized void deployChannel(Channel channel, ServerEventContext context) throws StartException, StopException, DeployException, UndeployException {
-        String channelId = channel.getId();
-
-        if (!channel.isEnabled()) {
+        if (channels.isEmpty()) {
             return;
         }
 
+        final Map<String, com.mirth.connect.donkey.server.channel.Channel> donkeyChannels = new ConcurrentHashMap<String, com.mirth.connect.donkey.server.channel.Channel>();
+        ExecutorService executor = createDeployExecutor(channels.size());
+        final DeployTimeline timeline = new DeployTimeline("Deployed", Math.min(deployThreads, channels.size()));
+
+        try {
+            /*
+             * Build all of the channels first. Compiling the scripts is usually where most of the
+             * time goes, and it doesn't depend on any other channel.
+             */
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+            for (final Channel channel : channels) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            donkeyChannels.put(channel.getId(), buildChannel(channel, context, timeline));
+                        } catch (Throwable t) {
+                            logger.error("Error deploying channel " + channel.getId() + ".", t);
+                        }
+
+                        return null;
+                    }
+                });
+            }
+
+            executor.invokeAll(tasks);
+
+            // Then start them, so that a channel is started before any channel that dispatches to it
+            List<Channel> builtChannels = new ArrayList<Channel>();
+
+            for (Channel channel : channels) {
+                if (donkeyChannels.containsKey(channel.getId())) {
+                    builtChannels.add(channel);
+                }
+            }
+
+            for (List<Channel> channelGroup : getDeployOrder(builtChannels)) {
+                tasks.clear();
+
+                for (final Channel channel : channelGroup) {
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            try {
+                                deployChannel(channel, donkeyChannels.get(channel.getId()), context, timeline);
+                            } catch (Throwable t) {
+                                logger.error("Error deploying channel " + channel.getId() + ".", t);
+                            }
+
+                            return null;
+                        }
+                    });
+                }
+
+                executor.invokeAll(tasks);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            logTimeline(timeline);
+        }
+    }
+
+    /*
+     * Undeploys the channel if it's already deployed, and creates the Donkey channel for it,
+     * compiling all of its scripts. This runs on a deploy thread, while deployChannels holds the
+     * lock on this controller.
+     */
+    private com.mirth.connect.donkey.server.channel.Channel buildChannel(Channel channel, ServerEventContext context, DeployTimeline timeline) throws StartException, StopException, DeployException, UndeployException {
+        String channelId = channel.getId();
+        long startTime = System.currentTimeMillis();
+
         if (donkey.getDeployedChannels().containsKey(channelId)) {
             undeployChannel(channelId, context);
+            timeline.addPhase(channelId, channel.getName(), "undeploy", startTime);
+            startTime = System.currentTimeMillis();
         }
 
         com.mirth.connect.donkey.server.channel.Channel donkeyChannel = null;
@@ -210,14 +324,32 @@ public class DonkeyEngineController implements EngineController {
             donkeyChannel = convertToDonkeyChannel(channel);
         } catch (Exception e) {
             throw new DeployException(e.getMessage(), e);
+        } finally {
+            timeline.addPhase(channelId, channel.getName(), "build", startTime);
         }
 
+        startTime = System.currentTimeMillis();
+
         try {
             scriptController.compileChannelScripts(channel);
         } catch (ScriptCompileException e) {
             throw new StartException("Failed to deploy channel " + channelId + ".", e);
+        } finally {
+            timeline.addPhase(channelId, channel.getName(), "compile", startTime);
         }
 
+        return donkeyChannel;
+    }
+
+    /*
+     * Runs the deploy script and plugin hooks for a channel built by buildChannel, and deploys it
+     * to the engine. This runs on a deploy thread, while deployChannels holds the lock on this
+     * controller.
+     */
+    private void deployChannel(Channel channel, com.mirth.connect.donkey.server.channel.Channel donkeyChannel, ServerEventContext context, DeployTimeline timeline) throws StartException, StopException, DeployException, UndeployException {
+        String channelId = channel.getId();
+        long startTime = System.currentTimeMillis();
+
         clearGlobalChannelMap(channel);
 
         try {
@@ -230,7 +362,11 @@ public class DonkeyEngineController implements EngineController {
 
             eventController.dispatchEvent(new ErrorEvent(channel.getId(), null, ErrorEventType.DEPLOY_SCRIPT, null, null, "Error running channel deploy script", t));
             throw new StartException("Failed to deploy channel " + channelId + ".", e);
+        } finally {
+            timeline.addPhase(channelId, channel.getName(), "deploy script", startTime);
         }
+
+        startTime = System.currentTimeMillis();
         channelController.putDeployedChannelInCache(channel);
 
         // Execute the individual channel plugin deploy hook
@@ -249,16 +385,66 @@ public class DonkeyEngineController implements EngineController {
             scriptController.removeChannelScriptsFromCache(channelId);
 
             throw e;
+        } finally {
+            timeline.addPhase(channelId, channel.getName(), "start", startTime);
         }
     }
 
     @Override
-    public synchronized void undeployChannels(Set<String> channelIds, ServerEventContext context) {
+    public synchronized void undeployChannels(Set<String> channelIds, final ServerEventContext context) {
+        List<Channel> channels = new ArrayList<Channel>();
+
         for (String channelId : channelIds) {
+            Channel channel = channelController.getDeployedChannelById(channelId);
+
+            if (channel == null) {
+                // The deployed model should always be cached, but the channel can still be undeployed without it
+                channel = new Channel();
+                channel.setId(channelId);
+                channel.setName(channelId);
+            }
+
+            channels.add(channel);
+        }
+
+        if (!channels.isEmpty()) {
+            ExecutorService executor = createDeployExecutor(channels.size());
+            final DeployTimeline timeline = new DeployTimeline("Undeployed", Math.min(deployThreads, channels.size()));
+
             try {
-                undeployChannel(channelId, context);
-            } catch (Exception e) {
-                logger.error("Error undeploying channel " + channelId + ".", e);
+                // Stop channels that dispatch to other channels first, so their messages can still be delivered
+                List<List<Channel>> deployOrder = getDeployOrder(channels);
+                Collections.reverse(deployOrder);
+
+                for (List<Channel> channelGroup : deployOrder) {
+                    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+                    for (final Channel channel : channelGroup) {
+                        tasks.add(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                long startTime = System.currentTimeMillis();
+
+                                try {
+                                    undeployChannel(channel.getId(), context);
+                                } catch (Throwable t) {
+                                    logger.error("Error undeploying channel " + channel.getId() + ".", t);
+                                } finally {
+                                    timeline.addPhase(channel.getId(), channel.getName(), "undeploy", startTime);
+                                }
+
+                                return null;
+                            }
+                        });
+                    }
+
+                    executor.invokeAll(tasks);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+                logTimeline(timeline);
             }
         }
 
@@ -275,7 +461,11 @@ public class DonkeyEngineController implements EngineController {
         }
     }
 
-    private synchronized void undeployChannel(String channelId, ServerEventContext context) throws StopException, UndeployException {
+    /*
+     * This runs on a deploy thread, while deployChannels or undeployChannels holds the lock on this
+     * controller.
+     */
+    private void undeployChannel(String channelId, ServerEventContext context) throws StopException, UndeployException {
         // Get a reference to the deployed channel for later
         com.mirth.connect.donkey.server.channel.Channel channel = getDeployedChannel(channelId);
 
@@ -444,6 +634,7 @@ public class DonkeyEngineController implements EngineController {
                 sourceStatus.setTags(deployedChannel.getProperties().getTags());
                 sourceStatus.setQueueEnabled(!donkeyChannel.getSourceConnector().isRespondAfterProcessing());
                 sourceStatus.setQueued(new Long(donkeyChannel.getSourceQueue().size()));
+                sourceStatus.setSerializationSkipped(donkeyChannel.getSourceFilterTransformer().isSerializationSkipped());
 
                 status.setQueued(sourceStatus.getQueued());
 
@@ -465,6 +656,7 @@ public class DonkeyEngineController implements EngineController {
                         destinationStatus.setTags(deployedChannel.getProperties().getTags());
                         destinationStatus.setQueueEnabled(connector.isQueueEnabled());
                         destinationStatus.setQueued(new Long(connector.getQueue().size()));
+                        destinationStatus.setSerializationSkipped(chain.getFilterTransformerExecutors().get(metaDataId).isSerializationSkipped());
 
                         status.setQueued(status.getQueued() + destinationStatus.getQueued());
 
@@ -525,6 +717,81 @@ public class DonkeyEngineController implements EngineController {
         return dispatchResult;
     }
 
+    private ExecutorService createDeployExecutor(int channelCount) {
+        return Executors.newFixedThreadPool(Math.max(Math.min(deployThreads, channelCount), 1), new ThreadFactory() {
+            private AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "Deploy Thread " + threadCount.incrementAndGet());
+            }
+        });
+    }
+
+    /*
+     * Splits the channels into groups that can be deployed in parallel. A channel that dispatches
+     * to another channel in the list with a Channel Writer is placed in a later group than that
+     * channel, so the channel it dispatches to is already started. Dependencies on channels that
+     * aren't in the list, and circular dependencies, are ignored.
+     */
+    private List<List<Channel>> getDeployOrder(List<Channel> channels) {
+        Map<String, Channel> channelMap = new HashMap<String, Channel>();
+
+        for (Channel channel : channels) {
+            channelMap.put(channel.getId(), channel);
+        }
+
+        Map<String, Integer> levels = new HashMap<String, Integer>();
+        List<List<Channel>> deployOrder = new ArrayList<List<Channel>>();
+
+        for (Channel channel : channels) {
+            int level = getDeployLevel(channel, channelMap, levels, new HashSet<String>());
+
+            while (deployOrder.size() <= level) {
+                deployOrder.add(new ArrayList<Channel>());
+            }
+
+            deployOrder.get(level).add(channel);
+        }
+
+        return deployOrder;
+    }
+
+    private int getDeployLevel(Channel channel, Map<String, Channel> channelMap, Map<String, Integer> levels, Set<String> visiting) {
+        Integer level = levels.get(channel.getId());
+
+        if (level != null) {
+            return level;
+        }
+
+        level = 0;
+        visiting.add(channel.getId());
+
+        for (Connector connector : channel.getDestinationConnectors()) {
+            if (connector.isEnabled() && connector.getProperties() instanceof VmDispatcherProperties) {
+                Channel targetChannel = channelMap.get(((VmDispatcherProperties) connector.getProperties()).getChannelId());
+
+                if (targetChannel != null && !visiting.contains(targetChannel.getId())) {
+                    level = Math.max(level, getDeployLevel(targetChannel, channelMap, levels, visiting) + 1);
+                }
+            }
+        }
+
+        visiting.remove(channel.getId());
+        levels.put(channel.getId(), level);
+
+        return level;
+    }
+
+    private void logTimeline(DeployTimeline timeline) {
+        timeline.finish();
+        logger.info(timeline.getSummary() + ". Slowest channels:" + timeline.getReport(DEPLOY_TIMELINE_REPORT_SIZE));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Deploy timeline for all channels:" + timeline.getReport(0));
+        }
+    }
+
     private com.mirth.connect.donkey.server.channel.Channel convertToDonkeyChannel(Channel model) throws Exception {
         String channelId = model.getId();
         ChannelProperties channelProperties = model.getProperties();
@@ -546,6 +813,10 @@ public class DonkeyEngineController implements EngineController {
         channel.setAttachmentHandler(createAttachmentHandler(channelId, channelProperties.getAttachmentProperties()));
         channel.setPreProcessor(createPreProcessor(channelId, model.getPreprocessingScript()));
         channel.setPostProcessor(createPostProcessor(channelId, model.getPostprocessingScript()));
+        channel.setProcessingThreads(channelProperties.getProcessingThreads());
+        channel.setMessageIdBlockSize(channelProperties.getMessageIdBlockSize() > 0 ? channelProperties.getMessageIdBlockSize() : Constants.DEFAULT_MESSAGE_ID_BLOCK_SIZE);
+        channel.setPartitioner(createPartitioner(channelId, channelProperties));
+        channel.setRecoverConcurrently(channelProperties.isRecoverConcurrently());
         channel.setSourceConnector(createSourceConnector(channel, model.getSourceConnector(), storageSettings, destinationNameMap));
         channel.setResponseSelector(new ResponseSelector(channel.getSourceConnector().getInboundDataType()));
         channel.setSourceFilterTransformer(createFilterTransformerExecutor(channelId, model.getSourceConnector(), destinationNameMap));
@@ -560,12 +831,20 @@ public class DonkeyEngineController implements EngineController {
         }
 
         if (storageSettings.isEnabled()) {
-            BufferedDaoFactory bufferedDaoFactory = new BufferedDaoFactory(donkey.getDaoFactory());
+            GroupCommitter groupCommitter = groupCommitEnabled ? new GroupCommitter(donkey.getDaoFactory(), groupCommitMaxBatchSize, groupCommitMaxWait) : null;
+            BufferedDaoFactory bufferedDaoFactory = new BufferedDaoFactory(donkey.getDaoFactory(), groupCommitter);
             bufferedDaoFactory.setEncryptData(channelProperties.isEncryptData());
+            bufferedDaoFactory.setCompressData(channelProperties.isCompressData());
 
             channel.setDaoFactory(bufferedDaoFactory);
         } else {
-            channel.setDaoFactory(new PassthruDaoFactory(new DelayedStatisticsUpdater(donkey.getDaoFactory())));
+            StatisticsUpdater statisticsUpdater = donkey.getStatisticsFlusher();
+
+            if (statisticsUpdater == null) {
+                statisticsUpdater = new DelayedStatisticsUpdater(donkey.getDaoFactory());
+            }
+
+            channel.setDaoFactory(new PassthruDaoFactory(statisticsUpdater));
         }
 
         DestinationChain chain = createDestinationChain(channel);
@@ -729,6 +1008,23 @@ public class DonkeyEngineController implements EngineController {
         return new JavaScriptPostprocessor();
     }
 
+    private Partitioner createPartitioner(String channelId, ChannelProperties channelProperties) {
+        String scriptId = ScriptController.getScriptId(ScriptController.PARTITION_SCRIPT_KEY, channelId);
+
+        // A partition key is only needed if messages can be processed on more than one lane
+        if (channelProperties.getProcessingThreads() > 1 && StringUtils.isNotBlank(channelProperties.getPartitionKeyScript())) {
+            try {
+                JavaScriptUtil.compileAndAddScript(scriptId, channelProperties.getPartitionKeyScript(), ContextType.CHANNEL_CONTEXT, null, null);
+                return new JavaScriptPartitioner(channelId);
+            } catch (Exception e) {
+                logger.error("Error compiling partition key script " + scriptId + ".", e);
+            }
+        }
+
+        JavaScriptUtil.removeScriptFromCache(scriptId);
+        return null;
+    }
+
     private SourceConnector createSourceConnector(com.mirth.connect.donkey.server.channel.Channel donkeyChannel, Connector model, StorageSettings storageSettings, Map<String, String> destinationNameMap) throws Exception {
         ExtensionController extensionController = ControllerFactory.getFactory().createExtensionController();
         ConnectorProperties connectorProperties = model.getProperties();
@@ -800,8 +1096,20 @@ public class DonkeyEngineController implements EngineController {
         FilterTransformerExecutor filterTransformerExecutor = new FilterTransformerExecutor(inboundDataType, outboundDataType);
 
         if (runFilterTransformer) {
-            String script = JavaScriptBuilder.generateFilterTransformerScript(filter, transformer);
+            /*
+             * If the only reason to run the filter/transformer is that there are rules or steps,
+             * and none of them reference msg or tmp, then the message doesn't need to be serialized
+             * for the scripts or re-encoded afterwards.
+             */
+            boolean skipSerialization = template == null && transformer.getInboundDataType().equals(transformer.getOutboundDataType()) && !inboundDataType.getSerializer().isSerializationRequired(true) && !outboundDataType.getSerializer().isSerializationRequired(false) && !JavaScriptBuilder.isMessageReferenced(filter, transformer);
+
+            if (skipSerialization) {
+                logger.debug("Skipping serialization for connector \"" + connector.getName() + "\" on channel " + channelId + ", since the filter/transformer scripts do not reference the message.");
+            }
+
+            String script = JavaScriptBuilder.generateFilterTransformerScript(filter, transformer, !skipSerialization);
             filterTransformerExecutor.setFilterTransformer(new JavaScriptFilterTransformer(channelId, connector.getName(), script, template, destinationNameMap));
+            filterTransformerExecutor.setSerializationSkipped(skipSerialization);
         }
 
         return filterTransformerExecutor;
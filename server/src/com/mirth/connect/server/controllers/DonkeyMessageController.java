@@ -10,6 +10,7 @@
 package com.mirth.connect.server.controllers;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -50,6 +51,7 @@ import com.mirth.connect.donkey.server.channel.Statistics;
 import com.mirth.connect.donkey.server.controllers.ChannelController;
 import com.mirth.connect.donkey.server.data.DonkeyDao;
 import com.mirth.connect.donkey.server.message.DataType;
+import com.mirth.connect.donkey.util.CompressionUtil;
 import com.mirth.connect.donkey.util.MapUtil;
 import com.mirth.connect.donkey.util.xstream.SerializerException;
 import com.mirth.connect.model.MessageImportResult;
@@ -57,6 +59,7 @@ import com.mirth.connect.model.converters.ObjectXMLSerializer;
 import com.mirth.connect.model.filters.MessageFilter;
 import com.mirth.connect.model.filters.elements.ContentSearchElement;
 import com.mirth.connect.model.filters.elements.MetaDataSearchElement;
+import com.mirth.connect.server.messageindex.MessageContentIndexer;
 import com.mirth.connect.server.mybatis.MessageSearchResult;
 import com.mirth.connect.server.mybatis.MessageTextResult;
 import com.mirth.connect.server.util.DICOMMessageUtil;
@@ -137,6 +140,16 @@ public class DonkeyMessageController extends MessageController {
         }
     }
 
+    private long getMinMessageIdSince(String channelId, Calendar date) {
+        DonkeyDao dao = donkey.getDaoFactory().getDao();
+
+        try {
+            return dao.getMinMessageIdSince(channelId, date);
+        } finally {
+            dao.close();
+        }
+    }
+
     @Override
     public Long getMessageCount(MessageFilter filter, Channel channel) {
         if (filter.getIncludedMetaDataIds() != null && filter.getIncludedMetaDataIds().isEmpty() && filter.getExcludedMetaDataIds() == null) {
@@ -391,9 +404,11 @@ public class DonkeyMessageController extends MessageController {
                         if (channel.getCurrentState() == DeployedState.STOPPED) {
                             logger.debug("Removing messages for channel \"" + channel.getName() + "\"");
                             dao.deleteAllMessages(channelId);
+                            MessageContentIndexer.getInstance().removeChannel(channelId);
 
                             if (clearStatistics) {
                                 logger.debug("Clearing statistics for channel \"" + channel.getName() + "\"");
+                                ChannelController.getInstance().flushStatistics();
 
                                 Set<Status> statuses = Statistics.getTrackedStatuses();
                                 dao.resetStatistics(channelId, null, statuses);
@@ -488,6 +503,8 @@ public class DonkeyMessageController extends MessageController {
                         rawContent.setEncrypted(false);
                     }
 
+                    rawContent.setContent(CompressionUtil.decompress(rawContent.getContent()));
+
                     ConnectorMessage connectorMessage = new ConnectorMessage();
                     connectorMessage.setChannelId(channelId);
                     connectorMessage.setMessageId(messageId);
@@ -503,6 +520,11 @@ public class DonkeyMessageController extends MessageController {
                     }
 
                     rawMessage.setOverwrite(replace);
+
+                    if (replace) {
+                        // The message's content is about to change
+                        MessageContentIndexer.getInstance().invalidate(channelId, messageId);
+                    }
                     rawMessage.setImported(importId != null);
                     rawMessage.setOriginalMessageId(messageId);
 
@@ -513,6 +535,8 @@ public class DonkeyMessageController extends MessageController {
                                 sourceMapContent.setEncrypted(false);
                             }
 
+                            sourceMapContent.setContent(CompressionUtil.decompress(sourceMapContent.getContent()));
+
                             /*
                              * We do putAll instead of setting the source map directly here because
                              * the previously stored map will be unmodifiable. We need to set the
@@ -850,7 +874,7 @@ public class DonkeyMessageController extends MessageController {
                 if (searchContent) {
                     Map<Long, MessageSearchResult> contentMessages = new HashMap<Long, MessageSearchResult>();
                     // Perform the content search
-                    searchContent(session, new HashMap<String, Object>(contentParams), potentialMessages, contentMessages, filter.getContentSearch());
+                    searchContent(session, new HashMap<String, Object>(contentParams), filterOptions.getChannelId(), potentialMessages, contentMessages, filter.getContentSearch());
 
                     if (tempMessages == null) {
                         /*
@@ -877,7 +901,7 @@ public class DonkeyMessageController extends MessageController {
                 }
                 if (searchText) {
                     // Perform the text search
-                    searchText(session, new HashMap<String, Object>(contentParams), potentialMessages, textMessages, filter.getTextSearch(), filter.getTextSearchMetaDataColumns());
+                    searchText(session, new HashMap<String, Object>(contentParams), filterOptions.getChannelId(), potentialMessages, textMessages, filter.getTextSearch(), filter.getTextSearchMetaDataColumns());
 
                     if (tempMessages == null) {
                         /*
@@ -959,8 +983,10 @@ public class DonkeyMessageController extends MessageController {
         }
     }
 
-    private void searchContent(SqlSession session, Map<String, Object> params, Map<Long, MessageSearchResult> potentialMessages, Map<Long, MessageSearchResult> contentMessages, List<ContentSearchElement> contentSearchElements) {
+    private void searchContent(SqlSession session, Map<String, Object> params, String channelId, Map<Long, MessageSearchResult> potentialMessages, Map<Long, MessageSearchResult> contentMessages, List<ContentSearchElement> contentSearchElements) {
         int index = 0;
+        Object minMessageId = params.get("minMessageId");
+        Object maxMessageId = params.get("maxMessageId");
 
         while (index < contentSearchElements.size() && (index == 0 || !contentMessages.isEmpty())) {
             ContentSearchElement element = contentSearchElements.get(index);
@@ -968,12 +994,17 @@ public class DonkeyMessageController extends MessageController {
             if (CollectionUtils.isNotEmpty(element.getSearches())) {
                 params.put("contentType", element.getContentCode());
                 params.put("contents", element.getSearches());
+                params.put("minMessageId", minMessageId);
+                params.put("maxMessageId", maxMessageId);
+                params.remove("includeMessageList");
+
+                boolean searchable = applyContentIndex(params, channelId, element.getSearches(), potentialMessages);
 
                 /*
                  * Search the content table for message and metadata ids matching the content search
                  * criteria
                  */
-                List<MessageTextResult> results = session.selectList("Message.searchContentTable", params);
+                List<MessageTextResult> results = searchable ? session.<MessageTextResult> selectList("Message.searchContentTable", params) : new ArrayList<MessageTextResult>();
 
                 Map<Long, MessageSearchResult> tempMessages = new HashMap<Long, MessageSearchResult>();
 
@@ -1009,7 +1040,7 @@ public class DonkeyMessageController extends MessageController {
                  * If the raw content is being searched, perform an additional search on the source
                  * encoded content since the destination
                  */
-                if (ContentType.fromCode(element.getContentCode()) == ContentType.RAW) {
+                if (searchable && ContentType.fromCode(element.getContentCode()) == ContentType.RAW) {
                     params.put("metaDataId", 0);
                     params.put("contentType", ContentType.ENCODED.getContentTypeCode());
 
@@ -1061,7 +1092,7 @@ public class DonkeyMessageController extends MessageController {
         }
     }
 
-    private void searchText(SqlSession session, Map<String, Object> params, Map<Long, MessageSearchResult> potentialMessages, Map<Long, MessageSearchResult> textMessages, String text, List<String> textSearchMetaDataColumns) {
+    private void searchText(SqlSession session, Map<String, Object> params, String channelId, Map<Long, MessageSearchResult> potentialMessages, Map<Long, MessageSearchResult> textMessages, String text, List<String> textSearchMetaDataColumns) {
         params.put("contents", Collections.singletonList(text));
         params.put("textSearch", text);
         params.put("textSearchMetaDataColumns", textSearchMetaDataColumns);
@@ -1094,6 +1125,10 @@ public class DonkeyMessageController extends MessageController {
         /*
          * Search the content table for message and metadata ids matching the text search criteria
          */
+        if (!applyContentIndex(params, channelId, Collections.singletonList(text), potentialMessages)) {
+            return;
+        }
+
         results = session.selectList("Message.searchContentTable", params);
 
         for (MessageTextResult result : results) {
@@ -1124,6 +1159,40 @@ public class DonkeyMessageController extends MessageController {
         }
     }
 
+    /**
+     * Uses the content index, if enabled, to narrow a content table search down to the potential
+     * messages that may contain all of the given strings. Returns false if none of them can, in
+     * which case the search can be skipped.
+     */
+    private boolean applyContentIndex(Map<String, Object> params, String channelId, List<String> searches, Map<Long, MessageSearchResult> potentialMessages) {
+        MessageContentIndexer indexer = MessageContentIndexer.getInstance();
+
+        if (!indexer.isEnabled()) {
+            return true;
+        }
+
+        Set<Long> candidates = indexer.getCandidates(channelId, searches, (Long) params.get("minMessageId"), (Long) params.get("maxMessageId"));
+
+        if (candidates == null) {
+            return true;
+        }
+
+        candidates.retainAll(potentialMessages.keySet());
+
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        params.put("minMessageId", Collections.min(candidates));
+        params.put("maxMessageId", Collections.max(candidates));
+
+        if (candidates.size() <= ListRangeIterator.DEFAULT_LIST_LIMIT) {
+            params.put("includeMessageList", StringUtils.join(candidates, ","));
+        }
+
+        return true;
+    }
+
     private void addMessageToMap(Map<Long, MessageSearchResult> messages, Long messageId, Integer metaDataId) {
         MessageSearchResult result = messages.get(messageId);
 
@@ -1189,6 +1258,7 @@ public class DonkeyMessageController extends MessageController {
     }
 
     private class FilterOptions {
+        private String channelId;
         private long minMessageId;
         private long maxMessageId;
         private boolean searchCustomMetaData;
@@ -1196,6 +1266,8 @@ public class DonkeyMessageController extends MessageController {
         private boolean searchText;
 
         public FilterOptions(MessageFilter filter, String channelId) {
+            this.channelId = channelId;
+
             if (filter.getMinMessageId() != null && filter.getMinMessageId() > filter.getMaxMessageId()) {
                 /*
                  * If the min message id is greater than the max, use them directly so they fail at
@@ -1215,6 +1287,14 @@ public class DonkeyMessageController extends MessageController {
                  * max to prevent unnecessary searches
                  */
                 maxMessageId = Math.min(filter.getMaxMessageId(), DonkeyMessageController.this.getMaxMessageId(channelId));
+
+                /*
+                 * If the message tables are partitioned, skip the partitions that only contain
+                 * messages received before the start date
+                 */
+                if (filter.getStartDate() != null) {
+                    minMessageId = Math.max(minMessageId, getMinMessageIdSince(channelId, filter.getStartDate()));
+                }
             }
 
             searchCustomMetaData = CollectionUtils.isNotEmpty(filter.getMetaDataSearch());
@@ -1222,6 +1302,10 @@ public class DonkeyMessageController extends MessageController {
             searchText = filter.getTextSearch() != null;
         }
 
+        public String getChannelId() {
+            return channelId;
+        }
+
         public long getMinMessageId() {
             return minMessageId;
         }
@@ -10,11 +10,13 @@
 package com.mirth.connect.server.controllers;
 
 import java.util.List;
+import java.util.Map;
 
 import com.mirth.connect.donkey.model.event.Event;
 import com.mirth.connect.model.ServerEvent;
 import com.mirth.connect.model.filters.EventFilter;
 import com.mirth.connect.server.event.EventListener;
+import com.mirth.connect.server.event.EventQueue;
 
 public abstract class EventController extends Controller {
     public static EventController getInstance() {
@@ -25,6 +27,12 @@ public abstract class EventController extends Controller {
 
     public abstract void removeListener(EventListener listener);
 
+    /**
+     * Returns the queue of each registered listener, by listener class name, so that its size, lag
+     * and dropped count can be monitored.
+     */
+    public abstract Map<String, EventQueue> getListenerQueues();
+
     public abstract void dispatchEvent(Event event);
     
     public abstract void insertEvent(ServerEvent serverEvent);
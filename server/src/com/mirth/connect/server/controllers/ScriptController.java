@@ -24,6 +24,7 @@ public abstract class ScriptController extends Controller {
     public static final String PREPROCESSOR_SCRIPT_KEY = "Preprocessor";
     public static final String SHUTDOWN_SCRIPT_KEY = "Shutdown";
     public static final String DEPLOY_SCRIPT_KEY = "Deploy";
+    public static final String PARTITION_SCRIPT_KEY = "Partition";
 
     public static final String DELIMITER = "_";
 
@@ -19,11 +19,20 @@ import com.mirth.connect.donkey.server.event.EventType;
 import com.mirth.connect.model.ServerEvent;
 import com.mirth.connect.server.controllers.ControllerFactory;
 import com.mirth.connect.server.controllers.EventController;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
 
 public class AuditableEventListener extends EventListener {
     private EventController eventController;
     private Logger logger = Logger.getLogger(this.getClass());
 
+    public AuditableEventListener() {
+        /*
+         * Every server event passes through here, so a full queue drops the oldest events rather
+         * than blocking whichever thread raised the next one.
+         */
+        super(BackpressurePolicy.DROP_OLDEST);
+    }
+
     @Override
     protected void onShutdown() {
 
@@ -10,25 +10,79 @@
 package com.mirth.connect.server.event;
 
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
 
 import com.mirth.connect.donkey.model.event.Event;
+import com.mirth.connect.donkey.server.event.ConnectionStatusEvent;
+import com.mirth.connect.donkey.server.event.ConnectorCountEvent;
 import com.mirth.connect.donkey.server.event.EventType;
+import com.mirth.connect.donkey.server.event.MessageEvent;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
 
 public abstract class EventListener implements Runnable {
 
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final long DROPPED_LOG_INTERVAL_MILLIS = 60000;
+
     private Thread workerThread = new Thread(this);
-    protected BlockingQueue<Event> queue = new LinkedBlockingQueue<Event>();
+    protected EventQueue queue;
+    private long loggedDroppedCount;
+    private long droppedLoggedTime;
+    private Logger logger = Logger.getLogger(EventListener.class);
 
     public EventListener() {
+        this(BackpressurePolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public EventListener(BackpressurePolicy policy) {
+        this(policy, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public EventListener(BackpressurePolicy policy, int queueCapacity) {
+        queue = new EventQueue(queueCapacity, policy);
         workerThread.start();
     }
 
-    public BlockingQueue<Event> getQueue() {
+    public EventQueue getQueue() {
         return queue;
     }
 
+    /**
+     * Adds an event to this listener's queue. Depending on the queue's backpressure policy, this
+     * may block until the listener has caught up. An event dispatched while the listener itself is
+     * processing one never blocks, since only this listener can make room, and is dropped instead
+     * if the queue is full.
+     */
+    public void dispatchEvent(Event event) throws InterruptedException {
+        if (Thread.currentThread() == workerThread) {
+            queue.offer(event, getCoalescingKey(event));
+        } else {
+            queue.put(event, getCoalescingKey(event));
+        }
+    }
+
+    /**
+     * Returns the key used to collapse pending events into the latest one when the queue uses the
+     * COALESCE policy, or null if the event must always be processed. By default only events that
+     * carry an absolute value are coalesced: message counts, and the state of a connector. Connector
+     * count events are increments, so they are never coalesced.
+     */
+    protected Object getCoalescingKey(Event event) {
+        if (event instanceof MessageEvent) {
+            MessageEvent messageEvent = (MessageEvent) event;
+            return "message_" + messageEvent.getChannelId() + "_" + messageEvent.getMetaDataId() + "_" + messageEvent.getType();
+        } else if (event instanceof ConnectionStatusEvent && !(event instanceof ConnectorCountEvent)) {
+            ConnectionStatusEvent connectionStatusEvent = (ConnectionStatusEvent) event;
+
+            if (connectionStatusEvent.getState() != null && connectionStatusEvent.getState().isState()) {
+                return "state_" + connectionStatusEvent.getChannelId() + "_" + connectionStatusEvent.getMetaDataId();
+            }
+        }
+
+        return null;
+    }
+
     public void shutdown() {
         workerThread.interrupt();
 
@@ -48,6 +102,7 @@ public abstract class EventListener implements Runnable {
                 Event event = queue.take();
 
                 processEvent(event);
+                logDroppedEvents();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             } catch (Throwable t) {
@@ -55,4 +110,18 @@ public abstract class EventListener implements Runnable {
             }
         }
     }
+
+    /*
+     * Logs how many events were dropped since the last time, at most once per interval so that a
+     * listener that keeps falling behind doesn't flood the log.
+     */
+    private void logDroppedEvents() {
+        long droppedCount = queue.getDroppedCount();
+
+        if (droppedCount > loggedDroppedCount && System.currentTimeMillis() - droppedLoggedTime >= DROPPED_LOG_INTERVAL_MILLIS) {
+            logger.warn(getClass().getName() + " dropped " + (droppedCount - loggedDroppedCount) + " events because its queue was full: " + queue);
+            loggedDroppedCount = droppedCount;
+            droppedLoggedTime = System.currentTimeMillis();
+        }
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.mirth.connect.donkey.model.event.Event;
+
+/**
+ * A bounded ring buffer of events waiting to be processed by a single event listener. What happens
+ * when the buffer is full depends on the backpressure policy:
+ *
+ * BLOCK: The dispatching thread waits until the listener has made room.
+ *
+ * DROP_OLDEST: The oldest pending event is discarded to make room for the new one.
+ *
+ * COALESCE: An event with a coalescing key replaces the pending event with the same key, if there
+ * is one. The replaced event is removed from its position and the new event is added to the end,
+ * so events are still processed in the order their latest values were dispatched. Events without a
+ * key, or dispatched when there is no room, block as with BLOCK.
+ */
+public class EventQueue {
+
+    public enum BackpressurePolicy {
+        BLOCK, DROP_OLDEST, COALESCE
+    }
+
+    private final BackpressurePolicy policy;
+    private final Event[] events;
+    private final Object[] keys;
+    private final long[] dispatchTimes;
+    private final Map<Object, Integer> pendingKeys = new HashMap<Object, Integer>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // The first occupied slot, and the number of slots between it and the end of the buffer
+    private int head;
+    private int slots;
+    // The number of slots that still hold an event, i.e. haven't been coalesced away
+    private int size;
+
+    private long dispatchedCount;
+    private long processedCount;
+    private long droppedCount;
+    private long coalescedCount;
+
+    public EventQueue(int capacity, BackpressurePolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The event queue capacity must be greater than zero.");
+        }
+
+        this.policy = policy;
+        events = new Event[capacity];
+        keys = new Object[capacity];
+        dispatchTimes = new long[capacity];
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Adds an event to the end of the queue. If the policy is COALESCE and the key is not null, any
+     * pending event with the same key is replaced.
+     */
+    public void put(Event event, Object key) throws InterruptedException {
+        add(event, key, true);
+    }
+
+    /**
+     * Adds an event to the end of the queue without waiting. If the queue is full and the policy
+     * would otherwise block, the event is counted as dropped and false is returned.
+     */
+    public boolean offer(Event event, Object key) throws InterruptedException {
+        return add(event, key, false);
+    }
+
+    private boolean add(Event event, Object key, boolean wait) throws InterruptedException {
+        lock.lockInterruptibly();
+
+        try {
+            dispatchedCount++;
+
+            if (policy == BackpressurePolicy.COALESCE && key != null) {
+                Integer index = pendingKeys.get(key);
+
+                if (index != null) {
+                    coalescedCount++;
+
+                    if (slots == events.length) {
+                        // There's no room to move it to the end, so replace it where it is
+                        events[index] = event;
+                        return true;
+                    }
+
+                    events[index] = null;
+                    keys[index] = null;
+                    size--;
+                }
+            }
+
+            while (slots == events.length) {
+                if (policy == BackpressurePolicy.DROP_OLDEST) {
+                    if (removeHead() != null) {
+                        droppedCount++;
+                    }
+                } else if (wait) {
+                    notFull.await();
+                } else {
+                    droppedCount++;
+                    return false;
+                }
+            }
+
+            int index = (head + slots) % events.length;
+            events[index] = event;
+            dispatchTimes[index] = System.currentTimeMillis();
+            slots++;
+            size++;
+
+            if (policy == BackpressurePolicy.COALESCE && key != null) {
+                keys[index] = key;
+                pendingKeys.put(key, index);
+            }
+
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the oldest pending event, waiting for one to be dispatched if necessary.
+     */
+    public Event take() throws InterruptedException {
+        lock.lockInterruptibly();
+
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+
+            Event event = null;
+
+            while (event == null) {
+                event = removeHead();
+            }
+
+            processedCount++;
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be processed.
+     */
+    public int size() {
+        lock.lock();
+
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how long, in milliseconds, the oldest pending event has been waiting to be processed.
+     */
+    public long getLag() {
+        lock.lock();
+
+        try {
+            for (int i = 0; i < slots; i++) {
+                int index = (head + i) % events.length;
+
+                if (events[index] != null) {
+                    return Math.max(System.currentTimeMillis() - dispatchTimes[index], 0);
+                }
+            }
+
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDispatchedCount() {
+        lock.lock();
+
+        try {
+            return dispatchedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getProcessedCount() {
+        lock.lock();
+
+        try {
+            return processedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCoalescedCount() {
+        lock.lock();
+
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventQueue[policy=" + policy + ", capacity=" + getCapacity() + ", size=" + size() + ", lag=" + getLag() + "ms, dispatched=" + getDispatchedCount() + ", processed=" + getProcessedCount() + ", dropped=" + getDroppedCount() + ", coalesced=" + getCoalescedCount() + "]";
+    }
+
+    /*
+     * Frees the head slot and returns the event it held, which is null if the event was coalesced
+     * away. Must be called while holding the lock, with at least one occupied slot.
+     */
+    private Event removeHead() {
+        Event event = events[head];
+
+        if (event != null) {
+            if (keys[head] != null) {
+                pendingKeys.remove(keys[head]);
+            }
+
+            size--;
+        }
+
+        events[head] = null;
+        keys[head] = null;
+        head = (head + 1) % events.length;
+        slots--;
+        notFull.signal();
+
+        return event;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.event.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.mirth.connect.donkey.model.event.Event;
+import com.mirth.connect.donkey.model.event.MessageEventType;
+import com.mirth.connect.donkey.server.event.EventType;
+import com.mirth.connect.donkey.server.event.MessageEvent;
+import com.mirth.connect.server.event.EventListener;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
+
+public class EventListenerTest {
+
+    @Test
+    public void testDispatchFromListenerThread() throws Exception {
+        final CountDownLatch processed = new CountDownLatch(1);
+
+        EventListener listener = new EventListener(BackpressurePolicy.BLOCK, 2) {
+            @Override
+            protected void processEvent(Event event) {
+                if (processed.getCount() == 0) {
+                    return;
+                }
+
+                try {
+                    // Dispatching more events than the queue holds would wait forever if it blocked
+                    for (int i = 0; i < 5; i++) {
+                        dispatchEvent(createEvent(i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                processed.countDown();
+            }
+
+            @Override
+            protected void onShutdown() {}
+
+            @Override
+            public Set<EventType> getEventTypes() {
+                return new HashSet<EventType>();
+            }
+        };
+
+        try {
+            listener.dispatchEvent(createEvent(0));
+
+            assertTrue(processed.await(5, TimeUnit.SECONDS));
+            assertEquals(3, listener.getQueue().getDroppedCount());
+        } finally {
+            listener.shutdown();
+        }
+    }
+
+    private Event createEvent(long count) {
+        return new MessageEvent("eventlistenertest", 1, MessageEventType.QUEUED, count, false);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.event.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.mirth.connect.donkey.model.event.Event;
+import com.mirth.connect.donkey.model.event.MessageEventType;
+import com.mirth.connect.donkey.server.event.MessageEvent;
+import com.mirth.connect.server.event.EventQueue;
+import com.mirth.connect.server.event.EventQueue.BackpressurePolicy;
+
+public class EventQueueTest {
+
+    @Test
+    public void testBlock() throws Exception {
+        final EventQueue queue = new EventQueue(2, BackpressurePolicy.BLOCK);
+        Event first = createEvent(1);
+        Event second = createEvent(2);
+        final Event third = createEvent(3);
+
+        queue.put(first, null);
+        queue.put(second, null);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(third, null);
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+
+        thread.start();
+        thread.join(200);
+        // The queue is full, so the third event must wait until one has been taken
+        assertEquals(true, thread.isAlive());
+        assertEquals(2, queue.size());
+
+        assertSame(first, queue.take());
+        thread.join(5000);
+        assertSame(second, queue.take());
+        assertSame(third, queue.take());
+        assertEquals(0, queue.size());
+        assertEquals(3, queue.getProcessedCount());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        EventQueue queue = new EventQueue(2, BackpressurePolicy.DROP_OLDEST);
+        Event first = createEvent(1);
+        Event second = createEvent(2);
+        Event third = createEvent(3);
+
+        queue.put(first, null);
+        queue.put(second, null);
+        queue.put(third, null);
+
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertSame(second, queue.take());
+        assertSame(third, queue.take());
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        EventQueue queue = new EventQueue(4, BackpressurePolicy.COALESCE);
+        Event first = createEvent(1);
+        Event other = createEvent(2);
+        Event second = createEvent(3);
+        Event third = createEvent(4);
+
+        queue.put(first, "key");
+        queue.put(other, null);
+        queue.put(second, "key");
+
+        // The latest value moves to the end, after the event that was dispatched between them
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getCoalescedCount());
+        assertSame(other, queue.take());
+        assertSame(second, queue.take());
+
+        // Once taken, the key no longer coalesces
+        queue.put(third, "key");
+        assertEquals(1, queue.size());
+        assertSame(third, queue.take());
+        assertEquals(4, queue.getDispatchedCount());
+        assertEquals(3, queue.getProcessedCount());
+    }
+
+    @Test
+    public void testCoalesceWhenFull() throws Exception {
+        EventQueue queue = new EventQueue(2, BackpressurePolicy.COALESCE);
+        Event first = createEvent(1);
+        Event other = createEvent(2);
+        Event second = createEvent(3);
+
+        queue.put(first, "key");
+        queue.put(other, null);
+        // There's no room to add it to the end, so it replaces the pending event without blocking
+        queue.put(second, "key");
+
+        assertEquals(2, queue.size());
+        assertSame(second, queue.take());
+        assertSame(other, queue.take());
+    }
+
+    @Test
+    public void testOfferWhenFull() throws Exception {
+        EventQueue queue = new EventQueue(2, BackpressurePolicy.BLOCK);
+        Event first = createEvent(1);
+        Event second = createEvent(2);
+
+        assertEquals(true, queue.offer(first, null));
+        assertEquals(true, queue.offer(second, null));
+        // The queue is full, so the event is dropped instead of waiting
+        assertEquals(false, queue.offer(createEvent(3), null));
+
+        assertEquals(1, queue.getDroppedCount());
+        assertSame(first, queue.take());
+        assertSame(second, queue.take());
+    }
+
+    private Event createEvent(long count) {
+        return new MessageEvent("eventqueuetest", 1, MessageEventType.QUEUED, count, false);
+    }
+}
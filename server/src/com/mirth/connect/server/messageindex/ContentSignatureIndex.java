@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.messageindex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index of the message content of a single channel, used to find the messages that
+ * may contain a search string without scanning the content table.
+ * 
+ * Each message is stored as a bit signature of the trigrams (three character sequences) in its
+ * content, ignoring case. A message can only contain a string if its signature has the bits of
+ * every trigram in the string, so the index returns a superset of the matching messages, which is
+ * then verified by the database search. A signature is a small fraction of the size of the content
+ * it represents, and false positives only cost a database lookup.
+ * 
+ * The index covers a contiguous range of message IDs. Messages in that range that were not yet
+ * finished when they were indexed are kept as pending, and are always returned as candidates until
+ * they are indexed. IDs with no message yet are pending as well, since the transaction that inserts
+ * them may not have been committed. Pending IDs are only dropped when the covered range moves past
+ * them, so a message that turns up late is never missed.
+ */
+public class ContentSignatureIndex {
+    private static final int BITS_PER_TRIGRAM = 8;
+    private static final int MAX_SIGNATURE_WORDS = 1024;
+    private static final int HASH_FUNCTIONS = 3;
+    // How far past the covered range a search may go, for messages that haven't been indexed yet
+    private static final int MAX_UNCOVERED_MESSAGES = 10000;
+
+    private final int capacity;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ring buffer of indexed messages in ascending message ID order
+    private final long[] messageIds;
+    private final long[][] signatures;
+    private int head;
+    private int size;
+
+    // The range of message IDs covered by the index, empty while coveredTo < coveredFrom
+    private long coveredFrom;
+    private long coveredTo;
+
+    // Message IDs in the covered range that could not be indexed yet, mapped to when they were added
+    private final TreeMap<Long, Long> pending = new TreeMap<Long, Long>();
+    // The last stale pending ID returned by getPending, so they're returned in turns
+    private long stalePendingCursor;
+
+    public ContentSignatureIndex(int capacity, long firstMessageId) {
+        this.capacity = capacity;
+        messageIds = new long[capacity];
+        signatures = new long[capacity][];
+        coveredFrom = firstMessageId;
+        coveredTo = firstMessageId - 1;
+    }
+
+    /**
+     * Returns the first message ID that has not been looked at yet.
+     */
+    public long getNextMessageId() {
+        lock.readLock().lock();
+
+        try {
+            return coveredTo + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a finished message to the index. Messages that are newer than the covered range must be
+     * added in ascending order.
+     */
+    public void add(long messageId, Collection<String> contents) {
+        long[] signature = createSignature(contents);
+
+        lock.writeLock().lock();
+
+        try {
+            if (pending.remove(messageId) != null || (messageId >= coveredFrom && messageId <= coveredTo && !contains(messageId))) {
+                // The message is older than the last indexed message, so insert it in order
+                insert(messageId, signature);
+            } else if (messageId > coveredTo) {
+                append(messageId, signature);
+                coveredTo = messageId;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a message as not yet finished. It is always returned as a candidate until it is added,
+     * or the covered range moves past it. There can be at most as many pending IDs as the capacity
+     * of the index, after which the oldest ones are no longer covered.
+     */
+    public void addPending(long messageId) {
+        lock.writeLock().lock();
+
+        try {
+            if (messageId >= coveredFrom) {
+                remove(messageId);
+
+                if (!pending.containsKey(messageId)) {
+                    pending.put(messageId, System.currentTimeMillis());
+                }
+
+                if (messageId > coveredTo) {
+                    coveredTo = messageId;
+                }
+
+                if (pending.size() > capacity) {
+                    setCoveredFrom(pending.firstKey() + 1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks every message ID up to and including the given one as looked at, for gaps that had no
+     * message at all.
+     */
+    public void setCoveredTo(long messageId) {
+        lock.writeLock().lock();
+
+        try {
+            coveredTo = Math.max(coveredTo, messageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to limit pending message IDs to look up again. IDs that were added at or after the
+     * given time come first, oldest first. Any room left goes to the older IDs, which were most
+     * likely rolled back or reserved and never used, in turns, so each of them is looked up again
+     * eventually without holding up the newer ones.
+     */
+    public List<Long> getPending(int limit, long staleBefore) {
+        lock.writeLock().lock();
+
+        try {
+            List<Long> result = new ArrayList<Long>(Math.min(limit, pending.size()));
+
+            for (Entry<Long, Long> entry : pending.entrySet()) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+
+                if (entry.getValue() >= staleBefore) {
+                    result.add(entry.getKey());
+                }
+            }
+
+            long cursor = stalePendingCursor;
+            addStalePending(result, pending.tailMap(cursor, false), limit, staleBefore);
+            addStalePending(result, pending.headMap(cursor, true), limit, staleBefore);
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything before the given message ID, e.g. after the data pruner has removed those
+     * messages.
+     */
+    public void removeBefore(long messageId) {
+        lock.writeLock().lock();
+
+        try {
+            setCoveredFrom(messageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the IDs of the messages between minMessageId and maxMessageId that may contain all of
+     * the given strings, or null if the index can't tell, because the range isn't covered or none of
+     * the strings are long enough to be looked up. Messages newer than the covered range, which
+     * haven't been looked at yet, are always included.
+     * 
+     * The strings are search patterns for a LIKE expression, so only the literal characters between
+     * wildcards are looked up.
+     */
+    public Set<Long> getCandidates(Collection<String> searches, long minMessageId, long maxMessageId) {
+        List<Long> hashes = new ArrayList<Long>();
+
+        for (String search : searches) {
+            if (search != null) {
+                for (String literal : search.split("[%_\\[\\]]")) {
+                    addTrigramHashes(literal, hashes);
+                }
+            }
+        }
+
+        if (hashes.isEmpty()) {
+            return null;
+        }
+
+        if (minMessageId > maxMessageId) {
+            return new HashSet<Long>();
+        }
+
+        lock.readLock().lock();
+
+        try {
+            if (minMessageId < coveredFrom || maxMessageId - coveredTo > MAX_UNCOVERED_MESSAGES) {
+                return null;
+            }
+
+            Set<Long> candidates = new HashSet<Long>(pending.subMap(minMessageId, true, maxMessageId, true).keySet());
+
+            for (long messageId = Math.max(coveredTo + 1, minMessageId); messageId <= maxMessageId; messageId++) {
+                candidates.add(messageId);
+            }
+
+            for (int i = indexOf(minMessageId); i < size; i++) {
+                int index = (head + i) % capacity;
+
+                if (messageIds[index] > maxMessageId) {
+                    break;
+                }
+
+                if (containsAll(signatures[index], hashes)) {
+                    candidates.add(messageIds[index]);
+                }
+            }
+
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addStalePending(List<Long> result, Map<Long, Long> stalePending, int limit, long staleBefore) {
+        for (Entry<Long, Long> entry : stalePending.entrySet()) {
+            if (result.size() >= limit) {
+                return;
+            }
+
+            if (entry.getValue() < staleBefore) {
+                result.add(entry.getKey());
+                stalePendingCursor = entry.getKey();
+            }
+        }
+    }
+
+    private void setCoveredFrom(long messageId) {
+        while (size > 0 && messageIds[head] < messageId) {
+            removeHead();
+        }
+
+        pending.headMap(messageId).clear();
+        coveredFrom = Math.max(coveredFrom, messageId);
+        coveredTo = Math.max(coveredTo, coveredFrom - 1);
+    }
+
+    private boolean contains(long messageId) {
+        int position = indexOf(messageId);
+        return position < size && messageIds[(head + position) % capacity] == messageId;
+    }
+
+    /*
+     * Returns the position of the first indexed message with an ID of at least the given one.
+     */
+    private int indexOf(long messageId) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (messageIds[(head + middle) % capacity] < messageId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void append(long messageId, long[] signature) {
+        if (size == capacity) {
+            removeHead();
+        }
+
+        int index = (head + size) % capacity;
+        messageIds[index] = messageId;
+        signatures[index] = signature;
+        size++;
+    }
+
+    private void insert(long messageId, long[] signature) {
+        if (messageId < coveredFrom) {
+            return;
+        }
+
+        int position = indexOf(messageId);
+
+        if (size == capacity) {
+            if (position == 0) {
+                // Older than everything in a full index, so it would be evicted right away
+                coveredFrom = messageId + 1;
+                pending.headMap(coveredFrom).clear();
+                return;
+            }
+
+            removeHead();
+            position--;
+        }
+
+        // Shift the newer messages up by one to make room
+        for (int i = size; i > position; i--) {
+            int to = (head + i) % capacity;
+            int from = (head + i - 1) % capacity;
+            messageIds[to] = messageIds[from];
+            signatures[to] = signatures[from];
+        }
+
+        int index = (head + position) % capacity;
+        messageIds[index] = messageId;
+        signatures[index] = signature;
+        size++;
+    }
+
+    private void remove(long messageId) {
+        int position = indexOf(messageId);
+
+        if (position < size && messageIds[(head + position) % capacity] == messageId) {
+            for (int i = position; i < size - 1; i++) {
+                int to = (head + i) % capacity;
+                int from = (head + i + 1) % capacity;
+                messageIds[to] = messageIds[from];
+                signatures[to] = signatures[from];
+            }
+
+            signatures[(head + size - 1) % capacity] = null;
+            size--;
+        }
+    }
+
+    private void removeHead() {
+        coveredFrom = messageIds[head] + 1;
+        signatures[head] = null;
+        head = (head + 1) % capacity;
+        size--;
+        pending.headMap(coveredFrom).clear();
+    }
+
+    static long[] createSignature(Collection<String> contents) {
+        long trigrams = 0;
+
+        for (String content : contents) {
+            trigrams += Math.max(content.length() - 2, 0);
+        }
+
+        int words = 1;
+
+        while (words < MAX_SIGNATURE_WORDS && (long) words * 64 < trigrams * BITS_PER_TRIGRAM) {
+            words <<= 1;
+        }
+
+        long[] signature = new long[words];
+        List<Long> hashes = new ArrayList<Long>();
+
+        for (String content : contents) {
+            hashes.clear();
+            addTrigramHashes(content, hashes);
+
+            for (Long hash : hashes) {
+                setBits(signature, hash);
+            }
+        }
+
+        return signature;
+    }
+
+    private static void addTrigramHashes(String text, List<Long> hashes) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            long trigram = ((long) normalize(text.charAt(i)) << 32) | ((long) normalize(text.charAt(i + 1)) << 16) | normalize(text.charAt(i + 2));
+            hashes.add(mix(trigram));
+        }
+    }
+
+    private static void setBits(long[] signature, long hash) {
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = getBit(signature, hash, i);
+            signature[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static boolean containsAll(long[] signature, List<Long> hashes) {
+        for (Long hash : hashes) {
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                int bit = getBit(signature, hash, i);
+
+                if ((signature[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Derives the bit for each hash function from the two halves of the hash. The second half is
+     * made odd so that it cycles through every bit of the power of two sized signature.
+     */
+    private static int getBit(long[] signature, long hash, int function) {
+        int bits = signature.length * 64;
+        return ((int) hash + function * ((int) (hash >>> 32) | 1)) & (bits - 1);
+    }
+
+    /*
+     * Case-insensitive searches may match a character against its upper or lower case form, so both
+     * are mapped to the same character.
+     */
+    private static char normalize(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /*
+     * The finalizer from MurmurHash3, to spread the trigram over all 64 bits.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
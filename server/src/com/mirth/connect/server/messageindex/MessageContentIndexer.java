@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.messageindex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.log4j.Logger;
+
+import com.mirth.connect.donkey.model.message.MessageContent;
+import com.mirth.connect.donkey.server.controllers.ChannelController;
+import com.mirth.connect.server.controllers.ControllerFactory;
+import com.mirth.connect.server.controllers.MessageController;
+import com.mirth.connect.server.mybatis.MessageSearchResult;
+import com.mirth.connect.server.util.ListRangeIterator;
+import com.mirth.connect.server.util.SqlConfig;
+import com.mirth.connect.util.PropertyLoader;
+
+/**
+ * Keeps a ContentSignatureIndex of the most recent messages of each deployed channel, which the
+ * message browser uses to narrow down content searches before they go to the database.
+ * 
+ * A background thread reads the content of new messages once they have finished processing, so
+ * indexing never holds up the channels. Messages that are still processing or queued are retried
+ * until they finish. The index is only kept in memory, and is rebuilt in the background when the
+ * server starts or a channel is redeployed.
+ */
+public class MessageContentIndexer {
+    private static final int DEFAULT_MAX_MESSAGES = 50000;
+    private static final int BATCH_SIZE = 100;
+    private static final long INDEX_INTERVAL = 5000;
+    // Message IDs that still don't exist after this long were most likely rolled back or never used
+    private static final long PENDING_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    private static MessageContentIndexer instance = null;
+
+    private Logger logger = Logger.getLogger(getClass());
+    private boolean enabled;
+    private int maxMessages;
+    private Map<String, ContentSignatureIndex> indexes = new ConcurrentHashMap<String, ContentSignatureIndex>();
+    private Thread thread;
+
+    public static MessageContentIndexer getInstance() {
+        synchronized (MessageContentIndexer.class) {
+            if (instance == null) {
+                instance = new MessageContentIndexer();
+            }
+
+            return instance;
+        }
+    }
+
+    private MessageContentIndexer() {
+        Properties properties = PropertyLoader.loadProperties("mirth");
+        enabled = BooleanUtils.toBoolean(StringUtils.trim(properties.getProperty("messageindex.enabled")));
+        maxMessages = Math.max(NumberUtils.toInt(StringUtils.trim(properties.getProperty("messageindex.maxmessages")), DEFAULT_MAX_MESSAGES), 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void start() {
+        if (!enabled || thread != null) {
+            return;
+        }
+
+        thread = new Thread("Message Content Indexer") {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    try {
+                        indexChannels();
+                        Thread.sleep(INDEX_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Throwable t) {
+                        logger.warn("Error indexing message content.", t);
+                    }
+                }
+            }
+        };
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+
+            try {
+                thread.join(INDEX_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            thread = null;
+        }
+
+        indexes.clear();
+    }
+
+    /**
+     * Returns the IDs of the messages in the given range that may contain all of the given search
+     * strings, or null if the channel's index can't narrow down the search.
+     */
+    public Set<Long> getCandidates(String channelId, Collection<String> searches, long minMessageId, long maxMessageId) {
+        ContentSignatureIndex index = indexes.get(channelId);
+        return index != null ? index.getCandidates(searches, minMessageId, maxMessageId) : null;
+    }
+
+    /**
+     * Marks a message as changed, e.g. because it's being reprocessed in place, so it's treated as a
+     * candidate until it's indexed again.
+     */
+    public void invalidate(String channelId, long messageId) {
+        ContentSignatureIndex index = indexes.get(channelId);
+
+        if (index != null) {
+            index.addPending(messageId);
+        }
+    }
+
+    /**
+     * Drops the index of a channel, e.g. because all of its messages were removed.
+     */
+    public void removeChannel(String channelId) {
+        indexes.remove(channelId);
+    }
+
+    private void indexChannels() throws InterruptedException {
+        Set<String> deployedIds = ControllerFactory.getFactory().createEngineController().getDeployedIds();
+
+        // Undeployed channels may change while nothing is watching them, so they start over
+        indexes.keySet().retainAll(deployedIds);
+
+        for (String channelId : deployedIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+
+            try {
+                indexChannel(channelId);
+            } catch (Exception e) {
+                logger.warn("Error indexing message content for channel " + channelId + ".", e);
+            }
+        }
+    }
+
+    private void indexChannel(String channelId) {
+        Long localChannelId = ChannelController.getInstance().getLocalChannelId(channelId);
+
+        if (localChannelId == null) {
+            return;
+        }
+
+        MessageController messageController = ControllerFactory.getFactory().createMessageController();
+        long minMessageId = messageController.getMinMessageId(channelId);
+        long maxMessageId = messageController.getMaxMessageId(channelId);
+
+        ContentSignatureIndex index = indexes.get(channelId);
+
+        if (index == null) {
+            index = new ContentSignatureIndex(maxMessages, Math.max(minMessageId, maxMessageId - maxMessages + 1));
+            indexes.put(channelId, index);
+        }
+
+        // Messages removed by the data pruner
+        index.removeBefore(minMessageId);
+
+        /*
+         * Pending IDs are kept until they're indexed, even if they may have been rolled back, since
+         * a slow transaction or another server's block of IDs may still commit them.
+         */
+        List<Long> pendingIds = index.getPending(ListRangeIterator.DEFAULT_LIST_LIMIT, System.currentTimeMillis() - PENDING_TIMEOUT);
+
+        if (!pendingIds.isEmpty()) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("includeMessageList", StringUtils.join(pendingIds, ","));
+            indexMessages(localChannelId, index, params);
+        }
+
+        while (index.getNextMessageId() <= maxMessageId && !Thread.currentThread().isInterrupted()) {
+            long batchMinMessageId = index.getNextMessageId();
+            long batchMaxMessageId = Math.min(batchMinMessageId + BATCH_SIZE - 1, maxMessageId);
+
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("minMessageId", batchMinMessageId);
+            params.put("maxMessageId", batchMaxMessageId);
+
+            Set<Long> foundIds = indexMessages(localChannelId, index, params);
+
+            // A missing message may still be in a transaction that hasn't been committed yet
+            for (long messageId = batchMinMessageId; messageId <= batchMaxMessageId; messageId++) {
+                if (!foundIds.contains(messageId)) {
+                    index.addPending(messageId);
+                }
+            }
+
+            index.setCoveredTo(batchMaxMessageId);
+        }
+    }
+
+    /*
+     * Indexes the finished messages selected by the given parameters, and marks the others as
+     * pending. Returns the IDs of all the messages that were found.
+     */
+    private Set<Long> indexMessages(Long localChannelId, ContentSignatureIndex index, Map<String, Object> params) {
+        SqlSession session = SqlConfig.getSqlSessionManager();
+        params.put("localChannelId", localChannelId);
+
+        List<MessageSearchResult> messages = session.selectList("Message.selectMessagesById", params);
+        Set<Long> foundIds = new HashSet<Long>(messages.size());
+
+        if (messages.isEmpty()) {
+            return foundIds;
+        }
+
+        Set<Long> unfinishedIds = new HashSet<Long>(session.<Long> selectList("Message.selectUnfinishedMessageIds", params));
+        Map<Long, List<String>> contents = new HashMap<Long, List<String>>();
+
+        for (MessageContent content : session.<MessageContent> selectList("Message.selectContentForIndex", params)) {
+            // Encrypted content can't be searched by the database either
+            if (content.getContent() != null && !content.isEncrypted()) {
+                List<String> messageContents = contents.get(content.getMessageId());
+
+                if (messageContents == null) {
+                    messageContents = new ArrayList<String>();
+                    contents.put(content.getMessageId(), messageContents);
+                }
+
+                messageContents.add(content.getContent());
+            }
+        }
+
+        // The messages are selected in descending order, but must be added in ascending order
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            MessageSearchResult message = messages.get(i);
+            Long messageId = message.getMessageId();
+            foundIds.add(messageId);
+
+            if (BooleanUtils.isTrue(message.isProcessed()) && !unfinishedIds.contains(messageId)) {
+                List<String> messageContents = contents.get(messageId);
+                index.add(messageId, messageContents != null ? messageContents : new ArrayList<String>());
+            } else {
+                index.addPending(messageId);
+            }
+        }
+
+        return foundIds;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.messageindex.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.mirth.connect.server.messageindex.ContentSignatureIndex;
+
+public class ContentSignatureIndexTest {
+
+    @Test
+    public void testCandidates() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(100, 1);
+        index.add(1, Arrays.asList("MSH|^~\\&|LAB|FACILITY\rPID|1||12345^^^MRN||DOE^JOHN"));
+        index.add(2, Arrays.asList("MSH|^~\\&|LAB|FACILITY\rPID|1||67890^^^MRN||SMITH^JANE"));
+        index.add(3, Arrays.asList("<result><name>Smith</name></result>", "raw content"));
+
+        assertEquals(set(1L), index.getCandidates(search("doe^john"), 1, 3));
+        assertEquals(set(2L, 3L), index.getCandidates(search("SMITH"), 1, 3));
+        assertEquals(set(3L), index.getCandidates(search("smith", "raw con"), 1, 3));
+        assertEquals(set(), index.getCandidates(search("not in any message"), 1, 3));
+        assertEquals(set(2L), index.getCandidates(search("SMITH"), 2, 2));
+
+        // Only the literals between LIKE wildcards are looked up
+        assertEquals(set(1L), index.getCandidates(search("DOE%JOHN"), 1, 3));
+        assertEquals(set(1L, 2L), index.getCandidates(search("PID_1"), 1, 3));
+
+        // Strings that are too short can't be looked up
+        assertNull(index.getCandidates(search("DO"), 1, 3));
+    }
+
+    @Test
+    public void testCoverage() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(100, 5);
+        index.add(5, Arrays.asList("first message"));
+        index.addPending(6);
+        index.add(7, Arrays.asList("third message"));
+
+        // Messages before the covered range can't be looked up
+        assertNull(index.getCandidates(search("first"), 1, 7));
+
+        // Pending messages and messages after the covered range are always candidates
+        assertEquals(set(5L, 6L, 8L, 9L), index.getCandidates(search("first"), 5, 9));
+
+        index.add(6, Arrays.asList("second message"));
+        assertEquals(set(6L), index.getCandidates(search("second"), 5, 7));
+
+        // Changed messages are candidates until they're indexed again
+        index.addPending(5);
+        assertEquals(set(5L, 6L), index.getCandidates(search("second"), 5, 7));
+
+        index.removeBefore(7);
+        assertNull(index.getCandidates(search("second"), 5, 7));
+        assertEquals(set(7L), index.getCandidates(search("third"), 7, 7));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(2, 1);
+        index.add(1, Arrays.asList("message one"));
+        index.add(2, Arrays.asList("message two"));
+        index.add(3, Arrays.asList("message three"));
+
+        assertEquals(2, index.size());
+        assertNull(index.getCandidates(search("message"), 1, 3));
+        assertEquals(set(2L, 3L), index.getCandidates(search("message"), 2, 3));
+    }
+
+    @Test
+    public void testLateCommit() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(100, 1);
+        index.add(1, Arrays.asList("first message"));
+        index.addPending(2);
+        index.add(3, Arrays.asList("third message"));
+
+        // The message is still missing long after its ID was reserved, but stays a candidate
+        assertEquals(Arrays.asList(2L), index.getPending(10, Long.MAX_VALUE));
+        assertEquals(set(2L), index.getCandidates(search("second"), 1, 3));
+
+        // Once it's committed it's indexed like any other message
+        index.add(2, Arrays.asList("second message"));
+        assertEquals(Arrays.<Long> asList(), index.getPending(10, Long.MAX_VALUE));
+        assertEquals(set(2L), index.getCandidates(search("second"), 1, 3));
+        assertEquals(set(), index.getCandidates(search("fourth"), 1, 3));
+
+        // A message inside the covered range that was never pending is still inserted
+        index.setCoveredTo(5);
+        index.add(4, Arrays.asList("fourth message"));
+        assertEquals(set(4L), index.getCandidates(search("fourth"), 1, 5));
+    }
+
+    @Test
+    public void testStalePending() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(100, 1);
+
+        for (long messageId = 1; messageId <= 5; messageId++) {
+            index.addPending(messageId);
+        }
+
+        // Recent IDs are always returned oldest first
+        assertEquals(Arrays.asList(1L, 2L), index.getPending(2, 0));
+        assertEquals(Arrays.asList(1L, 2L), index.getPending(2, 0));
+
+        // Stale IDs are returned in turns
+        assertEquals(Arrays.asList(1L, 2L), index.getPending(2, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(3L, 4L), index.getPending(2, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(5L, 1L), index.getPending(2, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPendingCapacity() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(2, 1);
+        index.addPending(1);
+        index.addPending(2);
+        index.addPending(3);
+
+        // The oldest pending ID is no longer covered rather than no longer a candidate
+        assertNull(index.getCandidates(search("message"), 1, 3));
+        assertEquals(set(2L, 3L), index.getCandidates(search("message"), 2, 3));
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        ContentSignatureIndex index = new ContentSignatureIndex(1000, 1);
+
+        for (int i = 1; i <= 1000; i++) {
+            index.add(i, Arrays.asList("MSH|^~\\&|LAB|FACILITY|EMR|FACILITY|20130101120000||ORU^R01|" + i + "|P|2.3\rPID|1||" + (100000 + i) + "^^^MRN||DOE" + i + "^JOHN"));
+        }
+
+        Set<Long> candidates = index.getCandidates(search("100500^^^MRN"), 1, 1000);
+        assertTrue(candidates.contains(500L));
+        assertTrue("Too many false positives: " + candidates.size(), candidates.size() < 20);
+    }
+
+    private List<String> search(String... searches) {
+        return Arrays.asList(searches);
+    }
+
+    private Set<Long> set(Long... messageIds) {
+        Set<Long> set = new HashSet<Long>();
+        Collections.addAll(set, messageIds);
+        return set;
+    }
+}
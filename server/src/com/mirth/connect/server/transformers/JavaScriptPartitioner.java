@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.transformers;
+
+import com.mirth.connect.donkey.model.DonkeyException;
+import com.mirth.connect.donkey.model.message.RawMessage;
+import com.mirth.connect.donkey.server.channel.components.Partitioner;
+import com.mirth.connect.server.util.javascript.JavaScriptExecutorException;
+import com.mirth.connect.server.util.javascript.JavaScriptUtil;
+import com.mirth.connect.util.ErrorMessageBuilder;
+
+/**
+ * Selects the processing lane for a raw message by running the channel's partition key script.
+ * The script has access to the raw message (null for binary messages) and the source map.
+ */
+public class JavaScriptPartitioner implements Partitioner {
+
+    private String channelId;
+
+    public JavaScriptPartitioner(String channelId) {
+        this.channelId = channelId;
+    }
+
+    @Override
+    public Object getPartitionKey(RawMessage rawMessage) throws DonkeyException, InterruptedException {
+        try {
+            return JavaScriptUtil.executePartitionScript(channelId, rawMessage.isBinary() ? null : rawMessage.getRawData(), rawMessage.getSourceMap());
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            Throwable t = e;
+            if (e instanceof JavaScriptExecutorException) {
+                t = e.getCause();
+            }
+
+            throw new DonkeyException(t, ErrorMessageBuilder.buildErrorMessage("Partition Key Script", "Error running partition key script", t));
+        }
+    }
+}
@@ -24,14 +24,13 @@ import com.mirth.connect.util.ErrorMessageBuilder;
 
 public class JavaScriptPostprocessor implements PostProcessor {
 
-    private JavaScriptPostProcessorTask task = new JavaScriptPostProcessorTask();
     private EventController eventController= ControllerFactory.getFactory().createEventController();
 
     @Override
     public Response doPostProcess(Message message) throws DonkeyException, InterruptedException {
         try {
-            task.setMessage(message);
-            return JavaScriptUtil.executeJavaScriptPostProcessorTask(task, message.getChannelId());
+            // A new task is used for each message since the channel may be processing messages on multiple lanes
+            return JavaScriptUtil.executeJavaScriptPostProcessorTask(new JavaScriptPostProcessorTask(message), message.getChannelId());
         } catch (InterruptedException e) {
             throw e;
         } catch (Exception e) {
@@ -49,7 +48,7 @@ public class JavaScriptPostprocessor implements PostProcessor {
 
         private Message message;
 
-        public void setMessage(Message message) {
+        public JavaScriptPostProcessorTask(Message message) {
             this.message = message;
         }
 
@@ -23,14 +23,13 @@ import com.mirth.connect.util.ErrorMessageBuilder;
 
 public class JavaScriptPreprocessor implements PreProcessor {
 
-    private JavaScriptPreProcessorTask task = new JavaScriptPreProcessorTask();
     private EventController eventController= ControllerFactory.getFactory().createEventController();
 
     @Override
     public String doPreProcess(ConnectorMessage message) throws DonkeyException, InterruptedException {
         try {
-            task.setMessage(message);
-            return JavaScriptUtil.executeJavaScriptPreProcessorTask(task, message.getChannelId());
+            // A new task is used for each message since the channel may be processing messages on multiple lanes
+            return JavaScriptUtil.executeJavaScriptPreProcessorTask(new JavaScriptPreProcessorTask(message), message.getChannelId());
         } catch (InterruptedException e) {
             throw e;
         } catch (Exception e) {
@@ -48,7 +47,7 @@ public class JavaScriptPreprocessor implements PreProcessor {
 
         private ConnectorMessage message;
 
-        public void setMessage(ConnectorMessage message) {
+        public JavaScriptPreProcessorTask(ConnectorMessage message) {
             this.message = message;
         }
 
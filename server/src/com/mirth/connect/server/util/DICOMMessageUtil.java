@@ -27,7 +27,6 @@ import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.StringUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.dcm4che2.data.DicomElement;
@@ -55,12 +54,7 @@ public class DICOMMessageUtil {
         if (attachments != null && attachments.size() > 0) {
             try {
                 if (attachments.get(0).getType().equals("DICOM")) {
-                    byte[] mergedMessageBytes = mergeHeaderAttachments(message, attachments);
-
-                    // Replace the raw binary with the encoded binary to free up the memory
-                    mergedMessageBytes = Base64Util.encodeBase64(mergedMessageBytes);
-
-                    mergedMessage = StringUtils.newStringUsAscii(mergedMessageBytes);
+                    mergedMessage = Base64Util.encodeBase64String(mergeHeaderAttachments(message, attachments));
                 } else {
                     mergedMessage = message.getRaw().getContent();
                 }
@@ -89,19 +83,28 @@ public class DICOMMessageUtil {
                 if (attachments.get(0).getType().equals("DICOM")) {
                     mergedMessage = mergeHeaderAttachments(message, attachments);
                 } else {
-                    mergedMessage = Base64.decodeBase64(StringUtils.getBytesUsAscii(message.getRaw().getContent()));
+                    mergedMessage = decodeRawContent(message);
                 }
             } catch (Exception e) {
                 logger.error("Error merging DICOM data", e);
-                mergedMessage = Base64.decodeBase64(StringUtils.getBytesUsAscii(message.getRaw().getContent()));
+                mergedMessage = decodeRawContent(message);
             }
         } else {
-            mergedMessage = Base64.decodeBase64(StringUtils.getBytesUsAscii(message.getRaw().getContent()));
+            mergedMessage = decodeRawContent(message);
         }
 
         return mergedMessage;
     }
 
+    private static byte[] decodeRawContent(ImmutableConnectorMessage message) {
+        try {
+            return Base64Util.decodeBase64(message.getRaw().getContent());
+        } catch (IOException e) {
+            logger.error("Error decoding DICOM data", e);
+            return new byte[0];
+        }
+    }
+
     public static byte[] getDICOMRawBytes(ConnectorMessage message) {
         return getDICOMRawBytes(new ImmutableConnectorMessage(message));
     }
@@ -118,9 +121,9 @@ public class DICOMMessageUtil {
             ImmutableMessageContent raw = message.getRaw();
 
             if (encoded != null && encoded.getContent() != null && encoded.getDataType().equals("DICOM")) {
-                headerBytes = Base64.decodeBase64(StringUtils.getBytesUsAscii(encoded.getContent()));
+                headerBytes = Base64Util.decodeBase64(encoded.getContent());
             } else if (raw != null && raw.getContent() != null && raw.getDataType().equals("DICOM")) {
-                headerBytes = Base64.decodeBase64(StringUtils.getBytesUsAscii(raw.getContent()));
+                headerBytes = Base64Util.decodeBase64(raw.getContent());
             } else {
                 return new byte[0];
             }
@@ -9,6 +9,7 @@
 
 package com.mirth.connect.server.util.javascript;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -48,6 +49,8 @@ public class JavaScriptScopeUtil {
     private static Logger logger = Logger.getLogger(JavaScriptScopeUtil.class);
     private static ScriptableObject sealedSharedScope = null;
     private static Integer rhinoOptimizationLevel = null;
+    // Each thread reuses its own Context instead of creating a new one for every script
+    private static ThreadLocal<Context> threadContext = new ThreadLocal<Context>();
 
     static {
         ContextFactory.initGlobal(new StoppableContextFactory());
@@ -78,8 +81,12 @@ public class JavaScriptScopeUtil {
      */
     protected static Context getContext() {
         initialize();
-        Context context = ContextFactory.getGlobal().enterContext();
-        context.setOptimizationLevel(rhinoOptimizationLevel);
+        Context context = ContextFactory.getGlobal().enterContext(threadContext.get());
+
+        if (threadContext.get() != context) {
+            context.setOptimizationLevel(rhinoOptimizationLevel);
+            threadContext.set(context);
+        }
 
         if (sealedSharedScope == null) {
             sealedSharedScope = new ImporterTopLevel(context);
@@ -232,6 +239,17 @@ public class JavaScriptScopeUtil {
         return scope;
     }
 
+    /**
+     * Since this method calls getContext(), anything calling it should wrap this method in a
+     * try-finally with Context.exit() in the finally block.
+     */
+    public static Scriptable getPartitionScope(Object logger, String channelId, String message, Map<String, Object> sourceMap) {
+        Scriptable scope = getBasicScope(getContext(), logger, channelId);
+        addRawMessage(scope, message);
+        add("sourceMap", scope, Collections.unmodifiableMap(sourceMap));
+        return scope;
+    }
+
     /**
      * Since this method calls getContext(), anything calling it should wrap this method in a
      * try-finally with Context.exit() in the finally block.
@@ -413,4 +431,4 @@ public class JavaScriptScopeUtil {
             response.setError(null);
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -52,6 +52,14 @@ public abstract class JavaScriptTask<T> implements Callable<T> {
                 Context.exit();
                 contextCreated = false;
             }
+
+            /*
+             * The context belongs to the thread and is reused by the next task on it, so release it
+             * here to keep a late halt of this task from stopping an unrelated script.
+             */
+            synchronized (this) {
+                context = null;
+            }
         }
     }
 }
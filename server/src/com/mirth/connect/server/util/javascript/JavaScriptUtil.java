@@ -12,12 +12,20 @@ package com.mirth.connect.server.util.javascript;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
@@ -47,15 +55,107 @@ import com.mirth.connect.server.userutil.Attachment;
 import com.mirth.connect.server.util.CompiledScriptCache;
 import com.mirth.connect.server.util.ServerUUIDGenerator;
 import com.mirth.connect.userutil.ImmutableConnectorMessage;
+import com.mirth.connect.util.PropertyLoader;
 
 public class JavaScriptUtil {
     private static Logger logger = Logger.getLogger(JavaScriptUtil.class);
     private static CompiledScriptCache compiledScriptCache = CompiledScriptCache.getInstance();
     private static final int SOURCE_CODE_LINE_WRAPPER = 5;
-    private static ExecutorService executor = Executors.newCachedThreadPool();
 
+    public static final String EXECUTION_MODE_INLINE = "inline";
+    public static final String EXECUTION_MODE_POOLED = "pooled";
+    private static final int DEFAULT_MAX_POOL_THREADS = 100;
+
+    private static boolean inlineExecution = true;
+    private static ThreadPoolExecutor executor;
+    private static ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>();
+    private static AtomicLong inlineExecutionCount = new AtomicLong();
+    private static AtomicLong pooledExecutionCount = new AtomicLong();
+
+    static {
+        int maxPoolThreads = DEFAULT_MAX_POOL_THREADS;
+
+        /*
+         * Checks mirth.properties for the rhino.executionmode property. In inline mode scripts run
+         * on the thread that is processing the message, otherwise every script is handed off to
+         * the executor.
+         */
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        if (MapUtils.isNotEmpty(properties)) {
+            inlineExecution = !EXECUTION_MODE_POOLED.equalsIgnoreCase(StringUtils.trim(properties.getProperty("rhino.executionmode")));
+
+            if (StringUtils.isNotBlank(properties.getProperty("rhino.maxpoolthreads"))) {
+                maxPoolThreads = Math.max(Integer.valueOf(properties.getProperty("rhino.maxpoolthreads").trim()), 1);
+            }
+        }
+
+        // If all of the pool threads are busy, submitting a script waits for one to become free
+        executor = new ThreadPoolExecutor(0, maxPoolThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new PoolThreadFactory(), new WaitForThreadPolicy());
+        logger.debug("JavaScript execution mode: " + (inlineExecution ? EXECUTION_MODE_INLINE : EXECUTION_MODE_POOLED) + ", maximum pool threads: " + maxPoolThreads);
+    }
+
+    /**
+     * Executes a JavaScript task using the configured execution mode. Tasks that run on the
+     * message processing path are executed inline on the calling thread, unless the pooled mode
+     * has been configured.
+     */
     public static <T> T execute(JavaScriptTask<T> task) throws JavaScriptExecutorException, InterruptedException {
-        Future<T> future = executor.submit(task);
+        if (inlineExecution) {
+            return executeInline(task);
+        } else {
+            return executePooled(task);
+        }
+    }
+
+    /**
+     * Executes a JavaScript task on the calling thread. The calling thread's Rhino context is
+     * reused, and halting the channel interrupts this thread which in turn stops the script
+     * through StoppableContext.
+     */
+    public static <T> T executeInline(JavaScriptTask<T> task) throws JavaScriptExecutorException, InterruptedException {
+        inlineExecutionCount.incrementAndGet();
+
+        try {
+            return task.call();
+        } catch (Throwable t) {
+            if (t instanceof InterruptedException) {
+                throw (InterruptedException) t;
+            }
+
+            // If the thread was interrupted the script was halted, so report it the same way the pooled mode does
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+
+            throw new JavaScriptExecutorException(t);
+        }
+    }
+
+    /**
+     * Executes a JavaScript task on a separate thread from the bounded script pool, waiting for it
+     * to complete. This should be used when the script must not run on the calling thread. If every
+     * pool thread is busy, this waits for one to become free. A task submitted from a pool thread,
+     * such as a script that routes a message while in pooled mode, runs on that same thread, so
+     * nested scripts can't deadlock a saturated pool.
+     */
+    public static <T> T executePooled(JavaScriptTask<T> task) throws JavaScriptExecutorException, InterruptedException {
+        if (Boolean.TRUE.equals(poolThread.get())) {
+            return executeInline(task);
+        }
+
+        pooledExecutionCount.incrementAndGet();
+        Future<T> future;
+
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+
+            throw e;
+        }
 
         try {
             return future.get();
@@ -78,6 +178,45 @@ public class JavaScriptUtil {
         }
     }
 
+    public static boolean isInlineExecution() {
+        return inlineExecution;
+    }
+
+    /**
+     * Returns the number of tasks that have been executed on their calling thread.
+     */
+    public static long getInlineExecutionCount() {
+        return inlineExecutionCount.get();
+    }
+
+    /**
+     * Returns the number of tasks that have been submitted to the script pool.
+     */
+    public static long getPooledExecutionCount() {
+        return pooledExecutionCount.get();
+    }
+
+    /**
+     * Returns the number of script pool threads currently running a task.
+     */
+    public static int getActivePoolThreadCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the largest number of threads that have simultaneously been in the script pool.
+     */
+    public static int getLargestPoolThreadCount() {
+        return executor.getLargestPoolSize();
+    }
+
+    /**
+     * Returns the maximum number of threads allowed in the script pool.
+     */
+    public static int getMaxPoolThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
     public static String executeAttachmentScript(final String message, final String channelId, final List<Attachment> attachments) throws InterruptedException, JavaScriptExecutorException {
         String processedMessage = message;
         Object result = null;
@@ -111,6 +250,45 @@ public class JavaScriptUtil {
         return processedMessage;
     }
 
+    /**
+     * Executes the channel's partition key script against a raw message, returning the key as a
+     * string or null if the script did not return a value.
+     * 
+     * @param channelId
+     * @param message
+     * @param sourceMap
+     * @return
+     * @throws InterruptedException
+     * @throws JavaScriptExecutorException
+     */
+    public static String executePartitionScript(final String channelId, final String message, final Map<String, Object> sourceMap) throws InterruptedException, JavaScriptExecutorException {
+        Object result = null;
+
+        try {
+            result = execute(new JavaScriptTask<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    Logger scriptLogger = Logger.getLogger(ScriptController.PARTITION_SCRIPT_KEY.toLowerCase());
+                    try {
+                        Scriptable scope = JavaScriptScopeUtil.getPartitionScope(scriptLogger, channelId, message, sourceMap);
+                        return JavaScriptUtil.executeScript(this, ScriptController.getScriptId(ScriptController.PARTITION_SCRIPT_KEY, channelId), scope, null, null);
+                    } finally {
+                        Context.exit();
+                    }
+                }
+            });
+        } catch (JavaScriptExecutorException e) {
+            logScriptError(ScriptController.PARTITION_SCRIPT_KEY, channelId, e.getCause());
+            throw e;
+        }
+
+        if (result == null || result instanceof Undefined) {
+            return null;
+        }
+
+        return (String) Context.jsToJava(result, java.lang.String.class);
+    }
+
     /**
      * Executes the JavaScriptTask associated with the postprocessor, if necessary.
      * 
@@ -335,7 +513,7 @@ public class JavaScriptUtil {
      */
     public static void executeChannelDeployScript(final String scriptId, final String scriptType, final String channelId) throws InterruptedException, JavaScriptExecutorException {
         try {
-            execute(new JavaScriptTask<Object>() {
+            executePooled(new JavaScriptTask<Object>() {
                 @Override
                 public Object call() throws Exception {
                     Logger scriptLogger = Logger.getLogger(scriptType.toLowerCase());
@@ -365,7 +543,7 @@ public class JavaScriptUtil {
      */
     public static void executeChannelShutdownScript(final String scriptId, final String scriptType, final String channelId) throws InterruptedException, JavaScriptExecutorException {
         try {
-            execute(new JavaScriptTask<Object>() {
+            executePooled(new JavaScriptTask<Object>() {
                 @Override
                 public Object call() throws Exception {
                     Logger scriptLogger = Logger.getLogger(scriptType.toLowerCase());
@@ -393,7 +571,7 @@ public class JavaScriptUtil {
      */
     public static void executeGlobalDeployScript(final String scriptId) throws InterruptedException, JavaScriptExecutorException {
         try {
-            execute(new JavaScriptTask<Object>() {
+            executePooled(new JavaScriptTask<Object>() {
                 @Override
                 public Object call() throws Exception {
                     Logger scriptLogger = Logger.getLogger(scriptId.toLowerCase());
@@ -421,7 +599,7 @@ public class JavaScriptUtil {
      */
     public static void executeGlobalShutdownScript(final String scriptId) throws InterruptedException, JavaScriptExecutorException {
         try {
-            execute(new JavaScriptTask<Object>() {
+            executePooled(new JavaScriptTask<Object>() {
                 @Override
                 public Object call() throws Exception {
                     Logger scriptLogger = Logger.getLogger(scriptId.toLowerCase());
@@ -564,7 +742,8 @@ public class JavaScriptUtil {
 
     /*
      * Encapsulates a JavaScript script into the doScript() function, compiles it, and adds it to
-     * the compiled script cache.
+     * the compiled script cache. If the same script was compiled before, the compiled script is
+     * loaded from the persistent script cache instead.
      */
     public static boolean compileAndAddScript(String scriptId, String script, ContextType contextType) throws Exception {
         return compileAndAddScript(scriptId, script, contextType, null);
@@ -583,22 +762,45 @@ public class JavaScriptUtil {
 
         try {
             Context context = JavaScriptScopeUtil.getContext();
-            logger.debug("compiling script " + scriptId);
             generatedScript = JavaScriptBuilder.generateScript(script, scriptOptions, contextType);
-            Script compiledScript = compileScript(context, generatedScript, scriptId);
-            String decompiledScript = context.decompileScript(compiledScript, 0);
-
-            String decompiledDefaultScript = null;
+            String generatedDefaultScript = null;
 
             if (defaultScript != null) {
-                String generatedDefaultScript = JavaScriptBuilder.generateScript(defaultScript, scriptOptions, contextType);
-                Script compiledDefaultScript = compileScript(context, generatedDefaultScript, scriptId);
-                decompiledDefaultScript = context.decompileScript(compiledDefaultScript, 0);
+                generatedDefaultScript = JavaScriptBuilder.generateScript(defaultScript, scriptOptions, contextType);
+            }
+
+            PersistentScriptCache persistentScriptCache = PersistentScriptCache.getInstance();
+            String cacheKey = null;
+            PersistentScriptCache.Entry entry = null;
+
+            if (persistentScriptCache.isEnabled()) {
+                cacheKey = persistentScriptCache.getKey(context, scriptId, generatedScript, generatedDefaultScript);
+                entry = persistentScriptCache.get(context, cacheKey);
             }
 
-            if ((defaultScript == null) || !decompiledScript.equals(decompiledDefaultScript)) {
+            if (entry == null) {
+                logger.debug("compiling script " + scriptId);
+                entry = persistentScriptCache.compile(context, generatedScript, scriptId);
+
+                if (generatedDefaultScript != null) {
+                    String decompiledScript = context.decompileScript(entry.getScript(), 0);
+                    Script compiledDefaultScript = compileScript(context, generatedDefaultScript, scriptId);
+
+                    if (decompiledScript.equals(context.decompileScript(compiledDefaultScript, 0))) {
+                        entry = persistentScriptCache.getDefaultScriptEntry();
+                    }
+                }
+
+                if (cacheKey != null) {
+                    persistentScriptCache.put(cacheKey, entry);
+                }
+            } else {
+                logger.debug("loaded cached script " + scriptId);
+            }
+
+            if (!entry.isDefaultScript()) {
                 logger.debug("adding script " + scriptId);
-                compiledScriptCache.putCompiledScript(scriptId, compiledScript, generatedScript);
+                compiledScriptCache.putCompiledScript(scriptId, entry.getScript(), generatedScript);
                 scriptInserted = true;
             } else {
                 compiledScriptCache.removeCompiledScript(scriptId);
@@ -630,6 +832,7 @@ public class JavaScriptUtil {
         removeScriptFromCache(ScriptController.getScriptId(ScriptController.PREPROCESSOR_SCRIPT_KEY, channelId));
         removeScriptFromCache(ScriptController.getScriptId(ScriptController.POSTPROCESSOR_SCRIPT_KEY, channelId));
         removeScriptFromCache(ScriptController.getScriptId(ScriptController.ATTACHMENT_SCRIPT_KEY, channelId));
+        removeScriptFromCache(ScriptController.getScriptId(ScriptController.PARTITION_SCRIPT_KEY, channelId));
     }
 
     /**
@@ -663,4 +866,39 @@ public class JavaScriptUtil {
         return source.toString();
     }
 
+    /*
+     * Marks the script pool's threads, so tasks submitted from them can run in place.
+     */
+    private static class PoolThreadFactory implements ThreadFactory {
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    poolThread.set(true);
+                    runnable.run();
+                }
+            });
+        }
+    }
+
+    /*
+     * Hands the task to the next pool thread that becomes free, blocking the submitting thread
+     * until then. The pool threads only ever time out while they're idle, so a thread that is busy
+     * now will take the task when it finishes. If the submitting thread is interrupted while
+     * waiting, the task is rejected with the InterruptedException as the cause.
+     */
+    private static class WaitForThreadPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            try {
+                executor.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
 }
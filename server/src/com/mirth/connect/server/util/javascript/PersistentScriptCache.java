@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ * 
+ * http://www.mirthcorp.com
+ * 
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util.javascript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import com.mirth.connect.server.controllers.ConfigurationController;
+import com.mirth.connect.util.PropertyLoader;
+
+/**
+ * Stores compiled scripts in the application data directory, so scripts that haven't changed
+ * since the last deploy don't have to be compiled again after a restart. Entries are keyed by a
+ * hash of the generated script source, which includes the code templates, along with the script
+ * ID and the Rhino version and settings, so any change to them results in a new entry. Entries
+ * that haven't been used for a while are removed on startup.
+ * 
+ * In interpretive mode (optimization level -1) the compiled script is stored with Java
+ * serialization, and only Rhino's own classes and basic java.lang types are allowed when it's read
+ * back. Otherwise the script is compiled to class files, which are stored and defined again when
+ * loaded.
+ */
+public class PersistentScriptCache {
+    private static final String CACHE_DIRECTORY = "scriptcache";
+    private static final String ENTRY_SUFFIX = ".script";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRY_AGE_DAYS = 30;
+
+    private static final byte TYPE_DEFAULT = 0;
+    private static final byte TYPE_SERIALIZED = 1;
+    private static final byte TYPE_CLASSES = 2;
+
+    private static final String RHINO_PACKAGE = "org.mozilla.javascript.";
+    private static final Set<String> SERIALIZED_JAVA_CLASSES = new HashSet<String>(Arrays.asList(new String[] {
+            "java.lang.Object", "java.lang.String", "java.lang.Number", "java.lang.Boolean",
+            "java.lang.Byte", "java.lang.Character", "java.lang.Short", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Enum" }));
+
+    private static final Entry DEFAULT_SCRIPT_ENTRY = new Entry(null, TYPE_DEFAULT, null);
+
+    private static PersistentScriptCache instance = null;
+
+    private Logger logger = Logger.getLogger(getClass());
+    private File directory;
+
+    public static PersistentScriptCache getInstance() {
+        synchronized (PersistentScriptCache.class) {
+            if (instance == null) {
+                instance = new PersistentScriptCache();
+            }
+
+            return instance;
+        }
+    }
+
+    private PersistentScriptCache() {
+        /*
+         * Checks mirth.properties for the rhino.scriptcache property. The cache is enabled unless
+         * it's set to false.
+         */
+        Properties properties = PropertyLoader.loadProperties("mirth");
+
+        if (properties != null && "false".equalsIgnoreCase(StringUtils.trim(properties.getProperty("rhino.scriptcache")))) {
+            logger.debug("persistent script cache disabled");
+            return;
+        }
+
+        String applicationDataDir = ConfigurationController.getInstance().getApplicationDataDir();
+
+        if (StringUtils.isBlank(applicationDataDir)) {
+            return;
+        }
+
+        File directory = new File(applicationDataDir, CACHE_DIRECTORY);
+
+        try {
+            FileUtils.forceMkdir(directory);
+            removeStaleEntries(directory);
+            this.directory = directory;
+            logger.debug("persistent script cache directory: " + directory.getAbsolutePath());
+        } catch (Exception e) {
+            logger.warn("Unable to use the persistent script cache directory " + directory.getAbsolutePath() + ", scripts will be compiled on every deploy.", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Returns the key for a script. The default script is the script the source is compared
+     * against to determine if it needs to be run at all, and may be null.
+     */
+    public String getKey(Context context, String scriptId, String source, String defaultSource) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(FORMAT_VERSION).append('\n');
+        builder.append(context.getImplementationVersion()).append('\n');
+        builder.append(context.getOptimizationLevel()).append('\n');
+        builder.append(context.getLanguageVersion()).append('\n');
+        builder.append(context.getInstructionObserverThreshold() > 0).append('\n');
+        builder.append(scriptId).append('\n');
+        builder.append(source.length()).append('\n').append(source);
+
+        if (defaultSource != null) {
+            builder.append(defaultSource);
+        }
+
+        return DigestUtils.sha256Hex(builder.toString());
+    }
+
+    /**
+     * Returns the cached entry for the key, or null if there isn't one or it can't be read.
+     */
+    public Entry get(Context context, String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        File file = getFile(key);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            byte type = input.readByte();
+            Entry entry = null;
+
+            if (type == TYPE_DEFAULT) {
+                entry = DEFAULT_SCRIPT_ENTRY;
+            } else {
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+
+                if (type == TYPE_SERIALIZED) {
+                    entry = new Entry(deserializeScript(data), type, data);
+                } else if (type == TYPE_CLASSES) {
+                    entry = new Entry(loadClasses(context, data), type, data);
+                } else {
+                    return null;
+                }
+            }
+
+            // Keep entries that are still in use from being removed as stale
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (Throwable t) {
+            logger.warn("Unable to read cached script " + file.getAbsolutePath() + ", the script will be compiled instead.", t);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Compiles a script the same way Context.compileString does, into an entry that can be stored
+     * with put.
+     */
+    public Entry compile(Context context, String source, String scriptId) throws Exception {
+        if (!isEnabled()) {
+            return new Entry(context.compileString(source, scriptId, 1, null), TYPE_SERIALIZED, null);
+        }
+
+        if (context.getOptimizationLevel() < 0) {
+            Script script = context.compileString(source, scriptId, 1, null);
+            return new Entry(script, TYPE_SERIALIZED, serializeScript(script));
+        }
+
+        CompilerEnvirons compilerEnvirons = new CompilerEnvirons();
+        compilerEnvirons.initFromContext(context);
+        Object[] classFiles = new ClassCompiler(compilerEnvirons).compileToClassFiles(source, scriptId, 1, "MirthScript_" + DigestUtils.md5Hex(scriptId + "\n" + source));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(classFiles.length / 2);
+
+        for (int i = 0; i < classFiles.length; i += 2) {
+            byte[] classBytes = (byte[]) classFiles[i + 1];
+            output.writeUTF((String) classFiles[i]);
+            output.writeInt(classBytes.length);
+            output.write(classBytes);
+        }
+
+        output.flush();
+        byte[] data = bytes.toByteArray();
+
+        return new Entry(loadClasses(context, data), TYPE_CLASSES, data);
+    }
+
+    /**
+     * Returns the entry used for scripts that are the same as their default script.
+     */
+    public Entry getDefaultScriptEntry() {
+        return DEFAULT_SCRIPT_ENTRY;
+    }
+
+    /**
+     * Stores an entry. If it can't be written, the script is compiled again on the next deploy.
+     */
+    public void put(String key, Entry entry) {
+        if (!isEnabled() || (entry.type != TYPE_DEFAULT && entry.data == null)) {
+            return;
+        }
+
+        File file = getFile(key);
+        File tempFile = null;
+        DataOutputStream output = null;
+
+        try {
+            tempFile = File.createTempFile(key, TEMP_SUFFIX, directory);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(FORMAT_VERSION);
+            output.writeByte(entry.type);
+
+            if (entry.type != TYPE_DEFAULT) {
+                output.writeInt(entry.data.length);
+                output.write(entry.data);
+            }
+
+            output.close();
+            output = null;
+
+            // Another thread may have written the same entry in the meantime
+            if (!tempFile.renameTo(file)) {
+                FileUtils.deleteQuietly(file);
+
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tempFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to write cached script " + file.getAbsolutePath() + ".", e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private byte[] serializeScript(Script script) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream output = new ObjectOutputStream(bytes);
+            output.writeObject(script);
+            output.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // The script will still be used, it just won't be cached
+            logger.debug("Unable to serialize compiled script.", e);
+            return null;
+        }
+    }
+
+    private Script deserializeScript(byte[] data) throws IOException, ClassNotFoundException {
+        ObjectInputStream input = new ScriptInputStream(new ByteArrayInputStream(data));
+
+        try {
+            return (Script) input.readObject();
+        } finally {
+            input.close();
+        }
+    }
+
+    private Script loadClasses(Context context, byte[] data) throws Exception {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        GeneratedClassLoader classLoader = context.createClassLoader(context.getApplicationClassLoader());
+        Class<?> mainClass = null;
+        int classCount = input.readInt();
+
+        for (int i = 0; i < classCount; i++) {
+            String className = input.readUTF();
+            byte[] classBytes = new byte[input.readInt()];
+            input.readFully(classBytes);
+
+            Class<?> scriptClass = classLoader.defineClass(className, classBytes);
+
+            // The first class is always the main script class
+            if (mainClass == null) {
+                mainClass = scriptClass;
+            }
+        }
+
+        classLoader.linkClass(mainClass);
+        return (Script) mainClass.newInstance();
+    }
+
+    private void removeStaleEntries(File directory) {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_ENTRY_AGE_DAYS);
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                // Temp files are left behind if the server stopped while writing an entry
+                if (file.getName().endsWith(TEMP_SUFFIX) || (file.getName().endsWith(ENTRY_SUFFIX) && file.lastModified() < cutoff)) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    /*
+     * Only resolves the classes that make up a compiled Rhino script, so a tampered cache entry
+     * can't be used to instantiate anything else. Classes that wrap arbitrary Java objects are
+     * rejected even though they're in the Rhino package.
+     */
+    private static class ScriptInputStream extends ObjectInputStream {
+        public ScriptInputStream(InputStream input) throws IOException {
+            super(input);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String className = desc.getName();
+
+            if (!isAllowed(className)) {
+                throw new InvalidClassException(className, "Class is not allowed in a cached script");
+            }
+
+            return Class.forName(className, false, Context.class.getClassLoader());
+        }
+
+        private boolean isAllowed(String className) {
+            // Check the component type of arrays, primitive arrays are always allowed
+            String name = StringUtils.stripStart(className, "[");
+
+            if (name.length() != className.length()) {
+                if (!name.startsWith("L")) {
+                    return name.length() == 1;
+                }
+
+                name = StringUtils.removeEnd(name.substring(1), ";");
+            }
+
+            if (name.startsWith(RHINO_PACKAGE)) {
+                String simpleName = name.substring(RHINO_PACKAGE.length());
+                return !simpleName.startsWith("NativeJava") && !simpleName.startsWith("JavaAdapter") && !simpleName.startsWith("tools.");
+            }
+
+            return SERIALIZED_JAVA_CLASSES.contains(name);
+        }
+    }
+
+    public static class Entry {
+        private Script script;
+        private byte type;
+        private byte[] data;
+
+        private Entry(Script script, byte type, byte[] data) {
+            this.script = script;
+            this.type = type;
+            this.data = data;
+        }
+
+        /**
+         * Returns the compiled script, or null if the script is the same as its default script.
+         */
+        public Script getScript() {
+            return script;
+        }
+
+        public boolean isDefaultScript() {
+            return type == TYPE_DEFAULT;
+        }
+    }
+}
@@ -30,9 +30,13 @@ public class StoppableContext extends Context {
         this.running.set(running);
     }
     
+    /*
+     * Scripts are halted either explicitly through setRunning(false), or by interrupting the
+     * thread the script is executing on.
+     */
     @Override
     protected void observeInstructionCount(int count) {
-        if (!running.get()) {
+        if (!running.get() || Thread.currentThread().isInterrupted()) {
             logger.debug("Halting JavaScript execution");
             throw new Error();
         }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) Mirth Corporation. All rights reserved.
+ *
+ * http://www.mirthcorp.com
+ *
+ * The software in this package is published under the terms of the MPL license a copy of which has
+ * been included with this distribution in the LICENSE.txt file.
+ */
+
+package com.mirth.connect.server.util.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import com.mirth.connect.donkey.model.message.ConnectorMessage;
+import com.mirth.connect.donkey.model.message.ContentType;
+import com.mirth.connect.donkey.model.message.MessageContent;
+import com.mirth.connect.model.CodeTemplate.ContextType;
+import com.mirth.connect.server.controllers.ScriptController;
+import com.mirth.connect.server.controllers.tests.TestUtils;
+import com.mirth.connect.server.transformers.JavaScriptFilterTransformer;
+import com.mirth.connect.server.util.javascript.JavaScriptScopeUtil;
+import com.mirth.connect.server.util.javascript.JavaScriptTask;
+import com.mirth.connect.server.util.javascript.JavaScriptUtil;
+
+public class JavaScriptExecutionTests {
+    private final static String CHANNEL_ID = "javascriptexecutiontest";
+    private final static String SCRIPT = "return message.substring(0, 3);";
+    private final static String FILTER_TRANSFORMER_SCRIPT = "msg = new XML(connectorMessage.getTransformedData());\n" + "function doFilter() { return msg['MSH']['MSH.9']['MSH.9.1'].toString() == 'ORU'; }\n" + "function doTransform() { channelMap.put('patientName', msg['PID']['PID.5']['PID.5.1'].toString()); }\n" + "if (doFilter() == true) { doTransform(); return true; } else { return false; }";
+    private final static String TRANSFORMED_MESSAGE = "<HL7Message><MSH><MSH.9><MSH.9.1>ORU</MSH.9.1><MSH.9.2>R01</MSH.9.2></MSH.9></MSH><PID><PID.5><PID.5.1>McDoogal</PID.5.1><PID.5.2>Hattie</PID.5.2></PID.5></PID></HL7Message>";
+    private final static int TEST_SIZE = 100000;
+    private final static int THREADS = 8;
+
+    private static Logger logger = Logger.getLogger(JavaScriptExecutionTests.class);
+    private static JavaScriptFilterTransformer filterTransformer;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        TestUtils.startMirthServer();
+        JavaScriptUtil.compileAndAddScript(ScriptController.getScriptId(ScriptController.PARTITION_SCRIPT_KEY, CHANNEL_ID), SCRIPT, ContextType.CHANNEL_CONTEXT, null, null);
+        filterTransformer = new JavaScriptFilterTransformer(CHANNEL_ID, "testconnector", FILTER_TRANSFORMER_SCRIPT, null, null);
+    }
+
+    @Test
+    public final void testFilterTransformer() throws Exception {
+        ConnectorMessage connectorMessage = createConnectorMessage(1);
+        assertTrue(!filterTransformer.doFilterTransform(connectorMessage).isFiltered());
+        assertEquals("McDoogal", connectorMessage.getChannelMap().get("patientName"));
+    }
+
+    @Test
+    public final void testInlineExecution() throws Exception {
+        long inlineCount = JavaScriptUtil.getInlineExecutionCount();
+        assertEquals("MSH", JavaScriptUtil.executeInline(new TestScriptTask()));
+        assertEquals(inlineCount + 1, JavaScriptUtil.getInlineExecutionCount());
+    }
+
+    @Test
+    public final void testPooledExecution() throws Exception {
+        long pooledCount = JavaScriptUtil.getPooledExecutionCount();
+        assertEquals("MSH", JavaScriptUtil.executePooled(new TestScriptTask()));
+        assertEquals(pooledCount + 1, JavaScriptUtil.getPooledExecutionCount());
+        assertTrue(JavaScriptUtil.getLargestPoolThreadCount() > 0);
+    }
+
+    @Test
+    public final void testPooledExecutionWaitsForThread() throws Exception {
+        // Submit more tasks at once than the pool has threads
+        final int tasks = JavaScriptUtil.getMaxPoolThreadCount() + THREADS;
+        ExecutorService executor = Executors.newFixedThreadPool(tasks);
+        final Set<Thread> submittingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        List<Future<Thread>> futures = new ArrayList<Future<Thread>>();
+
+        for (int i = 0; i < tasks; i++) {
+            futures.add(executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() throws Exception {
+                    submittingThreads.add(Thread.currentThread());
+                    return JavaScriptUtil.executePooled(new JavaScriptTask<Thread>() {
+                        @Override
+                        public Thread call() throws Exception {
+                            Thread.sleep(100);
+                            return Thread.currentThread();
+                        }
+                    });
+                }
+            }));
+        }
+
+        // The extra tasks waited for a pool thread instead of running on the threads that submitted them
+        for (Future<Thread> future : futures) {
+            assertFalse(submittingThreads.contains(future.get()));
+        }
+
+        executor.shutdown();
+        assertTrue(JavaScriptUtil.getLargestPoolThreadCount() <= JavaScriptUtil.getMaxPoolThreadCount());
+    }
+
+    @Test
+    public final void testNestedPooledExecution() throws Exception {
+        Thread[] threads = JavaScriptUtil.executePooled(new JavaScriptTask<Thread[]>() {
+            @Override
+            public Thread[] call() throws Exception {
+                Thread nestedThread = JavaScriptUtil.executePooled(new JavaScriptTask<Thread>() {
+                    @Override
+                    public Thread call() throws Exception {
+                        return Thread.currentThread();
+                    }
+                });
+
+                return new Thread[] { Thread.currentThread(), nestedThread };
+            }
+        });
+
+        // A task submitted from a pool thread runs on that thread instead of waiting for another one
+        assertSame(threads[0], threads[1]);
+        assertFalse(Thread.currentThread() == threads[0]);
+    }
+
+    @Test
+    public final void testInlineInterrupt() throws Exception {
+        Thread.currentThread().interrupt();
+
+        try {
+            JavaScriptUtil.executeInline(new TestScriptTask());
+            throw new AssertionError("Expected InterruptedException");
+        } catch (InterruptedException e) {
+            // Clear the interrupted status before the next execution
+            Thread.interrupted();
+        }
+
+        // The per-thread context must still be usable after a halted script
+        assertEquals("MSH", JavaScriptUtil.executeInline(new TestScriptTask()));
+    }
+
+    @Test
+    public final void testPerformance() throws Exception {
+        // Warm up both execution modes before timing them
+        runPerformanceTest(true, 1, TEST_SIZE / 10);
+        runPerformanceTest(false, 1, TEST_SIZE / 10);
+
+        logger.info(TestUtils.getPerformanceText("Filter/transformer, inline execution, 1 thread", TEST_SIZE, runPerformanceTest(true, 1, TEST_SIZE)));
+        logger.info(TestUtils.getPerformanceText("Filter/transformer, pooled execution, 1 thread", TEST_SIZE, runPerformanceTest(false, 1, TEST_SIZE)));
+        logger.info(TestUtils.getPerformanceText("Filter/transformer, inline execution, " + THREADS + " threads", TEST_SIZE, runPerformanceTest(true, THREADS, TEST_SIZE)));
+        logger.info(TestUtils.getPerformanceText("Filter/transformer, pooled execution, " + THREADS + " threads", TEST_SIZE, runPerformanceTest(false, THREADS, TEST_SIZE)));
+    }
+
+    /*
+     * Times the filter/transformer, which is the script that runs for every message. In pooled mode
+     * each call is handed off to the script pool, the same way every script was executed before
+     * inline execution was added.
+     */
+    private long runPerformanceTest(final boolean inline, int threads, int testSize) throws Exception {
+        final int executionsPerThread = testSize / threads;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        long startTime = System.currentTimeMillis();
+
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < executionsPerThread; j++) {
+                        final ConnectorMessage connectorMessage = createConnectorMessage(j);
+
+                        if (inline) {
+                            filterTransformer.doFilterTransform(connectorMessage);
+                        } else {
+                            JavaScriptUtil.executePooled(new JavaScriptTask<Object>() {
+                                @Override
+                                public Object call() throws Exception {
+                                    return filterTransformer.doFilterTransform(connectorMessage);
+                                }
+                            });
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        executor.shutdown();
+        return duration;
+    }
+
+    private ConnectorMessage createConnectorMessage(long messageId) {
+        ConnectorMessage connectorMessage = new ConnectorMessage();
+        connectorMessage.setChannelId(CHANNEL_ID);
+        connectorMessage.setMessageId(messageId);
+        connectorMessage.setMetaDataId(0);
+        connectorMessage.setMessageContent(new MessageContent(CHANNEL_ID, messageId, 0, ContentType.RAW, TestUtils.TEST_HL7_MESSAGE, "HL7V2", false));
+        connectorMessage.setTransformed(new MessageContent(CHANNEL_ID, messageId, 0, ContentType.TRANSFORMED, TRANSFORMED_MESSAGE, "XML", false));
+        return connectorMessage;
+    }
+
+    private class TestScriptTask extends JavaScriptTask<Object> {
+        @Override
+        public Object call() throws Exception {
+            Map<String, Object> sourceMap = new HashMap<String, Object>();
+
+            try {
+                Scriptable scope = JavaScriptScopeUtil.getPartitionScope(logger, CHANNEL_ID, TestUtils.TEST_HL7_MESSAGE, sourceMap);
+                return Context.jsToJava(JavaScriptUtil.executeScript(this, ScriptController.getScriptId(ScriptController.PARTITION_SCRIPT_KEY, CHANNEL_ID), scope, null, null), String.class);
+            } finally {
+                Context.exit();
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import com.mirth.connect.donkey.model.message.ErrorContent;
 import com.mirth.connect.donkey.model.message.MapContent;
 import com.mirth.connect.donkey.model.message.Message;
 import com.mirth.connect.donkey.model.message.MessageContent;
+import com.mirth.connect.donkey.util.CompressionUtil;
 import com.mirth.connect.donkey.util.MapUtil;
 import com.mirth.connect.model.converters.ObjectXMLSerializer;
 
@@ -49,7 +50,7 @@ public class MessageEncryptionUtil {
     public static void decryptMessageContent(MessageContent content, Encryptor encryptor) {
         if (content != null) {
             if (content.getContent() != null && content.isEncrypted()) {
-                content.setContent(encryptor.decrypt(content.getContent()));
+                content.setContent(CompressionUtil.decompress(encryptor.decrypt(content.getContent())));
                 content.setEncrypted(false);
             }
         }
@@ -58,7 +59,7 @@ public class MessageEncryptionUtil {
     public static void decryptMapContent(MapContent content, Encryptor encryptor) {
         if (content != null) {
             if (content.getContent() != null && content.isEncrypted()) {
-                content.setMap(MapUtil.deserializeMap(ObjectXMLSerializer.getInstance(), encryptor.decrypt((String) content.getContent())));
+                content.setMap(MapUtil.deserializeMap(ObjectXMLSerializer.getInstance(), CompressionUtil.decompress(encryptor.decrypt((String) content.getContent()))));
                 content.setEncrypted(false);
             }
         }
@@ -67,7 +68,7 @@ public class MessageEncryptionUtil {
     public static void decryptErrorContent(ErrorContent content, Encryptor encryptor) {
         if (content != null) {
             if (content.getContent() != null && content.isEncrypted()) {
-                content.setContent(encryptor.decrypt(content.getContent()));
+                content.setContent(CompressionUtil.decompress(encryptor.decrypt(content.getContent())));
                 content.setEncrypted(false);
             }
         }
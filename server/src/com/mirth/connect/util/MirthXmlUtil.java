@@ -9,6 +9,7 @@
 
 package com.mirth.connect.util;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -174,6 +175,41 @@ public class MirthXmlUtil {
         return buffer.toString();
     }
 
+    /**
+     * Writes the XML-encoded characters to the given writer. Runs of characters that don't need
+     * to be encoded are written directly from the array, so no intermediate copy is made.
+     */
+    public static void encode(char[] text, int start, int length, Writer writer) throws IOException {
+        int runStart = start;
+
+        for (int i = start; i < length + start; i++) {
+            int j = text[i];
+
+            if (j < 0x80 && encoderXml[j] == null) {
+                continue;
+            }
+
+            if (i > runStart) {
+                writer.write(text, runStart, i - runStart);
+            }
+
+            if (j < 0x100 && encoderXml[j] != null) {
+                writer.write(encoderXml[j]); // have a named encoding
+                writer.write(';');
+            } else {
+                writer.write("&#"); // use numeric encoding
+                writer.write(Integer.toString(j));
+                writer.write(';');
+            }
+
+            runStart = i + 1;
+        }
+
+        if (length + start > runStart) {
+            writer.write(text, runStart, length + start - runStart);
+        }
+    }
+
     private static void addEntity(String entity, int value) {
         decoder.put(entity, (new Character((char) value)).toString());
         if (value < 0x100)
@@ -47,7 +47,7 @@ public class StringUtil {
             }
 
             if (append) {
-                builder.append(text.substring(start, end));
+                builder.append(text, start, end);
                 builder.append(replacement);
 
                 start = i + 1;
@@ -59,7 +59,7 @@ public class StringUtil {
             return text;
         } else {
             // Append the remainder of the message to the buffer.
-            builder.append(text.substring(start, text.length()));
+            builder.append(text, start, text.length());
 
             return builder.toString();
         }
@@ -23,6 +23,7 @@ import com.mirth.connect.donkey.model.message.ConnectorMessage;
 import com.mirth.connect.donkey.model.message.ContentType;
 import com.mirth.connect.donkey.model.message.Message;
 import com.mirth.connect.donkey.model.message.MessageContent;
+import com.mirth.connect.donkey.util.CompressionUtil;
 import com.mirth.connect.model.converters.ObjectXMLSerializer;
 import com.mirth.connect.util.MessageEncryptionUtil;
 import com.mirth.connect.util.ValueReplacer;
@@ -180,10 +181,17 @@ public class MessageWriterVfs implements MessageWriter {
                     if (encrypted) {
                         if (!messageContent.isEncrypted()) {
                             content = encryptor.encrypt(content);
+                        } else {
+                            // Stored content may have been compressed before it was encrypted
+                            String decrypted = encryptor.decrypt(content);
+
+                            if (CompressionUtil.isCompressed(decrypted)) {
+                                content = encryptor.encrypt(CompressionUtil.decompress(decrypted));
+                            }
                         }
                     } else {
                         if (messageContent.isEncrypted()) {
-                            content = encryptor.decrypt(content);
+                            content = CompressionUtil.decompress(encryptor.decrypt(content));
                         }
                     }
 